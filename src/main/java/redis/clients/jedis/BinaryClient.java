@@ -163,6 +163,31 @@ public class BinaryClient extends Connection {
 		sendCommand(Command.SET, key, value, nxxx, expx, toByteArray(time));
 	}
 
+	/**
+	 * SET 命令，值为字节数组的一个区间。
+	 */
+	public void set(final byte[] key, final byte[] value, final int offset,
+			final int length) {
+		sendCommand(Command.SET, new byte[][] { key }, value, offset, length);
+	}
+
+	/**
+	 * SETEX 命令，值为字节数组的一个区间。
+	 */
+	public void setex(final byte[] key, final int seconds, final byte[] value,
+			final int offset, final int length) {
+		sendCommand(SETEX, new byte[][] { key, toByteArray(seconds) }, value,
+				offset, length);
+	}
+
+	/**
+	 * HSET 命令，值为字节数组的一个区间。
+	 */
+	public void hset(final byte[] key, final byte[] field, final byte[] value,
+			final int offset, final int length) {
+		sendCommand(HSET, new byte[][] { key, field }, value, offset, length);
+	}
+
 	public void get(final byte[] key) {
 		sendCommand(Command.GET, key);
 	}
@@ -3,7 +3,9 @@ package redis.clients.jedis;
 import static redis.clients.jedis.Protocol.toByteArray;
 
 import java.io.Closeable;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -16,7 +18,8 @@ import java.util.Set;
 import redis.clients.jedis.BinaryClient.LIST_POSITION;
 import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
-import redis.clients.util.JedisByteHashMap;
+import redis.clients.util.ByteArrayHashMap;
+import redis.clients.util.Deadline;
 import redis.clients.util.JedisURIHelper;
 import redis.clients.util.SafeEncoder;
 
@@ -56,6 +59,23 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		client.setTimeout(timeout);
 	}
 
+	/**
+	 * 创建一个分别设置连接超时时间和读取超时时间的二进制"Jedis客户端"实例。
+	 * 
+	 * @param host
+	 * @param port
+	 * @param connectionTimeout
+	 *            连接超时时间(ms)
+	 * @param soTimeout
+	 *            读取超时时间(ms)
+	 */
+	public BinaryJedis(final String host, final int port,
+			final int connectionTimeout, final int soTimeout) {
+		client = new Client(host, port);
+		client.setConnectionTimeout(connectionTimeout);
+		client.setSoTimeout(soTimeout);
+	}
+
 	/**
 	 * 创建一个给定的"Jedis节点分片信息"的二进制"Jedis客户端"实例。
 	 * 
@@ -64,8 +84,11 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 	 */
 	public BinaryJedis(JedisShardInfo shardInfo) {
 		client = new Client(shardInfo.getHost(), shardInfo.getPort());
-		client.setTimeout(shardInfo.getTimeout());
+		client.setConnectionTimeout(shardInfo.getConnectionTimeout());
+		client.setSoTimeout(shardInfo.getSoTimeout());
+		client.setCircuitBreaker(shardInfo.getCircuitBreaker());
 		client.setPassword(shardInfo.getPassword());
+		client.setGatheringWriteThreshold(shardInfo.getGatheringWriteThreshold());
 	}
 
 	public BinaryJedis(URI uri) {
@@ -124,6 +147,15 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		}
 	}
 
+	/**
+	 * 设置之后所有命令的截止时间，null表示清除。
+	 * 
+	 * @see Connection#setDeadline(Deadline)
+	 */
+	public void setDeadline(Deadline deadline) {
+		client.setDeadline(deadline);
+	}
+
 	/**
 	 * 断开到"Redis客户端"的连接。
 	 */
@@ -173,6 +205,25 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return client.getStatusCodeReply();
 	}
 
+	/**
+	 * Set the string value as value of the key, where the value is the given
+	 * range of a byte array. The range is written straight to the output
+	 * buffer, so callers that encode into a reusable buffer need no exact-size
+	 * copy.
+	 * 
+	 * @param key
+	 * @param value
+	 * @param offset
+	 * @param length
+	 * @return Status code reply
+	 */
+	public String set(final byte[] key, final byte[] value, final int offset,
+			final int length) {
+		checkIsInMulti();
+		client.set(key, value, offset, length);
+		return client.getStatusCodeReply();
+	}
+
 	/**
 	 * Set the string value as value of the key. The string can't be longer than
 	 * 1073741824 bytes (1 GB).
@@ -212,6 +263,41 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return client.getBinaryBulkReply();
 	}
 
+	/**
+	 * Get the value of the specified key and stream it to the given output
+	 * stream in chunks, so the whole value is never held in a heap array.
+	 * <p>
+	 * If writing to the output stream fails, the rest of the value is still
+	 * read from the connection, which stays usable, and a
+	 * {@link JedisException} wrapping the write failure is thrown.
+	 * 
+	 * @param key
+	 * @param out
+	 * @return the length of the value, or null if the key does not exist
+	 */
+	public Long get(final byte[] key, final OutputStream out) {
+		checkIsInMulti();
+		client.get(key);
+		final long len = client.getBinaryBulkReply(out);
+		return len == -1 ? null : Long.valueOf(len);
+	}
+
+	/**
+	 * Get the value of the specified key and stream it to the given channel
+	 * in chunks.
+	 * 
+	 * @param key
+	 * @param channel
+	 * @return the length of the value, or null if the key does not exist
+	 * @see #get(byte[], OutputStream)
+	 */
+	public Long get(final byte[] key, final WritableByteChannel channel) {
+		checkIsInMulti();
+		client.get(key);
+		final long len = client.getBinaryBulkReply(channel);
+		return len == -1 ? null : Long.valueOf(len);
+	}
+
 	/**
 	 * Ask the server to silently close the connection.
 	 */
@@ -591,6 +677,18 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return client.getStatusCodeReply();
 	}
 
+	/**
+	 * SETEX with the value given as a range of a byte array.
+	 * 
+	 * @see #set(byte[], byte[], int, int)
+	 */
+	public String setex(final byte[] key, final int seconds,
+			final byte[] value, final int offset, final int length) {
+		checkIsInMulti();
+		client.setex(key, seconds, value, offset, length);
+		return client.getStatusCodeReply();
+	}
+
 	/**
 	 * Set the the respective keys to the respective values. MSET will replace
 	 * old values with new values, while {@link #msetnx(String...) MSETNX} will
@@ -854,6 +952,18 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return client.getIntegerReply();
 	}
 
+	/**
+	 * HSET with the value given as a range of a byte array.
+	 * 
+	 * @see #set(byte[], byte[], int, int)
+	 */
+	public Long hset(final byte[] key, final byte[] field, final byte[] value,
+			final int offset, final int length) {
+		checkIsInMulti();
+		client.hset(key, field, value, offset, length);
+		return client.getIntegerReply();
+	}
+
 	/**
 	 * If key holds a hash, retrieve the value associated to the specified
 	 * field.
@@ -927,6 +1037,25 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return client.getBinaryMultiBulkReply();
 	}
 
+	/**
+	 * Retrieve the values associated to the specified fields, as a map keyed
+	 * by field content. Fields that do not exist are not present in the map.
+	 * <p>
+	 * The reply is decoded straight into a {@link ByteArrayHashMap}, without
+	 * building an intermediate list.
+	 * 
+	 * @param key
+	 * @param fields
+	 * @return the field-value map of the existing fields
+	 */
+	public Map<byte[], byte[]> hmgetToMap(final byte[] key,
+			final byte[]... fields) {
+		checkIsInMulti();
+		client.hmget(key, fields);
+		return client.getBinaryFieldValuesReply(fields, new ByteArrayHashMap(
+				fields.length));
+	}
+
 	/**
 	 * Increment the number stored at field in the hash at key by value. If key
 	 * does not exist, a new key holding a hash is created. If field does not
@@ -1067,14 +1196,8 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 	public Map<byte[], byte[]> hgetAll(final byte[] key) {
 		checkIsInMulti();
 		client.hgetAll(key);
-		final List<byte[]> flatHash = client.getBinaryMultiBulkReply();
-		final Map<byte[], byte[]> hash = new JedisByteHashMap();
-		final Iterator<byte[]> iterator = flatHash.iterator();
-		while (iterator.hasNext()) {
-			hash.put(iterator.next(), iterator.next());
-		}
-
-		return hash;
+		// 响应直接解码到紧凑的映射表中，不创建中间列表
+		return client.getBinaryHashReply(new ByteArrayHashMap());
 	}
 
 	/**
@@ -1812,6 +1935,36 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return set;
 	}
 
+	/**
+	 * 与{@link #zrangeWithScores(byte[], long, long)}相同，但直接解码为平行的成员数组和分值数组。
+	 * 
+	 * @param key
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public ScoredMembers zrangeWithScoresArray(final byte[] key,
+			final long start, final long end) {
+		checkIsInMulti();
+		client.zrangeWithScores(key, start, end);
+		return client.getScoredMembersReply();
+	}
+
+	/**
+	 * 与{@link #zrevrangeWithScores(byte[], long, long)}相同，但直接解码为平行的成员数组和分值数组。
+	 * 
+	 * @param key
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public ScoredMembers zrevrangeWithScoresArray(final byte[] key,
+			final long start, final long end) {
+		checkIsInMulti();
+		client.zrevrangeWithScores(key, start, end);
+		return client.getScoredMembersReply();
+	}
+
 	/**
 	 * Return the sorted set cardinality (number of elements). If the key does
 	 * not exist 0 is returned, like for empty sorted sets.
@@ -2634,6 +2787,46 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return set;
 	}
 
+	/**
+	 * 与{@link #zrangeByScoreWithScores(byte[], double, double, int, int)}相同，
+	 * 但直接解码为平行的成员数组和分值数组。
+	 * 
+	 * @param key
+	 * @param min
+	 * @param max
+	 * @param offset
+	 * @param count
+	 * @return
+	 */
+	public ScoredMembers zrangeByScoreWithScoresArray(final byte[] key,
+			final double min, final double max, final int offset,
+			final int count) {
+		checkIsInMulti();
+		client.zrangeByScoreWithScores(key, toByteArray(min),
+				toByteArray(max), offset, count);
+		return client.getScoredMembersReply();
+	}
+
+	/**
+	 * 与{@link #zrevrangeByScoreWithScores(byte[], double, double, int, int)}相同，
+	 * 但直接解码为平行的成员数组和分值数组。
+	 * 
+	 * @param key
+	 * @param max
+	 * @param min
+	 * @param offset
+	 * @param count
+	 * @return
+	 */
+	public ScoredMembers zrevrangeByScoreWithScoresArray(final byte[] key,
+			final double max, final double min, final int offset,
+			final int count) {
+		checkIsInMulti();
+		client.zrevrangeByScoreWithScores(key, toByteArray(max),
+				toByteArray(min), offset, count);
+		return client.getScoredMembersReply();
+	}
+
 	/**
 	 * Remove all elements in the sorted set at key with rank between start and
 	 * end. Start and end are 0-based with rank 0 being the element with the
@@ -3406,6 +3599,17 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return client.getIntegerMultiBulkReply();
 	}
 
+	/**
+	 * 与{@link #scriptExists(byte[]...)}相同，但直接解码为长整型数组(1表示存在，0表示不存在)。
+	 * 
+	 * @param sha1
+	 * @return
+	 */
+	public long[] scriptExistsArray(byte[]... sha1) {
+		client.scriptExists(sha1);
+		return client.getIntegerArrayReply();
+	}
+
 	public byte[] scriptLoad(byte[] script) {
 		client.scriptLoad(script);
 		return client.getBinaryBulkReply();
@@ -3634,6 +3838,25 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return new ScanResult<Map.Entry<byte[], byte[]>>(newcursor, results);
 	}
 
+	/**
+	 * Incrementally iterate a hash, decoding one page of field-value pairs
+	 * straight into the given map instead of building entry objects.
+	 * 
+	 * @param key
+	 * @param cursor
+	 * @param params
+	 * @param into
+	 *            the map that receives the field-value pairs of this page
+	 * @return the cursor of the next page; iteration is finished when it is
+	 *         {@link ScanParams#SCAN_POINTER_START_BINARY}
+	 */
+	public byte[] hscanInto(final byte[] key, final byte[] cursor,
+			final ScanParams params, final Map<byte[], byte[]> into) {
+		checkIsInMulti();
+		client.hscan(key, cursor, params);
+		return client.getScanIntoHashReply(into);
+	}
+
 	public ScanResult<byte[]> sscan(final byte[] key, final byte[] cursor) {
 		return sscan(key, cursor, new ScanParams());
 	}
@@ -3668,4 +3891,64 @@ public class BinaryJedis implements BasicCommands, BinaryJedisCommands,
 		return new ScanResult<Tuple>(newcursor, results);
 	}
 
+	/**
+	 * 返回一个遍历整个数据库键空间的"游标迭代器"，在处理当前页时预取下一页。
+	 * 
+	 * @param params
+	 *            游标参数
+	 * @return
+	 * @see ScanIterator
+	 */
+	public ScanIterator<byte[]> binaryScanIterator(final ScanParams params) {
+		checkIsInMulti();
+		return new ScanIterator.BinaryScanIterator(client,
+				Protocol.Command.SCAN, null, params);
+	}
+
+	/**
+	 * 返回一个遍历哈希表所有"域-值"对的"游标迭代器"，在处理当前页时预取下一页。
+	 * 
+	 * @param key
+	 * @param params
+	 *            游标参数
+	 * @return
+	 * @see ScanIterator
+	 */
+	public ScanIterator<Map.Entry<byte[], byte[]>> hscanIterator(
+			final byte[] key, final ScanParams params) {
+		checkIsInMulti();
+		return new ScanIterator.BinaryEntryScanIterator(client, key, params);
+	}
+
+	/**
+	 * 返回一个遍历集合所有成员的"游标迭代器"，在处理当前页时预取下一页。
+	 * 
+	 * @param key
+	 * @param params
+	 *            游标参数
+	 * @return
+	 * @see ScanIterator
+	 */
+	public ScanIterator<byte[]> sscanIterator(final byte[] key,
+			final ScanParams params) {
+		checkIsInMulti();
+		return new ScanIterator.BinaryScanIterator(client,
+				Protocol.Command.SSCAN, key, params);
+	}
+
+	/**
+	 * 返回一个遍历有序集合所有"成员-分值"对的"游标迭代器"，在处理当前页时预取下一页。
+	 * 
+	 * @param key
+	 * @param params
+	 *            游标参数
+	 * @return
+	 * @see ScanIterator
+	 */
+	public ScanIterator<Tuple> zscanIterator(final byte[] key,
+			final ScanParams params) {
+		checkIsInMulti();
+		return new ScanIterator.TupleScanIterator(client, key, params, false);
+	}
+
 }
@@ -1,14 +1,27 @@
 package redis.clients.jedis;
 
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import redis.clients.jedis.BinaryClient.LIST_POSITION;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Deadline;
 import redis.clients.util.Hashing;
+import redis.clients.util.HyperLogLog;
 import redis.clients.util.Sharded;
 
 /**
@@ -19,6 +32,9 @@ import redis.clients.util.Sharded;
 public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		implements BinaryJedisCommands {
 
+	/** 当前调用的截止时间(未设置时为null) */
+	private volatile Deadline deadline;
+
 	public BinaryShardedJedis(List<JedisShardInfo> shards) {
 		super(shards);
 	}
@@ -46,6 +62,38 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		super(shards, algo, keyTagPattern);
 	}
 
+	/**
+	 * 设置之后所有命令的截止时间，null表示清除。
+	 * <p>
+	 * 截止时间在访问分片节点时应用到该分片节点的链接上，清除时只需处理被访问过的分片节点；
+	 * 之前没有设置截止时间时(如每次归还池对象)，清除不访问任何分片节点。
+	 * 
+	 * @see Connection#setDeadline(Deadline)
+	 */
+	public void setDeadline(Deadline deadline) {
+		final Deadline previous = this.deadline;
+		this.deadline = deadline;
+		if (deadline == null && previous != null) {
+			for (Jedis jedis : super.getTouchedShards()) {
+				jedis.setDeadline(null);
+			}
+		}
+	}
+
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	@Override
+	public Jedis getShardResource(JedisShardInfo shardInfo) {
+		final Jedis jedis = super.getShardResource(shardInfo);
+		final Deadline d = deadline;
+		if (d != null) {
+			jedis.setDeadline(d);
+		}
+		return jedis;
+	}
+
 	/**
 	 * 断开整个集群所拥有的所有"Jedis客户端"链接。
 	 * 
@@ -53,11 +101,15 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 	 * 释放一个"Jedis客户端"资源，分2个步骤：
 	 * 	1. 客户端请求服务端关闭连接；
 	 * 	2. 客户端主动关闭连接。
+	 * 未建立链接的分片节点会被跳过(否则 QUIT 命令会先建立一条链接)。
 	 * </pre>
 	 */
 	public void disconnect() {
 		// FIXME 现象：若中间一台Redis节点宕机了，后面节点的链接都无法被释放，可能引起内存泄露！
-		for (Jedis jedis : super.getAllShards()) {
+		for (Jedis jedis : super.getCreatedShards()) {
+			if (!jedis.isConnected()) {
+				continue;
+			}
 			try {
 				// 请求服务端关闭连接
 				// 注意：在服务端socket关闭后，读取QUIT命令的响应信息时，会抛JedisConnectionException异常，但客户端socket还是打开着！
@@ -75,6 +127,158 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		}
 	}
 
+	/**
+	 * 并行地建立到所有分片节点的链接(包括 AUTH/SELECT 握手)，总耗时不超过给定的时间。
+	 * 
+	 * <pre>
+	 * 1. 每个未连接的分片节点作为一个任务提交给执行器，所有分片节点同时连接；
+	 * 2. 连接失败或执行器拒绝执行(线程用尽)的分片节点保持未连接状态，下次访问时再连接，
+	 *    连接任务不会在调用线程中执行，总耗时不会被超出；
+	 * 3. 超时仍未完成的分片节点会被丢弃(见{@link #removeShardResource(Object)})，
+	 *    下次访问时重新创建，迟到的链接在建立后立即被关闭，不会与调用方并发使用同一条链接。
+	 * </pre>
+	 * 
+	 * @param executor
+	 *            执行连接任务的执行器
+	 * @param timeoutMillis
+	 *            总超时时间(毫秒)
+	 * @return 已连接的分片节点数
+	 */
+	public int connectAll(Executor executor, long timeoutMillis) {
+		final Collection<Jedis> shards = super.getAllShards();
+		final List<Jedis> pending = new ArrayList<Jedis>(shards.size());
+		for (Jedis jedis : shards) {
+			if (!jedis.isConnected()) {
+				pending.add(jedis);
+			}
+		}
+		final int connected = shards.size() - pending.size();
+		if (pending.isEmpty()) {
+			return connected;
+		}
+
+		final CountDownLatch done = new CountDownLatch(pending.size());
+		final List<ConnectTask> tasks = new ArrayList<ConnectTask>(
+				pending.size());
+		for (Jedis jedis : pending) {
+			final ConnectTask task = new ConnectTask(jedis, done);
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// 保持未连接状态
+				done.countDown();
+				continue;
+			}
+			tasks.add(task);
+		}
+		try {
+			done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		int result = connected;
+		for (ConnectTask task : tasks) {
+			if (task.claimed.compareAndSet(false, true)) {
+				// 还未完成：丢弃该分片节点的客户端，由连接任务负责关闭
+				super.removeShardResource(task.jedis);
+			} else if (task.jedis.isConnected()) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 连接一个分片节点的任务，与等待方通过{@link #claimed}决定由谁处理结果。
+	 */
+	private static final class ConnectTask implements Runnable {
+
+		final Jedis jedis;
+		private final CountDownLatch done;
+		/** 先设置者获得链接的所有权 */
+		final AtomicBoolean claimed = new AtomicBoolean();
+
+		ConnectTask(Jedis jedis, CountDownLatch done) {
+			this.jedis = jedis;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			try {
+				jedis.connect();
+			} catch (RuntimeException e) {
+				// 保持未连接状态，下次访问时再连接
+			} finally {
+				if (!claimed.compareAndSet(false, true)) {
+					// 等待方已超时并丢弃了该客户端
+					try {
+						jedis.disconnect();
+					} catch (JedisConnectionException e) {
+						// ignore
+					}
+				}
+				done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * 单独修复损坏的分片节点链接：关闭并丢弃损坏的"Jedis客户端"，该分片节点下次被访问时重新创建，
+	 * 其它分片节点的链接保持不变。每丢弃一个链接，该分片节点的{@link JedisShardInfo#getBrokenCount()}加1。
+	 * 只检查被访问过的分片节点，未被访问的链接不会变为损坏状态。
+	 * 
+	 * @return 被丢弃的链接数
+	 */
+	public int repairBrokenShards() {
+		int repaired = 0;
+		for (Jedis jedis : super.getTouchedShards()) {
+			if (!jedis.getClient().isBroken()) {
+				continue;
+			}
+			try {
+				jedis.disconnect();
+			} catch (JedisConnectionException e) {
+				// ignore
+			}
+			final JedisShardInfo shardInfo = super.removeShardResource(jedis);
+			if (shardInfo != null) {
+				shardInfo.incrementBrokenCount();
+				repaired++;
+			}
+		}
+		return repaired;
+	}
+
+	/**
+	 * 关闭超过给定时间未被访问的分片节点链接，下次访问该分片节点时会自动重新建立链接。
+	 * 
+	 * @param idleMillis
+	 *            空闲时间(毫秒)
+	 * @return 被关闭的链接数
+	 */
+	public int releaseIdleShards(long idleMillis) {
+		int released = 0;
+		for (Jedis jedis : super.getIdleShards(idleMillis)) {
+			if (!jedis.isConnected()) {
+				continue;
+			}
+			try {
+				jedis.quit();
+			} catch (JedisConnectionException e) {
+				// ignore
+			}
+			try {
+				jedis.disconnect();
+			} catch (JedisConnectionException e) {
+				// ignore
+			}
+			released++;
+		}
+		return released;
+	}
+
 	// 应该由Sharded统一创建和管理
 //	protected Jedis create(JedisShardInfo shard) {
 //		return new Jedis(shard);
@@ -86,12 +290,27 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		return j.set(key, value);
 	}
 
+	public String set(byte[] key, byte[] value, int offset, int length) {
+		Jedis j = getShard(key);
+		return j.set(key, value, offset, length);
+	}
+
 	@Override
 	public byte[] get(byte[] key) {
 		Jedis j = super.getShard(key);
 		return j.get(key);
 	}
 
+	public Long get(byte[] key, OutputStream out) {
+		Jedis j = getShard(key);
+		return j.get(key, out);
+	}
+
+	public Long get(byte[] key, WritableByteChannel channel) {
+		Jedis j = getShard(key);
+		return j.get(key, channel);
+	}
+
 	public Boolean exists(byte[] key) {
 		Jedis j = getShard(key);
 		return j.exists(key);
@@ -132,6 +351,12 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		return j.setex(key, seconds, value);
 	}
 
+	public String setex(byte[] key, int seconds, byte[] value, int offset,
+			int length) {
+		Jedis j = getShard(key);
+		return j.setex(key, seconds, value, offset, length);
+	}
+
 	public Long decrBy(byte[] key, long integer) {
 		Jedis j = getShard(key);
 		return j.decrBy(key, integer);
@@ -177,6 +402,12 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		return j.hset(key, field, value);
 	}
 
+	public Long hset(byte[] key, byte[] field, byte[] value, int offset,
+			int length) {
+		Jedis j = getShard(key);
+		return j.hset(key, field, value, offset, length);
+	}
+
 	public byte[] hget(byte[] key, byte[] field) {
 		Jedis j = super.getShard(key);
 		return j.hget(key, field);
@@ -199,6 +430,11 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		return j.hmget(key, fields);
 	}
 
+	public Map<byte[], byte[]> hmgetToMap(byte[] key, byte[]... fields) {
+		Jedis j = getShard(key);
+		return j.hmgetToMap(key, fields);
+	}
+
 	public Long hincrBy(byte[] key, byte[] field, long value) {
 		Jedis j = getShard(key);
 		return j.hincrBy(key, field, value);
@@ -400,6 +636,30 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		return j.zrevrangeWithScores(key, start, end);
 	}
 
+	public ScoredMembers zrangeWithScoresArray(byte[] key, long start,
+			long end) {
+		Jedis j = getShard(key);
+		return j.zrangeWithScoresArray(key, start, end);
+	}
+
+	public ScoredMembers zrevrangeWithScoresArray(byte[] key, long start,
+			long end) {
+		Jedis j = getShard(key);
+		return j.zrevrangeWithScoresArray(key, start, end);
+	}
+
+	public ScoredMembers zrangeByScoreWithScoresArray(byte[] key, double min,
+			double max, int offset, int count) {
+		Jedis j = getShard(key);
+		return j.zrangeByScoreWithScoresArray(key, min, max, offset, count);
+	}
+
+	public ScoredMembers zrevrangeByScoreWithScoresArray(byte[] key,
+			double max, double min, int offset, int count) {
+		Jedis j = getShard(key);
+		return j.zrevrangeByScoreWithScoresArray(key, max, min, offset, count);
+	}
+
 	public Long zcard(byte[] key) {
 		Jedis j = getShard(key);
 		return j.zcard(key);
@@ -669,4 +929,169 @@ public class BinaryShardedJedis extends Sharded<Jedis, JedisShardInfo>
 		return j.pfcount(key);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * 估算多个 HyperLogLog 并集的基数，键可以属于不同的分片节点。
+	 * 
+	 * <pre>
+	 * 所有键属于同一个分片节点时，直接使用 PFCOUNT；
+	 * 否则先向所有相关分片节点通过管道发送 GET，再依次读取 HLL 字符串，
+	 * 在本地合并寄存器并估算，结果与 PFMERGE 之后的 PFCOUNT 一致，不需要临时键。
+	 * 发送或读取时某个分片节点的链接出错，所有还有未读取响应的分片节点链接会被断开，下次访问时重新连接。
+	 * </pre>
+	 * 
+	 * @param keys
+	 * @return
+	 */
+	public Long pfcount(final byte[]... keys) {
+		return this.pfcount(keys, null);
+	}
+
+	/*
+	 * names不为null时，按字符串键(应用键标签)分组。
+	 */
+	Long pfcount(final byte[][] keys, final String[] names) {
+		final Map<Jedis, List<byte[]>> groups = new LinkedHashMap<Jedis, List<byte[]>>();
+		for (int i = 0; i < keys.length; i++) {
+			final Jedis j = names != null ? getShard(names[i])
+					: getShard(keys[i]);
+			List<byte[]> group = groups.get(j);
+			if (group == null) {
+				group = new ArrayList<byte[]>();
+				groups.put(j, group);
+			}
+			group.add(keys[i]);
+		}
+		if (groups.size() == 1) {
+			return groups.keySet().iterator().next().pfcount(keys);
+		}
+
+		// 先全部发送，各分片节点并行处理
+		final List<Jedis> sent = new ArrayList<Jedis>(groups.size());
+		for (Map.Entry<Jedis, List<byte[]>> group : groups.entrySet()) {
+			final Client client = group.getKey().getClient();
+			sent.add(group.getKey());
+			try {
+				for (byte[] key : group.getValue()) {
+					client.get(key);
+				}
+				client.flush();
+			} catch (JedisConnectionException e) {
+				// 已发送的分片节点(包括当前节点)还有未读取的响应，断开链接
+				disconnectQuietly(sent);
+				throw e;
+			}
+		}
+		// 再依次读取并合并；读完所有响应后才抛出解码异常
+		final HyperLogLog hll = new HyperLogLog();
+		JedisDataException failure = null;
+		final List<Jedis> unread = new ArrayList<Jedis>(groups.keySet());
+		for (Map.Entry<Jedis, List<byte[]>> group : groups.entrySet()) {
+			final Client client = group.getKey().getClient();
+			unread.remove(0);
+			for (int i = 0; i < group.getValue().size(); i++) {
+				try {
+					final byte[] raw = client.getBinaryBulkReply();
+					if (raw != null) {
+						hll.merge(raw);
+					}
+				} catch (JedisDataException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				} catch (JedisConnectionException e) {
+					// 该链接已被标记为损坏；其后的分片节点还有未读取的响应，断开链接
+					disconnectQuietly(unread);
+					throw e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return hll.count();
+	}
+
+	private static void disconnectQuietly(List<Jedis> shards) {
+		for (Jedis jedis : shards) {
+			try {
+				jedis.disconnect();
+			} catch (JedisConnectionException ignored) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * 返回一个并行扫描所有分片节点键空间的"游标迭代器"，各分片节点使用独立的线程扫描。
+	 * 
+	 * @param params
+	 *            游标参数
+	 * @return
+	 * @see ShardedScanIterator
+	 */
+	public ShardedScanIterator<byte[]> binaryScanIterator(
+			final ScanParams params) {
+		return new ShardedScanIterator<byte[]>(
+				this.binaryScanIterators(params));
+	}
+
+	/**
+	 * 返回一个并行扫描所有分片节点键空间的"游标迭代器"。
+	 * 
+	 * @param params
+	 *            游标参数
+	 * @param executor
+	 *            执行扫描任务的执行器，至少应能同时运行分片节点数个任务
+	 * @return
+	 * @see ShardedScanIterator
+	 */
+	public ShardedScanIterator<byte[]> binaryScanIterator(
+			final ScanParams params, final ExecutorService executor) {
+		return new ShardedScanIterator<byte[]>(
+				this.binaryScanIterators(params), executor);
+	}
+
+	private List<ScanIterator<byte[]>> binaryScanIterators(
+			final ScanParams params) {
+		final Collection<Jedis> shards = super.getAllShards();
+		final List<ScanIterator<byte[]>> iterators = new ArrayList<ScanIterator<byte[]>>(
+				shards.size());
+		for (Jedis jedis : shards) {
+			iterators.add(jedis.binaryScanIterator(params));
+		}
+		return iterators;
+	}
+
+	public ScanIterator<Map.Entry<byte[], byte[]>> hscanIterator(
+			final byte[] key, final ScanParams params) {
+		Jedis j = getShard(key);
+		return j.hscanIterator(key, params);
+	}
+
+	public byte[] hscanInto(final byte[] key, final byte[] cursor,
+			final ScanParams params, final Map<byte[], byte[]> into) {
+		Jedis j = getShard(key);
+		return j.hscanInto(key, cursor, params, into);
+	}
+
+	public ScanIterator<byte[]> sscanIterator(final byte[] key,
+			final ScanParams params) {
+		Jedis j = getShard(key);
+		return j.sscanIterator(key, params);
+	}
+
+	public ScanIterator<Tuple> zscanIterator(final byte[] key,
+			final ScanParams params) {
+		Jedis j = getShard(key);
+		return j.zscanIterator(key, params);
+	}
+
+	/**
+	 * 向频道所属的分片节点发布消息(频道与键使用相同的分片规则，见{@link ShardedSubscriber})。
+	 */
+	public Long publish(byte[] channel, byte[] message) {
+		Jedis j = getShard(channel);
+		return j.publish(channel, message);
+	}
+
+}
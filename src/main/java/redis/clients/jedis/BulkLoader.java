@@ -0,0 +1,583 @@
+package redis.clients.jedis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.RedisInputStream;
+import redis.clients.util.RedisOutputStream;
+import redis.clients.util.SafeEncoder;
+import redis.clients.util.Sharded;
+
+/**
+ * "批量导入器"实现，以类似 redis-cli --pipe 的方式，把内存映射文件中的记录大批量地写入分片集群。
+ *
+ * <pre>
+ * 输入文件格式(整数均为4字节大端)：
+ * 	[键长度][键][值长度][值] [键长度][键][值长度][值] ...
+ *
+ * 工作方式：
+ * 	1. 按窗口大小分段映射输入文件，逐条解析记录，值从映射区分段拷贝到写缓冲区，不在堆上整体复制；
+ * 	2. 通过{@link Sharded#getShardInfo(byte[])}把记录分配到分片节点，每个节点使用一条独立的链接
+ * 	   和一个大的写缓冲区，通过{@link Protocol}直接编码 SET 命令；
+ * 	3. 每个节点由一个独立的线程异步读取响应，写入从不等待响应，从而跑满网络带宽，而不是受限于往返时间。
+ * </pre>
+ *
+ * 服务端返回的"请求错误"只计数(并记录第一条错误信息)，不会中断导入。
+ */
+public class BulkLoader {
+
+	/** 默认的每个节点写缓冲区大小(1MB) */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	/** 默认的文件映射窗口大小(256MB) */
+	public static final long DEFAULT_MAP_WINDOW = 256L << 20;
+	/** 默认的进度通知间隔(记录数) */
+	public static final long DEFAULT_PROGRESS_INTERVAL = 100000;
+
+	/**
+	 * "导入进度监听器"定义。
+	 */
+	public interface ProgressListener {
+
+		/**
+		 * 导入进度通知，在导入线程中调用。
+		 *
+		 * @param progress
+		 *            进度快照
+		 */
+		void onProgress(Progress progress);
+	}
+
+	/** 分片集群 */
+	private final Sharded<Jedis, JedisShardInfo> sharded;
+	/** 每个节点的写缓冲区大小 */
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	/** 文件映射窗口大小 */
+	private long mapWindow = DEFAULT_MAP_WINDOW;
+	/** 进度通知间隔(记录数) */
+	private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+	/** 进度监听器 */
+	private ProgressListener listener;
+
+	/**
+	 * 创建一个"批量导入器"。
+	 *
+	 * @param sharded
+	 *            分片集群(如{@link ShardedJedis})，只用于确定记录所属的分片节点
+	 */
+	public BulkLoader(Sharded<Jedis, JedisShardInfo> sharded) {
+		this.sharded = sharded;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public void setMapWindow(long mapWindow) {
+		this.mapWindow = mapWindow;
+	}
+
+	public void setProgressInterval(long progressInterval) {
+		this.progressInterval = progressInterval;
+	}
+
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * 导入一个记录文件，并等待所有节点确认。
+	 *
+	 * @param file
+	 *            记录文件
+	 * @return 最终的导入统计
+	 * @throws IOException
+	 *             读取文件失败，或文件内容不完整
+	 */
+	public Progress load(File file) throws IOException {
+		final Pipes pipes = new Pipes(sharded, bufferSize);
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final long size = channel.size();
+			long window = mapWindow;
+			long pos = this.readHeader(channel);
+			while (pos < size) {
+				final long len = Math.min(window, size - pos);
+				final MappedByteBuffer map = channel.map(
+						FileChannel.MapMode.READ_ONLY, pos, len);
+				final int consumed = this.loadRecords(map, pipes);
+				if (consumed == 0) {
+					if (pos + len == size) {
+						throw new IOException("Truncated record at offset "
+								+ pos);
+					}
+					if (window >= Integer.MAX_VALUE) {
+						throw new IOException("Record at offset " + pos
+								+ " does not fit in the maximum map window");
+					}
+					// 一条记录比窗口还大，扩大窗口
+					window = Math.min(Integer.MAX_VALUE, window * 2);
+				}
+				pos += consumed;
+			}
+			pipes.finish();
+			final Progress progress = pipes.progress();
+			if (listener != null) {
+				listener.onProgress(progress);
+			}
+			return progress;
+		} finally {
+			pipes.close();
+			raf.close();
+		}
+	}
+
+	/**
+	 * 读取并校验文件头，返回第一条记录的位置；默认没有文件头。
+	 */
+	long readHeader(FileChannel channel) throws IOException {
+		return 0;
+	}
+
+	/**
+	 * 导入一个映射窗口内的所有完整记录，返回已处理的字节数。
+	 *
+	 * @throws IOException
+	 *             记录的长度为负数(文件已损坏)
+	 */
+	int loadRecords(ByteBuffer map, Pipes pipes) throws IOException {
+		while (map.remaining() >= 4) {
+			final int start = map.position();
+			final int keyLength = checkLength(map.getInt(), start);
+			if (map.remaining() < keyLength + 4L) {
+				map.position(start);
+				break;
+			}
+			final byte[] key = new byte[keyLength];
+			map.get(key);
+			final int valueLength = checkLength(map.getInt(), start);
+			if (map.remaining() < valueLength) {
+				map.position(start);
+				break;
+			}
+			// 值直接从映射区写出
+			final int valueEnd = map.position() + valueLength;
+			final int limit = map.limit();
+			map.limit(valueEnd);
+			pipes.pipe(sharded.getShardInfo(key)).send(Command.SET,
+					new byte[][] { key }, map);
+			map.limit(limit);
+			map.position(valueEnd);
+
+			this.recordSent(pipes, map.position() - start);
+		}
+		return map.position();
+	}
+
+	/**
+	 * 校验记录中的长度字段，负数表示文件已损坏。
+	 *
+	 * @param length
+	 *            长度字段
+	 * @param recordStart
+	 *            记录在映射窗口中的位置
+	 * @return 长度
+	 * @throws IOException
+	 */
+	static int checkLength(int length, int recordStart) throws IOException {
+		if (length < 0) {
+			throw new IOException("Corrupt record: negative length " + length
+					+ " at window offset " + recordStart);
+		}
+		return length;
+	}
+
+	/**
+	 * 记录一条已发送的记录，必要时通知进度。
+	 */
+	void recordSent(Pipes pipes, int recordBytes) {
+		final long records = pipes.recordSent(recordBytes);
+		if (listener != null && progressInterval > 0
+				&& records % progressInterval == 0) {
+			listener.onProgress(pipes.progress());
+		}
+	}
+
+	/**
+	 * 返回分片集群。
+	 */
+	Sharded<Jedis, JedisShardInfo> getSharded() {
+		return sharded;
+	}
+
+	/**
+	 * 所有分片节点的导入链接。
+	 */
+	static final class Pipes {
+
+		private final Map<JedisShardInfo, ShardPipe> pipes = new LinkedHashMap<JedisShardInfo, ShardPipe>();
+		private final long startTime = System.currentTimeMillis();
+		/** 已发送的记录数 */
+		private long records;
+		/** 已读取的记录字节数 */
+		private long bytes;
+
+		Pipes(Sharded<Jedis, JedisShardInfo> sharded, int bufferSize) {
+			try {
+				for (JedisShardInfo shard : sharded.getAllShardInfo()) {
+					if (!pipes.containsKey(shard)) {
+						pipes.put(shard, new ShardPipe(shard, bufferSize));
+					}
+				}
+			} catch (RuntimeException e) {
+				this.close();
+				throw e;
+			}
+		}
+
+		ShardPipe pipe(JedisShardInfo shard) {
+			return pipes.get(shard);
+		}
+
+		/*
+		 * 记录一条已发送的记录，返回已发送的记录总数。
+		 */
+		long recordSent(int recordBytes) {
+			bytes += recordBytes;
+			return ++records;
+		}
+
+		/**
+		 * 刷新所有链接，并等待所有响应。
+		 */
+		void finish() {
+			for (ShardPipe pipe : pipes.values()) {
+				pipe.flush();
+			}
+			for (ShardPipe pipe : pipes.values()) {
+				pipe.awaitReplies();
+			}
+		}
+
+		Progress progress() {
+			final List<ShardProgress> shards = new ArrayList<ShardProgress>(
+					pipes.size());
+			for (ShardPipe pipe : pipes.values()) {
+				shards.add(pipe.progress(startTime));
+			}
+			return new Progress(System.currentTimeMillis() - startTime,
+					records, bytes, shards);
+		}
+
+		void close() {
+			for (ShardPipe pipe : pipes.values()) {
+				pipe.close();
+			}
+		}
+	}
+
+	/**
+	 * 一个分片节点的导入链接：调用线程负责写，独立的线程负责读响应。
+	 */
+	static final class ShardPipe implements Runnable {
+
+		private final JedisShardInfo shard;
+		private final Socket socket;
+		private final RedisOutputStream out;
+		private final RedisInputStream in;
+		private final Thread reader;
+
+		/** 保护以下计数 */
+		private final Object lock = new Object();
+		/** 已发送的命令数 */
+		private long sent;
+		/** 已收到的响应数 */
+		private long acked;
+		/** 错误响应数 */
+		private long errors;
+		/** 第一条错误信息 */
+		private String firstError;
+		/** 读取响应失败的原因 */
+		private Throwable failure;
+		/** 是否已发送完毕 */
+		private boolean finished;
+
+		ShardPipe(JedisShardInfo shard, int bufferSize) {
+			this.shard = shard;
+			try {
+				// 不能使用 SocketChannel 的套接字：JDK 12及以前，它的输入输出流共用一把阻塞锁，
+				// 读取线程阻塞在读取上时，写入线程会一直等待这把锁，导致死锁
+				socket = new Socket();
+				socket.setTcpNoDelay(false);
+				socket.setKeepAlive(true);
+				socket.connect(
+						new InetSocketAddress(shard.getHost(), shard.getPort()),
+						shard.getConnectionTimeout());
+				// 写入线程可能在较长时间内都不刷新缓冲区，所以读取不设超时
+				socket.setSoTimeout(0);
+				out = new RedisOutputStream(socket.getOutputStream(),
+						bufferSize);
+				in = new RedisInputStream(socket.getInputStream(), 64 * 1024);
+			} catch (IOException e) {
+				throw new JedisConnectionException(e);
+			}
+			reader = new Thread(this, "jedis-bulk-loader-" + shard.getHost()
+					+ ":" + shard.getPort());
+			reader.setDaemon(true);
+			reader.start();
+			if (shard.getPassword() != null) {
+				this.send(Command.AUTH, SafeEncoder.encode(shard.getPassword()));
+			}
+		}
+
+		/**
+		 * 发送一条命令，不等待响应。
+		 */
+		void send(Command command, byte[]... args) {
+			this.checkFailure();
+			Protocol.sendCommand(out, command, args);
+			this.sent();
+		}
+
+		/**
+		 * 发送一条命令，最后一个参数为字节缓冲区的剩余内容，不等待响应。
+		 */
+		void send(Command command, byte[][] args, ByteBuffer tail) {
+			this.checkFailure();
+			Protocol.sendCommand(out, command, args, tail);
+			this.sent();
+		}
+
+		private void sent() {
+			synchronized (lock) {
+				sent++;
+				lock.notifyAll();
+			}
+		}
+
+		private void checkFailure() {
+			synchronized (lock) {
+				if (failure != null) {
+					throw new JedisConnectionException("Bulk load to " + shard
+							+ " failed", failure);
+				}
+			}
+		}
+
+		void flush() {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				throw new JedisConnectionException(e);
+			}
+		}
+
+		/**
+		 * 等待所有已发送命令的响应。
+		 */
+		void awaitReplies() {
+			synchronized (lock) {
+				finished = true;
+				lock.notifyAll();
+			}
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JedisConnectionException(e);
+			}
+			this.checkFailure();
+		}
+
+		/**
+		 * 读取响应，直到发送完毕并且收到所有的响应。
+		 */
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					synchronized (lock) {
+						while (acked == sent && !finished) {
+							lock.wait();
+						}
+						if (acked == sent) {
+							return;
+						}
+					}
+					String error = null;
+					try {
+						Protocol.read(in);
+					} catch (JedisDataException e) {
+						error = e.getMessage();
+					}
+					synchronized (lock) {
+						acked++;
+						if (error != null) {
+							errors++;
+							if (firstError == null) {
+								firstError = error;
+							}
+						}
+					}
+				}
+			} catch (Throwable t) {
+				synchronized (lock) {
+					failure = t;
+				}
+			}
+		}
+
+		ShardProgress progress(long startTime) {
+			synchronized (lock) {
+				return new ShardProgress(shard, sent, acked, errors, firstError,
+						System.currentTimeMillis() - startTime);
+			}
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * 导入进度快照。
+	 */
+	public static final class Progress {
+
+		private final long elapsedMillis;
+		private final long records;
+		private final long bytes;
+		private final List<ShardProgress> shards;
+
+		Progress(long elapsedMillis, long records, long bytes,
+				List<ShardProgress> shards) {
+			this.elapsedMillis = elapsedMillis;
+			this.records = records;
+			this.bytes = bytes;
+			this.shards = Collections.unmodifiableList(shards);
+		}
+
+		/** 已用时间(ms) */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/** 已发送的记录数 */
+		public long getRecords() {
+			return records;
+		}
+
+		/** 已读取的记录字节数 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/** 已收到的响应总数 */
+		public long getAcked() {
+			long acked = 0;
+			for (ShardProgress shard : shards) {
+				acked += shard.getAcked();
+			}
+			return acked;
+		}
+
+		/** 错误响应总数 */
+		public long getErrors() {
+			long errors = 0;
+			for (ShardProgress shard : shards) {
+				errors += shard.getErrors();
+			}
+			return errors;
+		}
+
+		/** 各分片节点的进度 */
+		public Collection<ShardProgress> getShards() {
+			return shards;
+		}
+
+		@Override
+		public String toString() {
+			return "records=" + records + ", bytes=" + bytes + ", acked="
+					+ this.getAcked() + ", errors=" + this.getErrors()
+					+ ", elapsed=" + elapsedMillis + "ms, shards=" + shards;
+		}
+	}
+
+	/**
+	 * 一个分片节点的导入进度快照。
+	 */
+	public static final class ShardProgress {
+
+		private final JedisShardInfo shard;
+		private final long sent;
+		private final long acked;
+		private final long errors;
+		private final String firstError;
+		private final long elapsedMillis;
+
+		ShardProgress(JedisShardInfo shard, long sent, long acked, long errors,
+				String firstError, long elapsedMillis) {
+			this.shard = shard;
+			this.sent = sent;
+			this.acked = acked;
+			this.errors = errors;
+			this.firstError = firstError;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		public JedisShardInfo getShard() {
+			return shard;
+		}
+
+		/** 已发送的命令数 */
+		public long getSent() {
+			return sent;
+		}
+
+		/** 已收到的响应数 */
+		public long getAcked() {
+			return acked;
+		}
+
+		/** 错误响应数 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/** 第一条错误信息(没有错误时为null) */
+		public String getFirstError() {
+			return firstError;
+		}
+
+		/** 吞吐量(每秒确认的命令数) */
+		public double getAckedPerSecond() {
+			return elapsedMillis == 0 ? 0 : acked * 1000.0 / elapsedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return shard + "{sent=" + sent + ", acked=" + acked + ", errors="
+					+ errors + ", ops/s=" + (long) this.getAckedPerSecond() + "}";
+		}
+	}
+
+}
@@ -0,0 +1,623 @@
+package redis.clients.jedis;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * "大值分块存储"实现，将一个大值拆分成固定大小的块来读写，避免单条巨型命令长时间占用 Redis 的事件循环。
+ *
+ * <pre>
+ * 两种存储布局：
+ * 	1. {@link Layout#RANGE}：值保存在一个字符串键里，分块通过 SETRANGE/GETRANGE 读写；
+ * 	2. {@link Layout#CHUNK_KEYS}：每块保存在一个独立的键里("{key}:g:i"，键已含标签时为"key:g:i"，g为写入代数)，
+ * 	   原键只保存元数据("长度:块大小:代数")，所有块键与原键位于同一个分片节点上。
+ * 	   每次写入使用新的代数，写完所有块后才替换元数据，再删除旧代数的块；
+ * 	   提交元数据之前写入失败时，删除已写入的新代数块(链接出错时无法删除，会有残留)；
+ * 	   持有旧元数据的读者不会读到新旧块拼接成的值，而是因旧块被删除而失败。
+ *
+ * 读写都通过管道进行，最多同时有"窗口大小"个块的请求在途。
+ * </pre>
+ *
+ * <font color="red">注意：</font>在流关闭之前，流独占所在节点的链接，不能通过该客户端执行其它命令；
+ * {@link Layout#RANGE}布局的写入过程中，其它读者可能读到不完整的值；
+ * {@link Layout#CHUNK_KEYS}布局的读者与写入并发时，可能因旧块已被删除而失败("Missing chunk")，但不会读到拼接的值。
+ */
+public class ChunkedValueStore {
+
+	/**
+	 * 存储布局。
+	 */
+	public enum Layout {
+		/** 一个字符串键，按范围分块读写 */
+		RANGE,
+		/** 每块一个键，原键保存元数据 */
+		CHUNK_KEYS
+	}
+
+	/** 默认的块大小(512KB) */
+	public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+	/** 默认的管道窗口大小(块数) */
+	public static final int DEFAULT_WINDOW = 8;
+
+	/** 生成写入代数 */
+	private static final Random GENERATIONS = new Random();
+
+	/** 单节点客户端(与分片客户端二选一) */
+	private final Jedis jedis;
+	/** 分片客户端 */
+	private final BinaryShardedJedis sharded;
+	/** 存储布局 */
+	private final Layout layout;
+	/** 块大小(字节) */
+	private final int chunkSize;
+	/** 管道窗口大小(块数) */
+	private final int window;
+
+	public ChunkedValueStore(Jedis jedis) {
+		this(jedis, Layout.RANGE, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * 创建一个基于单节点客户端的"大值分块存储"。
+	 *
+	 * @param jedis
+	 *            Redis客户端
+	 * @param layout
+	 *            存储布局
+	 * @param chunkSize
+	 *            块大小(字节)
+	 * @param window
+	 *            管道窗口大小(块数)
+	 */
+	public ChunkedValueStore(Jedis jedis, Layout layout, int chunkSize,
+			int window) {
+		this(jedis, null, layout, chunkSize, window);
+	}
+
+	public ChunkedValueStore(BinaryShardedJedis sharded) {
+		this(sharded, Layout.RANGE, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * 创建一个基于分片客户端的"大值分块存储"，每个值的所有块都保存在原键所在的分片节点上。
+	 *
+	 * @param sharded
+	 *            分片客户端
+	 * @param layout
+	 *            存储布局
+	 * @param chunkSize
+	 *            块大小(字节)
+	 * @param window
+	 *            管道窗口大小(块数)
+	 */
+	public ChunkedValueStore(BinaryShardedJedis sharded, Layout layout,
+			int chunkSize, int window) {
+		this(null, sharded, layout, chunkSize, window);
+	}
+
+	private ChunkedValueStore(Jedis jedis, BinaryShardedJedis sharded,
+			Layout layout, int chunkSize, int window) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize <= 0");
+		}
+		if (window <= 0) {
+			throw new IllegalArgumentException("window <= 0");
+		}
+		this.jedis = jedis;
+		this.sharded = sharded;
+		this.layout = layout;
+		this.chunkSize = chunkSize;
+		this.window = window;
+	}
+
+	/*
+	 * 返回给定键所在节点的客户端。
+	 */
+	private Client client(byte[] key) {
+		return (jedis != null ? jedis : sharded.getShard(key)).getClient();
+	}
+
+	/*
+	 * 返回给定代数的第 index 块的键：键不含标签时，以整个键作为标签("{key}:g:i")；
+	 * 已含标签时直接追加后缀("key:g:i")，从而所有块键与原键的分片标签相同。
+	 */
+	private static byte[] chunkKey(byte[] key, long generation, int index) {
+		return withSuffix(key, SafeEncoder.encode(":" + generation + ":"
+				+ index));
+	}
+
+	/*
+	 * 在键之后追加后缀，保持与原键相同的分片标签。
+	 */
+	private static byte[] withSuffix(byte[] key, byte[] suffix) {
+		if (hasKeyTag(key)) {
+			final byte[] result = Arrays.copyOf(key, key.length + suffix.length);
+			System.arraycopy(suffix, 0, result, key.length, suffix.length);
+			return result;
+		}
+		final byte[] result = new byte[key.length + suffix.length + 2];
+		result[0] = '{';
+		System.arraycopy(key, 0, result, 1, key.length);
+		result[key.length + 1] = '}';
+		System.arraycopy(suffix, 0, result, key.length + 2, suffix.length);
+		return result;
+	}
+
+	/*
+	 * 判断键是否含有非空的"{...}"标签。
+	 */
+	private static boolean hasKeyTag(byte[] key) {
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] == '{') {
+				for (int j = i + 2; j < key.length; j++) {
+					if (key[j] == '}') {
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * 返回给定长度对应的块数。
+	 */
+	private long chunkCount(long length, int size) {
+		return (length + size - 1) / size;
+	}
+
+	/**
+	 * 分块写入一个值。
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public void set(byte[] key, byte[] value) {
+		final ChunkOutputStream out = new ChunkOutputStream(key,
+				this.client(key));
+		out.write(value, 0, value.length);
+		out.close();
+	}
+
+	/**
+	 * 分块读取一个值。
+	 *
+	 * @param key
+	 * @return 值；键不存在时，返回null
+	 */
+	public byte[] get(byte[] key) {
+		final ChunkInputStream in = this.openInputStream(key);
+		if (in == null) {
+			return null;
+		}
+		try {
+			if (in.length > Integer.MAX_VALUE) {
+				throw new JedisDataException("Value too large for a byte[]: "
+						+ in.length);
+			}
+			final byte[] value = new byte[(int) in.length];
+			int offset = 0;
+			while (offset < value.length) {
+				final int n = in.read(value, offset, value.length - offset);
+				if (n < 0) {
+					throw new JedisDataException("Value of key "
+							+ SafeEncoder.encode(key) + " changed while reading");
+				}
+				offset += n;
+			}
+			return value;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * 删除一个值(包括所有的块键)。
+	 *
+	 * @param key
+	 * @return 被删除的键个数
+	 */
+	public long del(byte[] key) {
+		final Client client = this.client(key);
+		if (layout == Layout.RANGE) {
+			client.del(key);
+			return client.getIntegerReply();
+		}
+		client.get(key);
+		final long[] meta = parseMeta(client.getBinaryBulkReply());
+		final long count = meta == null ? 0 : this.chunkCount(meta[0],
+				(int) meta[1]);
+		final byte[][] keys = new byte[(int) count + 1][];
+		keys[0] = key;
+		for (int i = 0; i < count; i++) {
+			keys[i + 1] = chunkKey(key, meta[2], i);
+		}
+		client.del(keys);
+		return client.getIntegerReply();
+	}
+
+	public OutputStream openOutputStream(String key) {
+		return this.openOutputStream(SafeEncoder.encode(key));
+	}
+
+	/**
+	 * 打开一个分块写入的输出流；关闭时写完最后一块，并等待所有块写入完成。
+	 *
+	 * @param key
+	 * @return
+	 */
+	public OutputStream openOutputStream(byte[] key) {
+		return new ChunkOutputStream(key, this.client(key));
+	}
+
+	public ChunkInputStream openInputStream(String key) {
+		return this.openInputStream(SafeEncoder.encode(key));
+	}
+
+	/**
+	 * 打开一个分块读取的输入流，预取后续的块。
+	 *
+	 * @param key
+	 * @return 输入流；键不存在时，返回null
+	 */
+	public ChunkInputStream openInputStream(byte[] key) {
+		final Client client = this.client(key);
+		if (layout == Layout.RANGE) {
+			client.exists(key);
+			client.strlen(key);
+			final long exists = client.getIntegerReply();
+			final long length = client.getIntegerReply();
+			if (exists == 0) {
+				return null;
+			}
+			return new ChunkInputStream(key, client, length, chunkSize, -1);
+		}
+		client.get(key);
+		final long[] meta = parseMeta(client.getBinaryBulkReply());
+		if (meta == null) {
+			return null;
+		}
+		return new ChunkInputStream(key, client, meta[0], (int) meta[1],
+				meta[2]);
+	}
+
+	/*
+	 * 编码元数据："长度:块大小:代数"。
+	 */
+	private static byte[] formatMeta(long length, int chunkSize,
+			long generation) {
+		return SafeEncoder.encode(length + ":" + chunkSize + ":" + generation);
+	}
+
+	/*
+	 * 解析元数据为{长度, 块大小, 代数}；不存在或格式不正确时，返回null。
+	 */
+	private static long[] parseMeta(byte[] raw) {
+		if (raw == null) {
+			return null;
+		}
+		final String text = SafeEncoder.encode(raw);
+		final int sep = text.indexOf(':');
+		final int genSep = sep <= 0 ? -1 : text.indexOf(':', sep + 1);
+		if (genSep < 0) {
+			return null;
+		}
+		try {
+			final long length = Long.parseLong(text.substring(0, sep));
+			final long size = Long.parseLong(text.substring(sep + 1, genSep));
+			final long generation = Long.parseLong(text.substring(genSep + 1));
+			if (length < 0 || size <= 0 || size > Integer.MAX_VALUE
+					|| generation < 0) {
+				return null;
+			}
+			return new long[] { length, size, generation };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * 读掉给定数量的在途响应，忽略其中的"请求错误"。
+	 */
+	private static void drain(Client client, int inFlight) {
+		for (int i = 0; i < inFlight; i++) {
+			try {
+				client.getOne();
+			} catch (JedisDataException e) {
+				// 已经在处理另一个异常，忽略
+			}
+		}
+	}
+
+	/**
+	 * 分块写入的输出流。
+	 */
+	private final class ChunkOutputStream extends OutputStream {
+
+		private final byte[] key;
+		private final Client client;
+		/** 当前块的缓冲区 */
+		private final byte[] buffer = new byte[chunkSize];
+		/** 当前块已写入的长度 */
+		private int pos;
+		/** 下一块的序号 */
+		private int index;
+		/** 已发送的总长度 */
+		private long length;
+		/** 在途的请求数 */
+		private int inFlight;
+		/** 本次写入的代数(仅用于{@link Layout#CHUNK_KEYS}布局) */
+		private final long generation;
+		private boolean closed;
+
+		ChunkOutputStream(byte[] key, Client client) {
+			this.key = key;
+			this.client = client;
+			this.generation = GENERATIONS.nextLong() & Long.MAX_VALUE;
+		}
+
+		@Override
+		public void write(int b) {
+			this.ensureOpen();
+			buffer[pos++] = (byte) b;
+			if (pos == buffer.length) {
+				this.sendChunk();
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.ensureOpen();
+			while (len > 0) {
+				final int n = Math.min(len, buffer.length - pos);
+				System.arraycopy(b, off, buffer, pos, n);
+				pos += n;
+				off += n;
+				len -= n;
+				if (pos == buffer.length) {
+					this.sendChunk();
+				}
+			}
+		}
+
+		private void ensureOpen() {
+			if (closed) {
+				throw new IllegalStateException("Stream closed");
+			}
+		}
+
+		/*
+		 * 通过管道发送当前块；窗口已满时，先读取最早的一个响应。
+		 */
+		private void sendChunk() {
+			if (inFlight == window) {
+				this.readReply();
+			}
+			// 命令内容在发送时就已拷贝到输出缓冲区，所以整块时可以直接复用缓冲区
+			final byte[] data = pos == buffer.length ? buffer : Arrays.copyOf(
+					buffer, pos);
+			if (layout == Layout.CHUNK_KEYS) {
+				client.set(chunkKey(key, generation, index), data);
+			} else if (index == 0) {
+				client.set(key, data);
+			} else {
+				client.setrange(key, length, data);
+			}
+			inFlight++;
+			index++;
+			length += pos;
+			pos = 0;
+		}
+
+		private void readReply() {
+			try {
+				inFlight--;
+				client.getOne();
+			} catch (JedisDataException e) {
+				drain(client, inFlight);
+				inFlight = 0;
+				closed = true;
+				this.discardChunks();
+				throw e;
+			}
+		}
+
+		/*
+		 * 提交元数据之前写入失败：删除本次代数已发送的所有块，避免残留。
+		 */
+		private void discardChunks() {
+			if (layout != Layout.CHUNK_KEYS || index == 0) {
+				return;
+			}
+			final byte[][] written = new byte[index][];
+			for (int i = 0; i < written.length; i++) {
+				written[i] = chunkKey(key, generation, i);
+			}
+			try {
+				client.del(written);
+				client.getIntegerReply();
+			} catch (JedisException e) {
+				// 已经在处理另一个异常，忽略
+			}
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			if (pos > 0 || (index == 0 && layout == Layout.RANGE)) {
+				this.sendChunk();
+			}
+			while (inFlight > 0) {
+				this.readReply();
+			}
+			closed = true;
+			if (layout == Layout.CHUNK_KEYS) {
+				this.commitMeta();
+			}
+		}
+
+		/*
+		 * 所有块写完之后才替换元数据，再删除旧代数的所有块。
+		 */
+		private void commitMeta() {
+			final long[] old;
+			try {
+				client.getSet(key, formatMeta(length, chunkSize, generation));
+				old = parseMeta(client.getBinaryBulkReply());
+			} catch (JedisDataException e) {
+				// 元数据未被替换(如原键不是字符串)，新代数的块不会被引用
+				this.discardChunks();
+				throw e;
+			}
+			if (old == null || old[2] == generation) {
+				return;
+			}
+			final long oldCount = chunkCount(old[0], (int) old[1]);
+			if (oldCount == 0) {
+				return;
+			}
+			final byte[][] stale = new byte[(int) oldCount][];
+			for (int i = 0; i < stale.length; i++) {
+				stale[i] = chunkKey(key, old[2], i);
+			}
+			client.del(stale);
+			client.getIntegerReply();
+		}
+	}
+
+	/**
+	 * 分块读取的输入流，最多预取"窗口大小"个块。
+	 */
+	public final class ChunkInputStream extends InputStream {
+
+		private final byte[] key;
+		private final Client client;
+		/** 值的总长度 */
+		private final long length;
+		/** 写入时的块大小 */
+		private final int size;
+		/** 总块数 */
+		private final long count;
+		/** 写入代数(仅用于{@link Layout#CHUNK_KEYS}布局) */
+		private final long generation;
+
+		/** 已请求的块数 */
+		private long requested;
+		/** 已收到的块数 */
+		private long received;
+		/** 当前块 */
+		private byte[] chunk;
+		/** 当前块的读取位置 */
+		private int pos;
+		private boolean closed;
+
+		ChunkInputStream(byte[] key, Client client, long length, int size,
+				long generation) {
+			this.key = key;
+			this.client = client;
+			this.length = length;
+			this.size = size;
+			this.count = chunkCount(length, size);
+			this.generation = generation;
+		}
+
+		/**
+		 * 返回值的总长度。
+		 */
+		public long length() {
+			return length;
+		}
+
+		/*
+		 * 补满预取窗口。
+		 */
+		private void request() {
+			while (requested < count && requested - received < window) {
+				if (layout == Layout.CHUNK_KEYS) {
+					client.get(chunkKey(key, generation, (int) requested));
+				} else {
+					final long start = requested * size;
+					client.getrange(key, start,
+							Math.min(length, start + size) - 1);
+				}
+				requested++;
+			}
+		}
+
+		/*
+		 * 读取下一块；没有更多块时，返回false。
+		 */
+		private boolean nextChunk() {
+			if (closed || received == count) {
+				return false;
+			}
+			this.request();
+			try {
+				chunk = client.getBinaryBulkReply();
+				received++;
+			} catch (JedisDataException e) {
+				received++;
+				this.close();
+				throw e;
+			}
+			pos = 0;
+			if (chunk == null || chunk.length == 0) {
+				final long index = received - 1;
+				this.close();
+				throw new JedisDataException("Missing chunk " + index
+						+ " of key " + SafeEncoder.encode(key));
+			}
+			return true;
+		}
+
+		@Override
+		public int read() {
+			if ((chunk == null || pos == chunk.length) && !this.nextChunk()) {
+				return -1;
+			}
+			return chunk[pos++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if ((chunk == null || pos == chunk.length) && !this.nextChunk()) {
+				return -1;
+			}
+			final int n = Math.min(len, chunk.length - pos);
+			System.arraycopy(chunk, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return chunk == null ? 0 : chunk.length - pos;
+		}
+
+		/**
+		 * 关闭输入流，读掉已预取的响应，使链接可以继续执行其它命令。
+		 */
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			drain(client, (int) (requested - received));
+			received = requested;
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+package redis.clients.jedis;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * "熔断器"实现，用于一个分片节点的所有链接(见{@link JedisShardInfo#setCircuitBreaker(CircuitBreaker)})。
+ *
+ * <pre>
+ * 状态转换：
+ * 	CLOSED    -> OPEN      ：连续失败次数达到阈值；
+ * 	OPEN      -> HALF_OPEN ：退避时间到期，放行一个探测请求；
+ * 	HALF_OPEN -> CLOSED    ：探测成功，连续失败次数和退避时间被重置；
+ * 	HALF_OPEN -> OPEN      ：探测失败，退避时间加倍(不超过最大值)。
+ * 打开期间不再向故障节点建立新的链接，需要新链接的请求立即失败，不再等待连接超时；
+ * 已打开的链接照常使用(出错时被标记为损坏，由连接池销毁)，不会因熔断而中断进行中的管道，
+ * 它们的成功响应说明节点已恢复，同样关闭熔断器；
+ * 退避时间带有随机抖动，避免多个客户端同时探测。
+ * </pre>
+ *
+ * CLOSED 状态下的检查只有一次 volatile 读。线程安全。
+ */
+public class CircuitBreaker {
+
+	/** 默认的连续失败阈值 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	/** 默认的初始退避时间(毫秒) */
+	public static final long DEFAULT_INITIAL_BACKOFF = 100;
+	/** 默认的最大退避时间(毫秒) */
+	public static final long DEFAULT_MAX_BACKOFF = 30000;
+
+	/**
+	 * 熔断器状态。
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * 状态转换监听器。
+	 */
+	public interface Listener {
+
+		/**
+		 * 状态转换时被调用(在熔断器的锁内串行调用，应该尽快返回)。
+		 *
+		 * @param breaker
+		 *            熔断器
+		 * @param from
+		 *            原状态
+		 * @param to
+		 *            新状态
+		 */
+		void onStateChange(CircuitBreaker breaker, State from, State to);
+	}
+
+	private final String name;
+	private final int failureThreshold;
+	private final long initialBackoff;
+	private final long maxBackoff;
+	/** 抖动比例 */
+	private volatile double jitter = 0.2;
+	private volatile Listener listener;
+
+	private volatile State state = State.CLOSED;
+	/** 连续失败次数 */
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	/** 当前的退避时间(毫秒) */
+	private long backoff;
+	/** 下一次允许探测的时间(毫秒) */
+	private long nextAttempt;
+	private final Random random = new Random();
+
+	public CircuitBreaker(String name) {
+		this(name, DEFAULT_FAILURE_THRESHOLD, DEFAULT_INITIAL_BACKOFF,
+				DEFAULT_MAX_BACKOFF);
+	}
+
+	/**
+	 * 创建一个"熔断器"实例。
+	 *
+	 * @param name
+	 *            名称(通常为分片节点)
+	 * @param failureThreshold
+	 *            打开熔断器的连续失败次数
+	 * @param initialBackoff
+	 *            初始退避时间(毫秒)
+	 * @param maxBackoff
+	 *            最大退避时间(毫秒)
+	 */
+	public CircuitBreaker(String name, int failureThreshold,
+			long initialBackoff, long maxBackoff) {
+		if (failureThreshold < 1 || initialBackoff < 1
+				|| maxBackoff < initialBackoff) {
+			throw new IllegalArgumentException();
+		}
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.backoff = initialBackoff;
+	}
+
+	/**
+	 * 是否允许一个请求通过；打开期间返回false，退避到期时放行一个探测请求。
+	 */
+	public boolean allowRequest() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		synchronized (this) {
+			if (state == State.CLOSED) {
+				return true;
+			}
+			final long now = System.currentTimeMillis();
+			if (now < nextAttempt) {
+				return false;
+			}
+			// 放行一个探测请求；探测结果未知(如没有上报)时，下一个退避周期再放行一个
+			nextAttempt = now + backoff;
+			this.transition(State.HALF_OPEN);
+			return true;
+		}
+	}
+
+	/**
+	 * 检查是否允许请求通过，不允许时抛出异常。
+	 *
+	 * @throws JedisConnectionException
+	 *             熔断器已打开
+	 */
+	public void checkRequest() {
+		if (!this.allowRequest()) {
+			throw new JedisConnectionException("Circuit breaker is open: "
+					+ name);
+		}
+	}
+
+	/**
+	 * 记录一次成功。
+	 */
+	public void onSuccess() {
+		if (state == State.CLOSED && consecutiveFailures.get() == 0) {
+			return;
+		}
+		synchronized (this) {
+			consecutiveFailures.set(0);
+			backoff = initialBackoff;
+			this.transition(State.CLOSED);
+		}
+	}
+
+	/**
+	 * 记录一次链接失败。
+	 */
+	public void onFailure() {
+		final int failures = consecutiveFailures.incrementAndGet();
+		if (state == State.CLOSED && failures < failureThreshold) {
+			return;
+		}
+		synchronized (this) {
+			final State current = state;
+			if (current == State.OPEN) {
+				return;
+			}
+			if (current == State.HALF_OPEN) {
+				// 探测失败
+				backoff = Math.min(backoff * 2, maxBackoff);
+			} else if (consecutiveFailures.get() < failureThreshold) {
+				return;
+			}
+			nextAttempt = System.currentTimeMillis() + this.jittered(backoff);
+			this.transition(State.OPEN);
+		}
+	}
+
+	/*
+	 * 在[backoff * (1 - jitter), backoff * (1 + jitter)]内随机。
+	 */
+	private long jittered(long backoff) {
+		final double j = jitter;
+		if (j <= 0) {
+			return backoff;
+		}
+		return (long) (backoff * (1 - j + 2 * j * random.nextDouble()));
+	}
+
+	private void transition(State to) {
+		final State from = state;
+		if (from == to) {
+			return;
+		}
+		state = to;
+		final Listener l = listener;
+		if (l != null) {
+			l.onStateChange(this, from, to);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * 返回连续失败次数。
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures.get();
+	}
+
+	/**
+	 * 设置退避时间的抖动比例(0~1)，默认为0.2。
+	 *
+	 * @param jitter
+	 */
+	public void setJitter(double jitter) {
+		if (jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException("jitter: " + jitter);
+		}
+		this.jitter = jitter;
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker [" + name + ", " + state + "]";
+	}
+
+}
@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import redis.clients.jedis.JedisCluster.Reset;
+import redis.clients.jedis.Protocol.Command;
 import redis.clients.util.SafeEncoder;
 
 /**
@@ -26,8 +27,18 @@ public class Client extends BinaryClient implements Commands {
 		super(host, port);
 	}
 
+	/*
+	 * 将第一个参数与其余参数合并为一个参数列表。
+	 */
+	private String[] joinParameters(String first, String[] rest) {
+		final String[] result = new String[rest.length + 1];
+		result[0] = first;
+		System.arraycopy(rest, 0, result, 1, rest.length);
+		return result;
+	}
+
 	public void set(final String key, final String value) {
-		set(SafeEncoder.encode(key), SafeEncoder.encode(value));
+		sendCommand(Command.SET, key, value);
 	}
 
 	public void set(final String key, final String value, final String nxxx,
@@ -37,23 +48,19 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void get(final String key) {
-		get(SafeEncoder.encode(key));
+		sendCommand(Command.GET, key);
 	}
 
 	public void exists(final String key) {
-		exists(SafeEncoder.encode(key));
+		sendCommand(Command.EXISTS, key);
 	}
 
 	public void del(final String... keys) {
-		final byte[][] bkeys = new byte[keys.length][];
-		for (int i = 0; i < keys.length; i++) {
-			bkeys[i] = SafeEncoder.encode(keys[i]);
-		}
-		del(bkeys);
+		sendCommand(Command.DEL, keys);
 	}
 
 	public void type(final String key) {
-		type(SafeEncoder.encode(key));
+		sendCommand(Command.TYPE, key);
 	}
 
 	public void keys(final String pattern) {
@@ -77,7 +84,7 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void ttl(final String key) {
-		ttl(SafeEncoder.encode(key));
+		sendCommand(Command.TTL, key);
 	}
 
 	public void move(final String key, final int dbIndex) {
@@ -85,19 +92,15 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void getSet(final String key, final String value) {
-		getSet(SafeEncoder.encode(key), SafeEncoder.encode(value));
+		sendCommand(Command.GETSET, key, value);
 	}
 
 	public void mget(final String... keys) {
-		final byte[][] bkeys = new byte[keys.length][];
-		for (int i = 0; i < bkeys.length; i++) {
-			bkeys[i] = SafeEncoder.encode(keys[i]);
-		}
-		mget(bkeys);
+		sendCommand(Command.MGET, keys);
 	}
 
 	public void setnx(final String key, final String value) {
-		setnx(SafeEncoder.encode(key), SafeEncoder.encode(value));
+		sendCommand(Command.SETNX, key, value);
 	}
 
 	public void setex(final String key, final int seconds, final String value) {
@@ -125,7 +128,7 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void decr(final String key) {
-		decr(SafeEncoder.encode(key));
+		sendCommand(Command.DECR, key);
 	}
 
 	public void incrBy(final String key, final long integer) {
@@ -133,11 +136,11 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void incr(final String key) {
-		incr(SafeEncoder.encode(key));
+		sendCommand(Command.INCR, key);
 	}
 
 	public void append(final String key, final String value) {
-		append(SafeEncoder.encode(key), SafeEncoder.encode(value));
+		sendCommand(Command.APPEND, key, value);
 	}
 
 	public void substr(final String key, final int start, final int end) {
@@ -145,17 +148,15 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void hset(final String key, final String field, final String value) {
-		hset(SafeEncoder.encode(key), SafeEncoder.encode(field),
-				SafeEncoder.encode(value));
+		sendCommand(Command.HSET, key, field, value);
 	}
 
 	public void hget(final String key, final String field) {
-		hget(SafeEncoder.encode(key), SafeEncoder.encode(field));
+		sendCommand(Command.HGET, key, field);
 	}
 
 	public void hsetnx(final String key, final String field, final String value) {
-		hsetnx(SafeEncoder.encode(key), SafeEncoder.encode(field),
-				SafeEncoder.encode(value));
+		sendCommand(Command.HSETNX, key, field, value);
 	}
 
 	public void hmset(final String key, final Map<String, String> hash) {
@@ -169,11 +170,7 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void hmget(final String key, final String... fields) {
-		final byte[][] bfields = new byte[fields.length][];
-		for (int i = 0; i < bfields.length; i++) {
-			bfields[i] = SafeEncoder.encode(fields[i]);
-		}
-		hmget(SafeEncoder.encode(key), bfields);
+		sendCommand(Command.HMGET, joinParameters(key, fields));
 	}
 
 	public void hincrBy(final String key, final String field, final long value) {
@@ -181,39 +178,39 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void hexists(final String key, final String field) {
-		hexists(SafeEncoder.encode(key), SafeEncoder.encode(field));
+		sendCommand(Command.HEXISTS, key, field);
 	}
 
 	public void hdel(final String key, final String... fields) {
-		hdel(SafeEncoder.encode(key), SafeEncoder.encodeMany(fields));
+		sendCommand(Command.HDEL, joinParameters(key, fields));
 	}
 
 	public void hlen(final String key) {
-		hlen(SafeEncoder.encode(key));
+		sendCommand(Command.HLEN, key);
 	}
 
 	public void hkeys(final String key) {
-		hkeys(SafeEncoder.encode(key));
+		sendCommand(Command.HKEYS, key);
 	}
 
 	public void hvals(final String key) {
-		hvals(SafeEncoder.encode(key));
+		sendCommand(Command.HVALS, key);
 	}
 
 	public void hgetAll(final String key) {
-		hgetAll(SafeEncoder.encode(key));
+		sendCommand(Command.HGETALL, key);
 	}
 
 	public void rpush(final String key, final String... string) {
-		rpush(SafeEncoder.encode(key), SafeEncoder.encodeMany(string));
+		sendCommand(Command.RPUSH, joinParameters(key, string));
 	}
 
 	public void lpush(final String key, final String... string) {
-		lpush(SafeEncoder.encode(key), SafeEncoder.encodeMany(string));
+		sendCommand(Command.LPUSH, joinParameters(key, string));
 	}
 
 	public void llen(final String key) {
-		llen(SafeEncoder.encode(key));
+		sendCommand(Command.LLEN, key);
 	}
 
 	public void lrange(final String key, final long start, final long end) {
@@ -237,11 +234,11 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void lpop(final String key) {
-		lpop(SafeEncoder.encode(key));
+		sendCommand(Command.LPOP, key);
 	}
 
 	public void rpop(final String key) {
-		rpop(SafeEncoder.encode(key));
+		sendCommand(Command.RPOP, key);
 	}
 
 	public void rpoplpush(final String srckey, final String dstkey) {
@@ -249,19 +246,19 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void sadd(final String key, final String... members) {
-		sadd(SafeEncoder.encode(key), SafeEncoder.encodeMany(members));
+		sendCommand(Command.SADD, joinParameters(key, members));
 	}
 
 	public void smembers(final String key) {
-		smembers(SafeEncoder.encode(key));
+		sendCommand(Command.SMEMBERS, key);
 	}
 
 	public void srem(final String key, final String... members) {
-		srem(SafeEncoder.encode(key), SafeEncoder.encodeMany(members));
+		sendCommand(Command.SREM, joinParameters(key, members));
 	}
 
 	public void spop(final String key) {
-		spop(SafeEncoder.encode(key));
+		sendCommand(Command.SPOP, key);
 	}
 
 	public void smove(final String srckey, final String dstkey,
@@ -271,11 +268,11 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void scard(final String key) {
-		scard(SafeEncoder.encode(key));
+		sendCommand(Command.SCARD, key);
 	}
 
 	public void sismember(final String key, final String member) {
-		sismember(SafeEncoder.encode(key), SafeEncoder.encode(member));
+		sendCommand(Command.SISMEMBER, key, member);
 	}
 
 	public void sinter(final String... keys) {
@@ -327,7 +324,7 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void srandmember(final String key) {
-		srandmember(SafeEncoder.encode(key));
+		sendCommand(Command.SRANDMEMBER, key);
 	}
 
 	public void zadd(final String key, final double score, final String member) {
@@ -339,7 +336,7 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void zrem(final String key, final String... members) {
-		zrem(SafeEncoder.encode(key), SafeEncoder.encodeMany(members));
+		sendCommand(Command.ZREM, joinParameters(key, members));
 	}
 
 	public void zincrby(final String key, final double score,
@@ -348,11 +345,11 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void zrank(final String key, final String member) {
-		zrank(SafeEncoder.encode(key), SafeEncoder.encode(member));
+		sendCommand(Command.ZRANK, key, member);
 	}
 
 	public void zrevrank(final String key, final String member) {
-		zrevrank(SafeEncoder.encode(key), SafeEncoder.encode(member));
+		sendCommand(Command.ZREVRANK, key, member);
 	}
 
 	public void zrevrange(final String key, final long start, final long end) {
@@ -370,11 +367,11 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void zcard(final String key) {
-		zcard(SafeEncoder.encode(key));
+		sendCommand(Command.ZCARD, key);
 	}
 
 	public void zscore(final String key, final String member) {
-		zscore(SafeEncoder.encode(key), SafeEncoder.encode(member));
+		sendCommand(Command.ZSCORE, key, member);
 	}
 
 	public void watch(final String... keys) {
@@ -616,7 +613,7 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void strlen(final String key) {
-		strlen(SafeEncoder.encode(key));
+		sendCommand(Command.STRLEN, key);
 	}
 
 	public void lpushx(final String key, final String... string) {
@@ -624,7 +621,7 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void persist(final String key) {
-		persist(SafeEncoder.encode(key));
+		sendCommand(Command.PERSIST, key);
 	}
 
 	public void rpushx(final String key, final String... string) {
@@ -825,7 +822,7 @@ public class Client extends BinaryClient implements Commands {
 	}
 
 	public void pttl(final String key) {
-		pttl(SafeEncoder.encode(key));
+		sendCommand(Command.PTTL, key);
 	}
 
 	public void incrByFloat(final String key, final double increment) {
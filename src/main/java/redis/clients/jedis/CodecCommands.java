@@ -0,0 +1,143 @@
+package redis.clients.jedis;
+
+import java.io.IOException;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Codec;
+import redis.clients.util.ReusableByteArrayOutputStream;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * "类型化命令集"实现，通过{@link Codec}在对象与 Redis 值之间转换，包装一个{@link BinaryJedisCommands}。
+ * 
+ * <pre>
+ * 编码结果写入一个复用的缓冲区，再作为字节数组区间直接写入链接的输出缓冲区(不拷贝出精确长度的数组)；
+ * 解码直接读取响应的字节数组。
+ * </pre>
+ * 
+ * 与被包装的客户端一样，非线程安全。
+ */
+public class CodecCommands<T> {
+
+	/** 保留的最大编码缓冲区大小 */
+	private static final int MAX_RETAINED = 64 * 1024;
+
+	/** 被包装的命令集 */
+	private final BinaryJedisCommands commands;
+	/** 值编解码器 */
+	private final Codec<T> codec;
+	/** 编码缓冲区 */
+	private final ReusableByteArrayOutputStream buffer = new ReusableByteArrayOutputStream();
+
+	/**
+	 * 创建一个"类型化命令集"。
+	 * 
+	 * @param commands
+	 *            被包装的命令集，如{@link BinaryJedis}或{@link BinaryShardedJedis}
+	 * @param codec
+	 *            值编解码器
+	 */
+	public CodecCommands(BinaryJedisCommands commands, Codec<T> codec) {
+		this.commands = commands;
+		this.codec = codec;
+	}
+
+	public String set(String key, T value) {
+		return this.set(SafeEncoder.encode(key), value);
+	}
+
+	public String set(byte[] key, T value) {
+		this.encode(value);
+		if (commands instanceof BinaryJedis) {
+			return ((BinaryJedis) commands).set(key, buffer.getBuffer(), 0,
+					buffer.size());
+		}
+		if (commands instanceof BinaryShardedJedis) {
+			return ((BinaryShardedJedis) commands).set(key, buffer.getBuffer(),
+					0, buffer.size());
+		}
+		return commands.set(key, buffer.toByteArray());
+	}
+
+	public String setex(String key, int seconds, T value) {
+		return this.setex(SafeEncoder.encode(key), seconds, value);
+	}
+
+	public String setex(byte[] key, int seconds, T value) {
+		this.encode(value);
+		if (commands instanceof BinaryJedis) {
+			return ((BinaryJedis) commands).setex(key, seconds,
+					buffer.getBuffer(), 0, buffer.size());
+		}
+		if (commands instanceof BinaryShardedJedis) {
+			return ((BinaryShardedJedis) commands).setex(key, seconds,
+					buffer.getBuffer(), 0, buffer.size());
+		}
+		return commands.setex(key, seconds, buffer.toByteArray());
+	}
+
+	public T get(String key) {
+		return this.get(SafeEncoder.encode(key));
+	}
+
+	public T get(byte[] key) {
+		return this.decode(commands.get(key));
+	}
+
+	public Long hset(String key, String field, T value) {
+		return this.hset(SafeEncoder.encode(key), SafeEncoder.encode(field),
+				value);
+	}
+
+	public Long hset(byte[] key, byte[] field, T value) {
+		this.encode(value);
+		if (commands instanceof BinaryJedis) {
+			return ((BinaryJedis) commands).hset(key, field,
+					buffer.getBuffer(), 0, buffer.size());
+		}
+		if (commands instanceof BinaryShardedJedis) {
+			return ((BinaryShardedJedis) commands).hset(key, field,
+					buffer.getBuffer(), 0, buffer.size());
+		}
+		return commands.hset(key, field, buffer.toByteArray());
+	}
+
+	public T hget(String key, String field) {
+		return this.hget(SafeEncoder.encode(key), SafeEncoder.encode(field));
+	}
+
+	public T hget(byte[] key, byte[] field) {
+		return this.decode(commands.hget(key, field));
+	}
+
+	/**
+	 * 返回被包装的命令集，用于执行其它命令。
+	 */
+	public BinaryJedisCommands getCommands() {
+		return commands;
+	}
+
+	/*
+	 * 将值编码到复用的缓冲区中。
+	 */
+	private void encode(T value) {
+		buffer.reset(MAX_RETAINED);
+		try {
+			codec.encode(value, buffer);
+		} catch (IOException e) {
+			throw new JedisDataException("Failed to encode value", e);
+		}
+	}
+
+	private T decode(byte[] raw) {
+		if (raw == null) {
+			return null;
+		}
+		try {
+			return codec.decode(raw, 0, raw.length);
+		} catch (IOException e) {
+			throw new JedisDataException("Failed to decode value", e);
+		}
+	}
+
+}
@@ -2,15 +2,22 @@ package redis.clients.jedis;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.Protocol.Keyword;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Deadline;
 import redis.clients.util.RedisInputStream;
 import redis.clients.util.RedisOutputStream;
 import redis.clients.util.SafeEncoder;
@@ -33,8 +40,24 @@ public class Connection implements Closeable {
 	private RedisOutputStream outputStream;
 	/** 输入流 */
 	private RedisInputStream inputStream;
-	/** 套接字存活保持时间、连接超时时间、读取超时时间(ms) */
-	private int timeout = Protocol.DEFAULT_TIMEOUT;
+	/** 连接超时时间(ms) */
+	private int connectionTimeout = Protocol.DEFAULT_TIMEOUT;
+	/** 读取超时时间(ms) */
+	private int soTimeout = Protocol.DEFAULT_TIMEOUT;
+	/** 套接字当前实际设置的读取超时时间(ms)，只在变化时才重新设置 */
+	private int appliedSoTimeout;
+	/** 当前调用的截止时间(未设置时为null) */
+	private Deadline deadline;
+	/** 所属分片节点的熔断器(可以为null) */
+	private CircuitBreaker circuitBreaker;
+
+	/**
+	 * 使用"聚集写"直接发送大参数的最小长度(字节)，0 表示不启用。
+	 * <p>
+	 * 启用后，链接基于{@link SocketChannel}创建；这种套接字的读写共用一把阻塞锁，
+	 * 不适用于一个线程阻塞读、另一个线程写的场景(如"发布/订阅")。
+	 */
+	private int gatheringWriteThreshold = 0;
 
 	/** 套接字是否出现异常 */
 	private boolean broken = false;
@@ -85,13 +108,21 @@ public class Connection implements Closeable {
 	 * 分2个步骤：
 	 * 	1. 若当前的链接套接字还打开着，则直接返回；
 	 * 	2. 否则，创建一条新的套接字链接。
+	 * 需要创建新的链接而熔断器已打开时，立即抛出{@link JedisConnectionException}，链接不被标记为损坏；
+	 * 已打开的链接不受熔断器影响。
 	 * </pre>
 	 */
 	public void connect() {
 		if (!this.isConnected()) {
 			// 当前的链接套接字已被关闭，需要重新建立一条新的链接
+			if (circuitBreaker != null) {
+				circuitBreaker.checkRequest();
+			}
+			boolean bounded = false;
 			try {
-				socket = new Socket();
+				final SocketChannel channel = gatheringWriteThreshold > 0 ? SocketChannel
+						.open() : null;
+				socket = channel != null ? channel.socket() : new Socket();
 				socket.setReuseAddress(true);
 				// Will monitor the TCP connection is valid (使用长连接技术)
 				socket.setKeepAlive(true);
@@ -102,16 +133,36 @@ public class Connection implements Closeable {
 				socket.setSoLinger(true, 0);
 
 				// 创建一条新的连接到后端Redis服务器的链接
-				// TODO 连接超时与读取超时，使用同一个参数值不合理！
+				// 连接超时与读取超时分别设置，设置了截止时间时都不超过剩余时间
+				final int timeout = deadline != null ? deadline
+						.timeout(connectionTimeout) : connectionTimeout;
+				bounded = deadline != null
+						&& isBoundedByDeadline(timeout, connectionTimeout);
 				socket.connect(new InetSocketAddress(host, port), timeout);
-				socket.setSoTimeout(timeout);
+				appliedSoTimeout = deadline != null ? deadline
+						.timeout(soTimeout) : soTimeout;
+				socket.setSoTimeout(appliedSoTimeout);
 
-				outputStream = new RedisOutputStream(socket.getOutputStream());
+				outputStream = new RedisOutputStream(socket.getOutputStream(),
+						8192, channel, gatheringWriteThreshold);
 				inputStream = new RedisInputStream(socket.getInputStream());
 			} catch (IOException ex) {
 				// 创建新的套接字时，发生了异常
 				broken = true;
+				if (circuitBreaker != null
+						&& !(bounded && ex instanceof SocketTimeoutException)) {
+					circuitBreaker.onFailure();
+				}
 				throw new JedisConnectionException(ex);
+			} catch (JedisConnectionException ex) {
+				// 截止时间在建立链接的过程中到期：关闭未初始化完成的套接字
+				broken = true;
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// 忽略
+				}
+				throw ex;
 			}
 		}
 	}
@@ -154,11 +205,18 @@ public class Connection implements Closeable {
 	 * @return
 	 */
 	protected Connection sendCommand(Command cmd, String... args) {
-		final byte[][] bargs = new byte[args.length][];
-		for (int i = 0; i < args.length; i++) {
-			bargs[i] = SafeEncoder.encode(args[i]);
+		// 建立链接失败时已标记为损坏；熔断器拒绝建立链接时不标记
+		this.connect();
+		try {
+			this.applyDeadline();
+			// 文本参数直接编码到输出流的缓冲区中
+			Protocol.sendCommand(outputStream, cmd, args);
+			pipelinedCommands++;
+			return this;
+		} catch (JedisConnectionException ex) {
+			broken = true;
+			throw ex;
 		}
-		return this.sendCommand(cmd, bargs);
 	}
 
 	/**
@@ -178,8 +236,9 @@ public class Connection implements Closeable {
 	 * @return
 	 */
 	protected Connection sendCommand(Command cmd, byte[]... args) {
+		this.connect();
 		try {
-			this.connect();
+			this.applyDeadline();
 			Protocol.sendCommand(outputStream, cmd, args);
 			pipelinedCommands++;
 			return this;
@@ -191,6 +250,35 @@ public class Connection implements Closeable {
 		}
 	}
 
+	/**
+	 * 发送一条命令到Redis服务器端，最后一个参数是一个字节数组区间。
+	 * 
+	 * @param cmd
+	 *            Redis命令
+	 * @param args
+	 *            前面的参数列表
+	 * @param tail
+	 *            最后一个参数所在的字节数组
+	 * @param offset
+	 *            最后一个参数的起始位置
+	 * @param length
+	 *            最后一个参数的长度
+	 * @return
+	 */
+	protected Connection sendCommand(Command cmd, byte[][] args, byte[] tail,
+			int offset, int length) {
+		this.connect();
+		try {
+			this.applyDeadline();
+			Protocol.sendCommand(outputStream, cmd, args, tail, offset, length);
+			pipelinedCommands++;
+			return this;
+		} catch (JedisConnectionException ex) {
+			broken = true;
+			throw ex;
+		}
+	}
+
 	/** 空参数列表 */
 	private static final byte[][] EMPTY_ARGS = new byte[0][];
 
@@ -204,15 +292,81 @@ public class Connection implements Closeable {
 	 * 基于{@link Protocol#read(RedisInputStream)}实现
 	 */
 	protected Object readProtocolWithCheckingBroken() {
+		final boolean bounded = this.applyDeadline();
 		try {
-			return Protocol.read(inputStream);
+			final Object reply = Protocol.read(inputStream);
+			this.readSucceeded();
+			return reply;
 		} catch (JedisConnectionException exc) {
 			// "输入流"被关闭了
+			throw this.readFailed(exc, bounded);
+		}
+	}
+
+	/*
+	 * 读取响应成功：记入熔断器。所有读取方法共用。
+	 */
+	private void readSucceeded() {
+		if (circuitBreaker != null) {
+			circuitBreaker.onSuccess();
+		}
+	}
+
+	/*
+	 * 读取响应失败：标记链接损坏，并记入熔断器(截止时间缩短了超时时间而引起的超时除外)；返回原异常供调用方抛出。
+	 */
+	private JedisConnectionException readFailed(JedisConnectionException exc,
+			boolean bounded) {
+		broken = true;
+		if (circuitBreaker != null
+				&& !(bounded && exc.getCause() instanceof SocketTimeoutException)) {
+			circuitBreaker.onFailure();
+		}
+		return exc;
+	}
+
+	/**
+	 * 设置了截止时间时，把套接字的读取超时时间缩短为剩余时间。
+	 * <p>
+	 * 在发送命令和读取每个响应(包括专用的读取方法)之前调用；超时时间没有变化时不重新设置套接字。
+	 * 已过期时链接被标记为损坏(可能还有未读取的响应)。
+	 * 
+	 * @return 读取超时时间是否被截止时间缩短(此时的超时是调用方的截止时间到期，不记入熔断器)
+	 */
+	private boolean applyDeadline() {
+		if (deadline == null) {
+			return false;
+		}
+		try {
+			final int timeout = deadline.timeout(soTimeout);
+			this.applySoTimeout(timeout);
+			return isBoundedByDeadline(timeout, soTimeout);
+		} catch (SocketException ex) {
 			broken = true;
-			throw exc;
+			throw new JedisConnectionException(ex);
+		} catch (JedisConnectionException ex) {
+			broken = true;
+			throw ex;
 		}
 	}
 
+	/*
+	 * 设置套接字的读取超时时间；与当前值相同时省去一次系统调用。
+	 */
+	private void applySoTimeout(int timeout) throws SocketException {
+		if (timeout != appliedSoTimeout) {
+			socket.setSoTimeout(timeout);
+			appliedSoTimeout = timeout;
+		}
+	}
+
+	/*
+	 * 截止时间给出的超时时间是否比原超时时间(0表示不限制)更短。
+	 */
+	private static boolean isBoundedByDeadline(int timeout, int original) {
+		return original == 0 || timeout < original;
+	}
+
 	/**
 	 * 刷新输出流。
 	 */
@@ -314,6 +468,139 @@ public class Connection implements Closeable {
 		return (List<Long>) this.readProtocolWithCheckingBroken();
 	}
 
+	/**
+	 * 获取一条批量命令的"长整型数组"执行结果，不创建{@link Long}对象。
+	 */
+	public long[] getIntegerArrayReply() {
+		this.flush();
+		pipelinedCommands--;
+		final boolean bounded = this.applyDeadline();
+		try {
+			final long[] reply = Protocol.readIntegerArray(inputStream);
+			this.readSucceeded();
+			return reply;
+		} catch (JedisConnectionException exc) {
+			throw this.readFailed(exc, bounded);
+		}
+	}
+
+	/**
+	 * 获取一条命令的"成员-分值列表"执行结果(如 WITHSCORES)，不创建{@link Tuple}和{@link Double}对象。
+	 */
+	public ScoredMembers getScoredMembersReply() {
+		this.flush();
+		pipelinedCommands--;
+		final boolean bounded = this.applyDeadline();
+		try {
+			final ScoredMembers reply = Protocol.readScoredMembers(inputStream);
+			this.readSucceeded();
+			return reply;
+		} catch (JedisConnectionException exc) {
+			throw this.readFailed(exc, bounded);
+		}
+	}
+
+	/**
+	 * 获取"批量回复"执行结果，并将内容分块地写入给定的输出流。
+	 * 
+	 * @return 内容长度；若响应为空(nil)，则返回-1
+	 */
+	public long getBinaryBulkReply(OutputStream out) {
+		this.flush();
+		pipelinedCommands--;
+		final boolean bounded = this.applyDeadline();
+		try {
+			final long reply = Protocol.readBulkReply(inputStream, out);
+			this.readSucceeded();
+			return reply;
+		} catch (JedisConnectionException exc) {
+			throw this.readFailed(exc, bounded);
+		}
+	}
+
+	/**
+	 * 获取"批量回复"执行结果，并将内容分块地写入给定的通道。
+	 * 
+	 * @return 内容长度；若响应为空(nil)，则返回-1
+	 */
+	public long getBinaryBulkReply(WritableByteChannel channel) {
+		this.flush();
+		pipelinedCommands--;
+		final boolean bounded = this.applyDeadline();
+		try {
+			final long reply = Protocol.readBulkReply(inputStream, channel);
+			this.readSucceeded();
+			return reply;
+		} catch (JedisConnectionException exc) {
+			throw this.readFailed(exc, bounded);
+		}
+	}
+
+	/**
+	 * 获取"域-值"交替出现的命令执行结果，直接解码到映射表中。
+	 */
+	public <M extends Map<byte[], byte[]>> M getBinaryHashReply(M hash) {
+		this.flush();
+		pipelinedCommands--;
+		final boolean bounded = this.applyDeadline();
+		try {
+			final M reply = Protocol.readBinaryHash(inputStream, hash);
+			this.readSucceeded();
+			return reply;
+		} catch (JedisConnectionException exc) {
+			throw this.readFailed(exc, bounded);
+		}
+	}
+
+	/**
+	 * 获取与给定域一一对应的"值列表"命令执行结果，直接解码到映射表中。
+	 */
+	public <M extends Map<byte[], byte[]>> M getBinaryFieldValuesReply(
+			byte[][] fields, M hash) {
+		this.flush();
+		pipelinedCommands--;
+		final boolean bounded = this.applyDeadline();
+		try {
+			final M reply = Protocol.readBinaryFieldValues(inputStream, fields, hash);
+			this.readSucceeded();
+			return reply;
+		} catch (JedisConnectionException exc) {
+			throw this.readFailed(exc, bounded);
+		}
+	}
+
+	/**
+	 * 获取 HSCAN 命令执行结果，将本页的"域-值"对直接解码到映射表中。
+	 * 
+	 * @return 下一次迭代的游标
+	 */
+	public byte[] getScanIntoHashReply(Map<byte[], byte[]> hash) {
+		this.flush();
+		pipelinedCommands--;
+		final boolean bounded = this.applyDeadline();
+		try {
+			final byte[] reply = Protocol.readScanIntoHash(inputStream, hash);
+			this.readSucceeded();
+			return reply;
+		} catch (JedisConnectionException exc) {
+			throw this.readFailed(exc, bounded);
+		}
+	}
+
+	/**
+	 * 读取一条发布/订阅推送消息(不刷新输出流，可以在独立的读线程中调用)。
+	 * 
+	 * @see Protocol#readPushMessage(RedisInputStream, byte[][])
+	 */
+	public Keyword getPushMessage(byte[][] parts) {
+		try {
+			return Protocol.readPushMessage(inputStream, parts);
+		} catch (JedisConnectionException exc) {
+			broken = true;
+			throw exc;
+		}
+	}
+
 	/**
 	 * 获取所有命令的"对象列表"执行结果。
 	 */
@@ -382,12 +669,103 @@ public class Connection implements Closeable {
 		this.port = port;
 	}
 
+	/**
+	 * 返回读取超时时间。
+	 */
 	public int getTimeout() {
-		return timeout;
+		return soTimeout;
 	}
 
+	/**
+	 * 同时设置连接超时时间和读取超时时间。
+	 * 
+	 * @param timeout
+	 */
 	public void setTimeout(int timeout) {
-		this.timeout = timeout;
+		this.connectionTimeout = timeout;
+		this.soTimeout = timeout;
+	}
+
+	public int getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * 设置连接超时时间(ms)，下次建立链接时生效。
+	 * 
+	 * @param connectionTimeout
+	 */
+	public void setConnectionTimeout(int connectionTimeout) {
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	public int getSoTimeout() {
+		return soTimeout;
+	}
+
+	/**
+	 * 设置读取超时时间(ms)，下次建立链接时生效。
+	 * 
+	 * @param soTimeout
+	 */
+	public void setSoTimeout(int soTimeout) {
+		this.soTimeout = soTimeout;
+	}
+
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * 设置熔断器：建立链接失败和读取响应失败被记录为失败，熔断器打开时不再建立新的链接(命令立即失败)，
+	 * 已打开的链接照常使用。
+	 * 调用方的截止时间(见{@link #setDeadline(Deadline)})缩短了超时时间而引起的超时不记为失败。
+	 * 
+	 * @param circuitBreaker
+	 *            熔断器；null表示不使用
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * 设置之后所有命令的截止时间：建立链接、发送命令和读取响应的超时时间都不超过剩余时间，
+	 * 过期后命令抛出{@link JedisConnectionException}，链接被标记为损坏。
+	 * 
+	 * @param deadline
+	 *            截止时间；null表示清除，恢复读取超时时间(之前没有截止时间时不需要恢复)
+	 */
+	public void setDeadline(Deadline deadline) {
+		final Deadline previous = this.deadline;
+		this.deadline = deadline;
+		if (deadline == null && previous != null && this.isConnected()) {
+			try {
+				this.applySoTimeout(soTimeout);
+			} catch (SocketException ex) {
+				broken = true;
+				throw new JedisConnectionException(ex);
+			}
+		}
+	}
+
+	public int getGatheringWriteThreshold() {
+		return gatheringWriteThreshold;
+	}
+
+	/**
+	 * 设置使用"聚集写"直接发送大参数的最小长度(字节)，0 表示不启用；下次建立链接时生效。
+	 * 
+	 * @param gatheringWriteThreshold
+	 */
+	public void setGatheringWriteThreshold(int gatheringWriteThreshold) {
+		if (gatheringWriteThreshold < 0) {
+			throw new IllegalArgumentException("gatheringWriteThreshold < 0");
+		}
+		this.gatheringWriteThreshold = gatheringWriteThreshold;
 	}
 
 	/**
@@ -399,7 +777,7 @@ public class Connection implements Closeable {
 				this.connect();
 			}
 			socket.setKeepAlive(true);
-			socket.setSoTimeout(0); // 0：表示链接永不超时
+			this.applySoTimeout(0); // 0：表示链接永不超时
 		} catch (SocketException ex) {
 			broken = true;
 			throw new JedisConnectionException(ex);
@@ -408,7 +786,7 @@ public class Connection implements Closeable {
 
 	public void rollbackTimeout() {
 		try {
-			socket.setSoTimeout(timeout);
+			this.applySoTimeout(soTimeout);
 			socket.setKeepAlive(false);
 		} catch (SocketException ex) {
 			broken = true;
@@ -0,0 +1,576 @@
+package redis.clients.jedis;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * "计数器写后聚合器"实现，在本地合并 INCRBY/HINCRBY 的增量，并定期批量写入分片集群。
+ *
+ * <pre>
+ * 工作方式：
+ * 	1. 每个"键(和字段)"对应一个计数单元，单元内按线程分散到多个条带(stripe)上累加，
+ * 	   高并发下各线程基本不会竞争同一个缓存行；
+ * 	2. 后台线程按刷新间隔取走所有单元的增量，从连接池借出一个{@link ShardedJedis}，
+ * 	   先向所有分片节点通过管道发送合并后的 INCRBY/HINCRBY，再依次读取响应；
+ * 	   字符串键与{@link ShardedJedis#incrBy(String, long)}一样按键标签路由；
+ * 	3. "最大延迟"小于刷新间隔时，等待时间即将超过最大延迟的增量被提前刷新(见{@link #setMaxStaleness(long)})；
+ * 	4. 刷新因链接异常失败时，未确认的增量放回单元，在下次刷新时重试；
+ * 	   等待时间超过"最大重试时间"的增量不再重试，而是丢弃并通知监听器(见{@link #setMaxRetryAge(long)})。
+ * </pre>
+ *
+ * 以有界的延迟换取命令数的大幅减少：N次对同一个键的递增在一个刷新周期内只产生1条命令。
+ * <p>
+ * <font color="red">注意：</font>链接在发送之后、读取响应之前断开时，无法确定服务端是否已执行，
+ * 重试可能导致重复计数(至少一次)。计数单元创建后一直保留，适用于键数有限的场景。
+ */
+public class CounterAggregator implements Closeable {
+
+	/** 默认的刷新间隔(毫秒) */
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+	/** 默认的最大重试时间(毫秒) */
+	public static final long DEFAULT_MAX_RETRY_AGE = 60000;
+
+	/** 条带间隔(long个数)，使相邻条带落在不同的缓存行上 */
+	private static final int STRIPE_SPACING = 8;
+
+	/**
+	 * "刷新失败监听器"定义。
+	 */
+	public interface FailureListener {
+
+		/**
+		 * 刷新失败通知，在刷新线程中调用。
+		 *
+		 * @param cause
+		 *            失败原因
+		 * @param droppedDeltas
+		 *            因超过最大重试时间而丢弃的增量个数(0表示全部会重试)
+		 */
+		void onFlushFailure(Throwable cause, int droppedDeltas);
+	}
+
+	/** 分片集群连接池 */
+	private final Pool<ShardedJedis> pool;
+	/** 计数单元表 */
+	private final ConcurrentMap<CounterKey, Cell> cells = new ConcurrentHashMap<CounterKey, Cell>();
+	/** 每个单元的条带数(2的幂) */
+	private final int stripes;
+	/** 刷新间隔(毫秒) */
+	private final long flushInterval;
+	/** 最大延迟(毫秒) */
+	private volatile long maxStaleness;
+	/** 最大重试时间(毫秒) */
+	private volatile long maxRetryAge = DEFAULT_MAX_RETRY_AGE;
+	/** 刷新失败监听器 */
+	private volatile FailureListener failureListener;
+
+	/** 后台刷新线程 */
+	private final ScheduledExecutorService scheduler;
+	/** 后台刷新任务 */
+	private ScheduledFuture<?> ticker;
+	/** 后台刷新任务的执行间隔(毫秒) */
+	private volatile long tickInterval;
+	/** 上一次全部刷新的时间 */
+	private volatile long lastFlush = System.currentTimeMillis();
+	/** 串行化刷新(持锁期间借用资源并写入链接，虚拟线程在 ReentrantLock 上阻塞时不会钉住载体线程) */
+	private final Lock flushLock = new ReentrantLock();
+
+	/** 已发送的命令数 */
+	private final AtomicLong flushedCommands = new AtomicLong();
+	/** 服务端拒绝的增量个数(如类型错误) */
+	private final AtomicLong rejectedDeltas = new AtomicLong();
+	/** 因超过最大重试时间而丢弃的增量个数 */
+	private final AtomicLong droppedDeltas = new AtomicLong();
+
+	/**
+	 * 创建一个使用默认刷新间隔的"计数器写后聚合器"。
+	 *
+	 * @param pool
+	 *            分片集群连接池
+	 */
+	public CounterAggregator(Pool<ShardedJedis> pool) {
+		this(pool, DEFAULT_FLUSH_INTERVAL);
+	}
+
+	/**
+	 * 创建一个"计数器写后聚合器"，并启动后台刷新线程。
+	 *
+	 * @param pool
+	 *            分片集群连接池
+	 * @param flushInterval
+	 *            刷新间隔(毫秒)
+	 */
+	public CounterAggregator(Pool<ShardedJedis> pool, long flushInterval) {
+		this.pool = pool;
+		this.flushInterval = flushInterval;
+		this.maxStaleness = flushInterval;
+		int n = 1;
+		while (n < Runtime.getRuntime().availableProcessors() && n < 64) {
+			n <<= 1;
+		}
+		this.stripes = n;
+		this.scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "jedis-counter-aggregator");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.schedule();
+	}
+
+	/*
+	 * (重新)安排后台刷新任务：按刷新间隔全部刷新，最大延迟较小时更频繁地检查需要提前刷新的增量。
+	 */
+	private synchronized void schedule() {
+		if (ticker != null) {
+			ticker.cancel(false);
+		}
+		tickInterval = Math.max(1, maxStaleness < flushInterval ? Math.min(
+				flushInterval, maxStaleness / 2) : flushInterval);
+		ticker = scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					tick();
+				} catch (RuntimeException e) {
+					// 已通知监听器，保持后台线程继续运行
+				}
+			}
+		}, tickInterval, tickInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * 到达刷新间隔时全部刷新；否则只提前刷新等待时间即将超过最大延迟的增量。
+	 */
+	private void tick() {
+		final long now = System.currentTimeMillis();
+		if (now - lastFlush >= flushInterval - tickInterval / 2) {
+			this.flush();
+		} else if (maxStaleness < flushInterval) {
+			this.flush(now - maxStaleness + tickInterval);
+		}
+	}
+
+	/**
+	 * 设置最大延迟：增量从首次累加到被写入的最长等待时间，小于刷新间隔时，
+	 * 较早的增量会在下一次全部刷新之前被提前写入。默认等于刷新间隔。
+	 *
+	 * @param maxStaleness
+	 *            最大延迟(毫秒)
+	 */
+	public void setMaxStaleness(long maxStaleness) {
+		if (maxStaleness <= 0) {
+			throw new IllegalArgumentException("maxStaleness <= 0");
+		}
+		this.maxStaleness = maxStaleness;
+		if (!scheduler.isShutdown()) {
+			this.schedule();
+		}
+	}
+
+	public long getMaxStaleness() {
+		return maxStaleness;
+	}
+
+	/**
+	 * 设置最大重试时间：刷新失败时，等待时间超过该值的增量不再重试，而是被丢弃(计数会丢失)，
+	 * 见{@link #getDroppedDeltas()}和{@link FailureListener}。
+	 *
+	 * @param maxRetryAge
+	 *            最大重试时间(毫秒)
+	 */
+	public void setMaxRetryAge(long maxRetryAge) {
+		this.maxRetryAge = maxRetryAge;
+	}
+
+	public long getMaxRetryAge() {
+		return maxRetryAge;
+	}
+
+	public void setFailureListener(FailureListener failureListener) {
+		this.failureListener = failureListener;
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * 累加一个键的增量(INCRBY)。
+	 */
+	public void incrBy(String key, long delta) {
+		this.add(new CounterKey(key, null), delta);
+	}
+
+	public void incrBy(byte[] key, long delta) {
+		this.add(new CounterKey(key, null), delta);
+	}
+
+	/**
+	 * 累加一个哈希字段的增量(HINCRBY)。
+	 */
+	public void hincrBy(String key, String field, long delta) {
+		this.add(new CounterKey(key, SafeEncoder.encode(field)), delta);
+	}
+
+	public void hincrBy(byte[] key, byte[] field, long delta) {
+		this.add(new CounterKey(key, field), delta);
+	}
+
+	private void add(CounterKey key, long delta) {
+		if (delta == 0) {
+			return;
+		}
+		Cell cell = cells.get(key);
+		if (cell == null) {
+			final Cell created = new Cell(stripes);
+			cell = cells.putIfAbsent(key, created);
+			if (cell == null) {
+				cell = created;
+			}
+		}
+		cell.add(delta);
+	}
+
+	/**
+	 * 返回尚未刷新的增量之和(用于观察，非精确快照)。
+	 */
+	public long getPending(String key) {
+		final Cell cell = cells.get(new CounterKey(key, null));
+		return cell == null ? 0 : cell.sum();
+	}
+
+	public long getFlushedCommands() {
+		return flushedCommands.get();
+	}
+
+	public long getRejectedDeltas() {
+		return rejectedDeltas.get();
+	}
+
+	public long getDroppedDeltas() {
+		return droppedDeltas.get();
+	}
+
+	/**
+	 * 立即刷新所有增量。
+	 *
+	 * @return 发送的命令数
+	 * @throws JedisConnectionException
+	 *             链接异常(未确认的增量已放回，或因超过最大重试时间而丢弃)
+	 */
+	public int flush() {
+		lastFlush = System.currentTimeMillis();
+		return this.flush(Long.MAX_VALUE);
+	}
+
+	/*
+	 * 刷新最早累加时间不晚于给定时间的增量。
+	 */
+	private int flush(long dirtyBefore) {
+		flushLock.lock();
+		try {
+			final List<Delta> deltas = this.drain(dirtyBefore);
+			if (deltas.isEmpty()) {
+				return 0;
+			}
+
+			final ShardedJedis sharded;
+			try {
+				sharded = pool.getResource();
+			} catch (JedisConnectionException e) {
+				this.retry(deltas, e);
+				throw e;
+			}
+			boolean broken = false;
+			try {
+				this.write(sharded, deltas);
+				return deltas.size();
+			} catch (JedisConnectionException e) {
+				broken = true;
+				throw e;
+			} finally {
+				if (broken) {
+					pool.returnBrokenResource(sharded);
+				} else {
+					pool.returnResource(sharded);
+				}
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/*
+	 * 取走最早累加时间不晚于给定时间的所有非零增量(Long.MAX_VALUE 表示全部)。
+	 */
+	private List<Delta> drain(long dirtyBefore) {
+		final List<Delta> deltas = new ArrayList<Delta>();
+		final long now = System.currentTimeMillis();
+		for (Map.Entry<CounterKey, Cell> entry : cells.entrySet()) {
+			final Cell cell = entry.getValue();
+			final long since = cell.dirtySince;
+			if (dirtyBefore != Long.MAX_VALUE
+					&& (since == 0 || since > dirtyBefore)) {
+				continue;
+			}
+			final long delta = cell.drain();
+			if (delta != 0) {
+				deltas.add(new Delta(entry.getKey(), cell, delta,
+						since == 0 ? now : since));
+			}
+		}
+		return deltas;
+	}
+
+	/*
+	 * 按分片节点分组，先全部发送，再依次读取响应。
+	 */
+	private void write(ShardedJedis sharded, List<Delta> deltas) {
+		final Map<Client, List<Delta>> byShard = new IdentityHashMap<Client, List<Delta>>();
+		for (Delta delta : deltas) {
+			final Client client = delta.key.route(sharded).getClient();
+			List<Delta> batch = byShard.get(client);
+			if (batch == null) {
+				batch = new ArrayList<Delta>();
+				byShard.put(client, batch);
+			}
+			batch.add(delta);
+		}
+
+		final List<Delta> unconfirmed = new ArrayList<Delta>();
+		JedisConnectionException failure = null;
+		// 发送
+		final List<Client> sent = new ArrayList<Client>(byShard.size());
+		for (Map.Entry<Client, List<Delta>> entry : byShard.entrySet()) {
+			final Client client = entry.getKey();
+			try {
+				for (Delta delta : entry.getValue()) {
+					if (delta.key.field == null) {
+						client.incrBy(delta.key.key, delta.delta);
+					} else {
+						client.hincrBy(delta.key.key, delta.key.field,
+								delta.delta);
+					}
+				}
+				client.flush();
+				sent.add(client);
+			} catch (JedisConnectionException e) {
+				failure = e;
+				unconfirmed.addAll(entry.getValue());
+			}
+		}
+		// 读取响应
+		for (Client client : sent) {
+			final List<Delta> batch = byShard.get(client);
+			for (int i = 0; i < batch.size(); i++) {
+				try {
+					client.getIntegerReply();
+				} catch (JedisDataException e) {
+					rejectedDeltas.incrementAndGet();
+				} catch (JedisConnectionException e) {
+					failure = e;
+					unconfirmed.addAll(batch.subList(i, batch.size()));
+					break;
+				}
+			}
+		}
+		flushedCommands.addAndGet(deltas.size() - unconfirmed.size());
+
+		if (failure != null) {
+			this.retry(unconfirmed, failure);
+			throw failure;
+		}
+	}
+
+	/*
+	 * 把未确认的增量放回单元；超过最大重试时间的丢弃。
+	 */
+	private void retry(List<Delta> deltas, Throwable cause) {
+		final long now = System.currentTimeMillis();
+		int dropped = 0;
+		for (Delta delta : deltas) {
+			if (now - delta.since > maxRetryAge) {
+				dropped++;
+			} else {
+				delta.cell.restore(delta.delta, delta.since);
+			}
+		}
+		droppedDeltas.addAndGet(dropped);
+		final FailureListener listener = failureListener;
+		if (listener != null) {
+			listener.onFlushFailure(cause, dropped);
+		}
+	}
+
+	/**
+	 * 停止后台刷新，并做最后一次刷新。
+	 */
+	@Override
+	public void close() {
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(flushInterval * 2,
+					TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.flush();
+	}
+
+	/**
+	 * 计数单元的标识：键，以及哈希字段(INCRBY 为null)。
+	 * <p>
+	 * 字符串键保留原字符串，按键标签路由；与同内容的二进制键是不同的单元，
+	 * 因为两者在{@link ShardedJedis}中可能被路由到不同的分片节点。
+	 */
+	static final class CounterKey {
+
+		final byte[] key;
+		final byte[] field;
+		/** 原字符串键(二进制键为null) */
+		private final String text;
+		private final int hash;
+
+		CounterKey(byte[] key, byte[] field) {
+			this(key, field, null);
+		}
+
+		CounterKey(String key, byte[] field) {
+			this(SafeEncoder.encode(key), field, key);
+		}
+
+		private CounterKey(byte[] key, byte[] field, String text) {
+			this.key = key;
+			this.field = field;
+			this.text = text;
+			this.hash = 31 * (31 * Arrays.hashCode(key) + Arrays.hashCode(field))
+					+ (text != null ? 1 : 0);
+		}
+
+		/*
+		 * 返回该键所在的分片节点的客户端。
+		 */
+		Jedis route(ShardedJedis sharded) {
+			return text != null ? sharded.getShard(text) : sharded
+					.getShard(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof CounterKey)) {
+				return false;
+			}
+			final CounterKey other = (CounterKey) o;
+			return hash == other.hash && (text == null) == (other.text == null)
+					&& Arrays.equals(key, other.key)
+					&& Arrays.equals(field, other.field);
+		}
+	}
+
+	/**
+	 * 计数单元：按线程分散累加的条带数组。
+	 */
+	static final class Cell {
+
+		private final AtomicLongArray values;
+		private final int mask;
+		/** 最早的未刷新增量的时间(0表示没有) */
+		volatile long dirtySince;
+
+		Cell(int stripes) {
+			this.values = new AtomicLongArray(stripes * STRIPE_SPACING);
+			this.mask = stripes - 1;
+		}
+
+		void add(long delta) {
+			final int stripe = (int) (Thread.currentThread().getId() & mask);
+			values.addAndGet(stripe * STRIPE_SPACING, delta);
+			if (dirtySince == 0) {
+				dirtySince = System.currentTimeMillis();
+			}
+		}
+
+		long sum() {
+			long sum = 0;
+			for (int i = 0; i < values.length(); i += STRIPE_SPACING) {
+				sum += values.get(i);
+			}
+			return sum;
+		}
+
+		/*
+		 * 取走所有条带的值。
+		 */
+		long drain() {
+			dirtySince = 0;
+			long sum = 0;
+			for (int i = 0; i < values.length(); i += STRIPE_SPACING) {
+				sum += values.getAndSet(i, 0);
+			}
+			return sum;
+		}
+
+		/*
+		 * 放回一个未确认的增量，保留其最早时间。
+		 */
+		void restore(long delta, long since) {
+			values.addAndGet(0, delta);
+			final long current = dirtySince;
+			if (current == 0 || since < current) {
+				dirtySince = since;
+			}
+		}
+	}
+
+	/**
+	 * 一次刷新中的一个增量。
+	 */
+	static final class Delta {
+
+		final CounterKey key;
+		final Cell cell;
+		final long delta;
+		/** 该增量中最早部分的时间 */
+		final long since;
+
+		Delta(CounterKey key, Cell cell, long delta, long since) {
+			this.key = key;
+			this.cell = cell;
+			this.delta = delta;
+			this.since = since;
+		}
+	}
+
+}
@@ -0,0 +1,437 @@
+package redis.clients.jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Hashing;
+import redis.clients.util.Sharded;
+
+/**
+ * "对冲读"实现：只读命令在分片节点的主节点和副本(见{@link JedisShardInfo#addReplica(JedisShardInfo)})之间对冲，
+ * 降低个别节点变慢(BGSAVE 的 fork、宿主机 GC 等)造成的尾部延迟。
+ *
+ * <pre>
+ * 一次读取的过程：
+ * 	1. 按键定位分片节点(与{@link ShardedJedis}的分片规则一致)，向该分片节点的主节点发送命令，
+ * 	   保证能读到自己的写入；
+ * 	2. 在"对冲延迟"内没有返回时，向该分片节点的一个副本(轮流选择)发送同样的命令，先返回者胜出；
+ * 	   主节点的链接失败时立即发送，不等待对冲延迟；命令错误(如类型错误)直接抛出；
+ * 	3. 落败的请求在后台读完响应后把链接正常返回给连接池(排空)，不会中断链接。
+ * 对冲延迟为该分片节点最近成功请求耗时的百分位数(默认 P95)，即大约5%的请求会被对冲。
+ * 请求在有上限的线程池中执行，线程用尽时排队，不会在调用线程中执行；
+ * 有请求在排队时(执行器饱和)只在链接失败时才对冲，超时不对冲，避免对冲请求进一步增加负载。
+ * </pre>
+ *
+ * 可以接受读到旧数据时，可以让第一个请求也轮流发送到主节点和副本(见{@link #setReplicaFirst(boolean)})。
+ *
+ * 只能用于只读命令；每个端点使用独立的{@link JedisPool}。线程安全。
+ */
+public class HedgedReads {
+
+	/** 默认的对冲延迟百分位 */
+	public static final double DEFAULT_PERCENTILE = 0.95;
+	/** 统计耗时的样本数 */
+	private static final int SAMPLES = 1024;
+	/** 每隔多少个样本重新计算一次百分位数 */
+	private static final int RECOMPUTE_INTERVAL = 64;
+
+	/**
+	 * 一个只读命令。
+	 *
+	 * @param <T>
+	 *            响应类型
+	 */
+	public interface ReadCommand<T> {
+
+		/**
+		 * 在给定的端点上执行命令；可能在多个端点上各执行一次。
+		 */
+		T execute(Jedis jedis);
+	}
+
+	/** 分片规则(只用于定位分片节点，不创建资源) */
+	private final Sharded<Jedis, JedisShardInfo> sharded;
+	/** 分片节点的状态 */
+	private final Map<JedisShardInfo, ShardEndpoints> endpoints = new LinkedHashMap<JedisShardInfo, ShardEndpoints>();
+	private final ThreadPoolExecutor executor;
+
+	/** 第一个请求是否也轮流发送到副本 */
+	private volatile boolean replicaFirst;
+	private volatile double percentile = DEFAULT_PERCENTILE;
+	/** 对冲延迟的下限(纳秒) */
+	private volatile long minDelayNanos = TimeUnit.MICROSECONDS.toNanos(500);
+	/** 样本不足时使用的对冲延迟(纳秒) */
+	private volatile long initialDelayNanos = TimeUnit.MILLISECONDS
+			.toNanos(10);
+
+	/** 被对冲的请求数 */
+	private final AtomicLong hedged = new AtomicLong();
+	/** 对冲请求胜出的次数 */
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	public HedgedReads(List<JedisShardInfo> shards) {
+		this(shards, Hashing.MURMUR_HASH, null, new GenericObjectPoolConfig());
+	}
+
+	/**
+	 * 创建一个"对冲读"实例。
+	 *
+	 * @param shards
+	 *            分片节点列表(与{@link ShardedJedis}使用的相同)
+	 * @param algo
+	 *            哈希算法
+	 * @param keyTagPattern
+	 *            键标记模式
+	 * @param poolConfig
+	 *            每个端点的连接池配置
+	 */
+	public HedgedReads(List<JedisShardInfo> shards, Hashing algo,
+			Pattern keyTagPattern, GenericObjectPoolConfig poolConfig) {
+		this.sharded = new Sharded<Jedis, JedisShardInfo>(shards, algo,
+				keyTagPattern);
+		int total = 0;
+		for (JedisShardInfo shard : shards) {
+			if (!endpoints.containsKey(shard)) {
+				final ShardEndpoints e = new ShardEndpoints(shard, poolConfig);
+				endpoints.put(shard, e);
+				total += e.pools.length;
+			}
+		}
+		// 线程数有上限，线程用尽时排队，空闲线程60秒后退出
+		final int threads = Math.max(4, total * 4);
+		this.executor = new ThreadPoolExecutor(threads, threads, 60L,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "jedis-hedged-read");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	public String get(final String key) {
+		return this.read(key, new ReadCommand<String>() {
+			@Override
+			public String execute(Jedis jedis) {
+				return jedis.get(key);
+			}
+		});
+	}
+
+	public byte[] get(final byte[] key) {
+		return this.read(key, new ReadCommand<byte[]>() {
+			@Override
+			public byte[] execute(Jedis jedis) {
+				return jedis.get(key);
+			}
+		});
+	}
+
+	public String hget(final String key, final String field) {
+		return this.read(key, new ReadCommand<String>() {
+			@Override
+			public String execute(Jedis jedis) {
+				return jedis.hget(key, field);
+			}
+		});
+	}
+
+	public Map<String, String> hgetAll(final String key) {
+		return this.read(key, new ReadCommand<Map<String, String>>() {
+			@Override
+			public Map<String, String> execute(Jedis jedis) {
+				return jedis.hgetAll(key);
+			}
+		});
+	}
+
+	/**
+	 * 对给定键所在的分片节点执行一个只读命令。
+	 *
+	 * @param key
+	 *            用于定位分片节点的键
+	 * @param command
+	 *            只读命令
+	 * @return
+	 */
+	public <T> T read(String key, ReadCommand<T> command) {
+		return this.read(endpoints.get(sharded.getShardInfo(key)), command);
+	}
+
+	/**
+	 * 对给定键所在的分片节点执行一个只读命令。
+	 */
+	public <T> T read(byte[] key, ReadCommand<T> command) {
+		return this.read(endpoints.get(sharded.getShardInfo(key)), command);
+	}
+
+	private <T> T read(ShardEndpoints shard, ReadCommand<T> command) {
+		final int n = shard.pools.length;
+		final int first = replicaFirst ? shard.next(0) : 0;
+		final BlockingQueue<Attempt<T>> outcomes = new ArrayBlockingQueue<Attempt<T>>(
+				2);
+		final Attempt<T> primary = new Attempt<T>(shard, first, command,
+				outcomes);
+		if (n == 1) {
+			// 没有副本，直接在调用线程执行
+			primary.run();
+			return this.result(outcomes.poll());
+		}
+		executor.execute(primary);
+
+		Attempt<T> outcome;
+		try {
+			outcome = outcomes.poll(shard.hedgeDelayNanos(),
+					TimeUnit.NANOSECONDS);
+			if (outcome == null && !executor.getQueue().isEmpty()) {
+				// 执行器饱和：对冲请求只会排队并增加负载，继续等待原请求
+				outcome = outcomes.take();
+			}
+			if (outcome != null && !outcome.isConnectionFailure()) {
+				return this.result(outcome);
+			}
+			// 超时或者链接失败：向另一个端点发送同样的命令
+			hedged.incrementAndGet();
+			final Attempt<T> hedge = new Attempt<T>(shard,
+					first == 0 ? shard.next(1) : (first + 1) % n, command,
+					outcomes);
+			hedge.hedge = true;
+			executor.execute(hedge);
+
+			Attempt<T> failure = outcome;
+			final int pending = outcome == null ? 2 : 1;
+			for (int i = 0; i < pending; i++) {
+				outcome = outcomes.take();
+				if (!outcome.isConnectionFailure()) {
+					if (outcome.hedge && outcome.error == null) {
+						hedgeWins.incrementAndGet();
+					}
+					return this.result(outcome);
+				}
+				if (failure == null) {
+					failure = outcome;
+				}
+			}
+			return this.result(failure);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JedisException(e);
+		}
+	}
+
+	private <T> T result(Attempt<T> attempt) {
+		if (attempt.error != null) {
+			throw attempt.error;
+		}
+		return attempt.value;
+	}
+
+	/**
+	 * 设置第一个请求是否也轮流发送到主节点和副本，默认为false(只发送到主节点，副本只用于对冲)。
+	 * <p>
+	 * 开启后负载分摊到副本上，但可能读不到自己刚刚写入的数据(副本复制有延迟)。
+	 */
+	public void setReplicaFirst(boolean replicaFirst) {
+		this.replicaFirst = replicaFirst;
+	}
+
+	public boolean isReplicaFirst() {
+		return replicaFirst;
+	}
+
+	/**
+	 * 设置对冲延迟的百分位(0~1)，默认为0.95。
+	 */
+	public void setPercentile(double percentile) {
+		if (percentile <= 0 || percentile > 1) {
+			throw new IllegalArgumentException("percentile: " + percentile);
+		}
+		this.percentile = percentile;
+	}
+
+	/**
+	 * 设置对冲延迟的下限，默认为500微秒。
+	 */
+	public void setMinDelay(long delay, TimeUnit unit) {
+		this.minDelayNanos = unit.toNanos(delay);
+	}
+
+	/**
+	 * 设置样本不足时使用的对冲延迟，默认为10毫秒。
+	 */
+	public void setInitialDelay(long delay, TimeUnit unit) {
+		this.initialDelayNanos = unit.toNanos(delay);
+	}
+
+	/**
+	 * 返回被对冲的请求数。
+	 */
+	public long getHedgedCount() {
+		return hedged.get();
+	}
+
+	/**
+	 * 返回对冲请求先于原请求返回的次数。
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWins.get();
+	}
+
+	/**
+	 * 返回给定键所在分片节点当前的对冲延迟(微秒)。
+	 */
+	public long getHedgeDelayMicros(String key) {
+		return TimeUnit.NANOSECONDS.toMicros(endpoints.get(
+				sharded.getShardInfo(key)).hedgeDelayNanos());
+	}
+
+	/**
+	 * 关闭所有端点的连接池；正在排空的请求结束后链接被销毁。
+	 */
+	public void close() {
+		executor.shutdown();
+		for (ShardEndpoints shard : endpoints.values()) {
+			for (JedisPool pool : shard.pools) {
+				pool.close();
+			}
+		}
+	}
+
+	/**
+	 * 一个分片节点的所有端点(主节点和副本)及其耗时统计。
+	 */
+	private final class ShardEndpoints {
+
+		final JedisPool[] pools;
+		private final AtomicInteger roundRobin = new AtomicInteger();
+
+		/** 最近成功请求的耗时(纳秒)，环形缓冲区 */
+		private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+		private final AtomicInteger sampleCount = new AtomicInteger();
+		/** 缓存的百分位数(纳秒)，样本不足时为-1 */
+		private volatile long cachedPercentile = -1;
+
+		ShardEndpoints(JedisShardInfo shard, GenericObjectPoolConfig poolConfig) {
+			final List<JedisShardInfo> all = new ArrayList<JedisShardInfo>();
+			all.add(shard);
+			all.addAll(shard.getReplicas());
+			pools = new JedisPool[all.size()];
+			for (int i = 0; i < pools.length; i++) {
+				final JedisShardInfo info = all.get(i);
+				pools[i] = new JedisPool(poolConfig, info.getHost(),
+						info.getPort(), info.getConnectionTimeout(),
+						info.getSoTimeout(), info.getPassword(),
+						Protocol.DEFAULT_DATABASE, null);
+			}
+		}
+
+		/*
+		 * 在下标不小于from的端点中轮流选择一个。
+		 */
+		int next(int from) {
+			return from + (roundRobin.getAndIncrement() & Integer.MAX_VALUE)
+					% (pools.length - from);
+		}
+
+		long hedgeDelayNanos() {
+			final long p = cachedPercentile;
+			if (p < 0) {
+				return initialDelayNanos;
+			}
+			return Math.max(p, minDelayNanos);
+		}
+
+		void record(long nanos) {
+			final int count = sampleCount.getAndIncrement() & Integer.MAX_VALUE;
+			samples.lazySet(count & (SAMPLES - 1), nanos);
+			if ((count + 1) % RECOMPUTE_INTERVAL == 0
+					&& count + 1 >= RECOMPUTE_INTERVAL) {
+				this.recompute(Math.min(count + 1, SAMPLES));
+			}
+		}
+
+		/*
+		 * 复制样本并排序，由跨过统计间隔的线程执行，代价被分摊到多个请求上。
+		 */
+		private void recompute(int size) {
+			final long[] copy = new long[size];
+			for (int i = 0; i < size; i++) {
+				copy[i] = samples.get(i);
+			}
+			Arrays.sort(copy);
+			final int index = Math.min(size - 1,
+					(int) Math.ceil(percentile * size) - 1);
+			cachedPercentile = copy[Math.max(0, index)];
+		}
+	}
+
+	/**
+	 * 在一个端点上的一次执行，结果放入调用方的队列；调用方已经返回时结果被丢弃(排空)。
+	 */
+	private static final class Attempt<T> implements Runnable {
+
+		private final ShardEndpoints shard;
+		private final int endpoint;
+		private final ReadCommand<T> command;
+		private final BlockingQueue<Attempt<T>> outcomes;
+		boolean hedge;
+
+		T value;
+		JedisException error;
+
+		Attempt(ShardEndpoints shard, int endpoint, ReadCommand<T> command,
+				BlockingQueue<Attempt<T>> outcomes) {
+			this.shard = shard;
+			this.endpoint = endpoint;
+			this.command = command;
+			this.outcomes = outcomes;
+		}
+
+		/** 是否链接失败(需要换一个端点)；成功和命令错误都不需要对冲 */
+		boolean isConnectionFailure() {
+			return error instanceof JedisConnectionException;
+		}
+
+		@Override
+		public void run() {
+			final long start = System.nanoTime();
+			Jedis jedis = null;
+			try {
+				jedis = shard.pools[endpoint].getResource();
+				value = command.execute(jedis);
+				shard.record(System.nanoTime() - start);
+			} catch (JedisException e) {
+				error = e;
+			} catch (RuntimeException e) {
+				error = new JedisException(e);
+			} finally {
+				if (jedis != null) {
+					// 读完了响应，链接正常时返回给连接池，损坏时被销毁
+					jedis.close();
+				}
+			}
+			outcomes.offer(this);
+		}
+	}
+
+}
@@ -1,6 +1,8 @@
 package redis.clients.jedis;
 
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -41,6 +43,11 @@ public class Jedis extends BinaryJedis implements JedisCommands,
 		super(host, port, timeout);
 	}
 
+	public Jedis(final String host, final int port,
+			final int connectionTimeout, final int soTimeout) {
+		super(host, port, connectionTimeout, soTimeout);
+	}
+
 	/**
 	 * 创建一个给定的"Jedis节点分片信息"的"Jedis客户端"实例。
 	 * 
@@ -140,6 +147,38 @@ public class Jedis extends BinaryJedis implements JedisCommands,
 		return client.getBulkReply();
 	}
 
+	/**
+	 * Get the value of the specified key and stream it to the given output
+	 * stream in chunks.
+	 * 
+	 * @param key
+	 * @param out
+	 * @return the length of the value, or null if the key does not exist
+	 * @see BinaryJedis#get(byte[], OutputStream)
+	 */
+	public Long get(final String key, final OutputStream out) {
+		checkIsInMulti();
+		client.get(key);
+		final long len = client.getBinaryBulkReply(out);
+		return len == -1 ? null : Long.valueOf(len);
+	}
+
+	/**
+	 * Get the value of the specified key and stream it to the given channel
+	 * in chunks.
+	 * 
+	 * @param key
+	 * @param channel
+	 * @return the length of the value, or null if the key does not exist
+	 * @see BinaryJedis#get(byte[], OutputStream)
+	 */
+	public Long get(final String key, final WritableByteChannel channel) {
+		checkIsInMulti();
+		client.get(key);
+		final long len = client.getBinaryBulkReply(channel);
+		return len == -1 ? null : Long.valueOf(len);
+	}
+
 	/**
 	 * Test if the specified key exists. The command returns "1" if the key
 	 * exists, otherwise "0" is returned. Note that even keys set with an empty
@@ -2362,6 +2401,50 @@ public class Jedis extends BinaryJedis implements JedisCommands,
 		return set;
 	}
 
+	/**
+	 * 与{@link #zrangeWithScores(String, long, long)}相同，但直接解码为平行的成员数组和分值数组。
+	 */
+	public ScoredMembers zrangeWithScoresArray(final String key,
+			final long start, final long end) {
+		checkIsInMulti();
+		client.zrangeWithScores(key, start, end);
+		return client.getScoredMembersReply();
+	}
+
+	/**
+	 * 与{@link #zrevrangeWithScores(String, long, long)}相同，但直接解码为平行的成员数组和分值数组。
+	 */
+	public ScoredMembers zrevrangeWithScoresArray(final String key,
+			final long start, final long end) {
+		checkIsInMulti();
+		client.zrevrangeWithScores(key, start, end);
+		return client.getScoredMembersReply();
+	}
+
+	/**
+	 * 与{@link #zrangeByScoreWithScores(String, double, double, int, int)}相同，
+	 * 但直接解码为平行的成员数组和分值数组。
+	 */
+	public ScoredMembers zrangeByScoreWithScoresArray(final String key,
+			final double min, final double max, final int offset,
+			final int count) {
+		checkIsInMulti();
+		client.zrangeByScoreWithScores(key, min, max, offset, count);
+		return client.getScoredMembersReply();
+	}
+
+	/**
+	 * 与{@link #zrevrangeByScoreWithScores(String, double, double, int, int)}相同，
+	 * 但直接解码为平行的成员数组和分值数组。
+	 */
+	public ScoredMembers zrevrangeByScoreWithScoresArray(final String key,
+			final double max, final double min, final int offset,
+			final int count) {
+		checkIsInMulti();
+		client.zrevrangeByScoreWithScores(key, max, min, offset, count);
+		return client.getScoredMembersReply();
+	}
+
 	private Set<Tuple> getTupledSet() {
 		checkIsInMulti();
 		List<String> membersWithScores = client.getMultiBulkReply();
@@ -2988,6 +3071,14 @@ public class Jedis extends BinaryJedis implements JedisCommands,
 		return exists;
 	}
 
+	/**
+	 * 与{@link #scriptExists(String...)}相同，但直接解码为长整型数组(1表示存在，0表示不存在)。
+	 */
+	public long[] scriptExistsArray(String... sha1) {
+		client.scriptExists(sha1);
+		return client.getIntegerArrayReply();
+	}
+
 	public String scriptLoad(String script) {
 		client.scriptLoad(script);
 		return client.getBulkReply();
@@ -3466,6 +3557,41 @@ public class Jedis extends BinaryJedis implements JedisCommands,
 		return new ScanResult<Tuple>(newcursor, results);
 	}
 
+	/**
+	 * 返回一个遍历整个数据库键空间的"游标迭代器"，在处理当前页时预取下一页。
+	 * 
+	 * @param params
+	 *            游标参数
+	 * @return
+	 * @see ScanIterator
+	 */
+	public ScanIterator<String> scanIterator(final ScanParams params) {
+		checkIsInMulti();
+		return new ScanIterator.StringScanIterator(client,
+				Protocol.Command.SCAN, null, params);
+	}
+
+	public ScanIterator<Map.Entry<String, String>> hscanIterator(
+			final String key, final ScanParams params) {
+		checkIsInMulti();
+		return new ScanIterator.EntryScanIterator(client,
+				SafeEncoder.encode(key), params);
+	}
+
+	public ScanIterator<String> sscanIterator(final String key,
+			final ScanParams params) {
+		checkIsInMulti();
+		return new ScanIterator.StringScanIterator(client,
+				Protocol.Command.SSCAN, SafeEncoder.encode(key), params);
+	}
+
+	public ScanIterator<Tuple> zscanIterator(final String key,
+			final ScanParams params) {
+		checkIsInMulti();
+		return new ScanIterator.TupleScanIterator(client,
+				SafeEncoder.encode(key), params, true);
+	}
+
 	public String clusterNodes() {
 		checkIsInMulti();
 		client.clusterNodes();
@@ -11,7 +11,8 @@ import org.apache.commons.pool2.impl.DefaultPooledObject;
  */
 class JedisFactory implements PooledObjectFactory<Jedis> {
     private final AtomicReference<HostAndPort> hostAndPort = new AtomicReference<HostAndPort>();
-    private final int timeout;
+    private final int connectionTimeout;
+    private final int soTimeout;
     private final String password;
     private final int database;
     private final String clientName;
@@ -23,9 +24,16 @@ class JedisFactory implements PooledObjectFactory<Jedis> {
 
     public JedisFactory(final String host, final int port, final int timeout,
 	    final String password, final int database, final String clientName) {
+	this(host, port, timeout, timeout, password, database, clientName);
+    }
+
+    public JedisFactory(final String host, final int port,
+	    final int connectionTimeout, final int soTimeout,
+	    final String password, final int database, final String clientName) {
 	super();
 	this.hostAndPort.set(new HostAndPort(host, port));
-	this.timeout = timeout;
+	this.connectionTimeout = connectionTimeout;
+	this.soTimeout = soTimeout;
 	this.password = password;
 	this.database = database;
 	this.clientName = clientName;
@@ -65,7 +73,8 @@ class JedisFactory implements PooledObjectFactory<Jedis> {
     @Override
     public PooledObject<Jedis> makeObject() throws Exception {
     final HostAndPort hostAndPort = this.hostAndPort.get();
-	final Jedis jedis = new Jedis(hostAndPort.getHost(), hostAndPort.getPort(), this.timeout);
+	final Jedis jedis = new Jedis(hostAndPort.getHost(), hostAndPort.getPort(),
+		this.connectionTimeout, this.soTimeout);
 
 	jedis.connect();
 	if (null != this.password) {
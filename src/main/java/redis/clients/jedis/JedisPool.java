@@ -5,6 +5,8 @@ import java.net.URI;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Deadline;
 import redis.clients.util.JedisURIHelper;
 import redis.clients.util.Pool;
 
@@ -87,6 +89,28 @@ public class JedisPool extends Pool<Jedis> {
 				database, clientName));
 	}
 
+	/**
+	 * 创建一个分别设置连接超时时间和读取超时时间的"Jedis连接池"实例。
+	 * 
+	 * @param poolConfig
+	 *            连接池配置信息
+	 * @param host
+	 * @param port
+	 * @param connectionTimeout
+	 *            连接超时时间(ms)
+	 * @param soTimeout
+	 *            读取超时时间(ms)
+	 * @param password
+	 * @param database
+	 * @param clientName
+	 */
+	public JedisPool(GenericObjectPoolConfig poolConfig,
+			String host, int port, int connectionTimeout, int soTimeout,
+			String password, int database, String clientName) {
+		super(poolConfig, new JedisFactory(host, port, connectionTimeout,
+				soTimeout, password, database, clientName));
+	}
+
 	public JedisPool(GenericObjectPoolConfig poolConfig, URI uri) {
 		this(poolConfig, uri, Protocol.DEFAULT_TIMEOUT);
 	}
@@ -106,9 +130,21 @@ public class JedisPool extends Pool<Jedis> {
 		return jedis;
 	}
 
+	/**
+	 * 在截止时间内获取一个资源，并对之后的所有命令应用该截止时间(归还时清除)。
+	 */
+	@Override
+	public Jedis getResource(Deadline deadline) {
+		Jedis jedis = super.getResource(deadline);
+		jedis.setDataSource(this);
+		jedis.setDeadline(deadline);
+		return jedis;
+	}
+
 	@Override
 	public void returnResource(Jedis resource) {
 		if (resource != null) {
+			resource.setDeadline(null);
 			resource.resetState();
 			super.returnResourceObject(resource);
 		}
@@ -117,6 +153,12 @@ public class JedisPool extends Pool<Jedis> {
 	@Override
 	public void returnBrokenResource(Jedis resource) {
 		if (resource != null) {
+			// 先关闭损坏的链接，销毁时(在连接池的监视器锁内)不再发送 QUIT 命令
+			try {
+				resource.disconnect();
+			} catch (JedisConnectionException e) {
+				// 忽略
+			}
 			super.returnBrokenResourceObject(resource);
 		}
 	}
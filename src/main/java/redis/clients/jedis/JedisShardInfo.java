@@ -1,6 +1,10 @@
 package redis.clients.jedis;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import redis.clients.util.ShardInfo;
 import redis.clients.util.Sharded;
@@ -24,8 +28,23 @@ public class JedisShardInfo extends ShardInfo<Jedis> {
 	/** 访问密码 */
 	private String password;
 
-	/** 超时时间 */
-	private int timeout;
+	/** 连接超时时间 */
+	private int connectionTimeout;
+
+	/** 读取超时时间 */
+	private int soTimeout;
+
+	/** 使用"聚集写"直接发送大参数的最小长度(字节)，0 表示不启用 */
+	private int gatheringWriteThreshold;
+
+	/** 该分片节点的只读副本(从节点)列表 */
+	private final List<JedisShardInfo> replicas = new ArrayList<JedisShardInfo>(2);
+
+	/** 该分片节点的熔断器(可以为null) */
+	private volatile CircuitBreaker circuitBreaker;
+
+	/** 该分片节点被丢弃的损坏链接数(所有池对象共享) */
+	private final AtomicLong brokenCount = new AtomicLong();
 
 	public JedisShardInfo(String host) {
 		super(Sharded.DEFAULT_WEIGHT);
@@ -90,7 +109,8 @@ public class JedisShardInfo extends ShardInfo<Jedis> {
 		super(weight);
 		this.host = host;
 		this.port = port;
-		this.timeout = timeout;
+		this.connectionTimeout = timeout;
+		this.soTimeout = timeout;
 	}
 
 	public JedisShardInfo(URI uri) {
@@ -154,17 +174,109 @@ public class JedisShardInfo extends ShardInfo<Jedis> {
 		this.password = auth;
 	}
 
+	/**
+	 * 返回读取超时时间。
+	 */
 	public int getTimeout() {
-		return timeout;
+		return soTimeout;
 	}
 
 	/**
-	 * 设置超时时间。
+	 * 同时设置连接超时时间和读取超时时间。
 	 * 
 	 * @param timeout
 	 */
 	public void setTimeout(int timeout) {
-		this.timeout = timeout;
+		this.connectionTimeout = timeout;
+		this.soTimeout = timeout;
+	}
+
+	public int getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * 设置连接超时时间(ms)，通常远小于读取超时时间。
+	 * 
+	 * @param connectionTimeout
+	 */
+	public void setConnectionTimeout(int connectionTimeout) {
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	public int getSoTimeout() {
+		return soTimeout;
+	}
+
+	/**
+	 * 设置读取超时时间(ms)。
+	 * 
+	 * @param soTimeout
+	 */
+	public void setSoTimeout(int soTimeout) {
+		this.soTimeout = soTimeout;
+	}
+
+	public int getGatheringWriteThreshold() {
+		return gatheringWriteThreshold;
+	}
+
+	/**
+	 * 设置使用"聚集写"直接发送大参数的最小长度(字节)，0 表示不启用。
+	 * <p>
+	 * 适用于经常写入几百 KB 以上大值的场景。
+	 * 
+	 * @param gatheringWriteThreshold
+	 */
+	public void setGatheringWriteThreshold(int gatheringWriteThreshold) {
+		if (gatheringWriteThreshold < 0) {
+			throw new IllegalArgumentException("gatheringWriteThreshold < 0");
+		}
+		this.gatheringWriteThreshold = gatheringWriteThreshold;
+	}
+
+	/**
+	 * 添加该分片节点的一个只读副本(从节点)，供{@link HedgedReads}等只读命令使用；不影响键的分片。
+	 * 
+	 * @param replica
+	 *            副本的连接信息(使用其主机、端口、超时时间和密码)
+	 */
+	public void addReplica(JedisShardInfo replica) {
+		replicas.add(replica);
+	}
+
+	/**
+	 * 返回该分片节点的只读副本列表。
+	 */
+	public List<JedisShardInfo> getReplicas() {
+		return Collections.unmodifiableList(replicas);
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * 设置该分片节点的熔断器，由该分片节点之后创建的所有"Jedis客户端"共享。
+	 * <p>
+	 * 分片节点故障时，请求立即失败而不是等待套接字超时，并按退避时间探测恢复。
+	 * 
+	 * @param circuitBreaker
+	 *            熔断器；null表示不使用(默认)
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * 返回该分片节点被丢弃的损坏链接数，由所有使用该分片信息的{@link ShardedJedis}累计。
+	 */
+	public long getBrokenCount() {
+		return brokenCount.get();
+	}
+
+	void incrementBrokenCount() {
+		brokenCount.incrementAndGet();
 	}
 
 }
@@ -0,0 +1,298 @@
+package redis.clients.jedis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Sharded;
+
+/**
+ * "键空间导出器"实现，并行地扫描所有分片节点，把匹配的键导出为一个紧凑的二进制快照文件。
+ *
+ * <pre>
+ * 快照文件格式(整数均为大端)：
+ * 	文件头：["JSNP"][版本(4字节)]
+ * 	记录：[键长度(4字节)][键][剩余生存时间毫秒数(8字节，-1表示永不过期)][序列化值长度(4字节)][序列化值] ...
+ *
+ * 工作方式：
+ * 	1. 每个分片节点由一个独立的任务驱动，使用一条独立的链接，不占用分片集群自身的链接；
+ * 	2. 每收到一页 SCAN 响应，就通过管道一次发送该页所有键的 DUMP 和 PTTL，
+ * 	   以及下一页的 SCAN 请求，然后依次读取响应，每页只有一次网络往返；
+ * 	3. 每页的记录先编码到一个可复用的缓冲区，再通过{@link FileChannel}按预留的位置并发写入，
+ * 	   各任务之间不需要互相等待。
+ * </pre>
+ *
+ * 扫描期间被删除的键会被跳过；快照中的生存时间是相对于导出时刻的。
+ * 导入见{@link KeyspaceImporter}。
+ */
+public class KeyspaceExporter {
+
+	/** 快照文件的魔数 */
+	static final byte[] MAGIC = { 'J', 'S', 'N', 'P' };
+	/** 快照文件格式的版本 */
+	static final int VERSION = 1;
+	/** 文件头长度 */
+	static final int HEADER_LENGTH = MAGIC.length + 4;
+
+	/** 默认的每页键数 */
+	public static final int DEFAULT_SCAN_COUNT = 1000;
+
+	/** 初始的页缓冲区大小(64KB) */
+	private static final int INITIAL_BUFFER_SIZE = 64 << 10;
+
+	/** 分片集群 */
+	private final Sharded<Jedis, JedisShardInfo> sharded;
+	/** 执行导出任务的执行器(为null时，每次导出使用独立的线程) */
+	private final ExecutorService executor;
+	/** 游标参数 */
+	private ScanParams scanParams = new ScanParams().count(DEFAULT_SCAN_COUNT);
+
+	/**
+	 * 创建一个"键空间导出器"，每次导出时为每个分片节点创建一个独立的守护线程。
+	 *
+	 * @param sharded
+	 *            分片集群(如{@link ShardedJedis})，只用于获取分片节点信息
+	 */
+	public KeyspaceExporter(Sharded<Jedis, JedisShardInfo> sharded) {
+		this(sharded, null);
+	}
+
+	/**
+	 * 创建一个"键空间导出器"。
+	 *
+	 * @param sharded
+	 *            分片集群(如{@link ShardedJedis})，只用于获取分片节点信息
+	 * @param executor
+	 *            执行导出任务的执行器
+	 */
+	public KeyspaceExporter(Sharded<Jedis, JedisShardInfo> sharded,
+			ExecutorService executor) {
+		this.sharded = sharded;
+		this.executor = executor;
+	}
+
+	/**
+	 * 设置游标参数，用于选择要导出的键(MATCH)和每页的键数(COUNT)。
+	 */
+	public void setScanParams(ScanParams scanParams) {
+		this.scanParams = scanParams;
+	}
+
+	/**
+	 * 导出所有分片节点中匹配的键。
+	 *
+	 * @param file
+	 *            快照文件(已存在时覆盖)
+	 * @return 导出的键数
+	 * @throws IOException
+	 *             写入文件失败
+	 */
+	public long export(File file) throws IOException {
+		final Set<JedisShardInfo> shards = new LinkedHashSet<JedisShardInfo>(
+				sharded.getAllShardInfo());
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		ExecutorService pool = executor;
+		try {
+			final FileChannel channel = raf.getChannel();
+			channel.truncate(0);
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.put(MAGIC).putInt(VERSION).flip();
+			writeFully(channel, header, 0);
+
+			final AtomicLong position = new AtomicLong(HEADER_LENGTH);
+			if (pool == null) {
+				pool = newExecutor(shards.size());
+			}
+			final List<ShardExport> tasks = new ArrayList<ShardExport>(
+					shards.size());
+			final List<Future<Long>> futures = new ArrayList<Future<Long>>(
+					shards.size());
+			for (JedisShardInfo shard : shards) {
+				final ShardExport task = new ShardExport(shard, scanParams,
+						channel, position);
+				tasks.add(task);
+				futures.add(pool.submit(task));
+			}
+
+			long total = 0;
+			Throwable failure = null;
+			for (Future<Long> future : futures) {
+				try {
+					total += future.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+						// 一个节点失败，其它节点尽快停止
+						for (ShardExport task : tasks) {
+							task.abort();
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					for (ShardExport task : tasks) {
+						task.abort();
+					}
+					throw new JedisException(e);
+				}
+			}
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			}
+			if (failure instanceof JedisException) {
+				throw (JedisException) failure;
+			}
+			if (failure != null) {
+				throw new JedisException(failure);
+			}
+			channel.force(false);
+			return total;
+		} finally {
+			if (pool != null && pool != executor) {
+				pool.shutdown();
+			}
+			raf.close();
+		}
+	}
+
+	private static ExecutorService newExecutor(int threads) {
+		return Executors.newFixedThreadPool(Math.max(1, threads),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "jedis-keyspace-exporter");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/*
+	 * 把缓冲区的剩余内容全部写入给定的文件位置。
+	 */
+	static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * 一个分片节点的导出任务。
+	 */
+	static final class ShardExport implements Callable<Long> {
+
+		private final JedisShardInfo shard;
+		private final ScanParams params;
+		private final FileChannel channel;
+		/** 文件中下一个可预留的写入位置 */
+		private final AtomicLong position;
+
+		/** 页缓冲区 */
+		private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		/** 是否已中止 */
+		private volatile boolean aborted;
+
+		ShardExport(JedisShardInfo shard, ScanParams params,
+				FileChannel channel, AtomicLong position) {
+			this.shard = shard;
+			this.params = params;
+			this.channel = channel;
+			this.position = position;
+		}
+
+		void abort() {
+			aborted = true;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Long call() throws IOException {
+			final Jedis jedis = shard.createResource();
+			try {
+				final Client client = jedis.getClient();
+				long exported = 0;
+				client.scan(ScanParams.SCAN_POINTER_START_BINARY, params);
+				List<Object> reply = client.getObjectMultiBulkReply();
+				while (!aborted) {
+					final byte[] cursor = (byte[]) reply.get(0);
+					final List<byte[]> keys = (List<byte[]>) reply.get(1);
+					final boolean more = !Arrays.equals(cursor,
+							ScanParams.SCAN_POINTER_START_BINARY);
+
+					// 一次发送本页的 DUMP/PTTL 和下一页的 SCAN
+					for (byte[] key : keys) {
+						client.dump(key);
+						client.pttl(key);
+					}
+					if (more) {
+						client.scan(cursor, params);
+					}
+
+					buffer.clear();
+					for (byte[] key : keys) {
+						final byte[] dump = client.getBinaryBulkReply();
+						final long pttl = client.getIntegerReply();
+						if (dump == null || pttl == -2) {
+							// 键已被删除
+							continue;
+						}
+						this.encode(key, pttl, dump);
+						exported++;
+					}
+					this.write();
+
+					if (!more) {
+						break;
+					}
+					reply = client.getObjectMultiBulkReply();
+				}
+				return exported;
+			} finally {
+				jedis.disconnect();
+			}
+		}
+
+		/*
+		 * 把一条记录编码到页缓冲区。
+		 */
+		private void encode(byte[] key, long pttl, byte[] dump) {
+			final int length = 4 + key.length + 8 + 4 + dump.length;
+			if (buffer.remaining() < length) {
+				final ByteBuffer bigger = ByteBuffer.allocate(Math.max(
+						buffer.capacity() * 2, buffer.position() + length));
+				buffer.flip();
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+			buffer.putInt(key.length).put(key).putLong(pttl)
+					.putInt(dump.length).put(dump);
+		}
+
+		/*
+		 * 预留文件位置，并写入页缓冲区。
+		 */
+		private void write() throws IOException {
+			buffer.flip();
+			if (buffer.hasRemaining()) {
+				writeFully(channel, buffer,
+						position.getAndAdd(buffer.remaining()));
+			}
+		}
+	}
+
+}
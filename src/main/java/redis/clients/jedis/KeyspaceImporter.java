@@ -0,0 +1,112 @@
+package redis.clients.jedis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.util.SafeEncoder;
+import redis.clients.util.Sharded;
+
+/**
+ * "键空间导入器"实现，把{@link KeyspaceExporter}导出的快照文件通过 RESTORE 命令并行地导入分片集群。
+ *
+ * <pre>
+ * 与{@link BulkLoader}相同：
+ * 	1. 按窗口分段映射快照文件，序列化值从映射区分段拷贝到写缓冲区，不在堆上整体复制；
+ * 	2. 每个分片节点使用一条独立的链接，写入从不等待响应，由独立的线程读取响应。
+ * </pre>
+ *
+ * 记录按键重新分配分片节点，因此导入的目标集群可以与导出时的拓扑不同。
+ * 默认情况下已存在的键会导致"请求错误"(只计数，不中断导入)，可通过{@link #setReplace(boolean)}覆盖。
+ */
+public class KeyspaceImporter extends BulkLoader {
+
+	private static final byte[] REPLACE = SafeEncoder.encode("REPLACE");
+
+	/** 是否覆盖已存在的键 */
+	private boolean replace;
+
+	/**
+	 * 创建一个"键空间导入器"。
+	 *
+	 * @param sharded
+	 *            分片集群(如{@link ShardedJedis})，只用于确定记录所属的分片节点
+	 */
+	public KeyspaceImporter(Sharded<Jedis, JedisShardInfo> sharded) {
+		super(sharded);
+	}
+
+	/**
+	 * 设置是否覆盖已存在的键(RESTORE ... REPLACE，需要 Redis 3.0 及以上版本)。
+	 */
+	public void setReplace(boolean replace) {
+		this.replace = replace;
+	}
+
+	@Override
+	long readHeader(FileChannel channel) throws IOException {
+		final ByteBuffer header = ByteBuffer
+				.allocate(KeyspaceExporter.HEADER_LENGTH);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				throw new IOException("Not a keyspace snapshot: too short");
+			}
+		}
+		header.flip();
+		final byte[] magic = new byte[KeyspaceExporter.MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, KeyspaceExporter.MAGIC)) {
+			throw new IOException("Not a keyspace snapshot: bad magic");
+		}
+		final int version = header.getInt();
+		if (version != KeyspaceExporter.VERSION) {
+			throw new IOException("Unsupported keyspace snapshot version "
+					+ version);
+		}
+		return KeyspaceExporter.HEADER_LENGTH;
+	}
+
+	@Override
+	int loadRecords(ByteBuffer map, Pipes pipes) throws IOException {
+		final Sharded<Jedis, JedisShardInfo> sharded = this.getSharded();
+		while (map.remaining() >= 4) {
+			final int start = map.position();
+			final int keyLength = checkLength(map.getInt(), start);
+			if (map.remaining() < keyLength + 8L + 4) {
+				map.position(start);
+				break;
+			}
+			final byte[] key = new byte[keyLength];
+			map.get(key);
+			final long pttl = map.getLong();
+			final int dumpLength = checkLength(map.getInt(), start);
+			if (map.remaining() < dumpLength) {
+				map.position(start);
+				break;
+			}
+			// 快照中的-1表示永不过期，RESTORE 使用0
+			final byte[] ttl = Protocol.toByteArray(pttl < 0 ? 0 : pttl);
+			final ShardPipe pipe = pipes.pipe(sharded.getShardInfo(key));
+			final int dumpEnd = map.position() + dumpLength;
+			if (replace) {
+				// REPLACE 必须在序列化值之后，只能拷贝
+				final byte[] dump = new byte[dumpLength];
+				map.get(dump);
+				pipe.send(Command.RESTORE, key, ttl, dump, REPLACE);
+			} else {
+				// 序列化值从映射区分段写出
+				final int limit = map.limit();
+				map.limit(dumpEnd);
+				pipe.send(Command.RESTORE, new byte[][] { key, ttl }, map);
+				map.limit(limit);
+			}
+			map.position(dumpEnd);
+
+			this.recordSent(pipes, map.position() - start);
+		}
+		return map.position();
+	}
+
+}
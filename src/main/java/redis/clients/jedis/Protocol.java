@@ -1,13 +1,18 @@
 package redis.clients.jedis;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import redis.clients.jedis.exceptions.JedisAskDataException;
 import redis.clients.jedis.exceptions.JedisClusterException;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
 import redis.clients.jedis.exceptions.JedisMovedDataException;
 import redis.clients.util.RedisInputStream;
 import redis.clients.util.RedisOutputStream;
@@ -117,6 +122,121 @@ public final class Protocol {
 		sendCommand(os, command.raw, args);
 	}
 
+	/**
+	 * 发送Redis命令到服务端，最后一个参数是一个字节数组区间，避免为它拷贝出一个新的数组。
+	 *
+	 * @param os
+	 *            输出流
+	 * @param command
+	 *            Redis命令
+	 * @param args
+	 *            前面的命令参数列表
+	 * @param tail
+	 *            最后一个参数所在的字节数组
+	 * @param offset
+	 *            最后一个参数的起始位置
+	 * @param length
+	 *            最后一个参数的长度
+	 */
+	public static void sendCommand(RedisOutputStream os, Command command,
+			byte[][] args, byte[] tail, int offset, int length) {
+		try {
+			os.write(ASTERISK_BYTE);
+			os.writeIntCrLf(args.length + 2);
+			os.write(DOLLAR_BYTE);
+			os.writeIntCrLf(command.raw.length);
+			os.write(command.raw);
+			os.writeCrLf();
+
+			for (byte[] arg : args) {
+				os.write(DOLLAR_BYTE);
+				os.writeIntCrLf(arg.length);
+				os.write(arg);
+				os.writeCrLf();
+			}
+			os.write(DOLLAR_BYTE);
+			os.writeIntCrLf(length);
+			os.write(tail, offset, length);
+			os.writeCrLf();
+		} catch (IOException e) {
+			throw new JedisConnectionException(e);
+		}
+	}
+
+	/**
+	 * 发送Redis命令到服务端，最后一个参数是一个字节缓冲区的剩余内容(如内存映射文件的一个区间)。
+	 *
+	 * @param os
+	 *            输出流
+	 * @param command
+	 *            Redis命令
+	 * @param args
+	 *            前面的命令参数列表
+	 * @param tail
+	 *            最后一个参数，写入后其位置被推进到界限
+	 */
+	public static void sendCommand(RedisOutputStream os, Command command,
+			byte[][] args, ByteBuffer tail) {
+		try {
+			os.write(ASTERISK_BYTE);
+			os.writeIntCrLf(args.length + 2);
+			os.write(DOLLAR_BYTE);
+			os.writeIntCrLf(command.raw.length);
+			os.write(command.raw);
+			os.writeCrLf();
+
+			for (byte[] arg : args) {
+				os.write(DOLLAR_BYTE);
+				os.writeIntCrLf(arg.length);
+				os.write(arg);
+				os.writeCrLf();
+			}
+			os.write(DOLLAR_BYTE);
+			os.writeIntCrLf(tail.remaining());
+			os.write(tail);
+			os.writeCrLf();
+		} catch (IOException e) {
+			throw new JedisConnectionException(e);
+		}
+	}
+
+	/**
+	 * 发送Redis命令到服务端，文本参数直接以"UTF-8"编码写入输出流的缓冲区，
+	 * 不创建中间的字节数组。
+	 *
+	 * @param os
+	 *            输出流
+	 * @param command
+	 *            Redis命令
+	 * @param args
+	 *            文本格式的命令参数列表
+	 */
+	public static void sendCommand(RedisOutputStream os, Command command,
+			String... args) {
+		// 先检查参数，避免把写了一半的命令留在缓冲区里
+		for (String arg : args) {
+			if (arg == null) {
+				throw new JedisDataException("value sent to redis cannot be null");
+			}
+		}
+		try {
+			os.write(ASTERISK_BYTE);
+			os.writeIntCrLf(args.length + 1);
+			os.write(DOLLAR_BYTE);
+			os.writeIntCrLf(command.raw.length);
+			os.write(command.raw);
+			os.writeCrLf();
+
+			for (String arg : args) {
+				os.write(DOLLAR_BYTE);
+				os.writeIntCrLf(RedisOutputStream.utf8Length(arg));
+				os.writeUtf8CrLf(arg);
+			}
+		} catch (IOException e) {
+			throw new JedisConnectionException(e);
+		}
+	}
+
 	private static void sendCommand(RedisOutputStream os, byte[] command,
 			byte[]... args) {
 		try {
@@ -224,7 +344,7 @@ public final class Protocol {
 	 * 处理一条命令的响应内容。
 	 */
 	private static byte[] processBulkReply(RedisInputStream is) {
-		int len = Integer.parseInt(is.readLine());
+		int len = is.readIntCrLf();
 		if (len == -1) {
 			return null;
 		}
@@ -253,15 +373,14 @@ public final class Protocol {
 	 * 处理整数值。
 	 */
 	private static Long processInteger(RedisInputStream is) {
-		String num = is.readLine();
-		return Long.valueOf(num);
+		return Long.valueOf(is.readLongCrLf());
 	}
 
 	/*
 	 * 处理多条命令的批量响应内容。
 	 */
 	private static List<Object> processMultiBulkReply(RedisInputStream is) {
-		int num = Integer.parseInt(is.readLine());
+		int num = is.readIntCrLf();
 		if (num == -1) {
 			return null;
 		}
@@ -287,6 +406,313 @@ public final class Protocol {
 		return process(is);
 	}
 
+	/**
+	 * 读取一个"整型列表"响应，直接解码为长整型数组，不创建{@link Long}对象。
+	 * 
+	 * @param is
+	 * @return 长整型数组；若响应为空列表(*-1)，则返回null
+	 */
+	public static long[] readIntegerArray(RedisInputStream is) {
+		final int num = readMultiBulkLength(is);
+		if (num == -1) {
+			return null;
+		}
+		final long[] ret = new long[num];
+		for (int i = 0; i < num; i++) {
+			ret[i] = readIntegerElement(is);
+		}
+		return ret;
+	}
+
+	/**
+	 * 读取一个"成员-分值"交替出现的响应(如 WITHSCORES)，
+	 * 直接解码为平行的成员数组和分值数组，分值从字节内容中解析，不创建中间字符串。
+	 * 
+	 * @param is
+	 * @return
+	 */
+	public static ScoredMembers readScoredMembers(RedisInputStream is) {
+		final int num = readMultiBulkLength(is);
+		if (num <= 0) {
+			return ScoredMembers.EMPTY;
+		}
+		final int size = num / 2;
+		final byte[][] members = new byte[size][];
+		final double[] scores = new double[size];
+		for (int i = 0; i < size; i++) {
+			members[i] = (byte[]) process(is);
+			scores[i] = readDoubleElement(is);
+		}
+		return new ScoredMembers(members, scores);
+	}
+
+	/**
+	 * 读取一个"域-值"交替出现的响应(如 HGETALL)，直接放入给定的映射表，不创建中间列表。
+	 * 
+	 * @param is
+	 * @param hash
+	 *            目标映射表
+	 * @return 目标映射表；若响应为空列表(*-1)，则返回null
+	 */
+	public static <M extends Map<byte[], byte[]>> M readBinaryHash(
+			RedisInputStream is, M hash) {
+		final int num = readMultiBulkLength(is);
+		if (num == -1) {
+			return null;
+		}
+		readFieldValuePairs(is, num, hash);
+		return hash;
+	}
+
+	/**
+	 * 读取一个与给定域一一对应的"值列表"响应(如 HMGET)，直接放入给定的映射表；
+	 * 不存在的域不放入映射表。
+	 * 
+	 * @param is
+	 * @param fields
+	 *            请求的域列表
+	 * @param hash
+	 *            目标映射表
+	 * @return 目标映射表
+	 */
+	public static <M extends Map<byte[], byte[]>> M readBinaryFieldValues(
+			RedisInputStream is, byte[][] fields, M hash) {
+		final int num = readMultiBulkLength(is);
+		for (int i = 0; i < num; i++) {
+			final byte[] value = readBulkElement(is);
+			if (value != null && i < fields.length) {
+				hash.put(fields[i], value);
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * 读取一个 HSCAN 响应，将本页的"域-值"对直接放入给定的映射表。
+	 * 
+	 * @param is
+	 * @param hash
+	 *            目标映射表
+	 * @return 下一次迭代的游标
+	 */
+	public static byte[] readScanIntoHash(RedisInputStream is,
+			Map<byte[], byte[]> hash) {
+		readMultiBulkLength(is);
+		final byte[] cursor = readBulkElement(is);
+		readFieldValuePairs(is, readMultiBulkLength(is), hash);
+		return cursor;
+	}
+
+	/*
+	 * 读取若干个交替出现的"域-值"对。
+	 */
+	private static void readFieldValuePairs(RedisInputStream is, int num,
+			Map<byte[], byte[]> hash) {
+		for (int i = 0; i + 1 < num; i += 2) {
+			final byte[] field = readBulkElement(is);
+			hash.put(field, readBulkElement(is));
+		}
+		if ((num & 1) != 0) {
+			readBulkElement(is);
+		}
+	}
+
+	/*
+	 * 读取一个"批量回复"元素。
+	 */
+	private static byte[] readBulkElement(RedisInputStream is) {
+		final byte b = readReplyType(is);
+		if (b != DOLLAR_BYTE) {
+			throw new JedisConnectionException("Unknown reply: " + (char) b);
+		}
+		return processBulkReply(is);
+	}
+
+	/**
+	 * 读取一个"批量回复"，将内容分块地直接写入输出流，不为整个内容分配数组。
+	 * <p>
+	 * 若写入输出流失败，仍会读掉剩余内容(链接可以继续使用)，然后抛出"Jedis运行时异常"。
+	 * 
+	 * @param is
+	 * @param out
+	 *            目标输出流
+	 * @return 内容长度；若响应为空(nil)，则返回-1
+	 */
+	public static long readBulkReply(RedisInputStream is, OutputStream out) {
+		return readBulkReply(is, out, null);
+	}
+
+	/**
+	 * 读取一个"批量回复"，将内容分块地直接写入通道，不为整个内容分配数组。
+	 * 
+	 * @param is
+	 * @param channel
+	 *            目标通道
+	 * @return 内容长度；若响应为空(nil)，则返回-1
+	 * @see #readBulkReply(RedisInputStream, OutputStream)
+	 */
+	public static long readBulkReply(RedisInputStream is,
+			WritableByteChannel channel) {
+		return readBulkReply(is, null, channel);
+	}
+
+	private static long readBulkReply(RedisInputStream is, OutputStream out,
+			WritableByteChannel channel) {
+		final byte b = readReplyType(is);
+		if (b != DOLLAR_BYTE) {
+			throw new JedisConnectionException("Unknown reply: " + (char) b);
+		}
+		final int len = is.readIntCrLf();
+		if (len == -1) {
+			return -1;
+		}
+		IOException failure = null;
+		try {
+			if (out != null) {
+				is.transferTo(len, out);
+			} else {
+				is.transferTo(len, channel);
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+		try {
+			is.readByte();
+			is.readByte();
+		} catch (IOException e) {
+			throw new JedisConnectionException(e);
+		}
+		if (failure != null) {
+			throw new JedisException("Failed to write bulk reply", failure);
+		}
+		return len;
+	}
+
+	/** 发布/订阅推送消息的类型(各类型名称的长度互不相同) */
+	private static final Keyword[] PUSH_KEYWORDS = { Keyword.MESSAGE,
+			Keyword.PMESSAGE, Keyword.SUBSCRIBE, Keyword.UNSUBSCRIBE,
+			Keyword.PSUBSCRIBE, Keyword.PUNSUBSCRIBE };
+
+	/**
+	 * 读取一条发布/订阅推送消息，直接解码到给定的数组中，不创建中间列表，类型名称也不解码为字符串。
+	 * 
+	 * <pre>
+	 * 	message：parts[0]为频道，parts[1]为消息内容
+	 * 	pmessage：parts[0]为频道，parts[1]为消息内容，parts[2]为模式
+	 * 	订阅/退订确认：parts[0]为频道或模式，订阅数被丢弃
+	 * </pre>
+	 * 
+	 * @param is
+	 * @param parts
+	 *            长度至少为3的数组
+	 * @return 消息类型；无法识别的推送消息(会被整条读掉)返回null
+	 */
+	public static Keyword readPushMessage(RedisInputStream is, byte[][] parts) {
+		final int num = readMultiBulkLength(is);
+		final Keyword kind = readPushKeyword(is);
+		if (kind == Keyword.MESSAGE && num == 3) {
+			parts[0] = readBulkElement(is);
+			parts[1] = readBulkElement(is);
+		} else if (kind == Keyword.PMESSAGE && num == 4) {
+			parts[2] = readBulkElement(is);
+			parts[0] = readBulkElement(is);
+			parts[1] = readBulkElement(is);
+		} else if (kind != null && kind != Keyword.MESSAGE
+				&& kind != Keyword.PMESSAGE && num == 3) {
+			parts[0] = readBulkElement(is);
+			readIntegerElement(is);
+		} else {
+			for (int i = 1; i < num; i++) {
+				process(is);
+			}
+			return null;
+		}
+		return kind;
+	}
+
+	/*
+	 * 读取推送消息的类型名称，按长度识别，并逐字节校验。
+	 */
+	private static Keyword readPushKeyword(RedisInputStream is) {
+		final byte b = readReplyType(is);
+		if (b != DOLLAR_BYTE) {
+			throw new JedisConnectionException("Unknown reply: " + (char) b);
+		}
+		final int len = is.readIntCrLf();
+		Keyword kind = null;
+		for (Keyword candidate : PUSH_KEYWORDS) {
+			if (candidate.raw.length == len) {
+				kind = candidate;
+				break;
+			}
+		}
+		try {
+			for (int i = 0; i < len; i++) {
+				final byte c = is.readByte();
+				if (kind != null && kind.raw[i] != c) {
+					kind = null;
+				}
+			}
+			is.readByte();
+			is.readByte();
+		} catch (IOException e) {
+			throw new JedisConnectionException(e);
+		}
+		return kind;
+	}
+
+	/*
+	 * 读取"批量响应"的元素个数。
+	 */
+	private static int readMultiBulkLength(RedisInputStream is) {
+		final byte b = readReplyType(is);
+		if (b != ASTERISK_BYTE) {
+			throw new JedisConnectionException("Unknown reply: " + (char) b);
+		}
+		return is.readIntCrLf();
+	}
+
+	/*
+	 * 读取一个整数元素。
+	 */
+	private static long readIntegerElement(RedisInputStream is) {
+		final byte b = readReplyType(is);
+		if (b != COLON_BYTE) {
+			throw new JedisConnectionException("Unknown reply: " + (char) b);
+		}
+		return is.readLongCrLf();
+	}
+
+	/*
+	 * 读取一个以"批量回复"形式返回的浮点数元素。
+	 */
+	private static double readDoubleElement(RedisInputStream is) {
+		final byte b = readReplyType(is);
+		if (b != DOLLAR_BYTE) {
+			throw new JedisConnectionException("Unknown reply: " + (char) b);
+		}
+		final int len = is.readIntCrLf();
+		if (len == -1) {
+			throw new JedisDataException("Unexpected null score");
+		}
+		return is.readDoubleCrLf(len);
+	}
+
+	/*
+	 * 读取响应类型标识；若为"请求错误"，则抛出相应的异常。
+	 */
+	private static byte readReplyType(RedisInputStream is) {
+		try {
+			final byte b = is.readByte();
+			if (b == MINUS_BYTE) {
+				processError(is);
+			}
+			return b;
+		} catch (IOException e) {
+			throw new JedisConnectionException(e);
+		}
+	}
+
 	/**
 	 * 转换布尔类型值为字节数组。
 	 * 
@@ -0,0 +1,266 @@
+package redis.clients.jedis;
+
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * "游标迭代器"实现，基于 SCAN/HSCAN/SSCAN/ZSCAN 命令。
+ *
+ * <pre>
+ * 预取机制：
+ * 	每收到一页响应，就立即通过管道发送下一页的请求，然后才把当前页交给调用方处理；
+ * 	这样，"下一页的网络往返"与"调用方处理当前页"是重叠进行的。
+ * </pre>
+ *
+ * <font color="red">注意：</font>迭代期间，该迭代器独占所属"Redis客户端"的链接，
+ * 在迭代结束或调用{@link #close()}之前，不能通过该客户端执行其它命令。
+ */
+public abstract class ScanIterator<T> implements Iterator<T>, Closeable {
+
+	/** Redis客户端 */
+	private final Client client;
+	/** 游标命令 */
+	private final Command command;
+	/** 键(SCAN 命令为null) */
+	private final byte[] key;
+	/** 游标参数列表 */
+	private final Collection<byte[]> params;
+
+	/** 当前页 */
+	private Iterator<T> page = Collections.<T> emptyList().iterator();
+	/** 是否有已发送、但尚未读取响应的请求 */
+	private boolean pending;
+
+	/**
+	 * 创建一个"游标迭代器"实例，并立即发送第一页的请求。
+	 *
+	 * @param client
+	 *            Redis客户端
+	 * @param command
+	 *            游标命令
+	 * @param key
+	 *            键(SCAN 命令为null)
+	 * @param params
+	 *            游标参数
+	 */
+	protected ScanIterator(Client client, Command command, byte[] key,
+			ScanParams params) {
+		this.client = client;
+		this.command = command;
+		this.key = key;
+		this.params = params.getParams();
+		this.request(ScanParams.SCAN_POINTER_START_BINARY);
+	}
+
+	/*
+	 * 通过管道发送一页的请求（不等待响应）。
+	 */
+	private void request(byte[] cursor) {
+		final List<byte[]> args = new ArrayList<byte[]>(params.size() + 2);
+		if (key != null) {
+			args.add(key);
+		}
+		args.add(cursor);
+		args.addAll(params);
+		client.sendCommand(command, args.toArray(new byte[args.size()][]));
+		client.flush();
+		pending = true;
+	}
+
+	/**
+	 * 读取下一个非空页。
+	 *
+	 * @return 下一页的元素列表；迭代结束时，返回null
+	 */
+	@SuppressWarnings("unchecked")
+	List<T> nextPage() {
+		while (pending) {
+			pending = false;
+			final List<Object> reply = client.getObjectMultiBulkReply();
+			final byte[] cursor = (byte[]) reply.get(0);
+			if (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY)) {
+				// 先预取下一页，再解码当前页
+				this.request(cursor);
+			}
+			final List<T> result = this.decode((List<byte[]>) reply.get(1));
+			if (!result.isEmpty()) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 将一页的原始响应解码为元素列表。
+	 *
+	 * @param raw
+	 *            原始响应
+	 * @return
+	 */
+	protected abstract List<T> decode(List<byte[]> raw);
+
+	@Override
+	public boolean hasNext() {
+		if (page.hasNext()) {
+			return true;
+		}
+		final List<T> next = this.nextPage();
+		if (next == null) {
+			return false;
+		}
+		page = next.iterator();
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * 提前结束迭代，读掉已预取的响应，使链接可以继续执行其它命令。
+	 */
+	@Override
+	public void close() {
+		page = Collections.<T> emptyList().iterator();
+		if (pending) {
+			pending = false;
+			client.getOne();
+		}
+	}
+
+	/**
+	 * 二进制元素的"游标迭代器"（SCAN/SSCAN）。
+	 */
+	static final class BinaryScanIterator extends ScanIterator<byte[]> {
+
+		BinaryScanIterator(Client client, Command command, byte[] key,
+				ScanParams params) {
+			super(client, command, key, params);
+		}
+
+		@Override
+		protected List<byte[]> decode(List<byte[]> raw) {
+			return raw;
+		}
+	}
+
+	/**
+	 * 文本元素的"游标迭代器"（SCAN/SSCAN）。
+	 */
+	static final class StringScanIterator extends ScanIterator<String> {
+
+		StringScanIterator(Client client, Command command, byte[] key,
+				ScanParams params) {
+			super(client, command, key, params);
+		}
+
+		@Override
+		protected List<String> decode(List<byte[]> raw) {
+			final List<String> result = new ArrayList<String>(raw.size());
+			for (byte[] bs : raw) {
+				result.add(SafeEncoder.encode(bs));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * 二进制"域-值"对的"游标迭代器"（HSCAN）。
+	 */
+	static final class BinaryEntryScanIterator extends
+			ScanIterator<Map.Entry<byte[], byte[]>> {
+
+		BinaryEntryScanIterator(Client client, byte[] key, ScanParams params) {
+			super(client, Command.HSCAN, key, params);
+		}
+
+		@Override
+		protected List<Map.Entry<byte[], byte[]>> decode(List<byte[]> raw) {
+			final List<Map.Entry<byte[], byte[]>> result = new ArrayList<Map.Entry<byte[], byte[]>>(
+					raw.size() / 2);
+			final Iterator<byte[]> iterator = raw.iterator();
+			while (iterator.hasNext()) {
+				result.add(new AbstractMap.SimpleEntry<byte[], byte[]>(iterator
+						.next(), iterator.next()));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * 文本"域-值"对的"游标迭代器"（HSCAN）。
+	 */
+	static final class EntryScanIterator extends
+			ScanIterator<Map.Entry<String, String>> {
+
+		EntryScanIterator(Client client, byte[] key, ScanParams params) {
+			super(client, Command.HSCAN, key, params);
+		}
+
+		@Override
+		protected List<Map.Entry<String, String>> decode(List<byte[]> raw) {
+			final List<Map.Entry<String, String>> result = new ArrayList<Map.Entry<String, String>>(
+					raw.size() / 2);
+			final Iterator<byte[]> iterator = raw.iterator();
+			while (iterator.hasNext()) {
+				result.add(new AbstractMap.SimpleEntry<String, String>(
+						SafeEncoder.encode(iterator.next()), SafeEncoder
+								.encode(iterator.next())));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * "成员-分值"对的"游标迭代器"（ZSCAN）。
+	 */
+	static final class TupleScanIterator extends ScanIterator<Tuple> {
+
+		/** 是否以文本形式返回成员 */
+		private final boolean text;
+
+		TupleScanIterator(Client client, byte[] key, ScanParams params,
+				boolean text) {
+			super(client, Command.ZSCAN, key, params);
+			this.text = text;
+		}
+
+		@Override
+		protected List<Tuple> decode(List<byte[]> raw) {
+			final List<Tuple> result = new ArrayList<Tuple>(raw.size() / 2);
+			final Iterator<byte[]> iterator = raw.iterator();
+			while (iterator.hasNext()) {
+				final byte[] member = iterator.next();
+				final Double score = Double.valueOf(SafeEncoder.encode(iterator
+						.next()));
+				if (text) {
+					result.add(new Tuple(SafeEncoder.encode(member), score));
+				} else {
+					result.add(new Tuple(member, score));
+				}
+			}
+			return result;
+		}
+	}
+
+}
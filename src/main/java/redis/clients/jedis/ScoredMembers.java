@@ -0,0 +1,68 @@
+package redis.clients.jedis;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * "有序集合成员-分值列表"表示，使用平行的成员数组和分值数组保存，避免装箱和创建{@link Tuple}对象。
+ * <p>
+ * 元素顺序与 Redis 返回的顺序一致。
+ */
+public final class ScoredMembers {
+
+	/** 空列表 */
+	static final ScoredMembers EMPTY = new ScoredMembers(new byte[0][],
+			new double[0]);
+
+	/** 成员数组 */
+	private final byte[][] members;
+	/** 分值数组 */
+	private final double[] scores;
+
+	ScoredMembers(byte[][] members, double[] scores) {
+		this.members = members;
+		this.scores = scores;
+	}
+
+	/**
+	 * 返回元素个数。
+	 */
+	public int size() {
+		return members.length;
+	}
+
+	/**
+	 * 返回给定位置的成员。
+	 */
+	public byte[] getBinaryMember(int index) {
+		return members[index];
+	}
+
+	/**
+	 * 返回给定位置的成员（文本格式）。
+	 */
+	public String getMember(int index) {
+		return SafeEncoder.encode(members[index]);
+	}
+
+	/**
+	 * 返回给定位置的分值。
+	 */
+	public double getScore(int index) {
+		return scores[index];
+	}
+
+	/**
+	 * 返回成员数组（不拷贝，调用方不应修改）。
+	 */
+	public byte[][] getMembers() {
+		return members;
+	}
+
+	/**
+	 * 返回分值数组（不拷贝，调用方不应修改）。
+	 */
+	public double[] getScores() {
+		return scores;
+	}
+
+}
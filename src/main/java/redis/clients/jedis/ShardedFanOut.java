@@ -0,0 +1,331 @@
+package redis.clients.jedis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Deadline;
+import redis.clients.util.VirtualThreads;
+
+/**
+ * "分片集群扇出读"实现：在截止时间内并行读取多个分片节点，返回按时响应的部分结果。
+ *
+ * <pre>
+ * 工作方式：
+ * 	1. 按所属的分片节点对键分组，每组由一个独立的任务读取(MGET 一次往返，其它命令通过管道)；
+ * 	2. 每个任务的链接都应用截止时间(见{@link Deadline})，调用方最多等待到截止时间；
+ * 	3. 截止时间到达时仍未完成的分片节点，其键被标记为缺失(见{@link FanOutResult#getMissingKeys()})，
+ * 	   该分片节点的客户端被从分片集群中摘除(下次访问时重新创建)，迟到的任务结束后自行关闭链接，
+ * 	   不会与调用方之后的命令并发使用同一条链接；
+ * 	4. 未指定执行器时，每个读取任务运行在独立的线程上，Java 21+ 上为虚拟线程(见{@link VirtualThreads})。
+ * </pre>
+ *
+ * <font color="red">注意：</font>读取期间，各分片节点的链接被读取任务使用，
+ * 调用方在读取返回之前不能通过该分片集群执行其它命令。
+ */
+public class ShardedFanOut {
+
+	/**
+	 * 在一个分片节点上执行的读取命令。
+	 *
+	 * @param <T>
+	 *            每个键的值类型
+	 */
+	public interface ShardCommand<T> {
+
+		/**
+		 * 读取一组属于同一个分片节点的键。
+		 *
+		 * @param jedis
+		 *            该分片节点的客户端
+		 * @param keys
+		 *            键列表
+		 * @return 与键一一对应的值列表
+		 */
+		List<T> execute(Jedis jedis, List<String> keys);
+	}
+
+	/** 分片集群 */
+	private final ShardedJedis sharded;
+	/** 执行读取任务的执行器(为null时，每个读取任务使用独立的线程，支持时为虚拟线程) */
+	private final ExecutorService executor;
+
+	public ShardedFanOut(ShardedJedis sharded) {
+		this(sharded, null);
+	}
+
+	/**
+	 * 创建一个"分片集群扇出读"实例。
+	 *
+	 * @param sharded
+	 *            分片集群
+	 * @param executor
+	 *            执行读取任务的执行器
+	 */
+	public ShardedFanOut(ShardedJedis sharded, ExecutorService executor) {
+		this.sharded = sharded;
+		this.executor = executor;
+	}
+
+	/**
+	 * 在截止时间内读取多个字符串键。
+	 */
+	public FanOutResult<String> mget(Deadline deadline, String... keys) {
+		return this.execute(deadline, keys, new ShardCommand<String>() {
+			@Override
+			public List<String> execute(Jedis jedis, List<String> keys) {
+				return jedis.mget(keys.toArray(new String[keys.size()]));
+			}
+		});
+	}
+
+	/**
+	 * 在截止时间内读取多个哈希表的所有字段，同一个分片节点的键通过管道读取。
+	 */
+	public FanOutResult<Map<String, String>> hgetAll(Deadline deadline,
+			String... keys) {
+		return this.execute(deadline, keys,
+				new ShardCommand<Map<String, String>>() {
+					@Override
+					public List<Map<String, String>> execute(Jedis jedis,
+							List<String> keys) {
+						final Client client = jedis.getClient();
+						for (String key : keys) {
+							client.hgetAll(key);
+						}
+						final List<Map<String, String>> values = new ArrayList<Map<String, String>>(
+								keys.size());
+						for (int i = 0; i < keys.size(); i++) {
+							values.add(BuilderFactory.STRING_MAP.build(client
+									.getBinaryMultiBulkReply()));
+						}
+						return values;
+					}
+				});
+	}
+
+	/**
+	 * 在截止时间内对多个键执行一个读取命令。
+	 *
+	 * @param deadline
+	 *            截止时间
+	 * @param keys
+	 *            键列表
+	 * @param command
+	 *            在每个分片节点上执行的命令
+	 * @return 部分结果
+	 */
+	public <T> FanOutResult<T> execute(Deadline deadline, String[] keys,
+			ShardCommand<T> command) {
+		if (keys.length == 0) {
+			return new FanOutResult<T>(new LinkedHashMap<String, T>(),
+					new LinkedHashSet<String>(),
+					new LinkedHashMap<JedisShardInfo, JedisException>());
+		}
+		// 按分片节点分组
+		final Map<Jedis, List<String>> groups = new IdentityHashMap<Jedis, List<String>>();
+		for (String key : keys) {
+			final Jedis jedis = sharded.getShard(key);
+			List<String> group = groups.get(jedis);
+			if (group == null) {
+				group = new ArrayList<String>();
+				groups.put(jedis, group);
+			}
+			group.add(key);
+		}
+
+		final CountDownLatch done = new CountDownLatch(groups.size());
+		final List<ShardRead<T>> reads = new ArrayList<ShardRead<T>>(
+				groups.size());
+		for (Map.Entry<Jedis, List<String>> group : groups.entrySet()) {
+			reads.add(new ShardRead<T>(group.getKey(), group.getValue(),
+					command, deadline, done));
+		}
+
+		final ExecutorService pool = executor != null ? executor
+				: VirtualThreads.newThreadPerTaskExecutor("jedis-sharded-fan-out");
+		try {
+			for (ShardRead<T> read : reads) {
+				pool.execute(read);
+			}
+			try {
+				done.await(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		} finally {
+			if (pool != executor) {
+				// 迟到的任务仍会执行完
+				pool.shutdown();
+			}
+		}
+
+		final Map<String, T> values = new LinkedHashMap<String, T>(
+				keys.length * 4 / 3 + 1);
+		final Set<String> missing = new LinkedHashSet<String>();
+		final Map<JedisShardInfo, JedisException> failures = new LinkedHashMap<JedisShardInfo, JedisException>();
+		for (ShardRead<T> read : reads) {
+			final JedisShardInfo shardInfo = sharded.getShardInfo(read.keys
+					.get(0));
+			if (read.claimed.compareAndSet(false, true)) {
+				// 还未完成：摘除该分片节点的客户端，由读取任务负责关闭链接
+				sharded.removeShardResource(read.jedis);
+				missing.addAll(read.keys);
+				failures.put(shardInfo, new JedisConnectionException(
+						"Deadline exceeded"));
+			} else if (read.error != null) {
+				missing.addAll(read.keys);
+				failures.put(shardInfo, read.error);
+			} else {
+				for (int i = 0; i < read.keys.size(); i++) {
+					values.put(read.keys.get(i), read.values.get(i));
+				}
+			}
+		}
+		return new FanOutResult<T>(values, missing, failures);
+	}
+
+	/**
+	 * 读取一个分片节点的任务，与调用方通过{@link #claimed}决定由谁处理结果。
+	 */
+	private static final class ShardRead<T> implements Runnable {
+
+		final Jedis jedis;
+		final List<String> keys;
+		private final ShardCommand<T> command;
+		private final Deadline deadline;
+		private final CountDownLatch done;
+		/** 先设置者获得结果和链接的所有权 */
+		final AtomicBoolean claimed = new AtomicBoolean();
+
+		List<T> values;
+		JedisException error;
+
+		ShardRead(Jedis jedis, List<String> keys, ShardCommand<T> command,
+				Deadline deadline, CountDownLatch done) {
+			this.jedis = jedis;
+			this.keys = keys;
+			this.command = command;
+			this.deadline = deadline;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			final Deadline previous = jedis.getClient().getDeadline();
+			try {
+				jedis.setDeadline(deadline);
+				values = command.execute(jedis, keys);
+				if (values.size() != keys.size()) {
+					throw new JedisException("Expected " + keys.size()
+							+ " values but got " + values.size());
+				}
+			} catch (JedisException e) {
+				error = e;
+			} catch (RuntimeException e) {
+				error = new JedisException(e);
+			} finally {
+				if (claimed.compareAndSet(false, true)) {
+					try {
+						jedis.setDeadline(previous);
+					} catch (JedisConnectionException e) {
+						// 链接已被标记为损坏，归还时修复
+					}
+				} else {
+					// 调用方已超时并摘除了该客户端
+					try {
+						jedis.disconnect();
+					} catch (JedisConnectionException e) {
+						// ignore
+					}
+				}
+				done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * 扇出读的结果：按时响应的键的值，以及未能读取的键。
+	 *
+	 * @param <T>
+	 *            值类型
+	 */
+	public static class FanOutResult<T> {
+
+		private final Map<String, T> values;
+		private final Set<String> missingKeys;
+		private final Map<JedisShardInfo, JedisException> failures;
+
+		FanOutResult(Map<String, T> values, Set<String> missingKeys,
+				Map<JedisShardInfo, JedisException> failures) {
+			this.values = Collections.unmodifiableMap(values);
+			this.missingKeys = Collections.unmodifiableSet(missingKeys);
+			this.failures = Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * 返回已读取的键值(按请求顺序)；键存在于此但值为null表示该键不存在。
+		 */
+		public Map<String, T> getValues() {
+			return values;
+		}
+
+		/**
+		 * 返回值，键缺失或不存在时返回null；用{@link #isMissing(String)}区分。
+		 */
+		public T get(String key) {
+			return values.get(key);
+		}
+
+		/**
+		 * 返回因分片节点超时或失败而未能读取的键。
+		 */
+		public Set<String> getMissingKeys() {
+			return missingKeys;
+		}
+
+		public boolean isMissing(String key) {
+			return missingKeys.contains(key);
+		}
+
+		/**
+		 * 所有键是否都已读取。
+		 */
+		public boolean isComplete() {
+			return missingKeys.isEmpty();
+		}
+
+		/**
+		 * 返回未能读取的分片节点及其原因。
+		 */
+		public Map<JedisShardInfo, JedisException> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * 返回已读取的值的集合。
+		 */
+		public Collection<T> getAvailableValues() {
+			return values.values();
+		}
+
+		@Override
+		public String toString() {
+			return "FanOutResult [values=" + values.size() + ", missing="
+					+ missingKeys.size() + "]";
+		}
+	}
+
+}
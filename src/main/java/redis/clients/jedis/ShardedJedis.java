@@ -1,15 +1,22 @@
 package redis.clients.jedis;
 
 import java.io.Closeable;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 
 import redis.clients.jedis.BinaryClient.LIST_POSITION;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.util.Hashing;
 import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
 
 /**
  * "文本数据分片的Jedis集群"实现，继承自{@link BinaryShardedJedis}。
@@ -61,27 +68,15 @@ public class ShardedJedis extends BinaryShardedJedis implements JedisCommands,
 	/**
 	 * 当使用"分片的Jedis连接池"时，将"分片的Jedis客户端链接"返回给"分片的Jedis连接池"；
 	 * 否则，断开整个集群所拥有的所有"Jedis客户端"资源。
+	 * <p>
+	 * 存在损坏链接的分片节点只会单独丢弃该链接(见{@link #repairBrokenShards()})，
+	 * 其它分片节点的正常链接随池对象一起返回给连接池，不会因为一个分片节点故障而全部重连。
 	 */
 	@Override
 	public void close() {
 		if (dataSource != null) { // 分片集群模式
-			// 检测该Jedis分片池对象是否正常
-			boolean broken = false;
-			for (Jedis jedis : super.getAllShards()) {
-				if (jedis.getClient().isBroken()) { // Jedis分片客户端是否存在异常链接
-					broken = true;
-					// Bug 找到一个就不用再接着继续执行了
-					break;
-				}
-			}
-			// 根据"该Jedis分片池的正常状态"来返回给连接池
-			if (broken) {
-				dataSource.returnBrokenResource(this);
-			} else { // 集群是正常的
-				this.resetState();
-				dataSource.returnResource(this);
-			}
-
+			// 修复损坏的分片节点链接、重置状态后返回给连接池
+			dataSource.returnResource(this);
 		} else { // 单机模式
 			// 关闭该Jedis客户端持有的所有链接（这样使用不会出现内存泄露问题！）
 			this.disconnect();
@@ -96,12 +91,25 @@ public class ShardedJedis extends BinaryShardedJedis implements JedisCommands,
 	 * 	经调试验证，集群中的所有Redis服务器的链接都打开着，每次都会对所有链接轮询一次。
 	 * 	但只有被命中的那条Redis链接在执行"事务命令"时，才会与Redis服务器交互一次；在执行其它命令时，是不会与Redis服务器交互的。
 	 * <font color="red">[A] 不管整个Redis集群节点数有多少个，这个方法的耗时都是收敛稳定的，性能影响微乎其微。</font>
+	 * 只轮询自上次重置以来被访问过的"Redis客户端"(见{@link #getTouchedShards()})，
+	 * 未被访问过的分片节点没有状态需要重置，耗时与被访问的分片节点数成正比。
+	 * 重置时链接出现异常的分片节点会被单独修复。
 	 * </pre>
 	 */
 	public void resetState() {
-		for (Jedis jedis : super.getAllShards()) {
-			jedis.resetState();
+		boolean broken = false;
+		for (Jedis jedis : super.getTouchedShards()) {
+			try {
+				jedis.resetState();
+			} catch (JedisConnectionException e) {
+				// 该链接已被标记为损坏
+				broken = true;
+			}
+		}
+		if (broken) {
+			this.repairBrokenShards();
 		}
+		super.clearTouchedShards();
 	}
 
 	@Override
@@ -123,6 +131,16 @@ public class ShardedJedis extends BinaryShardedJedis implements JedisCommands,
 		return j.get(key);
 	}
 
+	public Long get(String key, OutputStream out) {
+		Jedis j = getShard(key);
+		return j.get(key, out);
+	}
+
+	public Long get(String key, WritableByteChannel channel) {
+		Jedis j = getShard(key);
+		return j.get(key, channel);
+	}
+
 	public String echo(String string) {
 		Jedis j = getShard(string);
 		return j.echo(string);
@@ -484,6 +502,30 @@ public class ShardedJedis extends BinaryShardedJedis implements JedisCommands,
 		return j.zrevrangeWithScores(key, start, end);
 	}
 
+	public ScoredMembers zrangeWithScoresArray(String key, long start,
+			long end) {
+		Jedis j = getShard(key);
+		return j.zrangeWithScoresArray(key, start, end);
+	}
+
+	public ScoredMembers zrevrangeWithScoresArray(String key, long start,
+			long end) {
+		Jedis j = getShard(key);
+		return j.zrevrangeWithScoresArray(key, start, end);
+	}
+
+	public ScoredMembers zrangeByScoreWithScoresArray(String key, double min,
+			double max, int offset, int count) {
+		Jedis j = getShard(key);
+		return j.zrangeByScoreWithScoresArray(key, min, max, offset, count);
+	}
+
+	public ScoredMembers zrevrangeByScoreWithScoresArray(String key,
+			double max, double min, int offset, int count) {
+		Jedis j = getShard(key);
+		return j.zrevrangeByScoreWithScoresArray(key, max, min, offset, count);
+	}
+
 	public Long zcard(String key) {
 		Jedis j = getShard(key);
 		return j.zcard(key);
@@ -718,4 +760,77 @@ public class ShardedJedis extends BinaryShardedJedis implements JedisCommands,
 		return j.pfcount(key);
 	}
 
+	/**
+	 * 估算多个 HyperLogLog 并集的基数，键可以属于不同的分片节点。
+	 * 
+	 * @see BinaryShardedJedis#pfcount(byte[]...)
+	 */
+	public Long pfcount(String... keys) {
+		return super.pfcount(SafeEncoder.encodeMany(keys), keys);
+	}
+
+	/**
+	 * 返回一个并行扫描所有分片节点键空间的"游标迭代器"，各分片节点使用独立的线程扫描。
+	 * 
+	 * @param params
+	 *            游标参数
+	 * @return
+	 * @see ShardedScanIterator
+	 */
+	public ShardedScanIterator<String> scanIterator(final ScanParams params) {
+		return new ShardedScanIterator<String>(this.scanIterators(params));
+	}
+
+	/**
+	 * 返回一个并行扫描所有分片节点键空间的"游标迭代器"。
+	 * 
+	 * @param params
+	 *            游标参数
+	 * @param executor
+	 *            执行扫描任务的执行器，至少应能同时运行分片节点数个任务
+	 * @return
+	 * @see ShardedScanIterator
+	 */
+	public ShardedScanIterator<String> scanIterator(final ScanParams params,
+			final ExecutorService executor) {
+		return new ShardedScanIterator<String>(this.scanIterators(params),
+				executor);
+	}
+
+	private List<ScanIterator<String>> scanIterators(final ScanParams params) {
+		final Collection<Jedis> shards = super.getAllShards();
+		final List<ScanIterator<String>> iterators = new ArrayList<ScanIterator<String>>(
+				shards.size());
+		for (Jedis jedis : shards) {
+			iterators.add(jedis.scanIterator(params));
+		}
+		return iterators;
+	}
+
+	public ScanIterator<Entry<String, String>> hscanIterator(String key,
+			final ScanParams params) {
+		Jedis j = getShard(key);
+		return j.hscanIterator(key, params);
+	}
+
+	public ScanIterator<String> sscanIterator(String key,
+			final ScanParams params) {
+		Jedis j = getShard(key);
+		return j.sscanIterator(key, params);
+	}
+
+	public ScanIterator<Tuple> zscanIterator(String key,
+			final ScanParams params) {
+		Jedis j = getShard(key);
+		return j.zscanIterator(key, params);
+	}
+
+	/**
+	 * 向频道所属的分片节点发布消息(频道与键使用相同的分片规则，见{@link ShardedSubscriber})。
+	 */
+	public Long publish(String channel, String message) {
+		Jedis j = getShard(channel);
+		return j.publish(channel, message);
+	}
+
 }
@@ -1,6 +1,11 @@
 package redis.clients.jedis;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import org.apache.commons.pool2.PooledObject;
@@ -8,6 +13,8 @@ import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Deadline;
 import redis.clients.util.Hashing;
 import redis.clients.util.Pool;
 
@@ -18,6 +25,9 @@ import redis.clients.util.Pool;
  */
 public class ShardedJedisPool extends Pool<ShardedJedis> {
 
+	/** 池对象工厂 */
+	private final ShardedJedisFactory factory;
+
 	/**
 	 * 创建一个"数据分片的Jedis连接池"实例。
 	 * 
@@ -55,7 +65,65 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 	 */
 	public ShardedJedisPool(GenericObjectPoolConfig poolConfig,
 			List<JedisShardInfo> shards, Hashing algo, Pattern keyTagPattern) {
-		super(poolConfig, new ShardedJedisFactory(shards, algo, keyTagPattern));
+		this(poolConfig, new ShardedJedisFactory(shards, algo, keyTagPattern));
+	}
+
+	private ShardedJedisPool(GenericObjectPoolConfig poolConfig,
+			ShardedJedisFactory factory) {
+		super(poolConfig, factory);
+		this.factory = factory;
+	}
+
+	/**
+	 * 设置池对象内分片节点链接的空闲超时时间。
+	 * 
+	 * <pre>
+	 * 超过该时间未被访问的分片节点链接，在池对象归还给连接池时被关闭，下次访问时自动重新建立；
+	 * 开启 testWhileIdle 时，空闲驱逐线程也会关闭池中空闲对象的这类链接。
+	 * 小于等于0表示不关闭(默认)。
+	 * </pre>
+	 * 
+	 * @param shardIdleTimeout
+	 *            空闲超时时间(毫秒)
+	 */
+	public void setShardIdleTimeout(long shardIdleTimeout) {
+		factory.shardIdleTimeout = shardIdleTimeout;
+	}
+
+	public long getShardIdleTimeout() {
+		return factory.shardIdleTimeout;
+	}
+
+	/**
+	 * 设置创建池对象时是否并行地连接所有分片节点。
+	 * 
+	 * <pre>
+	 * 默认不连接，分片节点在第一次访问时才连接；
+	 * 开启后，池对象创建时所有分片节点同时连接(见{@link ShardedJedis#connectAll(Executor, long)})，
+	 * 总耗时不超过{@link #setConnectOnCreateTimeout(long)}，不会按分片节点数串行累加。
+	 * </pre>
+	 * 
+	 * @param connectOnCreate
+	 */
+	public void setConnectOnCreate(boolean connectOnCreate) {
+		factory.connectOnCreate = connectOnCreate;
+	}
+
+	public boolean isConnectOnCreate() {
+		return factory.connectOnCreate;
+	}
+
+	/**
+	 * 设置创建池对象时连接所有分片节点的总超时时间(毫秒)，默认为{@link Protocol#DEFAULT_TIMEOUT}。
+	 * 
+	 * @param connectOnCreateTimeout
+	 */
+	public void setConnectOnCreateTimeout(long connectOnCreateTimeout) {
+		factory.connectOnCreateTimeout = connectOnCreateTimeout;
+	}
+
+	public long getConnectOnCreateTimeout() {
+		return factory.connectOnCreateTimeout;
 	}
 
 	/**
@@ -74,12 +142,35 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 		return jedis;
 	}
 
+	/**
+	 * 在截止时间内获取一个{@link ShardedJedis}资源，并对之后访问的所有分片节点应用该截止时间(归还时清除)。
+	 */
+	@Override
+	public ShardedJedis getResource(Deadline deadline) {
+		ShardedJedis jedis = super.getResource(deadline);
+		jedis.setDataSource(this);
+		jedis.setDeadline(deadline);
+		return jedis;
+	}
+
+	/**
+	 * 预热时并行地连接池对象的所有分片节点。
+	 */
+	@Override
+	protected void warmUpResource(ShardedJedis resource, long timeoutMillis) {
+		resource.connectAll(factory.getConnectExecutor(), timeoutMillis);
+	}
+
 	/**
 	 * 将正常的{@link ShardedJedis}资源返回给"连接池"。
+	 * <p>
+	 * 损坏的分片节点链接会被单独丢弃，池对象仍然返回给连接池。
 	 */
 	@Override
 	public void returnResource(ShardedJedis resource) {
 		if (resource != null) {
+			resource.setDeadline(null);
+			resource.repairBrokenShards();
 			resource.resetState();
 			this.returnResourceObject(resource);
 		}
@@ -91,6 +182,14 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 	@Override
 	public void returnBrokenResource(ShardedJedis resource) {
 		if (resource != null) {
+			// 先直接关闭已建立的链接，销毁时(在连接池的监视器锁内)不再发送 QUIT 命令
+			for (Jedis jedis : resource.getCreatedShards()) {
+				try {
+					jedis.disconnect();
+				} catch (JedisConnectionException e) {
+					// 忽略异常
+				}
+			}
 			this.returnBrokenResourceObject(resource);
 		}
 	}
@@ -109,6 +208,14 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 		private Hashing algo;
 		/** 键标记模式 */
 		private Pattern keyTagPattern;
+		/** 分片节点链接的空闲超时时间(毫秒)，小于等于0表示不关闭 */
+		volatile long shardIdleTimeout;
+		/** 创建池对象时是否并行地连接所有分片节点 */
+		volatile boolean connectOnCreate;
+		/** 创建池对象时连接所有分片节点的总超时时间(毫秒) */
+		volatile long connectOnCreateTimeout = Protocol.DEFAULT_TIMEOUT;
+		/** 执行连接任务的执行器(延迟创建) */
+		private Executor connectExecutor;
 
 		public ShardedJedisFactory(List<JedisShardInfo> shards, Hashing algo,
 				Pattern keyTagPattern) {
@@ -125,9 +232,34 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 		@Override
 		public PooledObject<ShardedJedis> makeObject() throws Exception {
 			ShardedJedis jedis = new ShardedJedis(shards, algo, keyTagPattern);
+			if (connectOnCreate) {
+				jedis.connectAll(this.getConnectExecutor(),
+						connectOnCreateTimeout);
+			}
 			return new DefaultPooledObject<ShardedJedis>(jedis);
 		}
 
+		/*
+		 * 连接执行器：线程数不超过分片节点数，空闲线程60秒后退出，
+		 * 线程用尽时拒绝执行(该分片节点保持未连接，见 connectAll)，不在调用线程中执行。
+		 */
+		private synchronized Executor getConnectExecutor() {
+			if (connectExecutor == null) {
+				final ThreadPoolExecutor executor = new ThreadPoolExecutor(0,
+						Math.max(1, shards.size()), 60L, TimeUnit.SECONDS,
+						new SynchronousQueue<Runnable>(), new ThreadFactory() {
+							@Override
+							public Thread newThread(Runnable r) {
+								Thread t = new Thread(r, "jedis-shard-connect");
+								t.setDaemon(true);
+								return t;
+							}
+						}, new ThreadPoolExecutor.AbortPolicy());
+				connectExecutor = executor;
+			}
+			return connectExecutor;
+		}
+
 		/**
 		 * 销毁整个{@link ShardedJedis}资源连接池。
 		 * <p>
@@ -138,7 +270,11 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 				throws Exception {
 			final ShardedJedis shardedJedis = pooledShardedJedis.getObject();
 			
-			for (Jedis jedis : shardedJedis.getAllShards()) {
+			// 只关闭已经建立的链接
+			for (Jedis jedis : shardedJedis.getCreatedShards()) {
+				if (!jedis.isConnected()) {
+					continue;
+				}
 				try {
 					// 1. 请求服务端关闭连接
 					jedis.quit();
@@ -157,6 +293,7 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 
 		/**
 		 * 校验整个{@link ShardedJedis}资源连接池中的所有是Jedis客户端链接否正常。
+		 * 只校验已经建立的链接，未建立链接的分片节点在第一次访问时才会连接。
 		 * <p>
 		 * {@inheritDoc}
 		 */
@@ -165,8 +302,8 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 				PooledObject<ShardedJedis> pooledShardedJedis) {
 			try {
 				ShardedJedis jedis = pooledShardedJedis.getObject();
-				for (Jedis shard : jedis.getAllShards()) {
-					if (!shard.ping().equals("PONG")) { // PING 命令
+				for (Jedis shard : jedis.getCreatedShards()) {
+					if (shard.isConnected() && !shard.ping().equals("PONG")) { // PING 命令
 						return false;
 					}
 				}
@@ -182,10 +319,18 @@ public class ShardedJedisPool extends Pool<ShardedJedis> {
 			//
 		}
 
+		/**
+		 * 关闭池对象内空闲超时的分片节点链接。
+		 * <p>
+		 * {@inheritDoc}
+		 */
 		@Override
 		public void passivateObject(PooledObject<ShardedJedis> p)
 				throws Exception {
-			//
+			final long idleTimeout = shardIdleTimeout;
+			if (idleTimeout > 0) {
+				p.getObject().releaseIdleShards(idleTimeout);
+			}
 		}
 
 	}
@@ -0,0 +1,254 @@
+package redis.clients.jedis;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * "分片集群游标迭代器"实现，并行地扫描所有分片节点，并把各节点的结果合并成一个流。
+ *
+ * <pre>
+ * 每个分片节点由一个独立的任务驱动自己的{@link ScanIterator}，
+ * 将读到的页放入一个有界队列；调用方从队列中依次取出页进行迭代。
+ * 队列满时，扫描任务会暂停，从而限制内存占用。
+ * </pre>
+ *
+ * <font color="red">注意：</font>迭代期间，各分片节点的链接被扫描任务独占，
+ * 在迭代结束或调用{@link #close()}之前，不能通过该分片集群执行其它命令。
+ */
+public class ShardedScanIterator<T> implements Iterator<T>, Closeable {
+
+	/** 默认的队列容量(页数) */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	/** "分片节点扫描结束"标记 */
+	private static final Object END = new Object();
+
+	/** 页队列，包括页、结束标记和异常 */
+	private final BlockingQueue<Object> queue;
+	/** 扫描任务列表 */
+	private final List<Future<?>> producers;
+	/** 执行扫描任务的执行器 */
+	private final ExecutorService executor;
+	/** 迭代结束时，是否关闭执行器 */
+	private final ExecutorService ownedExecutor;
+
+	/** 仍在扫描的分片节点数 */
+	private int running;
+	/** 当前页 */
+	private Iterator<T> page = Collections.<T> emptyList().iterator();
+	/** 是否已关闭 */
+	private volatile boolean closed;
+
+	/**
+	 * 创建一个"分片集群游标迭代器"实例。
+	 *
+	 * @param shards
+	 *            各分片节点的游标迭代器
+	 * @param executor
+	 *            执行扫描任务的执行器
+	 */
+	public ShardedScanIterator(Collection<? extends ScanIterator<T>> shards,
+			ExecutorService executor) {
+		this(shards, executor, DEFAULT_QUEUE_CAPACITY, false);
+	}
+
+	/**
+	 * 创建一个"分片集群游标迭代器"实例。
+	 *
+	 * @param shards
+	 *            各分片节点的游标迭代器
+	 * @param executor
+	 *            执行扫描任务的执行器
+	 * @param queueCapacity
+	 *            队列容量(页数)
+	 * @param ownsExecutor
+	 *            迭代结束时，是否关闭执行器
+	 */
+	ShardedScanIterator(Collection<? extends ScanIterator<T>> shards,
+			ExecutorService executor, int queueCapacity, boolean ownsExecutor) {
+		this.queue = new ArrayBlockingQueue<Object>(queueCapacity);
+		this.producers = new ArrayList<Future<?>>(shards.size());
+		this.executor = executor;
+		this.ownedExecutor = ownsExecutor ? executor : null;
+		for (final ScanIterator<T> shard : shards) {
+			producers.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					produce(shard);
+				}
+			}));
+		}
+		this.running = shards.size();
+	}
+
+	/**
+	 * 创建一个"分片集群游标迭代器"实例，每个分片节点使用一个独立的守护线程扫描，
+	 * 迭代结束或关闭时释放这些线程。
+	 *
+	 * @param shards
+	 *            各分片节点的游标迭代器
+	 */
+	ShardedScanIterator(Collection<? extends ScanIterator<T>> shards) {
+		this(shards, Executors.newFixedThreadPool(Math.max(1, shards.size()),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "jedis-sharded-scan");
+						t.setDaemon(true);
+						return t;
+					}
+				}), DEFAULT_QUEUE_CAPACITY, true);
+	}
+
+	/*
+	 * 扫描一个分片节点，并将结果页放入队列。
+	 */
+	private void produce(ScanIterator<T> shard) {
+		try {
+			List<T> next;
+			while (!closed && (next = shard.nextPage()) != null) {
+				this.publish(next);
+				if (Thread.currentThread().isInterrupted()) {
+					// 执行器被强制关闭(如 shutdownNow())：以异常结束，而不是静默地丢失结果
+					throw new JedisException("Scan of shard interrupted");
+				}
+			}
+			if (closed) {
+				shard.close();
+			}
+		} catch (Throwable t) {
+			this.publish(t);
+		} finally {
+			this.publish(END);
+		}
+	}
+
+	/*
+	 * 放入队列；已关闭时直接丢弃。忽略中断(之后恢复中断标记)，保证结束标记一定被放入队列。
+	 */
+	private void publish(Object item) {
+		boolean interrupted = false;
+		try {
+			while (!closed) {
+				try {
+					if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean hasNext() {
+		while (!page.hasNext()) {
+			if (running == 0) {
+				this.shutdownExecutor();
+				return false;
+			}
+			final Object item;
+			try {
+				item = queue.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.close();
+				throw new JedisException(e);
+			}
+			if (item == null) {
+				if (executor.isTerminated() && queue.isEmpty()) {
+					// 执行器已终止，未开始的扫描任务被丢弃(如 shutdownNow())，不会再有结束标记
+					this.close();
+					throw new JedisException(
+							"Scan executor terminated before all shards finished");
+				}
+			} else if (item == END) {
+				running--;
+			} else if (item instanceof Throwable) {
+				this.close();
+				if (item instanceof JedisException) {
+					throw (JedisException) item;
+				}
+				throw new JedisException((Throwable) item);
+			} else {
+				page = ((List<T>) item).iterator();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * 提前结束迭代，并等待所有扫描任务退出，以便各分片节点的链接可以继续使用。
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		queue.clear();
+		page = Collections.<T> emptyList().iterator();
+		boolean interrupted = false;
+		for (Future<?> producer : producers) {
+			while (true) {
+				try {
+					producer.get(100, TimeUnit.MILLISECONDS);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					break;
+				} catch (TimeoutException e) {
+					if (executor.isTerminated()) {
+						// 任务已被丢弃，永远不会执行
+						break;
+					}
+				}
+			}
+		}
+		running = 0;
+		this.shutdownExecutor();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void shutdownExecutor() {
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+	}
+
+}
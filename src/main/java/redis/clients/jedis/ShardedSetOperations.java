@@ -0,0 +1,948 @@
+package redis.clients.jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.ZParams.Aggregate;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.ByteArrayHashMap;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * "分片集群集合运算"实现，在客户端计算跨分片节点的 SINTER/SUNION/SDIFF 和 ZUNIONSTORE/ZINTERSTORE。
+ *
+ * <pre>
+ * 工作方式：
+ * 	1. 按所属的分片节点对键分组，每组由一个独立的任务通过 SSCAN/ZSCAN 分页读取成员，各组并行；
+ * 	2. 每收到一页就合并到哈希表中(流式合并)，不先读取整个集合；
+ * 	3. 交集：先通过 SCARD/ZCARD 找出最小的集合作为候选，其它集合只标记候选是否命中，
+ * 	   候选远少于集合元素时改用管道化的 SISMEMBER/ZSCORE，内存只与最小的集合成正比；
+ * 	   差集同理，内存只与第一个集合成正比；
+ * 	4. 结果写入目标键所属的分片节点：先 DEL，再通过管道分批发送 SADD/ZADD。
+ * </pre>
+ *
+ * <font color="red">注意：</font>运算期间，各分片节点的链接被运算任务使用，
+ * 调用方在运算返回之前不能通过该分片集群执行其它命令。结果不是原子快照，
+ * 运算期间被修改的集合可能部分反映修改。
+ */
+public class ShardedSetOperations {
+
+	/** 默认的每页成员数 */
+	public static final int DEFAULT_SCAN_COUNT = 1000;
+	/** 默认的每条写入命令(及每批查询)的成员数 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/** 候选数不超过集合大小的该分之一时，逐个查询比扫描整个集合更省 */
+	private static final int LOOKUP_RATIO = 4;
+
+	/** 分片集群 */
+	private final BinaryShardedJedis sharded;
+	/** 执行扫描任务的执行器(为null时，每次运算使用独立的线程) */
+	private final ExecutorService executor;
+	/** 游标参数 */
+	private ScanParams scanParams = new ScanParams().count(DEFAULT_SCAN_COUNT);
+	/** 写入批次大小 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	public ShardedSetOperations(BinaryShardedJedis sharded) {
+		this(sharded, null);
+	}
+
+	/**
+	 * 创建一个"分片集群集合运算"实例。
+	 *
+	 * @param sharded
+	 *            分片集群
+	 * @param executor
+	 *            执行扫描任务的执行器
+	 */
+	public ShardedSetOperations(BinaryShardedJedis sharded,
+			ExecutorService executor) {
+		this.sharded = sharded;
+		this.executor = executor;
+	}
+
+	public void setScanParams(ScanParams scanParams) {
+		this.scanParams = scanParams;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	// ---------------------------------------------------------------- 集合
+
+	public Set<byte[]> sinter(byte[]... keys) {
+		return toSet(this.intersect(keys, null));
+	}
+
+	public Set<String> sinter(String... keys) {
+		return toStringSet(this.intersect(encode(keys), keys));
+	}
+
+	public Set<byte[]> sunion(byte[]... keys) {
+		return toSet(this.union(keys, null));
+	}
+
+	public Set<String> sunion(String... keys) {
+		return toStringSet(this.union(encode(keys), keys));
+	}
+
+	public Set<byte[]> sdiff(byte[]... keys) {
+		return toSet(this.diff(keys, null));
+	}
+
+	public Set<String> sdiff(String... keys) {
+		return toStringSet(this.diff(encode(keys), keys));
+	}
+
+	/**
+	 * 计算交集并写入目标键。
+	 *
+	 * @return 结果集合的元素个数
+	 */
+	public Long sinterstore(byte[] dstkey, byte[]... keys) {
+		return this.storeSet(dstkey, null, this.intersect(keys, null));
+	}
+
+	public Long sinterstore(String dstkey, String... keys) {
+		return this.storeSet(SafeEncoder.encode(dstkey), dstkey,
+				this.intersect(encode(keys), keys));
+	}
+
+	public Long sunionstore(byte[] dstkey, byte[]... keys) {
+		return this.storeSet(dstkey, null, this.union(keys, null));
+	}
+
+	public Long sunionstore(String dstkey, String... keys) {
+		return this.storeSet(SafeEncoder.encode(dstkey), dstkey,
+				this.union(encode(keys), keys));
+	}
+
+	public Long sdiffstore(byte[] dstkey, byte[]... keys) {
+		return this.storeSet(dstkey, null, this.diff(keys, null));
+	}
+
+	public Long sdiffstore(String dstkey, String... keys) {
+		return this.storeSet(SafeEncoder.encode(dstkey), dstkey,
+				this.diff(encode(keys), keys));
+	}
+
+	/*
+	 * 交集：以最小的集合为候选，其它集合并行地标记命中。
+	 */
+	private List<byte[]> intersect(final byte[][] keys, String[] names) {
+		final long[] cards = this.cardinalities(Command.SCARD, keys, names);
+		final int smallest = indexOfMin(cards);
+		if (cards[smallest] == 0) {
+			return new ArrayList<byte[]>(0);
+		}
+		final Candidates candidates = this.scanMembers(keys[smallest],
+				nameAt(names, smallest));
+		final List<BitSet> hits = this.markSetHits(keys, names, cards,
+				smallest, candidates);
+		final BitSet all = new BitSet(candidates.size());
+		all.set(0, candidates.size());
+		for (BitSet hit : hits) {
+			all.and(hit);
+		}
+		return candidates.select(all);
+	}
+
+	/*
+	 * 差集：以第一个集合为候选，其它集合并行地标记命中。
+	 */
+	private List<byte[]> diff(final byte[][] keys, String[] names) {
+		final Candidates candidates = this.scanMembers(keys[0],
+				nameAt(names, 0));
+		if (candidates.size() == 0 || keys.length == 1) {
+			return candidates.members;
+		}
+		final long[] cards = this.cardinalities(Command.SCARD, keys, names);
+		final List<BitSet> hits = this.markSetHits(keys, names, cards, 0,
+				candidates);
+		final BitSet keep = new BitSet(candidates.size());
+		for (BitSet hit : hits) {
+			keep.or(hit);
+		}
+		keep.flip(0, candidates.size());
+		return candidates.select(keep);
+	}
+
+	/*
+	 * 并集：各组并行扫描，每页合并到本组的哈希表，最后合并各组。
+	 */
+	private List<byte[]> union(final byte[][] keys, String[] names) {
+		final List<ByteArrayHashMap> parts = this.runPerShard(keys, names,
+				new ShardTask<ByteArrayHashMap>() {
+					@Override
+					public ByteArrayHashMap run(Jedis jedis, List<Integer> indexes) {
+						final ByteArrayHashMap members = new ByteArrayHashMap();
+						for (int index : indexes) {
+							final ScanIterator<byte[]> it = jedis.sscanIterator(
+									keys[index], scanParams);
+							List<byte[]> page;
+							while ((page = it.nextPage()) != null) {
+								for (byte[] member : page) {
+									members.put(member, member);
+								}
+							}
+						}
+						return members;
+					}
+				});
+		ByteArrayHashMap result = null;
+		for (ByteArrayHashMap part : parts) {
+			if (result == null || part.size() > result.size()) {
+				// 以最大的部分为基础合并
+				if (result != null) {
+					part.putAll(result);
+				}
+				result = part;
+			} else {
+				result.putAll(part);
+			}
+		}
+		return new ArrayList<byte[]>(result.keySet());
+	}
+
+	/*
+	 * 对候选以外的每个集合，并行地计算候选命中位图。
+	 */
+	private List<BitSet> markSetHits(final byte[][] keys, String[] names,
+			final long[] cards, final int skip, final Candidates candidates) {
+		final List<List<BitSet>> parts = this.runPerShard(keys, names,
+				new ShardTask<List<BitSet>>() {
+					@Override
+					public List<BitSet> run(Jedis jedis, List<Integer> indexes) {
+						final List<BitSet> hits = new ArrayList<BitSet>();
+						for (int index : indexes) {
+							if (index == skip) {
+								continue;
+							}
+							if ((long) candidates.size() * LOOKUP_RATIO <= cards[index]) {
+								hits.add(lookupSetHits(jedis, keys[index],
+										candidates));
+							} else {
+								hits.add(scanSetHits(jedis, keys[index],
+										candidates));
+							}
+						}
+						return hits;
+					}
+				});
+		final List<BitSet> hits = new ArrayList<BitSet>();
+		for (List<BitSet> part : parts) {
+			hits.addAll(part);
+		}
+		return hits;
+	}
+
+	/*
+	 * 扫描一个集合，标记命中的候选。
+	 */
+	private BitSet scanSetHits(Jedis jedis, byte[] key, Candidates candidates) {
+		final BitSet hits = new BitSet(candidates.size());
+		final ScanIterator<byte[]> it = jedis.sscanIterator(key, scanParams);
+		List<byte[]> page;
+		while ((page = it.nextPage()) != null) {
+			for (byte[] member : page) {
+				final int i = candidates.indexOf(member);
+				if (i >= 0) {
+					hits.set(i);
+				}
+			}
+		}
+		return hits;
+	}
+
+	/*
+	 * 通过管道分批发送 SISMEMBER，标记命中的候选。
+	 */
+	private BitSet lookupSetHits(Jedis jedis, byte[] key, Candidates candidates) {
+		final Client client = jedis.getClient();
+		final BitSet hits = new BitSet(candidates.size());
+		for (int from = 0; from < candidates.size(); from += batchSize) {
+			final int to = Math.min(candidates.size(), from + batchSize);
+			for (int i = from; i < to; i++) {
+				client.sismember(key, candidates.members.get(i));
+			}
+			JedisDataException failure = null;
+			for (int i = from; i < to; i++) {
+				try {
+					if (client.getIntegerReply() == 1) {
+						hits.set(i);
+					}
+				} catch (JedisDataException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+		return hits;
+	}
+
+	/*
+	 * 读取整个集合作为候选。
+	 */
+	private Candidates scanMembers(byte[] key, String name) {
+		final Candidates candidates = new Candidates();
+		final ScanIterator<byte[]> it = this.shardOf(key, name).sscanIterator(
+				key, scanParams);
+		List<byte[]> page;
+		while ((page = it.nextPage()) != null) {
+			for (byte[] member : page) {
+				candidates.add(member);
+			}
+		}
+		return candidates;
+	}
+
+	/*
+	 * 分批写入集合结果。
+	 */
+	private Long storeSet(byte[] dstkey, String dstName, List<byte[]> members) {
+		final Client client = this.shardOf(dstkey, dstName).getClient();
+		client.del(dstkey);
+		int commands = 1;
+		for (int from = 0; from < members.size(); from += batchSize) {
+			final List<byte[]> batch = members.subList(from,
+					Math.min(members.size(), from + batchSize));
+			client.sadd(dstkey, batch.toArray(new byte[batch.size()][]));
+			commands++;
+		}
+		drainReplies(client, commands);
+		return Long.valueOf(members.size());
+	}
+
+	// ---------------------------------------------------------------- 有序集合
+
+	public Long zunionstore(byte[] dstkey, byte[]... sets) {
+		return this.zunionstore(dstkey, new ZParams(), sets);
+	}
+
+	public Long zunionstore(String dstkey, String... sets) {
+		return this.zunionstore(dstkey, new ZParams(), sets);
+	}
+
+	public Long zunionstore(String dstkey, ZParams params, String... sets) {
+		return this.zunionstore(SafeEncoder.encode(dstkey), dstkey, params,
+				encode(sets), sets);
+	}
+
+	/**
+	 * 计算有序集合的并集并写入目标键，支持权重和聚合方式(与 ZUNIONSTORE 相同)。
+	 *
+	 * @return 结果有序集合的元素个数
+	 */
+	public Long zunionstore(byte[] dstkey, ZParams params, byte[]... sets) {
+		return this.zunionstore(dstkey, null, params, sets, null);
+	}
+
+	private Long zunionstore(byte[] dstkey, String dstName, ZParams params,
+			final byte[][] sets, String[] names) {
+		final Weights weights = new Weights(params, sets.length);
+		final List<ScoreMap> parts = this.runPerShard(sets, names,
+				new ShardTask<ScoreMap>() {
+					@Override
+					public ScoreMap run(Jedis jedis, List<Integer> indexes) {
+						final ScoreMap scores = new ScoreMap();
+						for (int index : indexes) {
+							final double weight = weights.weight(index);
+							final ScanIterator<Tuple> it = jedis.zscanIterator(
+									sets[index], scanParams);
+							List<Tuple> page;
+							while ((page = it.nextPage()) != null) {
+								for (Tuple tuple : page) {
+									scores.merge(tuple.getBinaryElement(),
+											weighted(tuple.getScore(), weight),
+											weights.aggregate);
+								}
+							}
+						}
+						return scores;
+					}
+				});
+		ScoreMap result = parts.get(0);
+		for (int i = 1; i < parts.size(); i++) {
+			result = ScoreMap.merge(result, parts.get(i), weights.aggregate);
+		}
+		return this.storeSortedSet(dstkey, dstName, result.members,
+				result.scores);
+	}
+
+	public Long zinterstore(byte[] dstkey, byte[]... sets) {
+		return this.zinterstore(dstkey, new ZParams(), sets);
+	}
+
+	public Long zinterstore(String dstkey, String... sets) {
+		return this.zinterstore(dstkey, new ZParams(), sets);
+	}
+
+	public Long zinterstore(String dstkey, ZParams params, String... sets) {
+		return this.zinterstore(SafeEncoder.encode(dstkey), dstkey, params,
+				encode(sets), sets);
+	}
+
+	/**
+	 * 计算有序集合的交集并写入目标键，支持权重和聚合方式(与 ZINTERSTORE 相同)。
+	 * 内存只与最小的有序集合成正比。
+	 *
+	 * @return 结果有序集合的元素个数
+	 */
+	public Long zinterstore(byte[] dstkey, ZParams params, byte[]... sets) {
+		return this.zinterstore(dstkey, null, params, sets, null);
+	}
+
+	private Long zinterstore(byte[] dstkey, String dstName, ZParams params,
+			final byte[][] sets, String[] names) {
+		final Weights weights = new Weights(params, sets.length);
+		final long[] cards = this.cardinalities(Command.ZCARD, sets, names);
+		final int smallest = indexOfMin(cards);
+		if (cards[smallest] == 0) {
+			return this.storeSortedSet(dstkey, dstName,
+					new ArrayList<byte[]>(0), new double[0]);
+		}
+
+		// 候选及其(加权后的)分值
+		final Candidates candidates = new Candidates();
+		final ScanIterator<Tuple> it = this.shardOf(sets[smallest],
+				nameAt(names, smallest)).zscanIterator(sets[smallest],
+				scanParams);
+		final double smallestWeight = weights.weight(smallest);
+		double[] scores = new double[(int) Math.min(cards[smallest],
+				Integer.MAX_VALUE - 8)];
+		List<Tuple> page;
+		while ((page = it.nextPage()) != null) {
+			for (Tuple tuple : page) {
+				if (candidates.indexOf(tuple.getBinaryElement()) < 0) {
+					final int i = candidates.add(tuple.getBinaryElement());
+					if (i >= scores.length) {
+						scores = Arrays.copyOf(scores, scores.length * 2 + 1);
+					}
+					scores[i] = weighted(tuple.getScore(), smallestWeight);
+				}
+			}
+		}
+
+		// 其它有序集合并行地给出命中和分值
+		final List<List<ScoreHits>> parts = this.runPerShard(sets, names,
+				new ShardTask<List<ScoreHits>>() {
+					@Override
+					public List<ScoreHits> run(Jedis jedis, List<Integer> indexes) {
+						final List<ScoreHits> hits = new ArrayList<ScoreHits>();
+						for (int index : indexes) {
+							if (index == smallest) {
+								continue;
+							}
+							final ScoreHits h = (long) candidates.size()
+									* LOOKUP_RATIO <= cards[index] ? lookupScores(
+									jedis, sets[index], candidates)
+									: scanScores(jedis, sets[index], candidates);
+							h.weight = weights.weight(index);
+							hits.add(h);
+						}
+						return hits;
+					}
+				});
+
+		final BitSet all = new BitSet(candidates.size());
+		all.set(0, candidates.size());
+		for (List<ScoreHits> part : parts) {
+			for (ScoreHits h : part) {
+				all.and(h.hits);
+				for (int i = all.nextSetBit(0); i >= 0; i = all.nextSetBit(i + 1)) {
+					scores[i] = aggregate(weights.aggregate, scores[i],
+							weighted(h.scores[i], h.weight));
+				}
+			}
+		}
+		final List<byte[]> members = candidates.select(all);
+		final double[] selected = new double[members.size()];
+		int n = 0;
+		for (int i = all.nextSetBit(0); i >= 0; i = all.nextSetBit(i + 1)) {
+			selected[n++] = scores[i];
+		}
+		return this.storeSortedSet(dstkey, dstName, members, selected);
+	}
+
+	/*
+	 * 扫描一个有序集合，记录候选的命中和分值。
+	 */
+	private ScoreHits scanScores(Jedis jedis, byte[] key, Candidates candidates) {
+		final ScoreHits h = new ScoreHits(candidates.size());
+		final ScanIterator<Tuple> it = jedis.zscanIterator(key, scanParams);
+		List<Tuple> page;
+		while ((page = it.nextPage()) != null) {
+			for (Tuple tuple : page) {
+				final int i = candidates.indexOf(tuple.getBinaryElement());
+				if (i >= 0) {
+					h.hits.set(i);
+					h.scores[i] = tuple.getScore();
+				}
+			}
+		}
+		return h;
+	}
+
+	/*
+	 * 通过管道分批发送 ZSCORE，记录候选的命中和分值。
+	 */
+	private ScoreHits lookupScores(Jedis jedis, byte[] key,
+			Candidates candidates) {
+		final Client client = jedis.getClient();
+		final ScoreHits h = new ScoreHits(candidates.size());
+		for (int from = 0; from < candidates.size(); from += batchSize) {
+			final int to = Math.min(candidates.size(), from + batchSize);
+			for (int i = from; i < to; i++) {
+				client.zscore(key, candidates.members.get(i));
+			}
+			JedisDataException failure = null;
+			for (int i = from; i < to; i++) {
+				try {
+					final String score = client.getBulkReply();
+					if (score != null) {
+						h.hits.set(i);
+						h.scores[i] = Double.parseDouble(score);
+					}
+				} catch (JedisDataException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+		return h;
+	}
+
+	/*
+	 * 分批写入有序集合结果。
+	 */
+	private Long storeSortedSet(byte[] dstkey, String dstName,
+			List<byte[]> members, double[] scores) {
+		final Client client = this.shardOf(dstkey, dstName).getClient();
+		client.del(dstkey);
+		int commands = 1;
+		for (int from = 0; from < members.size(); from += batchSize) {
+			final int to = Math.min(members.size(), from + batchSize);
+			final byte[][] args = new byte[1 + (to - from) * 2][];
+			args[0] = dstkey;
+			for (int i = from, a = 1; i < to; i++) {
+				args[a++] = Protocol.toByteArray(scores[i]);
+				args[a++] = members.get(i);
+			}
+			client.sendCommand(Command.ZADD, args);
+			commands++;
+		}
+		drainReplies(client, commands);
+		return Long.valueOf(members.size());
+	}
+
+	// ---------------------------------------------------------------- 公共部分
+
+	/*
+	 * 并行地获取各键的元素个数(每组通过管道发送)。
+	 */
+	private long[] cardinalities(final Command command, final byte[][] keys,
+			String[] names) {
+		final long[] cards = new long[keys.length];
+		this.runPerShard(keys, names, new ShardTask<Void>() {
+			@Override
+			public Void run(Jedis jedis, List<Integer> indexes) {
+				final Client client = jedis.getClient();
+				for (int index : indexes) {
+					client.sendCommand(command, keys[index]);
+				}
+				JedisDataException failure = null;
+				for (int index : indexes) {
+					try {
+						cards[index] = client.getIntegerReply();
+					} catch (JedisDataException e) {
+						if (failure == null) {
+							failure = e;
+						}
+					}
+				}
+				if (failure != null) {
+					throw failure;
+				}
+				return null;
+			}
+		});
+		return cards;
+	}
+
+	/*
+	 * 读取写入命令的响应；类型错误等"请求错误"在读完所有响应后抛出。
+	 */
+	private static void drainReplies(Client client, int commands) {
+		JedisDataException failure = null;
+		for (int i = 0; i < commands; i++) {
+			try {
+				client.getIntegerReply();
+			} catch (JedisDataException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * 一个分片节点上的任务。
+	 */
+	private interface ShardTask<R> {
+
+		/**
+		 * @param jedis
+		 *            分片节点(由该任务独占)
+		 * @param indexes
+		 *            属于该分片节点的键的下标
+		 */
+		R run(Jedis jedis, List<Integer> indexes);
+	}
+
+	/*
+	 * 键所属的分片节点：字符串键(name不为null)按键标签路由，与 ShardedJedis 一致。
+	 */
+	private Jedis shardOf(byte[] key, String name) {
+		return name != null ? sharded.getShard(name) : sharded.getShard(key);
+	}
+
+	private static String nameAt(String[] names, int index) {
+		return names == null ? null : names[index];
+	}
+
+	/*
+	 * 按分片节点分组，各组并行执行任务(第一组在调用线程中执行)，按分组顺序返回结果。
+	 */
+	private <R> List<R> runPerShard(byte[][] keys, String[] names,
+			final ShardTask<R> task) {
+		final Map<Jedis, List<Integer>> groups = new IdentityHashMap<Jedis, List<Integer>>();
+		final Map<Jedis, List<Integer>> ordered = new LinkedHashMap<Jedis, List<Integer>>();
+		for (int i = 0; i < keys.length; i++) {
+			final Jedis jedis = this.shardOf(keys[i], nameAt(names, i));
+			List<Integer> indexes = groups.get(jedis);
+			if (indexes == null) {
+				indexes = new ArrayList<Integer>();
+				groups.put(jedis, indexes);
+				ordered.put(jedis, indexes);
+			}
+			indexes.add(i);
+		}
+
+		final List<R> results = new ArrayList<R>(ordered.size());
+		if (ordered.size() == 1) {
+			final Map.Entry<Jedis, List<Integer>> only = ordered.entrySet()
+					.iterator().next();
+			results.add(task.run(only.getKey(), only.getValue()));
+			return results;
+		}
+
+		ExecutorService pool = executor;
+		if (pool == null) {
+			pool = newExecutor(ordered.size() - 1);
+		}
+		try {
+			final Iterator<Map.Entry<Jedis, List<Integer>>> it = ordered
+					.entrySet().iterator();
+			final Map.Entry<Jedis, List<Integer>> first = it.next();
+			final List<Future<R>> futures = new ArrayList<Future<R>>();
+			while (it.hasNext()) {
+				final Map.Entry<Jedis, List<Integer>> group = it.next();
+				futures.add(pool.submit(new Callable<R>() {
+					@Override
+					public R call() {
+						return task.run(group.getKey(), group.getValue());
+					}
+				}));
+			}
+			RuntimeException failure = null;
+			try {
+				results.add(task.run(first.getKey(), first.getValue()));
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			// 等待所有任务结束，链接才可以继续使用
+			boolean interrupted = false;
+			for (Future<R> future : futures) {
+				while (true) {
+					try {
+						results.add(future.get());
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					} catch (ExecutionException e) {
+						if (failure == null) {
+							failure = e.getCause() instanceof JedisException ? (JedisException) e
+									.getCause() : new JedisException(e.getCause());
+						}
+						break;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return results;
+		} finally {
+			if (pool != executor) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static ExecutorService newExecutor(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "jedis-sharded-set-operations");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	private static int indexOfMin(long[] values) {
+		int min = 0;
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] < values[min]) {
+				min = i;
+			}
+		}
+		return min;
+	}
+
+	private static byte[][] encode(String[] keys) {
+		final byte[][] raw = new byte[keys.length][];
+		for (int i = 0; i < raw.length; i++) {
+			raw[i] = SafeEncoder.encode(keys[i]);
+		}
+		return raw;
+	}
+
+	private static Set<byte[]> toSet(List<byte[]> members) {
+		final ByteArrayHashMap set = new ByteArrayHashMap(members.size());
+		for (byte[] member : members) {
+			set.put(member, member);
+		}
+		return set.keySet();
+	}
+
+	private static Set<String> toStringSet(List<byte[]> members) {
+		final Set<String> set = new LinkedHashSet<String>(
+				members.size() * 4 / 3 + 1);
+		for (byte[] member : members) {
+			set.add(SafeEncoder.encode(member));
+		}
+		return set;
+	}
+
+	/*
+	 * 与 Redis 一致：加权后出现 NaN(如 0 * inf)时，视为0。
+	 */
+	static double weighted(double score, double weight) {
+		final double r = score * weight;
+		return Double.isNaN(r) ? 0 : r;
+	}
+
+	static double aggregate(Aggregate aggregate, double a, double b) {
+		switch (aggregate) {
+		case MIN:
+			return Math.min(a, b);
+		case MAX:
+			return Math.max(a, b);
+		default:
+			final double sum = a + b;
+			// inf + -inf
+			return Double.isNaN(sum) ? 0 : sum;
+		}
+	}
+
+	/**
+	 * 成员的键包装，按内容比较。
+	 */
+	private static final class Member {
+
+		final byte[] bytes;
+		private final int hash;
+
+		Member(byte[] bytes) {
+			this.bytes = bytes;
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Member && hash == ((Member) o).hash
+					&& Arrays.equals(bytes, ((Member) o).bytes);
+		}
+	}
+
+	/**
+	 * 候选成员：按加入顺序编号，可按内容查找编号。
+	 */
+	private static final class Candidates {
+
+		final List<byte[]> members = new ArrayList<byte[]>();
+		private final Map<Member, Integer> index = new HashMap<Member, Integer>();
+
+		int size() {
+			return members.size();
+		}
+
+		/*
+		 * 加入一个成员(SSCAN 可能重复返回)，返回其编号。
+		 */
+		int add(byte[] member) {
+			final Member key = new Member(member);
+			final Integer existing = index.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			final int i = members.size();
+			members.add(member);
+			index.put(key, i);
+			return i;
+		}
+
+		int indexOf(byte[] member) {
+			final Integer i = index.get(new Member(member));
+			return i == null ? -1 : i;
+		}
+
+		List<byte[]> select(BitSet selected) {
+			final List<byte[]> result = new ArrayList<byte[]>(
+					selected.cardinality());
+			for (int i = selected.nextSetBit(0); i >= 0; i = selected
+					.nextSetBit(i + 1)) {
+				result.add(members.get(i));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * 一个有序集合对候选的命中和分值。
+	 */
+	private static final class ScoreHits {
+
+		final BitSet hits;
+		final double[] scores;
+		double weight;
+
+		ScoreHits(int size) {
+			this.hits = new BitSet(size);
+			this.scores = new double[size];
+		}
+	}
+
+	/**
+	 * "成员-分值"累加表。
+	 */
+	private static final class ScoreMap {
+
+		final List<byte[]> members = new ArrayList<byte[]>();
+		double[] scores = new double[16];
+		private final Map<Member, Integer> index = new HashMap<Member, Integer>();
+
+		void merge(byte[] member, double score, Aggregate aggregate) {
+			final Member key = new Member(member);
+			final Integer existing = index.get(key);
+			if (existing != null) {
+				scores[existing] = aggregate(aggregate, scores[existing], score);
+				return;
+			}
+			final int i = members.size();
+			members.add(member);
+			index.put(key, i);
+			if (i == scores.length) {
+				scores = Arrays.copyOf(scores, i * 2);
+			}
+			scores[i] = score;
+		}
+
+		/*
+		 * 把较小的表合并到较大的表中。
+		 */
+		static ScoreMap merge(ScoreMap a, ScoreMap b, Aggregate aggregate) {
+			final ScoreMap big = a.members.size() >= b.members.size() ? a : b;
+			final ScoreMap small = big == a ? b : a;
+			for (int i = 0; i < small.members.size(); i++) {
+				big.merge(small.members.get(i), small.scores[i], aggregate);
+			}
+			return big;
+		}
+	}
+
+	/**
+	 * 从{@link ZParams}中解析出的权重和聚合方式。
+	 */
+	private static final class Weights {
+
+		private final double[] weights;
+		final Aggregate aggregate;
+
+		Weights(ZParams params, int sets) {
+			this.weights = new double[sets];
+			Arrays.fill(weights, 1);
+			Aggregate aggregate = Aggregate.SUM;
+			final Collection<byte[]> raw = params.getParams();
+			final Iterator<byte[]> it = raw.iterator();
+			while (it.hasNext()) {
+				final String token = SafeEncoder.encode(it.next());
+				if ("WEIGHTS".equalsIgnoreCase(token)) {
+					for (int i = 0; i < sets && it.hasNext(); i++) {
+						weights[i] = Double.parseDouble(SafeEncoder.encode(it
+								.next()));
+					}
+				} else if ("AGGREGATE".equalsIgnoreCase(token) && it.hasNext()) {
+					aggregate = Aggregate.valueOf(SafeEncoder.encode(it.next())
+							.toUpperCase());
+				}
+			}
+			this.aggregate = aggregate;
+		}
+
+		double weight(int index) {
+			return weights[index];
+		}
+	}
+
+}
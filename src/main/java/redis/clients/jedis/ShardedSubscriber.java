@@ -0,0 +1,767 @@
+package redis.clients.jedis;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import redis.clients.jedis.Protocol.Keyword;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.PatternIndex;
+import redis.clients.util.SafeEncoder;
+import redis.clients.util.Sharded;
+
+/**
+ * "分片集群订阅器"实现，每个分片节点只使用一条链接承载所有订阅，并在执行器上分发消息。
+ *
+ * <pre>
+ * 工作方式：
+ * 	1. 频道与键使用相同的分片规则(见{@link ShardedJedis#publish(String, String)})，
+ * 	   频道订阅只发往所属的分片节点；模式订阅发往所有分片节点；
+ * 	2. 每个分片节点由一个独立的线程通过{@link Protocol#readPushMessage}读取推送消息，
+ * 	   不创建中间列表，也不把频道名称解码为字符串；
+ * 	3. 订阅和退订只更新本地订阅表并通过管道发送命令，不等待确认，不阻塞调用方；
+ * 	4. 每个频道(或模式)的消息在执行器上串行分发，保持发布顺序；不同频道之间并行分发；
+ * 	5. 链接断开时自动重连(退避重试)，并重新发送所有订阅。
+ * </pre>
+ *
+ * 除了服务端的模式订阅(PSUBSCRIBE)，还支持"本地模式监听器"({@link #addPatternListener})：
+ * 只在客户端把已订阅频道的消息按模式路由，不向服务端发送 PSUBSCRIBE，
+ * 模式通过{@link PatternIndex}索引，分发代价不随模式数增长。
+ *
+ * 线程数只与分片节点数有关，与订阅数无关。线程安全。
+ */
+public class ShardedSubscriber implements Closeable {
+
+	/** 重新订阅时，每条命令包含的最大频道数 */
+	private static final int RESUBSCRIBE_BATCH = 1000;
+	/** 每次分发任务最多处理的消息数，避免一个繁忙频道长期占用线程 */
+	private static final int DISPATCH_BATCH = 64;
+	/** 初始的重连间隔(毫秒) */
+	private static final long MIN_RECONNECT_DELAY = 100;
+	/** 最大的重连间隔(毫秒) */
+	private static final long MAX_RECONNECT_DELAY = 5000;
+
+	/**
+	 * "消息监听器"定义。
+	 */
+	public interface MessageListener {
+
+		/**
+		 * 收到一条消息，在分发执行器中调用；同一频道(或模式)的消息按顺序串行调用。
+		 *
+		 * @param message
+		 *            消息
+		 */
+		void onMessage(Message message);
+	}
+
+	/** 分片集群 */
+	private final Sharded<Jedis, JedisShardInfo> sharded;
+	/** 各分片节点的订阅链接 */
+	private final Map<JedisShardInfo, ShardConnection> connections = new LinkedHashMap<JedisShardInfo, ShardConnection>();
+	/** 分发执行器 */
+	private final Executor executor;
+	/** 关闭时需要关闭的执行器 */
+	private final ExecutorService ownedExecutor;
+
+	/** 频道订阅表 */
+	private final ConcurrentMap<ChannelKey, Subscription> channels = new ConcurrentHashMap<ChannelKey, Subscription>();
+	/** 模式订阅表 */
+	private final ConcurrentMap<ChannelKey, Subscription> patterns = new ConcurrentHashMap<ChannelKey, Subscription>();
+	/** 串行化模式订阅的更新 */
+	private final Lock patternLock = new ReentrantLock();
+	/** 本地模式索引 */
+	private final PatternIndex<Subscription> localPatterns = new PatternIndex<Subscription>();
+	/** 保护本地模式索引 */
+	private final ReadWriteLock localPatternLock = new ReentrantReadWriteLock();
+	/** 是否有本地模式(没有时跳过索引查询) */
+	private volatile boolean hasLocalPatterns;
+
+	private volatile boolean closed;
+
+	/**
+	 * 创建一个"分片集群订阅器"，使用独立的分发线程池(线程数等于处理器数)。
+	 *
+	 * @param sharded
+	 *            分片集群(如{@link ShardedJedis})，只用于获取分片节点信息和路由频道
+	 */
+	public ShardedSubscriber(Sharded<Jedis, JedisShardInfo> sharded) {
+		this(sharded, Executors.newFixedThreadPool(Runtime.getRuntime()
+				.availableProcessors(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "jedis-subscriber-dispatch");
+				t.setDaemon(true);
+				return t;
+			}
+		}), true);
+	}
+
+	/**
+	 * 创建一个"分片集群订阅器"。
+	 *
+	 * @param sharded
+	 *            分片集群(如{@link ShardedJedis})，只用于获取分片节点信息和路由频道
+	 * @param executor
+	 *            分发执行器
+	 */
+	public ShardedSubscriber(Sharded<Jedis, JedisShardInfo> sharded,
+			Executor executor) {
+		this(sharded, executor, false);
+	}
+
+	private ShardedSubscriber(Sharded<Jedis, JedisShardInfo> sharded,
+			Executor executor, boolean ownsExecutor) {
+		this.sharded = sharded;
+		this.executor = executor;
+		this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+		for (JedisShardInfo shard : sharded.getAllShardInfo()) {
+			if (!connections.containsKey(shard)) {
+				connections.put(shard, new ShardConnection(shard));
+			}
+		}
+		for (ShardConnection connection : connections.values()) {
+			connection.start();
+		}
+	}
+
+	public void subscribe(MessageListener listener, String... channels) {
+		this.subscribe(listener, encode(channels), channels);
+	}
+
+	/**
+	 * 订阅频道。已被其它监听器订阅的频道不再发送 SUBSCRIBE 命令。
+	 *
+	 * @param listener
+	 *            消息监听器
+	 * @param channels
+	 *            频道列表
+	 */
+	public void subscribe(MessageListener listener, byte[]... channels) {
+		this.subscribe(listener, channels, null);
+	}
+
+	/*
+	 * 订阅频道；字符串频道(names 不为null)与{@link ShardedJedis#publish(String, String)}一样按键标签路由。
+	 */
+	private void subscribe(MessageListener listener, byte[][] channels,
+			String[] names) {
+		this.checkOpen();
+		for (Map.Entry<ShardConnection, List<byte[]>> entry : this.route(
+				channels, names).entrySet()) {
+			final ShardConnection connection = entry.getKey();
+			connection.lock.lock();
+			try {
+				final List<byte[]> added = new ArrayList<byte[]>();
+				for (byte[] channel : entry.getValue()) {
+					if (add(this.channels, channel, connection.shard,
+							listener)) {
+						added.add(channel);
+					}
+				}
+				connection.send(Protocol.Command.SUBSCRIBE, added);
+			} finally {
+				connection.lock.unlock();
+			}
+		}
+	}
+
+	public void unsubscribe(MessageListener listener, String... channels) {
+		this.unsubscribe(listener, encode(channels), channels);
+	}
+
+	/**
+	 * 取消监听器对频道的订阅。频道的最后一个监听器取消时，发送 UNSUBSCRIBE 命令。
+	 *
+	 * @param listener
+	 *            消息监听器
+	 * @param channels
+	 *            频道列表
+	 */
+	public void unsubscribe(MessageListener listener, byte[]... channels) {
+		this.unsubscribe(listener, channels, null);
+	}
+
+	private void unsubscribe(MessageListener listener, byte[][] channels,
+			String[] names) {
+		for (Map.Entry<ShardConnection, List<byte[]>> entry : this.route(
+				channels, names).entrySet()) {
+			final ShardConnection connection = entry.getKey();
+			connection.lock.lock();
+			try {
+				final List<byte[]> removed = new ArrayList<byte[]>();
+				for (byte[] channel : entry.getValue()) {
+					if (remove(this.channels, channel, listener)) {
+						removed.add(channel);
+					}
+				}
+				connection.send(Protocol.Command.UNSUBSCRIBE, removed);
+			} finally {
+				connection.lock.unlock();
+			}
+		}
+	}
+
+	public void psubscribe(MessageListener listener, String... patterns) {
+		this.psubscribe(listener, encode(patterns));
+	}
+
+	/**
+	 * 订阅模式。模式订阅发往所有分片节点。
+	 *
+	 * @param listener
+	 *            消息监听器
+	 * @param patterns
+	 *            模式列表
+	 */
+	public void psubscribe(MessageListener listener, byte[]... patterns) {
+		this.checkOpen();
+		patternLock.lock();
+		try {
+			final List<byte[]> added = new ArrayList<byte[]>();
+			for (byte[] pattern : patterns) {
+				if (add(this.patterns, pattern, null, listener)) {
+					added.add(pattern);
+				}
+			}
+			for (ShardConnection connection : connections.values()) {
+				connection.lock.lock();
+				try {
+					connection.send(Protocol.Command.PSUBSCRIBE, added);
+				} finally {
+					connection.lock.unlock();
+				}
+			}
+		} finally {
+			patternLock.unlock();
+		}
+	}
+
+	public void punsubscribe(MessageListener listener, String... patterns) {
+		this.punsubscribe(listener, encode(patterns));
+	}
+
+	/**
+	 * 取消监听器对模式的订阅。
+	 *
+	 * @param listener
+	 *            消息监听器
+	 * @param patterns
+	 *            模式列表
+	 */
+	public void punsubscribe(MessageListener listener, byte[]... patterns) {
+		patternLock.lock();
+		try {
+			final List<byte[]> removed = new ArrayList<byte[]>();
+			for (byte[] pattern : patterns) {
+				if (remove(this.patterns, pattern, listener)) {
+					removed.add(pattern);
+				}
+			}
+			for (ShardConnection connection : connections.values()) {
+				connection.lock.lock();
+				try {
+					connection.send(Protocol.Command.PUNSUBSCRIBE, removed);
+				} finally {
+					connection.lock.unlock();
+				}
+			}
+		} finally {
+			patternLock.unlock();
+		}
+	}
+
+	public void addPatternListener(MessageListener listener,
+			String... patterns) {
+		this.addPatternListener(listener, encode(patterns));
+	}
+
+	/**
+	 * 添加本地模式监听器：已订阅频道的消息若匹配模式，也分发给该监听器。
+	 * 不会向服务端发送任何命令，未通过{@link #subscribe}订阅的频道的消息不会被收到。
+	 *
+	 * @param listener
+	 *            消息监听器
+	 * @param patterns
+	 *            模式列表(Redis glob 语法)
+	 */
+	public void addPatternListener(MessageListener listener,
+			byte[]... patterns) {
+		this.checkOpen();
+		localPatternLock.writeLock().lock();
+		try {
+			for (byte[] pattern : patterns) {
+				Subscription subscription = localPatterns.get(pattern);
+				if (subscription == null) {
+					subscription = new Subscription(pattern, null);
+					localPatterns.put(pattern, subscription);
+				}
+				subscription.listeners.addIfAbsent(listener);
+			}
+			hasLocalPatterns = !localPatterns.isEmpty();
+		} finally {
+			localPatternLock.writeLock().unlock();
+		}
+	}
+
+	public void removePatternListener(MessageListener listener,
+			String... patterns) {
+		this.removePatternListener(listener, encode(patterns));
+	}
+
+	/**
+	 * 移除本地模式监听器。
+	 */
+	public void removePatternListener(MessageListener listener,
+			byte[]... patterns) {
+		localPatternLock.writeLock().lock();
+		try {
+			for (byte[] pattern : patterns) {
+				final Subscription subscription = localPatterns.get(pattern);
+				if (subscription != null
+						&& subscription.listeners.remove(listener)
+						&& subscription.listeners.isEmpty()) {
+					localPatterns.remove(pattern);
+				}
+			}
+			hasLocalPatterns = !localPatterns.isEmpty();
+		} finally {
+			localPatternLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 返回已订阅的频道数。
+	 */
+	public int getSubscribedChannels() {
+		return channels.size();
+	}
+
+	/**
+	 * 返回已订阅的模式数。
+	 */
+	public int getSubscribedPatterns() {
+		return patterns.size();
+	}
+
+	/**
+	 * 关闭所有订阅链接，并停止分发线程池(如果是自己创建的)。
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (ShardConnection connection : connections.values()) {
+			connection.close();
+		}
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Subscriber is closed");
+		}
+	}
+
+	private static byte[][] encode(String[] names) {
+		final byte[][] raw = new byte[names.length][];
+		for (int i = 0; i < raw.length; i++) {
+			raw[i] = SafeEncoder.encode(names[i]);
+		}
+		return raw;
+	}
+
+	/*
+	 * 按分片节点对频道分组：已订阅的频道使用订阅时确定的分片节点；
+	 * 字符串频道按键标签路由(与{@link ShardedJedis#publish(String, String)}一致)，二进制频道按原始字节路由。
+	 */
+	private Map<ShardConnection, List<byte[]>> route(byte[][] channels,
+			String[] names) {
+		final Map<ShardConnection, List<byte[]>> routes = new LinkedHashMap<ShardConnection, List<byte[]>>();
+		for (int i = 0; i < channels.length; i++) {
+			final byte[] channel = channels[i];
+			final Subscription existing = this.channels.get(new ChannelKey(
+					channel));
+			final JedisShardInfo shard;
+			if (existing != null) {
+				shard = existing.shard;
+			} else if (names != null) {
+				shard = sharded.getShardInfo(names[i]);
+			} else {
+				shard = sharded.getShardInfo(channel);
+			}
+			final ShardConnection connection = connections.get(shard);
+			List<byte[]> list = routes.get(connection);
+			if (list == null) {
+				list = new ArrayList<byte[]>();
+				routes.put(connection, list);
+			}
+			list.add(channel);
+		}
+		return routes;
+	}
+
+	/*
+	 * 添加监听器；返回是否是该频道(或模式)的第一个监听器。调用方持有相应的锁。
+	 */
+	private boolean add(ConcurrentMap<ChannelKey, Subscription> table,
+			byte[] name, JedisShardInfo shard, MessageListener listener) {
+		final ChannelKey key = new ChannelKey(name);
+		Subscription subscription = table.get(key);
+		final boolean first = subscription == null;
+		if (first) {
+			subscription = new Subscription(name, shard);
+			table.put(key, subscription);
+		}
+		subscription.listeners.addIfAbsent(listener);
+		return first;
+	}
+
+	/*
+	 * 移除监听器；返回是否移除了该频道(或模式)的最后一个监听器。调用方持有相应的锁。
+	 */
+	private static boolean remove(
+			ConcurrentMap<ChannelKey, Subscription> table, byte[] name,
+			MessageListener listener) {
+		final ChannelKey key = new ChannelKey(name);
+		final Subscription subscription = table.get(key);
+		if (subscription == null || !subscription.listeners.remove(listener)
+				|| !subscription.listeners.isEmpty()) {
+			return false;
+		}
+		table.remove(key);
+		return true;
+	}
+
+	/*
+	 * 把一条推送消息交给相应的订阅；已退订的频道(或模式)的消息直接丢弃。
+	 * matched 是读线程复用的临时列表。
+	 */
+	void dispatch(Keyword kind, byte[][] parts, List<Subscription> matched) {
+		if (kind == Keyword.MESSAGE) {
+			final Subscription subscription = channels.get(new ChannelKey(
+					parts[0]));
+			if (subscription != null) {
+				subscription.offer(new Message(null, parts[0], parts[1]));
+			}
+			if (hasLocalPatterns) {
+				this.dispatchLocalPatterns(parts[0], parts[1], matched);
+			}
+		} else if (kind == Keyword.PMESSAGE) {
+			final Subscription subscription = patterns.get(new ChannelKey(
+					parts[2]));
+			if (subscription != null) {
+				subscription.offer(new Message(parts[2], parts[0], parts[1]));
+			}
+		}
+		// 其它为订阅/退订确认
+	}
+
+	/*
+	 * 按本地模式索引分发。
+	 */
+	private void dispatchLocalPatterns(byte[] channel, byte[] body,
+			List<Subscription> matched) {
+		matched.clear();
+		localPatternLock.readLock().lock();
+		try {
+			localPatterns.match(channel, matched);
+		} finally {
+			localPatternLock.readLock().unlock();
+		}
+		for (int i = 0; i < matched.size(); i++) {
+			final Subscription subscription = matched.get(i);
+			subscription.offer(new Message(subscription.name, channel, body));
+		}
+		matched.clear();
+	}
+
+	/**
+	 * 一条发布/订阅消息。
+	 */
+	public static final class Message {
+
+		private final byte[] pattern;
+		private final byte[] channel;
+		private final byte[] body;
+
+		Message(byte[] pattern, byte[] channel, byte[] body) {
+			this.pattern = pattern;
+			this.channel = channel;
+			this.body = body;
+		}
+
+		/**
+		 * 返回匹配的模式；频道订阅的消息返回null。
+		 */
+		public String getPattern() {
+			return pattern == null ? null : SafeEncoder.encode(pattern);
+		}
+
+		public byte[] getBinaryPattern() {
+			return pattern;
+		}
+
+		public String getChannel() {
+			return SafeEncoder.encode(channel);
+		}
+
+		public byte[] getBinaryChannel() {
+			return channel;
+		}
+
+		public String getBody() {
+			return SafeEncoder.encode(body);
+		}
+
+		public byte[] getBinaryBody() {
+			return body;
+		}
+
+		@Override
+		public String toString() {
+			return this.getChannel() + ": " + this.getBody();
+		}
+	}
+
+	/**
+	 * 频道(或模式)名称的键包装，按内容比较。
+	 */
+	static final class ChannelKey {
+
+		final byte[] name;
+		private final int hash;
+
+		ChannelKey(byte[] name) {
+			this.name = name;
+			this.hash = Arrays.hashCode(name);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ChannelKey && hash == ((ChannelKey) o).hash
+					&& Arrays.equals(name, ((ChannelKey) o).name);
+		}
+	}
+
+	/**
+	 * 一个频道(或模式)的订阅：监听器列表和串行分发队列。
+	 */
+	final class Subscription implements Runnable {
+
+		/** 频道或模式名称 */
+		final byte[] name;
+		/** 频道所在的分片节点(模式为null) */
+		final JedisShardInfo shard;
+		final CopyOnWriteArrayList<MessageListener> listeners = new CopyOnWriteArrayList<MessageListener>();
+		private final ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<Message>();
+		/** 是否已有分发任务在执行或排队 */
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		Subscription(byte[] name, JedisShardInfo shard) {
+			this.name = name;
+			this.shard = shard;
+		}
+
+		void offer(Message message) {
+			queue.add(message);
+			this.schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// 执行器已关闭，丢弃
+					queue.clear();
+					scheduled.set(false);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < DISPATCH_BATCH; i++) {
+				final Message message = queue.poll();
+				if (message == null) {
+					break;
+				}
+				for (MessageListener listener : listeners) {
+					try {
+						listener.onMessage(message);
+					} catch (RuntimeException e) {
+						// 一个监听器的异常不影响其它监听器和后续消息
+					}
+				}
+			}
+			scheduled.set(false);
+			if (!queue.isEmpty()) {
+				this.schedule();
+			}
+		}
+	}
+
+	/**
+	 * 一个分片节点的订阅链接：调用线程负责发送订阅命令，独立的线程负责读取推送消息。
+	 */
+	final class ShardConnection implements Runnable {
+
+		/** 保护链接的写入和状态(持锁写入套接字，因此不使用 synchronized，见{@link redis.clients.util.VirtualThreads}) */
+		final Lock lock = new ReentrantLock();
+		private final JedisShardInfo shard;
+		private final Jedis jedis;
+		private final Thread reader;
+		/** 是否已连接(并已重新订阅) */
+		private boolean connected;
+
+		ShardConnection(JedisShardInfo shard) {
+			this.shard = shard;
+			this.jedis = shard.createResource();
+			// 读线程一直阻塞在读取上，调用线程同时持有 lock 写入订阅命令；聚集写入使用 SocketChannel 的套接字，
+			// JDK 12及以前它的读写共用一把阻塞锁，写入会永远等待，所以不论分片节点如何配置都关闭聚集写入
+			jedis.getClient().setGatheringWriteThreshold(0);
+			this.reader = new Thread(this, "jedis-subscriber-" + shard.getHost()
+					+ ":" + shard.getPort());
+			reader.setDaemon(true);
+		}
+
+		void start() {
+			reader.start();
+		}
+
+		/*
+		 * 发送订阅命令，不等待确认；未连接时忽略(连接后会重新订阅)。调用方持有 lock。
+		 */
+		void send(Protocol.Command command, List<byte[]> names) {
+			if (!connected || names.isEmpty()) {
+				return;
+			}
+			try {
+				final Client client = jedis.getClient();
+				for (int from = 0; from < names.size(); from += RESUBSCRIBE_BATCH) {
+					final List<byte[]> batch = names.subList(from,
+							Math.min(names.size(), from + RESUBSCRIBE_BATCH));
+					client.sendCommand(command,
+							batch.toArray(new byte[batch.size()][]));
+				}
+				client.flush();
+			} catch (JedisConnectionException e) {
+				// 由读线程负责重连和重新订阅
+				this.disconnect();
+			}
+		}
+
+		/*
+		 * 建立链接，并重新发送该分片节点的所有频道订阅和所有模式订阅。
+		 */
+		private void connect() {
+			lock.lock();
+			try {
+				if (closed) {
+					throw new JedisConnectionException("Subscriber is closed");
+				}
+				final Client client = jedis.getClient();
+				client.connect();
+				client.setTimeoutInfinite();
+				connected = true;
+
+				final List<byte[]> names = new ArrayList<byte[]>();
+				for (Subscription subscription : channels.values()) {
+					if (subscription.shard == shard) {
+						names.add(subscription.name);
+					}
+				}
+				this.send(Protocol.Command.SUBSCRIBE, names);
+				names.clear();
+				for (ChannelKey key : patterns.keySet()) {
+					names.add(key.name);
+				}
+				this.send(Protocol.Command.PSUBSCRIBE, names);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void disconnect() {
+			lock.lock();
+			try {
+				connected = false;
+				try {
+					jedis.disconnect();
+				} catch (JedisConnectionException e) {
+					// 忽略
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void run() {
+			long delay = MIN_RECONNECT_DELAY;
+			final byte[][] parts = new byte[3][];
+			final List<Subscription> matched = new ArrayList<Subscription>();
+			while (!closed) {
+				try {
+					this.connect();
+					delay = MIN_RECONNECT_DELAY;
+					final Client client = jedis.getClient();
+					while (!closed) {
+						final Keyword kind;
+						try {
+							kind = client.getPushMessage(parts);
+						} catch (JedisDataException e) {
+							// 服务端拒绝了某条订阅命令，不影响其它订阅
+							continue;
+						}
+						if (kind != null) {
+							dispatch(kind, parts, matched);
+						}
+					}
+				} catch (JedisConnectionException e) {
+					this.disconnect();
+					if (closed) {
+						break;
+					}
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException ie) {
+						break;
+					}
+					delay = Math.min(MAX_RECONNECT_DELAY, delay * 2);
+				}
+			}
+		}
+
+		void close() {
+			this.disconnect();
+			reader.interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,359 @@
+package redis.clients.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 以字节数组内容为键的紧凑哈希表，使用开放寻址法（线性探测）实现。
+ *
+ * <pre>
+ * 与{@link JedisByteHashMap}相比：
+ * 	1. 不为每个键创建包装对象，也没有{@link java.util.HashMap}的条目对象开销；
+ * 	2. 键、值和哈希值分别保存在平行的扁平数组里，哈希值缓存，扩容时不重新计算；
+ * 	3. 按插入顺序迭代。
+ * </pre>
+ *
+ * 非线程安全。
+ */
+public class ByteArrayHashMap extends AbstractMap<byte[], byte[]> {
+
+	/** 哈希槽：空 */
+	private static final int FREE = 0;
+	/** 哈希槽：已删除 */
+	private static final int REMOVED = -1;
+
+	/** 哈希槽表，保存"条目索引+1" */
+	private int[] table;
+	/** 键数组（按插入顺序，已删除的条目为null） */
+	private byte[][] keys;
+	/** 值数组 */
+	private byte[][] values;
+	/** 缓存的哈希值数组 */
+	private int[] hashes;
+
+	/** 已使用的条目数（包括已删除的） */
+	private int used;
+	/** 有效的条目数 */
+	private int size;
+	/** 结构修改次数 */
+	private int modCount;
+
+	public ByteArrayHashMap() {
+		this(8);
+	}
+
+	/**
+	 * 创建一个给定预期容量的哈希表。
+	 *
+	 * @param expectedSize
+	 *            预期的条目数
+	 */
+	public ByteArrayHashMap(int expectedSize) {
+		final int capacity = Math.max(4, expectedSize);
+		this.keys = new byte[capacity][];
+		this.values = new byte[capacity][];
+		this.hashes = new int[capacity];
+		this.table = new int[tableSizeFor(capacity)];
+	}
+
+	/*
+	 * 保证负载因子不超过0.75的2的幂。
+	 */
+	private static int tableSizeFor(int capacity) {
+		int n = 8;
+		while (n * 3 < capacity * 4) {
+			n <<= 1;
+		}
+		return n;
+	}
+
+	private static int hash(byte[] key) {
+		final int h = Arrays.hashCode(key);
+		return h ^ (h >>> 16);
+	}
+
+	/*
+	 * 查找键所在的条目索引，不存在时返回-1。
+	 */
+	private int indexOf(byte[] key, int h) {
+		final int mask = table.length - 1;
+		for (int i = h & mask;; i = (i + 1) & mask) {
+			final int slot = table[i];
+			if (slot == FREE) {
+				return -1;
+			}
+			if (slot != REMOVED) {
+				final int index = slot - 1;
+				if (hashes[index] == h && Arrays.equals(keys[index], key)) {
+					return index;
+				}
+			}
+		}
+	}
+
+	private int indexOf(Object key) {
+		if (!(key instanceof byte[])) {
+			return -1;
+		}
+		final byte[] k = (byte[]) key;
+		return this.indexOf(k, hash(k));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return this.indexOf(key) >= 0;
+	}
+
+	@Override
+	public byte[] get(Object key) {
+		final int index = this.indexOf(key);
+		return index >= 0 ? values[index] : null;
+	}
+
+	@Override
+	public byte[] put(byte[] key, byte[] value) {
+		if (key == null) {
+			throw new NullPointerException("key");
+		}
+		final int h = hash(key);
+		final int existing = this.indexOf(key, h);
+		if (existing >= 0) {
+			final byte[] old = values[existing];
+			values[existing] = value;
+			return old;
+		}
+
+		if (used == keys.length) {
+			this.grow();
+		}
+		final int index = used++;
+		keys[index] = key;
+		values[index] = value;
+		hashes[index] = h;
+		this.insertSlot(h, index);
+		size++;
+		modCount++;
+		return null;
+	}
+
+	/*
+	 * 在哈希槽表中插入一个条目索引，复用已删除的槽。
+	 */
+	private void insertSlot(int h, int index) {
+		final int mask = table.length - 1;
+		int i = h & mask;
+		while (table[i] > FREE) {
+			i = (i + 1) & mask;
+		}
+		table[i] = index + 1;
+	}
+
+	/*
+	 * 扩容：已删除的条目较多时，只压缩，不扩大。
+	 */
+	private void grow() {
+		final int capacity = size * 2 > keys.length ? keys.length * 2
+				: keys.length;
+		this.rebuild(capacity);
+	}
+
+	/*
+	 * 压缩条目数组，并重建哈希槽表。
+	 */
+	private void rebuild(int capacity) {
+		final byte[][] newKeys = new byte[capacity][];
+		final byte[][] newValues = new byte[capacity][];
+		final int[] newHashes = new int[capacity];
+		int n = 0;
+		for (int i = 0; i < used; i++) {
+			if (keys[i] != null) {
+				newKeys[n] = keys[i];
+				newValues[n] = values[i];
+				newHashes[n] = hashes[i];
+				n++;
+			}
+		}
+		this.keys = newKeys;
+		this.values = newValues;
+		this.hashes = newHashes;
+		this.used = n;
+		this.table = new int[tableSizeFor(capacity)];
+		for (int i = 0; i < n; i++) {
+			this.insertSlot(newHashes[i], i);
+		}
+	}
+
+	@Override
+	public byte[] remove(Object key) {
+		final int index = this.indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		final byte[] old = values[index];
+		this.removeAt(index);
+		return old;
+	}
+
+	private void removeAt(int index) {
+		final int mask = table.length - 1;
+		int i = hashes[index] & mask;
+		while (table[i] != index + 1) {
+			i = (i + 1) & mask;
+		}
+		table[i] = REMOVED;
+		keys[index] = null;
+		values[index] = null;
+		size--;
+		modCount++;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(table, FREE);
+		Arrays.fill(keys, 0, used, null);
+		Arrays.fill(values, 0, used, null);
+		used = 0;
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<byte[], byte[]>> entrySet() {
+		return new EntrySet();
+	}
+
+	/**
+	 * 条目集合视图。
+	 */
+	private final class EntrySet extends AbstractSet<Map.Entry<byte[], byte[]>> {
+
+		@Override
+		public Iterator<Map.Entry<byte[], byte[]>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			ByteArrayHashMap.this.clear();
+		}
+	}
+
+	/**
+	 * 按插入顺序的条目迭代器。
+	 */
+	private final class EntryIterator implements
+			Iterator<Map.Entry<byte[], byte[]>> {
+
+		/** 下一个条目的索引 */
+		private int next;
+		/** 上一次返回的条目索引 */
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		EntryIterator() {
+			this.advance();
+		}
+
+		private void advance() {
+			while (next < used && keys[next] == null) {
+				next++;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < used;
+		}
+
+		@Override
+		public Map.Entry<byte[], byte[]> next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= used) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			this.advance();
+			return new Entry(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt(last);
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	/**
+	 * 条目视图，直接读写平行数组。
+	 */
+	private final class Entry implements Map.Entry<byte[], byte[]> {
+
+		private final int index;
+
+		Entry(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public byte[] getKey() {
+			return keys[index];
+		}
+
+		@Override
+		public byte[] getValue() {
+			return values[index];
+		}
+
+		@Override
+		public byte[] setValue(byte[] value) {
+			final byte[] old = values[index];
+			values[index] = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			final Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return e.getKey() instanceof byte[]
+					&& Arrays.equals(keys[index], (byte[]) e.getKey())
+					&& (e.getValue() == null ? values[index] == null
+							: e.getValue() instanceof byte[]
+									&& Arrays.equals(values[index],
+											(byte[]) e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return hashes[index] ^ Arrays.hashCode(values[index]);
+		}
+	}
+
+}
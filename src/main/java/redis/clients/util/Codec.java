@@ -0,0 +1,71 @@
+package redis.clients.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * "值编解码器"定义，负责在对象与 Redis 中保存的字节内容之间转换。
+ * <p>
+ * 编码直接写入调用方提供的(可复用的)输出流；解码直接读取响应字节数组的一个区间，不要求先拷贝出来。
+ * 实现应当是线程安全的。
+ */
+public interface Codec<T> {
+
+	/** 原样保存字节数组 */
+	public static final Codec<byte[]> BYTES = new Codec<byte[]>() {
+		@Override
+		public void encode(byte[] value, OutputStream out) throws IOException {
+			out.write(value);
+		}
+
+		@Override
+		public byte[] decode(byte[] data, int offset, int length) {
+			if (offset == 0 && length == data.length) {
+				return data;
+			}
+			final byte[] value = new byte[length];
+			System.arraycopy(data, offset, value, 0, length);
+			return value;
+		}
+	};
+
+	/** 以"UTF-8"编码保存字符串 */
+	public static final Codec<String> STRING = new Codec<String>() {
+		@Override
+		public void encode(String value, OutputStream out) throws IOException {
+			out.write(SafeEncoder.encode(value));
+		}
+
+		@Override
+		public String decode(byte[] data, int offset, int length)
+				throws IOException {
+			return new String(data, offset, length, "UTF-8");
+		}
+	};
+
+	/**
+	 * 将对象编码后写入输出流。
+	 * 
+	 * @param value
+	 *            对象
+	 * @param out
+	 *            输出流
+	 * @throws IOException
+	 */
+	public void encode(T value, OutputStream out) throws IOException;
+
+	/**
+	 * 从字节数组的给定区间解码出对象。
+	 * 
+	 * @param data
+	 *            字节数组
+	 * @param offset
+	 *            起始位置
+	 * @param length
+	 *            长度
+	 * @return
+	 * @throws IOException
+	 */
+	public T decode(byte[] data, int offset, int length) throws IOException;
+
+}
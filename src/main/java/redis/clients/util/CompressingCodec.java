@@ -0,0 +1,253 @@
+package redis.clients.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * "压缩编解码器"实现，包装另一个编解码器，对超过阈值的编码结果进行压缩。
+ * 
+ * <pre>
+ * 存储格式(首字节为标记)：
+ * 	1. {@link #RAW}：标记 + 原始编码内容；
+ * 	2. {@link #DEFLATE}：标记 + 原始长度(4字节，大端) + Deflate 压缩内容。
+ * 压缩后不能变小的内容按原始格式保存，因此同一个键空间里可以混合存放两种格式。
+ * </pre>
+ * 
+ * 压缩器/解压器和临时缓冲区通过一个有界的池复用，多出的在归还时立即释放本地内存；
+ * 不再使用时应该调用{@link #close()}，释放池中压缩器/解压器占用的本地内存。
+ */
+public class CompressingCodec<T> implements Codec<T>, Closeable {
+
+	/** 标记：未压缩 */
+	public static final byte RAW = 0;
+	/** 标记：Deflate 压缩 */
+	public static final byte DEFLATE = 1;
+
+	/** 默认的压缩阈值(字节) */
+	public static final int DEFAULT_THRESHOLD = 1024;
+
+	/** 默认的最大解压长度(字节，与 Redis 字符串值的上限相同) */
+	public static final int DEFAULT_MAX_DECODED_LENGTH = 512 * 1024 * 1024;
+
+	/** 每个压缩状态保留的最大临时缓冲区大小 */
+	private static final int MAX_RETAINED = 64 * 1024;
+	/** Deflate 的最大压缩比(约1032:1)，用于拒绝长度明显不可信的内容 */
+	private static final int MAX_DEFLATE_RATIO = 1032;
+
+	/** 被包装的编解码器 */
+	private final Codec<T> codec;
+	/** 压缩阈值 */
+	private final int threshold;
+	/** 压缩级别 */
+	private final int level;
+	/** 最大解压长度 */
+	private volatile int maxDecodedLength = DEFAULT_MAX_DECODED_LENGTH;
+
+	/** 空闲的压缩状态 */
+	private final Queue<State> states = new ConcurrentLinkedQueue<State>();
+	/** 空闲的压缩状态数 */
+	private final AtomicInteger idleStates = new AtomicInteger();
+	/** 最多保留的空闲压缩状态数 */
+	private final int maxIdleStates = Runtime.getRuntime()
+			.availableProcessors() * 2;
+	private volatile boolean closed;
+
+	public CompressingCodec(Codec<T> codec) {
+		this(codec, DEFAULT_THRESHOLD, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * 创建一个"压缩编解码器"。
+	 * 
+	 * @param codec
+	 *            被包装的编解码器
+	 * @param threshold
+	 *            压缩阈值(字节)，编码结果不小于该值时才尝试压缩
+	 * @param level
+	 *            Deflate 压缩级别
+	 */
+	public CompressingCodec(Codec<T> codec, int threshold, int level) {
+		this.codec = codec;
+		this.threshold = threshold;
+		this.level = level;
+	}
+
+	/**
+	 * 设置最大解压长度(字节)，保存的原始长度超过该值的内容被视为损坏。
+	 * 
+	 * @param maxDecodedLength
+	 */
+	public void setMaxDecodedLength(int maxDecodedLength) {
+		if (maxDecodedLength < 0) {
+			throw new IllegalArgumentException("maxDecodedLength < 0");
+		}
+		this.maxDecodedLength = maxDecodedLength;
+	}
+
+	public int getMaxDecodedLength() {
+		return maxDecodedLength;
+	}
+
+	/*
+	 * 取出一个空闲的压缩状态，没有时创建一个。
+	 */
+	private State borrowState() {
+		final State st = states.poll();
+		if (st == null) {
+			return new State(level);
+		}
+		idleStates.decrementAndGet();
+		return st;
+	}
+
+	/*
+	 * 归还压缩状态；池已满或已关闭时，立即释放本地内存。
+	 */
+	private void returnState(State st) {
+		if (!closed && idleStates.incrementAndGet() <= maxIdleStates) {
+			states.offer(st);
+			if (closed && states.remove(st)) {
+				// 与 close() 并发
+				idleStates.decrementAndGet();
+				st.end();
+			}
+			return;
+		}
+		idleStates.decrementAndGet();
+		st.end();
+	}
+
+	@Override
+	public void encode(T value, OutputStream out) throws IOException {
+		final State st = this.borrowState();
+		try {
+			final ReusableByteArrayOutputStream raw = st.raw;
+			raw.reset(MAX_RETAINED);
+			codec.encode(value, raw);
+			final int n = raw.size();
+
+			if (n >= threshold && this.deflate(st, raw.getBuffer(), n)) {
+				out.write(st.packed.getBuffer(), 0, st.packed.size());
+			} else {
+				out.write(RAW);
+				out.write(raw.getBuffer(), 0, n);
+			}
+		} finally {
+			this.returnState(st);
+		}
+	}
+
+	/*
+	 * 压缩到 st.packed 中；压缩后不能变小时，返回false。
+	 */
+	private boolean deflate(State st, byte[] data, int n) {
+		final ReusableByteArrayOutputStream packed = st.packed;
+		packed.reset(MAX_RETAINED);
+		packed.write(DEFLATE);
+		packed.write(n >>> 24);
+		packed.write(n >>> 16);
+		packed.write(n >>> 8);
+		packed.write(n);
+
+		final Deflater deflater = st.deflater;
+		deflater.reset();
+		deflater.setInput(data, 0, n);
+		deflater.finish();
+		while (!deflater.finished()) {
+			if (packed.size() >= n) {
+				return false;
+			}
+			final byte[] buf = packed.ensureCapacity(4096);
+			packed.advance(deflater.deflate(buf, packed.size(), buf.length
+					- packed.size()));
+		}
+		return packed.size() < n + 1;
+	}
+
+	@Override
+	public T decode(byte[] data, int offset, int length) throws IOException {
+		if (length < 1) {
+			throw new IOException("Missing codec marker");
+		}
+		final byte marker = data[offset];
+		if (marker == RAW) {
+			return codec.decode(data, offset + 1, length - 1);
+		}
+		if (marker != DEFLATE || length < 5) {
+			throw new IOException("Unknown codec marker: " + marker);
+		}
+		final int n = ((data[offset + 1] & 0xff) << 24)
+				| ((data[offset + 2] & 0xff) << 16)
+				| ((data[offset + 3] & 0xff) << 8) | (data[offset + 4] & 0xff);
+		// 先校验保存的长度，再分配内存，避免损坏的内容引起 NegativeArraySizeException 或内存溢出
+		if (n < 0 || n > maxDecodedLength
+				|| n > (long) (length - 5) * MAX_DEFLATE_RATIO) {
+			throw new IOException("Invalid decoded length: " + n);
+		}
+		// 解码结果可能直接引用该数组，所以每次新分配
+		final byte[] plain = new byte[n];
+		final State st = this.borrowState();
+		try {
+			final Inflater inflater = st.inflater;
+			inflater.reset();
+			inflater.setInput(data, offset + 5, length - 5);
+			int pos = 0;
+			while (pos < n) {
+				final int k = inflater.inflate(plain, pos, n - pos);
+				if (k == 0 && (inflater.finished() || inflater.needsInput()
+						|| inflater.needsDictionary())) {
+					throw new IOException("Truncated compressed value");
+				}
+				pos += k;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			this.returnState(st);
+		}
+		return codec.decode(plain, 0, n);
+	}
+
+	/**
+	 * 释放空闲的压缩器/解压器占用的本地内存；正在使用的在归还时释放。
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		State st;
+		while ((st = states.poll()) != null) {
+			idleStates.decrementAndGet();
+			st.end();
+		}
+	}
+
+	/**
+	 * 每个线程的压缩状态。
+	 */
+	private static final class State {
+
+		final Deflater deflater;
+		final Inflater inflater = new Inflater();
+		/** 原始编码内容 */
+		final ReusableByteArrayOutputStream raw = new ReusableByteArrayOutputStream();
+		/** 压缩后的内容(含标记和长度) */
+		final ReusableByteArrayOutputStream packed = new ReusableByteArrayOutputStream();
+
+		State(int level) {
+			this.deflater = new Deflater(level);
+		}
+
+		void end() {
+			deflater.end();
+			inflater.end();
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package redis.clients.util;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * "截止时间"表示，用于限制一次调用的端到端耗时(从连接池等待、发送命令到读取响应)。
+ *
+ * <pre>
+ * 使用方式：
+ * 	Deadline deadline = Deadline.after(50);
+ * 	Jedis jedis = pool.getResource(deadline); // 连接池等待最多使用剩余时间
+ * 	jedis.get(key);                          // 连接与读取超时不超过剩余时间
+ * </pre>
+ *
+ * 基于{@link System#nanoTime()}，不受系统时钟调整的影响。不可变，线程安全。
+ */
+public final class Deadline {
+
+	/** 截止时间点(纳秒) */
+	private final long deadlineNanos;
+
+	private Deadline(long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	/**
+	 * 创建一个从现在起给定毫秒数之后的"截止时间"。
+	 *
+	 * @param millis
+	 * @return
+	 */
+	public static Deadline after(long millis) {
+		return new Deadline(System.nanoTime() + millis * 1000000L);
+	}
+
+	/**
+	 * 返回剩余的时间(毫秒)，已过期时返回0；不足1毫秒时向上取整为1。
+	 */
+	public long remainingMillis() {
+		final long remaining = deadlineNanos - System.nanoTime();
+		if (remaining <= 0) {
+			return 0;
+		}
+		return (remaining + 999999L) / 1000000L;
+	}
+
+	/**
+	 * 是否已经过期。
+	 */
+	public boolean isExpired() {
+		return deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * 返回剩余的时间(毫秒)，用作套接字超时时间，不超过给定的超时时间(0表示不限制)。
+	 *
+	 * @param timeout
+	 *            原来的超时时间(毫秒)
+	 * @return 剩余时间与原超时时间中较小的值
+	 * @throws JedisConnectionException
+	 *             已经过期
+	 */
+	public int timeout(int timeout) {
+		final long remaining = this.remainingMillis();
+		if (remaining == 0) {
+			throw new JedisConnectionException("Deadline exceeded");
+		}
+		if (timeout > 0 && timeout < remaining) {
+			return timeout;
+		}
+		return remaining > Integer.MAX_VALUE ? Integer.MAX_VALUE
+				: (int) remaining;
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline [remaining=" + this.remainingMillis() + "ms]";
+	}
+
+}
@@ -0,0 +1,234 @@
+package redis.clients.util;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * "HyperLogLog"的客户端表示，用于在本地解码、合并 Redis 的 HLL 字符串值并估算基数。
+ *
+ * <pre>
+ * Redis 的 HLL 字符串格式：
+ * 	文件头(16字节)："HYLL"，编码方式(1字节：0为密集，1为稀疏)，3字节保留，8字节缓存的基数；
+ * 	密集编码：16384个6位寄存器，按低位在前的方式紧密排列(12288字节)；
+ * 	稀疏编码：由 ZERO(00xxxxxx)、XZERO(01xxxxxx yyyyyyyy)和 VAL(1vvvvvxx)三种操作码组成的游程编码。
+ *
+ * 合并取各寄存器的最大值(与 PFMERGE 相同)；
+ * 基数估算使用 Ertl 的改进估算器(与 Redis 5.0 及以上版本的 PFCOUNT 结果一致)。
+ * </pre>
+ *
+ * 非线程安全。
+ */
+public class HyperLogLog {
+
+	/** 寄存器索引的位数 */
+	public static final int P = 14;
+	/** 寄存器个数 */
+	public static final int REGISTERS = 1 << P;
+	/** 用于计数的哈希位数 */
+	private static final int Q = 64 - P;
+	/** 寄存器的最大值 */
+	private static final int MAX_REGISTER = Q + 1;
+	/** 寄存器位数 */
+	private static final int REGISTER_BITS = 6;
+	private static final int REGISTER_MAX_MASK = (1 << REGISTER_BITS) - 1;
+
+	/** 文件头长度 */
+	private static final int HEADER_LENGTH = 16;
+	/** 密集编码的长度 */
+	private static final int DENSE_LENGTH = HEADER_LENGTH + REGISTERS
+			* REGISTER_BITS / 8;
+	private static final int DENSE = 0;
+	private static final int SPARSE = 1;
+
+	private static final double ALPHA_INF = 0.721347520444481703680;
+
+	/** 寄存器 */
+	private final byte[] registers = new byte[REGISTERS];
+
+	/**
+	 * 解码一个 Redis 的 HLL 字符串值。
+	 *
+	 * @param raw
+	 *            GET 返回的 HLL 字符串
+	 * @return
+	 * @throws JedisDataException
+	 *             不是有效的 HLL 字符串
+	 */
+	public static HyperLogLog decode(byte[] raw) {
+		final HyperLogLog hll = new HyperLogLog();
+		hll.merge(raw);
+		return hll;
+	}
+
+	/**
+	 * 把一个 Redis 的 HLL 字符串值合并到当前寄存器中(取最大值)，不创建中间对象。
+	 *
+	 * @param raw
+	 *            GET 返回的 HLL 字符串
+	 * @throws JedisDataException
+	 *             不是有效的 HLL 字符串
+	 */
+	public void merge(byte[] raw) {
+		if (raw.length < HEADER_LENGTH || raw[0] != 'H' || raw[1] != 'Y'
+				|| raw[2] != 'L' || raw[3] != 'L') {
+			throw invalid();
+		}
+		final int encoding = raw[4];
+		if (encoding == DENSE) {
+			this.mergeDense(raw);
+		} else if (encoding == SPARSE) {
+			this.mergeSparse(raw);
+		} else {
+			throw invalid();
+		}
+	}
+
+	private void mergeDense(byte[] raw) {
+		if (raw.length != DENSE_LENGTH) {
+			throw invalid();
+		}
+		for (int i = 0; i < REGISTERS; i++) {
+			final int bit = i * REGISTER_BITS;
+			final int b = HEADER_LENGTH + (bit >>> 3);
+			final int fb = bit & 7;
+			final int b0 = raw[b] & 0xff;
+			final int b1 = b + 1 < raw.length ? raw[b + 1] & 0xff : 0;
+			final int value = ((b0 >>> fb) | (b1 << (8 - fb)))
+					& REGISTER_MAX_MASK;
+			if (value > registers[i]) {
+				registers[i] = (byte) value;
+			}
+		}
+	}
+
+	private void mergeSparse(byte[] raw) {
+		int index = 0;
+		int p = HEADER_LENGTH;
+		while (p < raw.length) {
+			final int op = raw[p] & 0xff;
+			if ((op & 0xc0) == 0) {
+				// ZERO：1~64个0
+				index += (op & 0x3f) + 1;
+				p++;
+			} else if ((op & 0xc0) == 0x40) {
+				// XZERO：1~16384个0
+				if (p + 1 >= raw.length) {
+					throw invalid();
+				}
+				index += (((op & 0x3f) << 8) | (raw[p + 1] & 0xff)) + 1;
+				p += 2;
+			} else {
+				// VAL：1~4个值为1~32的寄存器
+				final int value = ((op >>> 2) & 0x1f) + 1;
+				final int run = (op & 0x3) + 1;
+				if (index + run > REGISTERS) {
+					throw invalid();
+				}
+				for (int i = 0; i < run; i++, index++) {
+					if (value > registers[index]) {
+						registers[index] = (byte) value;
+					}
+				}
+				p++;
+			}
+			if (index > REGISTERS) {
+				throw invalid();
+			}
+		}
+		if (index != REGISTERS) {
+			throw invalid();
+		}
+	}
+
+	/**
+	 * 合并另一个 HyperLogLog(取各寄存器的最大值)。
+	 */
+	public void merge(HyperLogLog other) {
+		for (int i = 0; i < REGISTERS; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * 返回一个寄存器的值。
+	 */
+	public int getRegister(int index) {
+		return registers[index];
+	}
+
+	/**
+	 * 设置一个寄存器的值(只会增大)。
+	 */
+	public void updateRegister(int index, int value) {
+		if (value > MAX_REGISTER || value < 0) {
+			throw new IllegalArgumentException("Register value out of range: "
+					+ value);
+		}
+		if (value > registers[index]) {
+			registers[index] = (byte) value;
+		}
+	}
+
+	/**
+	 * 估算基数(与 PFCOUNT 的算法一致)。
+	 */
+	public long count() {
+		final int[] histogram = new int[64];
+		for (int i = 0; i < REGISTERS; i++) {
+			histogram[registers[i]]++;
+		}
+		final double m = REGISTERS;
+		double z = m * tau((m - histogram[Q + 1]) / m);
+		for (int j = Q; j >= 1; j--) {
+			z += histogram[j];
+			z *= 0.5;
+		}
+		z += m * sigma(histogram[0] / m);
+		return Math.round(ALPHA_INF * m * m / z);
+	}
+
+	/*
+	 * Ertl 估算器中的 sigma 函数。
+	 */
+	private static double sigma(double x) {
+		if (x == 1.0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double zPrime;
+		double y = 1;
+		double z = x;
+		do {
+			x *= x;
+			zPrime = z;
+			z += x * y;
+			y += y;
+		} while (zPrime != z);
+		return z;
+	}
+
+	/*
+	 * Ertl 估算器中的 tau 函数。
+	 */
+	private static double tau(double x) {
+		if (x == 0.0 || x == 1.0) {
+			return 0.0;
+		}
+		double zPrime;
+		double y = 1.0;
+		double z = 1 - x;
+		do {
+			x = Math.sqrt(x);
+			zPrime = z;
+			y *= 0.5;
+			z -= (1 - x) * (1 - x) * y;
+		} while (zPrime != z);
+		return z / 3;
+	}
+
+	private static JedisDataException invalid() {
+		return new JedisDataException(
+				"WRONGTYPE Key is not a valid HyperLogLog string value.");
+	}
+
+}
@@ -0,0 +1,362 @@
+package redis.clients.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * "模式索引"实现，快速找出与一个频道名称匹配的所有 Redis glob 模式(*、?、[...]、\转义)。
+ *
+ * <pre>
+ * 索引结构：
+ * 	1. 每个模式按"第一个通配符之前的字面前缀"插入一棵字节前缀树；
+ * 	2. 匹配时沿频道名称在树中向下走，只有路径上各节点挂着的模式才是候选，
+ * 	   候选模式只需对"前缀之后的剩余部分"执行 glob 匹配(不含通配符的模式只需比较长度)；
+ * 	3. 以通配符开头的模式挂在根节点上，对每个频道都会检查(退化为逐个匹配)。
+ * </pre>
+ *
+ * 匹配代价约为 O(频道名称长度 + 候选模式数)，与模式总数基本无关。非线程安全。
+ *
+ * @param <T>
+ *            与模式关联的值
+ */
+public class PatternIndex<T> {
+
+	/** 根节点 */
+	private final Node<T> root = new Node<T>();
+	/** 模式数 */
+	private int size;
+
+	/**
+	 * 添加(或替换)一个模式。
+	 *
+	 * @param pattern
+	 *            glob 模式
+	 * @param value
+	 *            关联的值
+	 * @return 原来关联的值；不存在时返回null
+	 */
+	public T put(byte[] pattern, T value) {
+		final int prefix = literalPrefixLength(pattern);
+		final Node<T> node = this.descend(pattern, prefix, true);
+		for (Entry<T> entry : node.entries) {
+			if (Arrays.equals(entry.pattern, pattern)) {
+				final T old = entry.value;
+				entry.value = value;
+				return old;
+			}
+		}
+		node.entries.add(new Entry<T>(pattern, prefix, value));
+		size++;
+		return null;
+	}
+
+	/**
+	 * 返回与模式关联的值；不存在时返回null。
+	 */
+	public T get(byte[] pattern) {
+		final Node<T> node = this.descend(pattern,
+				literalPrefixLength(pattern), false);
+		if (node != null) {
+			for (Entry<T> entry : node.entries) {
+				if (Arrays.equals(entry.pattern, pattern)) {
+					return entry.value;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 移除一个模式。
+	 *
+	 * @return 原来关联的值；不存在时返回null
+	 */
+	public T remove(byte[] pattern) {
+		final Node<T> node = this.descend(pattern,
+				literalPrefixLength(pattern), false);
+		if (node == null) {
+			return null;
+		}
+		for (int i = 0; i < node.entries.size(); i++) {
+			final Entry<T> entry = node.entries.get(i);
+			if (Arrays.equals(entry.pattern, pattern)) {
+				node.entries.remove(i);
+				size--;
+				// 空的树枝保留，模式通常会被重新添加
+				return entry.value;
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * 找出与频道名称匹配的所有模式的值。
+	 *
+	 * @param channel
+	 *            频道名称
+	 * @param matches
+	 *            匹配的值被追加到该列表
+	 */
+	public void match(byte[] channel, List<? super T> matches) {
+		if (channel.length == 0) {
+			for (Entry<T> entry : root.entries) {
+				if (entry.literal) {
+					matches.add(entry.value);
+				}
+			}
+			return;
+		}
+		Node<T> node = root;
+		int depth = 0;
+		while (true) {
+			for (Entry<T> entry : node.entries) {
+				if (entry.literal ? depth == channel.length : matches(
+						entry.pattern, entry.prefix, channel, depth)) {
+					matches.add(entry.value);
+				}
+			}
+			if (depth == channel.length) {
+				return;
+			}
+			node = node.child(channel[depth]);
+			if (node == null) {
+				return;
+			}
+			depth++;
+		}
+	}
+
+	/**
+	 * 找出与频道名称匹配的所有模式的值。
+	 */
+	public List<T> match(byte[] channel) {
+		final List<T> matches = new ArrayList<T>(2);
+		this.match(channel, matches);
+		return matches;
+	}
+
+	/*
+	 * 沿模式的字面前缀向下走，必要时创建节点。
+	 */
+	private Node<T> descend(byte[] pattern, int prefix, boolean create) {
+		Node<T> node = root;
+		for (int i = 0; i < prefix && node != null; i++) {
+			node = create ? node.getOrCreateChild(pattern[i]) : node
+					.child(pattern[i]);
+		}
+		return node;
+	}
+
+	/*
+	 * 第一个通配符(或转义符)之前的字面前缀长度。
+	 */
+	static int literalPrefixLength(byte[] pattern) {
+		for (int i = 0; i < pattern.length; i++) {
+			switch (pattern[i]) {
+			case '*':
+			case '?':
+			case '[':
+			case '\\':
+				return i;
+			default:
+				break;
+			}
+		}
+		return pattern.length;
+	}
+
+	/**
+	 * 按 Redis 的 glob 规则(与 stringmatchlen 一致)判断字符串是否匹配模式。
+	 *
+	 * @param pattern
+	 *            glob 模式
+	 * @param string
+	 *            字符串
+	 * @return
+	 */
+	public static boolean matches(byte[] pattern, byte[] string) {
+		if (string.length == 0) {
+			// 与 Redis 一致：空字符串只匹配空模式
+			return pattern.length == 0;
+		}
+		return matches(pattern, 0, string, 0);
+	}
+
+	/*
+	 * 从给定位置开始匹配；'*'采用回溯到最近一个星号的方式，不递归。
+	 */
+	private static boolean matches(byte[] p, int pi, byte[] s, int si) {
+		int starP = -1;
+		int starS = -1;
+		while (si < s.length) {
+			if (pi < p.length) {
+				final byte c = p[pi];
+				if (c == '*') {
+					// 合并连续的星号
+					while (pi < p.length && p[pi] == '*') {
+						pi++;
+					}
+					if (pi == p.length) {
+						return true;
+					}
+					starP = pi;
+					starS = si;
+					continue;
+				}
+				if (c == '?') {
+					pi++;
+					si++;
+					continue;
+				}
+				if (c == '[') {
+					final int end = matchClass(p, pi, s[si]);
+					if (end >= 0) {
+						pi = end;
+						si++;
+						continue;
+					}
+				} else {
+					int lit = pi;
+					if (c == '\\' && pi + 1 < p.length) {
+						lit = pi + 1;
+					}
+					if (p[lit] == s[si]) {
+						pi = lit + 1;
+						si++;
+						continue;
+					}
+				}
+			}
+			// 不匹配：回溯到最近的星号，让它多吃一个字符
+			if (starP < 0) {
+				return false;
+			}
+			pi = starP;
+			si = ++starS;
+		}
+		while (pi < p.length && p[pi] == '*') {
+			pi++;
+		}
+		return pi == p.length;
+	}
+
+	/*
+	 * 匹配一个字符类[...]；匹配时返回类之后的位置，否则返回-1。
+	 */
+	private static int matchClass(byte[] p, int pi, byte c) {
+		int i = pi + 1;
+		boolean not = false;
+		if (i < p.length && p[i] == '^') {
+			not = true;
+			i++;
+		}
+		boolean match = false;
+		while (i < p.length && p[i] != ']') {
+			if (p[i] == '\\' && i + 1 < p.length) {
+				i++;
+				if (p[i] == c) {
+					match = true;
+				}
+				i++;
+			} else if (i + 2 < p.length && p[i + 1] == '-') {
+				int start = p[i] & 0xff;
+				int end = p[i + 2] & 0xff;
+				if (start > end) {
+					final int t = start;
+					start = end;
+					end = t;
+				}
+				final int v = c & 0xff;
+				if (v >= start && v <= end) {
+					match = true;
+				}
+				i += 3;
+			} else {
+				if (p[i] == c) {
+					match = true;
+				}
+				i++;
+			}
+		}
+		// 与 Redis 一致：缺少']'时，视为类在模式末尾结束
+		if (not) {
+			match = !match;
+		}
+		if (!match) {
+			return -1;
+		}
+		return i < p.length ? i + 1 : i;
+	}
+
+	/**
+	 * 一个模式及其关联的值。
+	 */
+	private static final class Entry<T> {
+
+		final byte[] pattern;
+		/** 字面前缀长度 */
+		final int prefix;
+		/** 是否不含通配符 */
+		final boolean literal;
+		T value;
+
+		Entry(byte[] pattern, int prefix, T value) {
+			this.pattern = pattern;
+			this.prefix = prefix;
+			this.literal = prefix == pattern.length;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * 前缀树节点，子节点按字节值有序保存在平行数组中。
+	 */
+	private static final class Node<T> {
+
+		private static final byte[] NO_LABELS = new byte[0];
+
+		private byte[] labels = NO_LABELS;
+		private Node<T>[] children;
+		/** 字面前缀恰好到此为止的模式 */
+		final List<Entry<T>> entries = new ArrayList<Entry<T>>(1);
+
+		Node<T> child(byte label) {
+			final int i = Arrays.binarySearch(labels, label);
+			return i >= 0 ? children[i] : null;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Node<T> getOrCreateChild(byte label) {
+			int i = Arrays.binarySearch(labels, label);
+			if (i >= 0) {
+				return children[i];
+			}
+			i = -i - 1;
+			final int n = labels.length;
+			final byte[] newLabels = new byte[n + 1];
+			final Node<T>[] newChildren = new Node[n + 1];
+			System.arraycopy(labels, 0, newLabels, 0, i);
+			System.arraycopy(labels, i, newLabels, i + 1, n - i);
+			if (children != null) {
+				System.arraycopy(children, 0, newChildren, 0, i);
+				System.arraycopy(children, i, newChildren, i + 1, n - i);
+			}
+			final Node<T> child = new Node<T>();
+			newLabels[i] = label;
+			newChildren[i] = child;
+			this.labels = newLabels;
+			this.children = newChildren;
+			return child;
+		}
+	}
+
+}
@@ -1,6 +1,13 @@
 package redis.clients.util;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.GenericObjectPool;
@@ -73,6 +80,26 @@ public abstract class Pool<R> implements Closeable {
 		}
 	}
 
+	/**
+	 * 在截止时间内获取"连接池"中的一个资源，等待时间不超过剩余时间。
+	 * 
+	 * @param deadline
+	 *            截止时间
+	 */
+	public R getResource(Deadline deadline) {
+		final long remaining = deadline.remainingMillis();
+		if (remaining == 0) {
+			throw new JedisConnectionException(
+					"Could not get a resource from the pool: deadline exceeded");
+		}
+		try {
+			return internalPool.borrowObject(remaining);
+		} catch (Exception e) {
+			throw new JedisConnectionException(
+					"Could not get a resource from the pool", e);
+		}
+	}
+
 	/**
 	 * 将正常的资源返回给"连接池"。
 	 * 
@@ -133,6 +160,261 @@ public abstract class Pool<R> implements Closeable {
 		}
 	}
 
+	/**
+	 * 预热"连接池"：并行地创建资源，直到空闲资源数达到目标值或超时，用于应用启动时的就绪检查。
+	 * 
+	 * <pre>
+	 * 1. parallelism 个线程并行地从连接池借出资源(没有空闲资源时由工厂的 makeObject() 创建)，
+	 *    每个资源借出后执行{@link #warmUpResource(Object, long)}(如分片节点的连接)；
+	 * 2. 所有资源同时持有，保证创建的是不同的资源，结束后统一返回给连接池成为空闲资源；
+	 * 3. 超时后未完成的借出会在完成时直接返回给连接池，不会阻塞调用方。
+	 * 目标值不超过连接池的 maxTotal。
+	 * </pre>
+	 * 
+	 * @param target
+	 *            目标空闲资源数
+	 * @param parallelism
+	 *            并行度
+	 * @param timeoutMillis
+	 *            总超时时间(毫秒)
+	 * @param listener
+	 *            进度监听器(可以为null)
+	 * @return 预热结果
+	 */
+	public WarmUpResult warmUp(int target, int parallelism,
+			final long timeoutMillis, final WarmUpListener listener) {
+		final int maxTotal = internalPool.getMaxTotal();
+		final int total = maxTotal < 0 ? target : Math.min(target, maxTotal);
+		final long start = System.currentTimeMillis();
+		final long deadline = start + timeoutMillis;
+		final WarmUp warmUp = new WarmUp(total, listener, start);
+
+		final int threads = Math.max(1, Math.min(parallelism, total));
+		final ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "jedis-pool-warm-up");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					while (warmUp.next.getAndIncrement() < total) {
+						final long remaining = deadline
+								- System.currentTimeMillis();
+						if (remaining <= 0) {
+							warmUp.failed(null);
+							continue;
+						}
+						final long begin = System.nanoTime();
+						R resource = null;
+						try {
+							resource = internalPool.borrowObject(remaining);
+							warmUpResource(resource, Math.max(1, deadline
+									- System.currentTimeMillis()));
+						} catch (Exception e) {
+							if (resource != null) {
+								returnBrokenResource(resource);
+								resource = null;
+							}
+							warmUp.failed(e);
+						}
+						if (resource != null
+								&& !warmUp.created(resource, System.nanoTime()
+										- begin)) {
+							// 已超时，直接返回
+							returnResource(resource);
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Math.max(0, deadline
+					- System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		final List<R> resources = warmUp.finish();
+		for (R resource : resources) {
+			this.returnResource(resource);
+		}
+		return new WarmUpResult(total, resources.size(), warmUp.failures,
+				System.currentTimeMillis() - start, warmUp.createNanos,
+				internalPool.getNumIdle(), warmUp.firstError);
+	}
+
+	/**
+	 * 预热一个刚借出的资源，默认不做任何事情。
+	 * 
+	 * @param resource
+	 *            资源
+	 * @param timeoutMillis
+	 *            剩余的超时时间(毫秒)
+	 */
+	protected void warmUpResource(R resource, long timeoutMillis) {
+	}
+
+	/**
+	 * 一次预热的共享状态。
+	 */
+	private final class WarmUp {
+
+		final int total;
+		final WarmUpListener listener;
+		final long start;
+		/** 下一个要创建的资源序号 */
+		final AtomicInteger next = new AtomicInteger();
+
+		private final List<R> resources = new ArrayList<R>();
+		private boolean finished;
+		int failures;
+		long createNanos;
+		Exception firstError;
+
+		WarmUp(int total, WarmUpListener listener, long start) {
+			this.total = total;
+			this.listener = listener;
+			this.start = start;
+		}
+
+		/**
+		 * 记录一个创建成功的资源；已结束时返回false。
+		 */
+		synchronized boolean created(R resource, long nanos) {
+			if (finished) {
+				return false;
+			}
+			resources.add(resource);
+			createNanos += nanos;
+			this.progress();
+			return true;
+		}
+
+		synchronized void failed(Exception e) {
+			if (finished) {
+				return;
+			}
+			failures++;
+			if (firstError == null) {
+				firstError = e;
+			}
+			this.progress();
+		}
+
+		/*
+		 * 在锁内通知，保证进度单调递增。
+		 */
+		private void progress() {
+			if (listener != null) {
+				listener.onProgress(resources.size() + failures, total,
+						System.currentTimeMillis() - start);
+			}
+		}
+
+		synchronized List<R> finish() {
+			finished = true;
+			failures += total - resources.size() - failures;
+			return new ArrayList<R>(resources);
+		}
+	}
+
+	/**
+	 * 预热进度监听器。
+	 */
+	public interface WarmUpListener {
+
+		/**
+		 * 每完成(成功或失败)一个资源时被调用，可能在多个线程中被调用(调用是串行的)。
+		 * 
+		 * @param completed
+		 *            已完成的资源数
+		 * @param target
+		 *            目标资源数
+		 * @param elapsedMillis
+		 *            已耗费的时间(毫秒)
+		 */
+		void onProgress(int completed, int target, long elapsedMillis);
+	}
+
+	/**
+	 * 预热结果。
+	 */
+	public static class WarmUpResult {
+
+		private final int target;
+		private final int created;
+		private final int failed;
+		private final long elapsedMillis;
+		private final long createNanos;
+		private final int idle;
+		private final Exception firstError;
+
+		WarmUpResult(int target, int created, int failed, long elapsedMillis,
+				long createNanos, int idle, Exception firstError) {
+			this.target = target;
+			this.created = created;
+			this.failed = failed;
+			this.elapsedMillis = elapsedMillis;
+			this.createNanos = createNanos;
+			this.idle = idle;
+			this.firstError = firstError;
+		}
+
+		/** 目标资源数(不超过 maxTotal) */
+		public int getTarget() {
+			return target;
+		}
+
+		/** 预热成功的资源数 */
+		public int getCreated() {
+			return created;
+		}
+
+		/** 失败(或超时未完成)的资源数 */
+		public int getFailed() {
+			return failed;
+		}
+
+		/** 总耗时(毫秒) */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/** 平均每个资源的创建耗时(毫秒) */
+		public double getAverageCreateMillis() {
+			return created == 0 ? 0 : createNanos / 1000000.0 / created;
+		}
+
+		/** 预热结束时连接池的空闲资源数 */
+		public int getIdle() {
+			return idle;
+		}
+
+		/** 第一个失败的原因；超时未完成时为null */
+		public Exception getFirstError() {
+			return firstError;
+		}
+
+		/** 是否达到目标资源数(可以作为应用的就绪条件) */
+		public boolean isReady() {
+			return created >= target;
+		}
+
+		@Override
+		public String toString() {
+			return "WarmUpResult [created=" + created + "/" + target
+					+ ", failed=" + failed + ", idle=" + idle + ", elapsed="
+					+ elapsedMillis + "ms]";
+		}
+	}
+
 	/**
 	 * 检测"连接池"是否已关闭。
 	 */
@@ -19,6 +19,9 @@ package redis.clients.util;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
@@ -153,6 +156,290 @@ public class RedisInputStream extends FilterInputStream {
 		return length;
 	}
 
+	/**
+	 * 将接下来给定长度的内容分块地直接从缓冲区写入输出流，不为整个内容分配数组。
+	 * <p>
+	 * 若写入输出流失败，会继续读掉剩余内容以保持协议同步，然后抛出该写入异常；
+	 * 读取输入流失败时，抛出"Jedis连接运行时异常"。
+	 * 
+	 * @param len
+	 *            内容长度
+	 * @param out
+	 *            目标输出流
+	 * @throws IOException
+	 *             写入输出流失败
+	 */
+	public void transferTo(long len, OutputStream out) throws IOException {
+		this.transfer(len, out, null);
+	}
+
+	/**
+	 * 将接下来给定长度的内容分块地直接从缓冲区写入通道，不为整个内容分配数组。
+	 * 
+	 * @param len
+	 *            内容长度
+	 * @param channel
+	 *            目标通道
+	 * @throws IOException
+	 *             写入通道失败
+	 * @see #transferTo(long, OutputStream)
+	 */
+	public void transferTo(long len, WritableByteChannel channel)
+			throws IOException {
+		this.transfer(len, null, channel);
+	}
+
+	private void transfer(long len, OutputStream out,
+			WritableByteChannel channel) throws IOException {
+		IOException failure = null;
+		long remaining = len;
+		while (remaining > 0) {
+			try {
+				this.ensureFill();
+			} catch (IOException e) {
+				throw new JedisConnectionException(e);
+			}
+			final int n = (int) Math.min(limit - count, remaining);
+			if (failure == null) {
+				try {
+					if (out != null) {
+						out.write(buf, count, n);
+					} else {
+						final ByteBuffer chunk = ByteBuffer.wrap(buf, count, n);
+						while (chunk.hasRemaining()) {
+							channel.write(chunk);
+						}
+					}
+				} catch (IOException e) {
+					// 目标写入失败，余下的内容只读取、不写入
+					failure = e;
+				}
+			}
+			count += n;
+			remaining -= n;
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * 读取一个以"\r\n"结尾的长整型数值，直接从缓冲区解析，不创建中间字符串。
+	 * 
+	 * @return
+	 */
+	public long readLongCrLf() {
+		try {
+			this.ensureFill();
+			final boolean isNeg = buf[count] == '-';
+			if (isNeg) {
+				++count;
+			}
+
+			long value = 0;
+			while (true) {
+				this.ensureFill();
+				final int b = buf[count++];
+				if (b == '\r') {
+					this.ensureFill();
+					if (buf[count++] != '\n') {
+						throw new JedisConnectionException("Unexpected character!");
+					}
+					break;
+				}
+				value = value * 10 + b - '0';
+			}
+			return isNeg ? -value : value;
+		} catch (IOException e) {
+			throw new JedisConnectionException(e);
+		}
+	}
+
+	/**
+	 * 读取一个以"\r\n"结尾的整型数值，直接从缓冲区解析，不创建中间字符串。
+	 * 
+	 * @return
+	 */
+	public int readIntCrLf() {
+		return (int) this.readLongCrLf();
+	}
+
+	/**
+	 * 读取给定长度的、以"\r\n"结尾的双精度浮点数值，尽量直接从缓冲区解析。
+	 * 
+	 * @param len
+	 *            数值文本的字节长度
+	 * @return
+	 */
+	public double readDoubleCrLf(int len) {
+		try {
+			final double value;
+			if (len + 2 <= buf.length) {
+				this.ensureAvailable(len + 2);
+				value = parseDouble(buf, count, len);
+				count += len + 2;
+			} else { // 超长文本，不可能是一个正常的分值
+				final byte[] text = new byte[len];
+				int offset = 0;
+				while (offset < len) {
+					int size = this.read(text, offset, len - offset);
+					if (size == -1) {
+						throw new JedisConnectionException(
+								"It seems like server has closed the connection.");
+					}
+					offset += size;
+				}
+				this.readByte();
+				this.readByte();
+				value = parseDouble(text, 0, len);
+			}
+			return value;
+		} catch (IOException e) {
+			throw new JedisConnectionException(e);
+		}
+	}
+
+	/** 可以被双精度浮点数精确表示的10的幂 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * 从字节数组中解析一个双精度浮点数值。
+	 * 
+	 * <pre>
+	 * 分2种情况：
+	 * 	1. 有效数字不超过2^53，且10的指数在[-22, 22]之间时，一次乘法或除法即可得到正确舍入的结果；
+	 * 	2. 否则（如 Redis 7 之前用"%.17g"格式化的分值），交给{@link Double#parseDouble(String)}处理。
+	 * </pre>
+	 * 
+	 * 另外，支持 Redis 返回的"inf"、"+inf"和"-inf"。
+	 * 
+	 * @param b
+	 * @param off
+	 * @param len
+	 * @return
+	 */
+	public static double parseDouble(final byte[] b, final int off,
+			final int len) {
+		final int end = off + len;
+		int i = off;
+		boolean isNeg = false;
+		if (i < end && (b[i] == '-' || b[i] == '+')) {
+			isNeg = b[i] == '-';
+			i++;
+		}
+		if (end - i == 3 && (b[i] | 0x20) == 'i' && (b[i + 1] | 0x20) == 'n'
+				&& (b[i + 2] | 0x20) == 'f') {
+			return isNeg ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exp10 = 0;
+		boolean anyDigit = false;
+		boolean dot = false;
+		for (; i < end; i++) {
+			final int c = b[i];
+			if (c >= '0' && c <= '9') {
+				if (mantissa != 0 || c != '0') {
+					if (++digits > 18) {
+						return parseDoubleSlow(b, off, len);
+					}
+					mantissa = mantissa * 10 + (c - '0');
+				}
+				if (dot) {
+					exp10--;
+				}
+				anyDigit = true;
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				break;
+			}
+		}
+		if (i < end && (b[i] | 0x20) == 'e') {
+			i++;
+			boolean expNeg = false;
+			if (i < end && (b[i] == '-' || b[i] == '+')) {
+				expNeg = b[i] == '-';
+				i++;
+			}
+			int exp = 0;
+			boolean anyExpDigit = false;
+			for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+				if (exp < 10000) {
+					exp = exp * 10 + (b[i] - '0');
+				}
+				anyExpDigit = true;
+			}
+			if (!anyExpDigit) {
+				return parseDoubleSlow(b, off, len);
+			}
+			exp10 += expNeg ? -exp : exp;
+		}
+		if (i != end || !anyDigit) {
+			return parseDoubleSlow(b, off, len);
+		}
+
+		if (mantissa == 0) {
+			return isNeg ? -0.0d : 0.0d;
+		}
+		if (mantissa < (1L << 53) && exp10 >= -22 && exp10 <= 22) {
+			final double value = exp10 >= 0 ? mantissa * POWERS_OF_TEN[exp10]
+					: mantissa / POWERS_OF_TEN[-exp10];
+			return isNeg ? -value : value;
+		}
+		return parseDoubleSlow(b, off, len);
+	}
+
+	private static double parseDoubleSlow(final byte[] b, final int off,
+			final int len) {
+		final char[] text = new char[len];
+		for (int i = 0; i < len; i++) {
+			text[i] = (char) b[off + i];
+		}
+		return Double.parseDouble(new String(text));
+	}
+
+	/*
+	 * 确保缓冲区中至少还有一个未读的字节。
+	 */
+	private void ensureFill() throws IOException {
+		if (count >= limit) {
+			fill();
+			if (limit == EOF) {
+				throw new JedisConnectionException(
+						"It seems like server has closed the connection.");
+			}
+		}
+	}
+
+	/*
+	 * 确保缓冲区中至少还有给定数量(不超过缓冲区大小)的连续未读字节，必要时先把未读内容移到缓冲区头部。
+	 */
+	private void ensureAvailable(int n) throws IOException {
+		if (limit < 0) { // 上次读到了文件末尾
+			limit = 0;
+			count = 0;
+		}
+		if (limit - count >= n) {
+			return;
+		}
+		final int remaining = limit - count;
+		System.arraycopy(buf, count, buf, 0, remaining);
+		count = 0;
+		limit = remaining;
+		while (limit < n) {
+			final int size = in.read(buf, limit, buf.length - limit);
+			if (size == EOF) {
+				throw new JedisConnectionException(
+						"It seems like server has closed the connection.");
+			}
+			limit += size;
+		}
+	}
+
 	/*
 	 * 读取输入流内容，并保存到缓冲区里。
 	 */
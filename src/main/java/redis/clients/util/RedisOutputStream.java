@@ -3,6 +3,10 @@ package redis.clients.util;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The class implements a buffered output stream without synchronization. There
@@ -14,22 +18,65 @@ import java.io.OutputStream;
  */
 public final class RedisOutputStream extends FilterOutputStream {
 
+	/** "聚集写"分段写出字节数组时使用的直接缓冲区大小(64KB) */
+	private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
+	/** 所有输出流共享的直接缓冲区的最大缓存个数 */
+	private static final int MAX_POOLED_DIRECT_BUFFERS = 16;
+	/** 缓存的直接缓冲区 */
+	private static final ConcurrentLinkedQueue<ByteBuffer> DIRECT_BUFFERS = new ConcurrentLinkedQueue<ByteBuffer>();
+	/** 缓存的直接缓冲区个数 */
+	private static final AtomicInteger POOLED_DIRECT_BUFFERS = new AtomicInteger();
+
 	/** 缓冲区 */
 	protected final byte buf[];
 
 	/** 缓冲区内容的实际长度 */
 	protected int count;
 
+	/** 支持"聚集写"的底层通道(可为null) */
+	private final GatheringByteChannel channel;
+	/** 使用"聚集写"的最小内容长度 */
+	private final int gatheringThreshold;
+	/** "聚集写"使用的缓冲区数组：[缓冲区内容, 待写的直接缓冲区] */
+	private final ByteBuffer[] gather = new ByteBuffer[2];
+
 	public RedisOutputStream(final OutputStream out) {
 		this(out, 8192); // 缓冲区默认大小为 8KB
 	}
 
 	public RedisOutputStream(final OutputStream out, final int size) {
+		this(out, size, null, 0);
+	}
+
+	/**
+	 * 创建一个支持"聚集写"的输出流。
+	 * <p>
+	 * 长度不小于阈值的内容不再拷贝到缓冲区：直接缓冲区与缓冲区中已有的内容(如协议头)
+	 * 一起，通过{@link GatheringByteChannel#write(ByteBuffer[])}直接写入通道；
+	 * 字节数组则经由共享的、个数有限的直接缓冲区分段写入通道(堆缓冲区直接写入通道时，
+	 * JDK 会把整个内容拷贝到按线程缓存、大小不受限制的临时直接缓冲区中)。
+	 *
+	 * @param out
+	 *            底层输出流
+	 * @param size
+	 *            缓冲区大小
+	 * @param channel
+	 *            与底层输出流对应的通道(为null时，不使用"聚集写")
+	 * @param gatheringThreshold
+	 *            使用"聚集写"的最小内容长度，0 表示不使用
+	 */
+	public RedisOutputStream(final OutputStream out, final int size,
+			final GatheringByteChannel channel, final int gatheringThreshold) {
 		super(out);
 		if (size <= 0) {
 			throw new IllegalArgumentException("Buffer size <= 0");
 		}
+		if (gatheringThreshold < 0) {
+			throw new IllegalArgumentException("Gathering threshold < 0");
+		}
 		buf = new byte[size];
+		this.channel = gatheringThreshold > 0 ? channel : null;
+		this.gatheringThreshold = gatheringThreshold;
 	}
 
 	/*
@@ -63,7 +110,9 @@ public final class RedisOutputStream extends FilterOutputStream {
 	@Override
 	public void write(final byte[] b, final int off, final int len)
 			throws IOException {
-		if (len >= buf.length) { // 要写的内容太多，先刷新缓冲区，然后将字节数组内容直接写入到输出流
+		if (channel != null && len >= gatheringThreshold) {
+			this.writeGathering(b, off, len);
+		} else if (len >= buf.length) { // 要写的内容太多，先刷新缓冲区，然后将字节数组内容直接写入到输出流
 			flushBuffer();
 			out.write(b, off, len);
 		} else {
@@ -76,6 +125,106 @@ public final class RedisOutputStream extends FilterOutputStream {
 		}
 	}
 
+	/**
+	 * 写入字节缓冲区的剩余内容(如内存映射文件的一个区间)。
+	 * <p>
+	 * 支持"聚集写"且内容长度不小于阈值时，直接写入通道，不拷贝到堆内存；
+	 * 否则直接(堆外)缓冲区的内容会被拷贝到输出流的缓冲区中。
+	 *
+	 * @param src
+	 *            字节缓冲区，写入后其位置被推进到界限
+	 * @throws IOException
+	 */
+	public void write(final ByteBuffer src) throws IOException {
+		if (src.hasArray()) {
+			final int len = src.remaining();
+			this.write(src.array(), src.arrayOffset() + src.position(), len);
+			src.position(src.position() + len);
+			return;
+		}
+		if (channel != null && src.remaining() >= gatheringThreshold) {
+			this.writeGathering(src);
+			return;
+		}
+		while (src.hasRemaining()) {
+			if (count == buf.length) {
+				flushBuffer();
+			}
+			final int n = Math.min(buf.length - count, src.remaining());
+			src.get(buf, count, n);
+			count += n;
+		}
+	}
+
+	/*
+	 * 经由共享的直接缓冲区，将缓冲区内容和字节数组内容分段写入通道；第一段包含缓冲区内容(协议头)。
+	 */
+	private void writeGathering(final byte[] b, int off, int len)
+			throws IOException {
+		final ByteBuffer direct = acquireDirectBuffer();
+		try {
+			if (count > direct.remaining()) {
+				flushBuffer();
+			} else {
+				direct.put(buf, 0, count);
+				count = 0;
+			}
+			while (len > 0) {
+				final int n = Math.min(len, direct.remaining());
+				direct.put(b, off, n);
+				off += n;
+				len -= n;
+				direct.flip();
+				// 阻塞模式下也可能只写入一部分，需要循环写
+				while (direct.hasRemaining()) {
+					channel.write(direct);
+				}
+				direct.clear();
+			}
+		} finally {
+			releaseDirectBuffer(direct);
+		}
+	}
+
+	private static ByteBuffer acquireDirectBuffer() {
+		final ByteBuffer buffer = DIRECT_BUFFERS.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+		}
+		POOLED_DIRECT_BUFFERS.decrementAndGet();
+		return buffer;
+	}
+
+	/*
+	 * 归还直接缓冲区；缓存已满时丢弃，由垃圾回收释放。
+	 */
+	private static void releaseDirectBuffer(final ByteBuffer buffer) {
+		buffer.clear();
+		if (POOLED_DIRECT_BUFFERS.incrementAndGet() <= MAX_POOLED_DIRECT_BUFFERS) {
+			DIRECT_BUFFERS.offer(buffer);
+		} else {
+			POOLED_DIRECT_BUFFERS.decrementAndGet();
+		}
+	}
+
+	/*
+	 * 将缓冲区内容与直接缓冲区的内容一起写入通道，不拷贝待写内容。
+	 */
+	private void writeGathering(final ByteBuffer src) throws IOException {
+		gather[0] = ByteBuffer.wrap(buf, 0, count);
+		gather[1] = src;
+		try {
+			// 阻塞模式下也可能只写入一部分，需要循环写
+			while (gather[1].hasRemaining()) {
+				channel.write(gather);
+			}
+		} finally {
+			gather[0] = null;
+			gather[1] = null;
+		}
+		count = 0;
+	}
+
 	/**
 	 * 写入文本数据到这个输出流。
 	 *
@@ -104,6 +253,14 @@ public final class RedisOutputStream extends FilterOutputStream {
 		return ch >= Character.MIN_SURROGATE && ch <= Character.MAX_SURROGATE;
 	}
 
+	/*
+	 * 判断给定位置是否是一个完整的"高代理-低代理"字符对。
+	 */
+	private static boolean isSurrogatePair(final String str, final int i) {
+		return Character.isHighSurrogate(str.charAt(i)) && i + 1 < str.length()
+				&& Character.isLowSurrogate(str.charAt(i + 1));
+	}
+
     /**
      * 计算字符串对应的"UTF-8"编码后的长度。
      *
@@ -121,8 +278,12 @@ public final class RedisOutputStream extends FilterOutputStream {
 			} else if (c < 0x800) {
 				utfLen += 2;
 			} else if (isSurrogate(c)) {
-				i++;
-				utfLen += 4;
+				if (isSurrogatePair(str, i)) {
+					i++;
+					utfLen += 4;
+				} else {
+					utfLen++; // 不成对的代理字符编码为'?'，与 String.getBytes() 一致
+				}
 			} else {
 				utfLen += 3;
 			}
@@ -183,8 +344,12 @@ public final class RedisOutputStream extends FilterOutputStream {
 				if (4 >= buf.length - count) {
 					flushBuffer();
 				}
+				if (!isSurrogatePair(str, i)) {
+					buf[count++] = '?';
+					continue;
+				}
 				// 4字节编码
-				int uc = Character.toCodePoint(c, str.charAt(i++));
+				int uc = Character.toCodePoint(c, str.charAt(++i));
 				buf[count++] = ((byte) (0xf0 | ((uc >> 18))));
 				buf[count++] = ((byte) (0x80 | ((uc >> 12) & 0x3f)));
 				buf[count++] = ((byte) (0x80 | ((uc >> 6) & 0x3f)));
@@ -0,0 +1,62 @@
+package redis.clients.util;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 可复用的字节数组输出流，可以直接访问内部缓冲区，避免{@link #toByteArray()}的拷贝。
+ */
+public class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+	public ReusableByteArrayOutputStream() {
+		super(256);
+	}
+
+	public ReusableByteArrayOutputStream(int size) {
+		super(size);
+	}
+
+	/**
+	 * 返回内部缓冲区(有效内容为 [0, {@link #size()}) 区间)。
+	 */
+	public byte[] getBuffer() {
+		return buf;
+	}
+
+	/**
+	 * 确保内部缓冲区至少还能容纳给定数量的字节，并返回内部缓冲区。
+	 * 
+	 * @param n
+	 * @return
+	 */
+	public byte[] ensureCapacity(int n) {
+		if (count + n > buf.length) {
+			final byte[] larger = new byte[Math.max(buf.length * 2, count + n)];
+			System.arraycopy(buf, 0, larger, 0, count);
+			buf = larger;
+		}
+		return buf;
+	}
+
+	/**
+	 * 在直接写入内部缓冲区之后，推进有效内容的长度。
+	 * 
+	 * @param n
+	 */
+	public void advance(int n) {
+		count += n;
+	}
+
+	/**
+	 * 丢弃内容；缓冲区过大时一并释放，避免偶尔出现的大值长期占用内存。
+	 * 
+	 * @param maxRetained
+	 *            保留的最大缓冲区大小
+	 */
+	public void reset(int maxRetained) {
+		count = 0;
+		if (buf.length > maxRetained) {
+			buf = new byte[maxRetained];
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package redis.clients.util;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -8,6 +9,8 @@ import java.util.Map;
 import java.util.NavigableMap;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,13 +35,24 @@ public class Sharded<R, S extends ShardInfo<R>> {
 	 * 上述数据结构设计，保证一个"分片集群池对象"只包含分片节点数的真实节点链接资源。
 	 * 
 	 * 例如，共3台服务器构成一个集群，那么每个池对象就仅包含3条到后端真实节点的链接。
+	 * 
+	 * 链接资源在第一次访问分片节点时才创建(延迟创建)，只访问1个分片节点的池对象不需要为其它分片节点付出代价；
+	 * 资源通过 CAS 发布，多个线程同时创建时只有一个会被采用。
 	 */
 	/** 虚拟节点hash值到分片节点的映射表(<hash, ShardInfo<R>>) */
 	private NavigableMap<Long, S> nodes;
 	/** (一致性)哈希算法 */
 	private final Hashing algo;
-	/** 分片节点到真实节点客户端的映射表(<ShardInfo<R>, R>) */
-	private final Map<S, R> resources = new LinkedHashMap<S, R>();
+	/** 分片节点列表(按配置顺序，无重复) */
+	private final List<S> shards = new ArrayList<S>();
+	/** 分片节点到其序号的映射表(<ShardInfo<R>, index>) */
+	private final Map<S, Integer> shardIndexes = new LinkedHashMap<S, Integer>();
+	/** 各分片节点的真实节点客户端(未创建时为null) */
+	private AtomicReferenceArray<R> resources;
+	/** 各分片节点最近一次被访问的时间(毫秒) */
+	private AtomicLongArray lastAccess;
+	/** 自上次清除以来被访问过的分片节点位图(每个long保存64个分片节点) */
+	private AtomicLongArray touched;
 
 	/**
 	 * The default pattern used for extracting a key tag. The pattern must have
@@ -122,10 +136,71 @@ public class Sharded<R, S extends ShardInfo<R>> {
 			// 【案例】Java的 Executors.DefaultThreadFactory 和 Tomcat的 TaskThreadFactory，
 			// 都是使用"namePrefix + threadNumber.getAndIncrement()"规则来命名线程名称。
 
-			// 分片节点 -> 真实节点客户端
-			R resource = shardInfo.createResource();
-			resources.put(shardInfo, resource);
+			// 分片节点 -> 序号(真实节点客户端在第一次访问时才创建)
+			if (!shardIndexes.containsKey(shardInfo)) {
+				shardIndexes.put(shardInfo, Integer.valueOf(this.shards.size()));
+				this.shards.add(shardInfo);
+			}
+		}
+		resources = new AtomicReferenceArray<R>(this.shards.size());
+		lastAccess = new AtomicLongArray(this.shards.size());
+		touched = new AtomicLongArray((this.shards.size() + 63) >>> 6);
+	}
+
+	/**
+	 * 获取"分片节点"的真实节点客户端，不存在时创建它。
+	 * <p>
+	 * 所有访问分片节点资源的方法都经过这里，子类可以覆盖它以便对资源做额外设置。
+	 * 
+	 * @param shardInfo
+	 *            分片节点信息
+	 * @return
+	 */
+	public R getShardResource(S shardInfo) {
+		final Integer index = shardIndexes.get(shardInfo);
+		if (index == null) {
+			throw new IllegalArgumentException("Unknown shard: " + shardInfo);
+		}
+		return this.getShardResource(index.intValue());
+	}
+
+	private R getShardResource(int index) {
+		lastAccess.lazySet(index, System.currentTimeMillis());
+		// 标记为已访问，位已设置时不写(常见情况)
+		final int word = index >>> 6;
+		final long bit = 1L << index;
+		long w;
+		while (((w = touched.get(word)) & bit) == 0
+				&& !touched.compareAndSet(word, w, w | bit)) {
+			// 重试
+		}
+		final R resource = resources.get(index);
+		if (resource != null) {
+			return resource;
+		}
+		final R created = shards.get(index).createResource();
+		if (resources.compareAndSet(index, null, created)) {
+			return created;
+		}
+		// 其它线程已经创建，丢弃自己创建的(此时还未建立链接)
+		return resources.get(index);
+	}
+
+	/**
+	 * 丢弃一个已经创建的"链接"资源，该分片节点下次被访问时会重新创建资源，其它分片节点不受影响。
+	 * 
+	 * @param resource
+	 *            要丢弃的资源
+	 * @return 资源所属的分片节点；资源不属于该集群(或已被丢弃)时返回null
+	 */
+	public S removeShardResource(R resource) {
+		for (int i = 0; i < shards.size(); i++) {
+			if (resources.get(i) == resource
+					&& resources.compareAndSet(i, resource, null)) {
+				return shards.get(i);
+			}
 		}
+		return null;
 	}
 
 	/**
@@ -136,7 +211,7 @@ public class Sharded<R, S extends ShardInfo<R>> {
 	 * @return
 	 */
 	public R getShard(String key) {
-		return resources.get(this.getShardInfo(key));
+		return this.getShardResource(this.getShardInfo(key));
 	}
 
 	/**
@@ -146,7 +221,7 @@ public class Sharded<R, S extends ShardInfo<R>> {
 	 * @return
 	 */
 	public R getShard(byte[] key) {
-		return resources.get(this.getShardInfo(key));
+		return this.getShardResource(this.getShardInfo(key));
 	}
 
 	/**
@@ -203,12 +278,82 @@ public class Sharded<R, S extends ShardInfo<R>> {
 	}
 
 	/**
-	 * 获取该集群的所有"连接到Redis服务器的链接"资源列表。
+	 * 获取该集群的所有"连接到Redis服务器的链接"资源列表，尚未创建的资源会被创建。
 	 * 
 	 * @return
 	 */
 	public Collection<R> getAllShards() {
-		return Collections.unmodifiableCollection(resources.values());
+		final List<R> all = new ArrayList<R>(shards.size());
+		for (int i = 0; i < shards.size(); i++) {
+			all.add(this.getShardResource(shards.get(i)));
+		}
+		return Collections.unmodifiableCollection(all);
+	}
+
+	/**
+	 * 获取该集群已经创建的"连接到Redis服务器的链接"资源列表，不会创建新的资源。
+	 * 
+	 * @return
+	 */
+	public Collection<R> getCreatedShards() {
+		final List<R> created = new ArrayList<R>(shards.size());
+		for (int i = 0; i < shards.size(); i++) {
+			final R resource = resources.get(i);
+			if (resource != null) {
+				created.add(resource);
+			}
+		}
+		return Collections.unmodifiableCollection(created);
+	}
+
+	/**
+	 * 获取自上次{@link #clearTouchedShards()}以来被访问过的"链接"资源列表，
+	 * 代价与被访问的分片节点数成正比，与分片节点总数无关。
+	 * 
+	 * @return
+	 */
+	public Collection<R> getTouchedShards() {
+		final List<R> result = new ArrayList<R>(2);
+		for (int word = 0; word < touched.length(); word++) {
+			long w = touched.get(word);
+			while (w != 0) {
+				final int index = (word << 6) + Long.numberOfTrailingZeros(w);
+				w &= w - 1;
+				final R resource = resources.get(index);
+				if (resource != null) {
+					result.add(resource);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 清除分片节点的访问标记。
+	 */
+	public void clearTouchedShards() {
+		for (int word = 0; word < touched.length(); word++) {
+			touched.lazySet(word, 0L);
+		}
+	}
+
+	/**
+	 * 获取已经创建、且超过给定时间未被访问的"链接"资源列表。
+	 * 
+	 * @param idleMillis
+	 *            空闲时间(毫秒)
+	 * @return
+	 */
+	public Collection<R> getIdleShards(long idleMillis) {
+		final long deadline = System.currentTimeMillis() - idleMillis;
+		final List<R> idle = new ArrayList<R>(2);
+		for (int i = 0; i < shards.size(); i++) {
+			final R resource = resources.get(i);
+			if (resource != null && lastAccess.get(i) <= deadline) {
+				idle.add(resource);
+			}
+		}
+		return idle;
 	}
 
 }
@@ -0,0 +1,111 @@
+package redis.clients.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * "虚拟线程"支持：运行在 Java 21+ 上时使用虚拟线程，否则退化为平台线程。
+ *
+ * <pre>
+ * 客户端在虚拟线程上的行为：
+ * 	1. {@link redis.clients.jedis.Connection}的读写路径(包括 RedisInputStream.fill())不持有监视器锁，
+ * 	   阻塞的套接字读写会卸载虚拟线程，不会钉住(pin)载体线程；
+ * 	2. 连接池的借用路径等待在 commons-pool2 的 ReentrantLock 上，同样不会钉住载体线程；
+ * 	   归还异常资源时先关闭链接，避免在 commons-pool2 的监视器锁内发送 QUIT 命令；
+ * 	3. 订阅器、计数聚合器等在持锁期间执行 I/O 的地方使用{@link java.util.concurrent.locks.ReentrantLock}；
+ * 	4. 多分片节点的扇出读(见{@link redis.clients.jedis.ShardedFanOut})默认为每个分片节点启动一个虚拟线程。
+ * </pre>
+ *
+ * 通过反射访问虚拟线程 API，可以在旧版本的 Java 上编译和运行。
+ */
+public final class VirtualThreads {
+
+	/** 虚拟线程构建器的方法(不支持时为null) */
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method FACTORY;
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		Method newThreadPerTaskExecutor = null;
+		try {
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			newThreadPerTaskExecutor = Executors.class.getMethod(
+					"newThreadPerTaskExecutor", ThreadFactory.class);
+		} catch (Exception e) {
+			// Java 21 以前的版本
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+		NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * 当前的 Java 运行时是否支持虚拟线程。
+	 */
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * 创建一个线程工厂：支持时创建虚拟线程，否则创建守护平台线程。
+	 *
+	 * @param name
+	 *            线程名称前缀
+	 * @return 线程工厂
+	 */
+	public static ThreadFactory newThreadFactory(final String name) {
+		if (OF_VIRTUAL != null) {
+			try {
+				final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null),
+						name + "-", 0L);
+				return (ThreadFactory) FACTORY.invoke(builder);
+			} catch (Exception e) {
+				// 退化为平台线程
+			}
+		}
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * 创建一个为每个任务启动一个新线程的执行器：支持时使用虚拟线程，
+	 * 否则使用可缓存的守护平台线程池。
+	 *
+	 * @param name
+	 *            线程名称前缀
+	 * @return 执行器(使用完毕后应该关闭)
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String name) {
+		final ThreadFactory factory = newThreadFactory(name);
+		if (NEW_THREAD_PER_TASK_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(
+						null, factory);
+			} catch (Exception e) {
+				// 退化为平台线程池
+			}
+		}
+		return Executors.newCachedThreadPool(factory);
+	}
+
+}
@@ -0,0 +1,248 @@
+package redis.clients.jedis.tests;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.BinaryShardedJedis;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+public class BinaryShardedJedisTest extends Assert {
+
+    private MockRedisServer server;
+    private ServerSocket silent;
+    private JedisShardInfo live;
+    private BinaryShardedJedis sharded;
+
+    @Before
+    public void setUp() throws IOException {
+	server = new MockRedisServer();
+	silent = new ServerSocket(0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+	if (sharded != null) {
+	    sharded.disconnect();
+	}
+	server.close();
+	silent.close();
+    }
+
+    private void connect(int otherPort) {
+	List<JedisShardInfo> shards = new ArrayList<JedisShardInfo>();
+	live = new JedisShardInfo(MockRedisServer.HOST, server.getPort(), 200);
+	shards.add(live);
+	shards.add(new JedisShardInfo(MockRedisServer.HOST, otherPort, 200));
+	sharded = new BinaryShardedJedis(shards);
+    }
+
+    /*
+     * 返回一个属于(或不属于)可用分片节点的键。
+     */
+    private byte[] key(String prefix, boolean onLive) {
+	for (int i = 0;; i++) {
+	    byte[] key = SafeEncoder.encode(prefix + i);
+	    if ((sharded.getShardInfo(key) == live) == onLive) {
+		return key;
+	    }
+	}
+    }
+
+    @Test
+    public void sendFailureDisconnectsFlushedShards() throws IOException {
+	// 第二个分片节点无法连接
+	ServerSocket closed = new ServerSocket(0);
+	int closedPort = closed.getLocalPort();
+	closed.close();
+	connect(closedPort);
+
+	byte[] hll = key("hll:", true);
+	byte[] other = key("other:", true);
+	server.set(SafeEncoder.encode(hll), "stale");
+	server.set(SafeEncoder.encode(other), "fresh");
+	try {
+	    sharded.pfcount(hll, key("hll:", false));
+	    fail("Expected JedisConnectionException");
+	} catch (JedisConnectionException e) {
+	    // expected
+	}
+
+	// 已发送 GET 的链接被断开，不会读到上一条命令的响应
+	assertFalse(sharded.getShard(other).getClient().isConnected());
+	assertEquals("fresh", SafeEncoder.encode(sharded.get(other)));
+    }
+
+    @Test
+    public void readFailureDisconnectsUnreadShards() {
+	connect(silent.getLocalPort());
+
+	byte[] hll = key("hll:", true);
+	byte[] other = key("other:", true);
+	server.set(SafeEncoder.encode(hll), "stale");
+	server.set(SafeEncoder.encode(other), "fresh");
+	try {
+	    // 先读取无响应的分片节点
+	    sharded.pfcount(key("hll:", false), hll);
+	    fail("Expected JedisConnectionException");
+	} catch (JedisConnectionException e) {
+	    // expected
+	}
+
+	assertFalse(sharded.getShard(other).getClient().isConnected());
+	assertEquals("fresh", SafeEncoder.encode(sharded.get(other)));
+    }
+
+    @Test
+    public void missingKeysCountAsEmpty() throws IOException {
+	MockRedisServer second = new MockRedisServer();
+	try {
+	    connect(second.getPort());
+	    assertEquals(0, sharded.pfcount(key("hll:", true),
+		    key("hll:", false)).longValue());
+	    assertEquals(1, server.getCommandCount("GET"));
+	    assertEquals(1, second.getCommandCount("GET"));
+	} finally {
+	    sharded.disconnect();
+	    sharded = null;
+	    second.close();
+	}
+    }
+
+    @Test
+    public void repairBrokenShardsOnlyReplacesBrokenClients()
+	    throws IOException {
+	MockRedisServer second = new MockRedisServer();
+	try {
+	    connect(second.getPort());
+	    byte[] onLive = key("a:", true);
+	    byte[] onSecond = key("b:", false);
+	    sharded.set(onLive, SafeEncoder.encode("1"));
+	    sharded.set(onSecond, SafeEncoder.encode("2"));
+	    Jedis broken = sharded.getShard(onLive);
+	    Jedis healthy = sharded.getShard(onSecond);
+
+	    server.killClients();
+	    try {
+		sharded.get(onLive);
+		fail("Expected JedisConnectionException");
+	    } catch (JedisConnectionException e) {
+		// expected
+	    }
+	    assertTrue(broken.getClient().isBroken());
+
+	    assertEquals(1, sharded.repairBrokenShards());
+	    assertEquals(1, live.getBrokenCount());
+	    assertEquals(0, sharded.repairBrokenShards());
+	    assertFalse(broken.isConnected());
+	    assertNotSame(broken, sharded.getShard(onLive));
+	    assertSame(healthy, sharded.getShard(onSecond));
+	    assertTrue(healthy.isConnected());
+	    assertEquals("1", SafeEncoder.encode(sharded.get(onLive)));
+	} finally {
+	    sharded.disconnect();
+	    sharded = null;
+	    second.close();
+	}
+    }
+
+    @Test
+    public void connectAllConnectsEveryShard() throws IOException {
+	MockRedisServer second = new MockRedisServer();
+	ExecutorService executor = Executors.newCachedThreadPool();
+	try {
+	    connect(second.getPort());
+	    assertEquals(2, sharded.connectAll(executor, 5000));
+	    for (Jedis jedis : sharded.getAllShards()) {
+		assertTrue(jedis.isConnected());
+	    }
+	    // 已连接的分片节点不再提交任务
+	    assertEquals(2, sharded.connectAll(new Executor() {
+		public void execute(Runnable command) {
+		    fail("Unexpected connect task");
+		}
+	    }, 5000));
+	} finally {
+	    executor.shutdownNow();
+	    sharded.disconnect();
+	    sharded = null;
+	    second.close();
+	}
+    }
+
+    @Test
+    public void rejectedConnectTasksLeaveShardsUnconnected() throws IOException {
+	MockRedisServer second = new MockRedisServer();
+	try {
+	    connect(second.getPort());
+	    final Thread caller = Thread.currentThread();
+	    long start = System.currentTimeMillis();
+	    assertEquals(0, sharded.connectAll(new Executor() {
+		public void execute(Runnable command) {
+		    assertSame(caller, Thread.currentThread());
+		    throw new RejectedExecutionException("full");
+		}
+	    }, 5000));
+	    // 没有等待超时，也没有在调用线程中连接
+	    assertTrue(System.currentTimeMillis() - start < 1000);
+	    for (Jedis jedis : sharded.getAllShards()) {
+		assertFalse(jedis.isConnected());
+	    }
+	} finally {
+	    sharded.disconnect();
+	    sharded = null;
+	    second.close();
+	}
+    }
+
+    @Test
+    public void lateConnectTaskClosesDiscardedClient() throws IOException {
+	MockRedisServer second = new MockRedisServer();
+	try {
+	    connect(second.getPort());
+	    final List<Runnable> delayed = new ArrayList<Runnable>();
+	    List<Jedis> before = new ArrayList<Jedis>(sharded.getAllShards());
+	    assertEquals(0, sharded.connectAll(new Executor() {
+		public void execute(Runnable command) {
+		    delayed.add(command);
+		}
+	    }, 50));
+	    assertEquals(2, delayed.size());
+
+	    // 超时的分片节点被丢弃，下次访问时重新创建
+	    List<Jedis> after = new ArrayList<Jedis>(sharded.getAllShards());
+	    for (int i = 0; i < before.size(); i++) {
+		assertNotSame(before.get(i), after.get(i));
+	    }
+
+	    // 迟到的连接任务建立链接后立即关闭，不影响新的客户端
+	    for (Runnable task : delayed) {
+		task.run();
+	    }
+	    for (Jedis jedis : before) {
+		assertFalse(jedis.isConnected());
+	    }
+	    for (Jedis jedis : after) {
+		assertFalse(jedis.isConnected());
+	    }
+	} finally {
+	    sharded.disconnect();
+	    sharded = null;
+	    second.close();
+	}
+    }
+
+}
@@ -0,0 +1,118 @@
+package redis.clients.jedis.tests;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.BulkLoader;
+import redis.clients.jedis.BulkLoader.Progress;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.util.SafeEncoder;
+
+public class BulkLoaderTest extends Assert {
+
+    private MockRedisServer server1;
+    private MockRedisServer server2;
+    private ShardedJedis sharded;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+	server1 = new MockRedisServer();
+	server2 = new MockRedisServer();
+	List<JedisShardInfo> shards = new ArrayList<JedisShardInfo>();
+	shards.add(new JedisShardInfo(MockRedisServer.HOST, server1.getPort()));
+	shards.add(new JedisShardInfo(MockRedisServer.HOST, server2.getPort()));
+	sharded = new ShardedJedis(shards);
+	file = File.createTempFile("bulk-loader", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+	sharded.disconnect();
+	server1.close();
+	server2.close();
+	file.delete();
+    }
+
+    private static byte[] value(int i, int size) {
+	byte[] value = new byte[size];
+	Arrays.fill(value, (byte) ('a' + i % 26));
+	return value;
+    }
+
+    private static int valueSize(int i) {
+	// 夹杂一些远大于套接字缓冲区的值
+	return i % 500 == 0 ? 256 * 1024 : 2 * 1024;
+    }
+
+    private void writeRecords(int count) throws IOException {
+	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		new FileOutputStream(file)));
+	try {
+	    for (int i = 0; i < count; i++) {
+		byte[] key = SafeEncoder.encode("key:" + i);
+		byte[] value = value(i, valueSize(i));
+		out.writeInt(key.length);
+		out.write(key);
+		out.writeInt(value.length);
+		out.write(value);
+	    }
+	} finally {
+	    out.close();
+	}
+    }
+
+    private void assertLoaded(int count) {
+	for (int i = 0; i < count; i++) {
+	    String key = "key:" + i;
+	    MockRedisServer owner = sharded.getShardInfo(key).getPort() == server1
+		    .getPort() ? server1 : server2;
+	    assertArrayEquals(key, value(i, valueSize(i)), owner.get(key));
+	}
+	assertEquals(count, server1.size() + server2.size());
+	assertTrue(server1.size() > 0);
+	assertTrue(server2.size() > 0);
+    }
+
+    @Test
+    public void loadsMoreThanSocketBuffer() throws IOException {
+	int count = 4000;
+	writeRecords(count);
+
+	BulkLoader loader = new BulkLoader(sharded);
+	loader.setBufferSize(16 * 1024);
+	Progress progress = loader.load(file);
+
+	assertEquals(count, progress.getRecords());
+	assertEquals(count, progress.getAcked());
+	assertEquals(0, progress.getErrors());
+	assertLoaded(count);
+    }
+
+    @Test
+    public void growsWindowForLargeRecords() throws IOException {
+	int count = 1001;
+	writeRecords(count);
+
+	BulkLoader loader = new BulkLoader(sharded);
+	loader.setMapWindow(64 * 1024);
+	Progress progress = loader.load(file);
+
+	assertEquals(count, progress.getRecords());
+	assertEquals(count, progress.getAcked());
+	assertLoaded(count);
+    }
+
+}
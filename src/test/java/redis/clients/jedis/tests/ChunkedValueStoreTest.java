@@ -0,0 +1,101 @@
+package redis.clients.jedis.tests;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.ChunkedValueStore;
+import redis.clients.jedis.ChunkedValueStore.Layout;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+public class ChunkedValueStoreTest extends Assert {
+
+    private static final byte[] KEY = SafeEncoder.encode("doc");
+
+    private MockRedisServer server;
+    private Jedis jedis;
+    private ChunkedValueStore store;
+
+    @Before
+    public void setUp() throws IOException {
+	server = new MockRedisServer();
+	jedis = new Jedis(MockRedisServer.HOST, server.getPort());
+	store = new ChunkedValueStore(jedis, Layout.CHUNK_KEYS, 1000, 3);
+    }
+
+    @After
+    public void tearDown() {
+	jedis.disconnect();
+	server.close();
+    }
+
+    private static byte[] value(int length, int seed) {
+	byte[] value = new byte[length];
+	for (int i = 0; i < length; i++) {
+	    value[i] = (byte) (i * 31 + seed);
+	}
+	return value;
+    }
+
+    @Test
+    public void chunkKeysRoundTrip() {
+	byte[] value = value(10500, 1);
+	store.set(KEY, value);
+	assertEquals(1 + 11, server.size());
+	assertTrue(Arrays.equals(value, store.get(KEY)));
+
+	// 覆盖写入之后，旧代数的块被删除
+	byte[] smaller = value(2500, 2);
+	store.set(KEY, smaller);
+	assertEquals(1 + 3, server.size());
+	assertTrue(Arrays.equals(smaller, store.get(KEY)));
+
+	assertEquals(4, store.del(KEY));
+	assertEquals(0, server.size());
+	assertNull(store.get(KEY));
+    }
+
+    @Test
+    public void failedChunkWriteDiscardsNewChunks() {
+	byte[] value = value(2500, 1);
+	store.set(KEY, value);
+
+	server.rejectWrites("{doc}:*:4");
+	try {
+	    store.set(KEY, value(10500, 2));
+	    fail("Expected JedisDataException");
+	} catch (JedisDataException e) {
+	    // expected
+	}
+	// 只剩下原值的元数据和块
+	assertEquals(1 + 3, server.size());
+	assertTrue(Arrays.equals(value, store.get(KEY)));
+    }
+
+    @Test
+    public void failedMetadataCommitDiscardsNewChunks() {
+	server.rejectWrites("doc");
+	try {
+	    store.set(KEY, value(10500, 1));
+	    fail("Expected JedisDataException");
+	} catch (JedisDataException e) {
+	    // expected
+	}
+	assertEquals(0, server.size());
+	assertNull(store.get(KEY));
+    }
+
+    @Test
+    public void metadataWithoutGenerationIsIgnored() {
+	server.set("doc", "10:1000");
+	assertNull(store.get(KEY));
+	assertEquals(1, store.del(KEY));
+    }
+
+}
@@ -0,0 +1,247 @@
+package redis.clients.jedis.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import redis.clients.jedis.CircuitBreaker;
+import redis.clients.jedis.CircuitBreaker.State;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Deadline;
+import redis.clients.util.SafeEncoder;
+
+public class CircuitBreakerTest extends Assert {
+
+    private static CircuitBreaker newBreaker(int threshold, long backoff,
+	    long maxBackoff) {
+	CircuitBreaker breaker = new CircuitBreaker("test", threshold,
+		backoff, maxBackoff);
+	breaker.setJitter(0);
+	return breaker;
+    }
+
+    private static void recordFailures(CircuitBreaker breaker, int times) {
+	for (int i = 0; i < times; i++) {
+	    breaker.onFailure();
+	}
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+	CircuitBreaker breaker = newBreaker(3, 1000, 1000);
+	recordFailures(breaker, 2);
+	assertEquals(State.CLOSED, breaker.getState());
+	assertTrue(breaker.allowRequest());
+
+	breaker.onFailure();
+	assertEquals(State.OPEN, breaker.getState());
+	assertFalse(breaker.allowRequest());
+	try {
+	    breaker.checkRequest();
+	    fail("Expected JedisConnectionException");
+	} catch (JedisConnectionException e) {
+	    // expected
+	}
+    }
+
+    @Test
+    public void successResetsConsecutiveFailures() {
+	CircuitBreaker breaker = newBreaker(3, 1000, 1000);
+	recordFailures(breaker, 2);
+	breaker.onSuccess();
+	assertEquals(0, breaker.getConsecutiveFailures());
+	recordFailures(breaker, 2);
+	assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenAllowsSingleProbe() throws InterruptedException {
+	CircuitBreaker breaker = newBreaker(1, 50, 1000);
+	breaker.onFailure();
+	assertEquals(State.OPEN, breaker.getState());
+
+	Thread.sleep(80);
+	assertTrue(breaker.allowRequest());
+	assertEquals(State.HALF_OPEN, breaker.getState());
+	assertFalse(breaker.allowRequest());
+	assertFalse(breaker.allowRequest());
+
+	breaker.onSuccess();
+	assertEquals(State.CLOSED, breaker.getState());
+	assertEquals(0, breaker.getConsecutiveFailures());
+	assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbeDoublesBackoff() throws InterruptedException {
+	CircuitBreaker breaker = newBreaker(1, 100, 1000);
+	breaker.onFailure();
+	Thread.sleep(130);
+	assertTrue(breaker.allowRequest());
+
+	// 探测失败：退避时间加倍为200毫秒
+	breaker.onFailure();
+	assertEquals(State.OPEN, breaker.getState());
+	Thread.sleep(130);
+	assertFalse(breaker.allowRequest());
+	Thread.sleep(120);
+	assertTrue(breaker.allowRequest());
+	assertEquals(State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void backoffIsCappedAndResetOnSuccess() throws InterruptedException {
+	CircuitBreaker breaker = newBreaker(1, 50, 100);
+	breaker.onFailure();
+	Thread.sleep(80);
+	assertTrue(breaker.allowRequest());
+	breaker.onFailure(); // 100
+	Thread.sleep(130);
+	assertTrue(breaker.allowRequest());
+	breaker.onFailure(); // 不超过100
+	Thread.sleep(130);
+	assertTrue(breaker.allowRequest());
+
+	breaker.onSuccess();
+	breaker.onFailure(); // 恢复为50
+	Thread.sleep(80);
+	assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void listenerSeesTransitions() throws InterruptedException {
+	final List<String> transitions = new ArrayList<String>();
+	CircuitBreaker breaker = newBreaker(1, 50, 1000);
+	breaker.setListener(new CircuitBreaker.Listener() {
+	    public void onStateChange(CircuitBreaker breaker, State from,
+		    State to) {
+		transitions.add(from + "->" + to);
+	    }
+	});
+	breaker.onFailure();
+	Thread.sleep(80);
+	breaker.allowRequest();
+	breaker.onSuccess();
+	assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]",
+		transitions.toString());
+    }
+
+    @Test
+    public void deadlineTimeoutIsNotCounted() throws IOException {
+	ServerSocket silent = new ServerSocket(0);
+	try {
+	    CircuitBreaker breaker = newBreaker(1, 1000, 1000);
+	    Jedis jedis = new Jedis("localhost", silent.getLocalPort(), 2000);
+	    jedis.getClient().setCircuitBreaker(breaker);
+	    jedis.setDeadline(Deadline.after(100));
+	    try {
+		jedis.get("foo");
+		fail("Expected JedisConnectionException");
+	    } catch (JedisConnectionException e) {
+		// expected
+	    }
+	    assertEquals(State.CLOSED, breaker.getState());
+	    assertEquals(0, breaker.getConsecutiveFailures());
+	    jedis.disconnect();
+	} finally {
+	    silent.close();
+	}
+    }
+
+    @Test
+    public void socketTimeoutIsCounted() throws IOException {
+	ServerSocket silent = new ServerSocket(0);
+	try {
+	    CircuitBreaker breaker = newBreaker(1, 1000, 1000);
+	    Jedis jedis = new Jedis("localhost", silent.getLocalPort(), 100);
+	    jedis.getClient().setCircuitBreaker(breaker);
+	    jedis.setDeadline(Deadline.after(2000));
+	    try {
+		jedis.get("foo");
+		fail("Expected JedisConnectionException");
+	    } catch (JedisConnectionException e) {
+		// expected
+	    }
+	    assertEquals(State.OPEN, breaker.getState());
+	    jedis.disconnect();
+	} finally {
+	    silent.close();
+	}
+    }
+
+    @Test
+    public void openBreakerOnlyRejectsNewConnections() throws IOException {
+	MockRedisServer server = new MockRedisServer();
+	try {
+	    CircuitBreaker breaker = newBreaker(1, 60000, 60000);
+	    Jedis jedis = new Jedis(MockRedisServer.HOST, server.getPort());
+	    jedis.getClient().setCircuitBreaker(breaker);
+	    jedis.set("foo", "bar");
+	    breaker.onFailure();
+	    assertEquals(State.OPEN, breaker.getState());
+
+	    // 已打开的链接照常使用，成功响应关闭熔断器
+	    assertEquals("bar", jedis.get("foo"));
+	    assertFalse(jedis.getClient().isBroken());
+	    assertEquals(State.CLOSED, breaker.getState());
+
+	    breaker.onFailure();
+	    jedis.disconnect();
+	    try {
+		jedis.get("foo");
+		fail("Expected JedisConnectionException");
+	    } catch (JedisConnectionException e) {
+		// expected
+	    }
+	    // 被熔断器拒绝的链接没有损坏
+	    assertFalse(jedis.getClient().isBroken());
+	} finally {
+	    server.close();
+	}
+    }
+
+    @Test
+    public void specializedReadersAreCounted() throws IOException {
+	MockRedisServer server = new MockRedisServer();
+	ServerSocket silent = new ServerSocket(0);
+	try {
+	    CircuitBreaker breaker = newBreaker(2, 1000, 1000);
+	    breaker.onFailure();
+	    Jedis jedis = new Jedis(MockRedisServer.HOST, server.getPort());
+	    jedis.getClient().setCircuitBreaker(breaker);
+	    jedis.set("foo", "bar");
+	    breaker.onFailure();
+	    breaker.onSuccess();
+	    breaker.onFailure();
+	    assertEquals(1, breaker.getConsecutiveFailures());
+	    assertEquals(Long.valueOf(3), jedis.get(SafeEncoder.encode("foo"),
+		    new ByteArrayOutputStream()));
+	    assertEquals(0, breaker.getConsecutiveFailures());
+	    jedis.disconnect();
+
+	    Jedis stuck = new Jedis("localhost", silent.getLocalPort(), 100);
+	    stuck.getClient().setCircuitBreaker(breaker);
+	    for (int i = 0; i < 2; i++) {
+		try {
+		    stuck.get(SafeEncoder.encode("foo"),
+			    new ByteArrayOutputStream());
+		    fail("Expected JedisConnectionException");
+		} catch (JedisConnectionException e) {
+		    // expected
+		}
+		stuck.disconnect();
+	    }
+	    assertEquals(State.OPEN, breaker.getState());
+	} finally {
+	    silent.close();
+	    server.close();
+	}
+    }
+
+}
@@ -0,0 +1,68 @@
+package redis.clients.jedis.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Deadline;
+import redis.clients.util.SafeEncoder;
+
+public class DeadlineTest extends Assert {
+
+    @Test
+    public void deadlineBoundsStreamingReads() throws IOException {
+	ServerSocket silent = new ServerSocket(0);
+	try {
+	    Jedis jedis = new Jedis("localhost", silent.getLocalPort(), 5000);
+	    Client client = jedis.getClient();
+	    client.get(SafeEncoder.encode("foo"));
+	    // 发送之后才设置截止时间：只有读取时应用截止时间才能提前失败
+	    jedis.setDeadline(Deadline.after(100));
+
+	    long start = System.currentTimeMillis();
+	    try {
+		client.getBinaryBulkReply(new ByteArrayOutputStream());
+		fail("Expected JedisConnectionException");
+	    } catch (JedisConnectionException e) {
+		// expected
+	    }
+	    // 截止时间到期即失败，而不是等待5秒的读取超时
+	    assertTrue(System.currentTimeMillis() - start < 1000);
+	    assertTrue(client.isBroken());
+	    jedis.disconnect();
+	} finally {
+	    silent.close();
+	}
+    }
+
+    @Test
+    public void clearingDeadlineRestoresSoTimeout() throws IOException {
+	MockRedisServer server = new MockRedisServer();
+	try {
+	    Jedis jedis = new Jedis(MockRedisServer.HOST, server.getPort(),
+		    3000);
+	    jedis.setDeadline(Deadline.after(10000));
+	    jedis.set("foo", "bar");
+	    assertEquals(3000, jedis.getClient().getSocket().getSoTimeout());
+
+	    jedis.setDeadline(Deadline.after(1000));
+	    assertEquals("bar", jedis.get("foo"));
+	    int bounded = jedis.getClient().getSocket().getSoTimeout();
+	    assertTrue(bounded > 0 && bounded <= 1000);
+
+	    jedis.setDeadline(null);
+	    assertEquals(3000, jedis.getClient().getSocket().getSoTimeout());
+	    assertEquals("bar", jedis.get("foo"));
+	    jedis.disconnect();
+	} finally {
+	    server.close();
+	}
+    }
+
+}
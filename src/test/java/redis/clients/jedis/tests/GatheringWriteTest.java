@@ -0,0 +1,80 @@
+package redis.clients.jedis.tests;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.SafeEncoder;
+
+public class GatheringWriteTest extends Assert {
+
+    private MockRedisServer server;
+    private Jedis jedis;
+
+    @Before
+    public void setUp() throws IOException {
+	server = new MockRedisServer();
+	JedisShardInfo shard = new JedisShardInfo(MockRedisServer.HOST,
+		server.getPort());
+	shard.setGatheringWriteThreshold(1024);
+	jedis = new Jedis(shard);
+    }
+
+    @After
+    public void tearDown() {
+	jedis.disconnect();
+	server.close();
+    }
+
+    private static byte[] value(int length) {
+	byte[] value = new byte[length];
+	for (int i = 0; i < length; i++) {
+	    value[i] = (byte) (i * 7 + length);
+	}
+	return value;
+    }
+
+    @Test
+    public void largeValuesRoundTrip() {
+	// 跨越直接缓冲区(64KB)边界的各种长度
+	int[] lengths = { 1023, 1024, 64 * 1024 - 20, 64 * 1024, 64 * 1024 + 1,
+		3 * 64 * 1024 + 5, 2 * 1024 * 1024 + 3 };
+	for (int length : lengths) {
+	    byte[] key = SafeEncoder.encode("key:" + length);
+	    assertEquals("OK", jedis.set(key, value(length)));
+	    assertArrayEquals(value(length), server.get("key:" + length));
+	    assertArrayEquals(value(length), jedis.get(key));
+	}
+	assertNotNull(jedis.getClient().getSocket().getChannel());
+    }
+
+    @Test
+    public void pipelinedLargeAndSmallValuesKeepOrder() {
+	Pipeline pipeline = jedis.pipelined();
+	for (int i = 0; i < 50; i++) {
+	    int length = i % 2 == 0 ? 100 : 70 * 1024 + i;
+	    pipeline.set(SafeEncoder.encode("key:" + i), value(length));
+	    pipeline.get(SafeEncoder.encode("key:" + i));
+	}
+	List<Object> replies = pipeline.syncAndReturnAll();
+	assertEquals(100, replies.size());
+	for (int i = 0; i < 50; i++) {
+	    int length = i % 2 == 0 ? 100 : 70 * 1024 + i;
+	    assertEquals("OK", replies.get(2 * i));
+	    assertArrayEquals(value(length), (byte[]) replies.get(2 * i + 1));
+	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThresholdIsRejected() {
+	jedis.getClient().setGatheringWriteThreshold(-1);
+    }
+
+}
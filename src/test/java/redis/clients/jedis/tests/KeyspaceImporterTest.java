@@ -0,0 +1,156 @@
+package redis.clients.jedis.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.BulkLoader.Progress;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.KeyspaceExporter;
+import redis.clients.jedis.KeyspaceImporter;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.util.SafeEncoder;
+
+public class KeyspaceImporterTest extends Assert {
+
+    private static final int KEYS = 3000;
+
+    private List<MockRedisServer> sources;
+    private List<MockRedisServer> targets;
+    private ShardedJedis source;
+    private ShardedJedis target;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+	sources = startServers(2);
+	targets = startServers(3);
+	source = new ShardedJedis(shards(sources));
+	target = new ShardedJedis(shards(targets));
+	file = File.createTempFile("keyspace", ".snp");
+    }
+
+    @After
+    public void tearDown() {
+	source.disconnect();
+	target.disconnect();
+	for (MockRedisServer server : sources) {
+	    server.close();
+	}
+	for (MockRedisServer server : targets) {
+	    server.close();
+	}
+	file.delete();
+    }
+
+    private static List<MockRedisServer> startServers(int count)
+	    throws IOException {
+	List<MockRedisServer> servers = new ArrayList<MockRedisServer>();
+	for (int i = 0; i < count; i++) {
+	    servers.add(new MockRedisServer());
+	}
+	return servers;
+    }
+
+    private static List<JedisShardInfo> shards(List<MockRedisServer> servers) {
+	List<JedisShardInfo> shards = new ArrayList<JedisShardInfo>();
+	for (MockRedisServer server : servers) {
+	    shards.add(new JedisShardInfo(MockRedisServer.HOST, server
+		    .getPort()));
+	}
+	return shards;
+    }
+
+    private static MockRedisServer owner(ShardedJedis sharded,
+	    List<MockRedisServer> servers, String key) {
+	int port = sharded.getShardInfo(key).getPort();
+	for (MockRedisServer server : servers) {
+	    if (server.getPort() == port) {
+		return server;
+	    }
+	}
+	throw new AssertionError("No server for " + key);
+    }
+
+    private static byte[] value(int i) {
+	// 夹杂一些远大于套接字缓冲区的值
+	byte[] value = new byte[i % 300 == 0 ? 200 * 1024 : 1024];
+	Arrays.fill(value, (byte) ('a' + i % 26));
+	return value;
+    }
+
+    private void populate() {
+	for (int i = 0; i < KEYS; i++) {
+	    String key = "key:" + i;
+	    Jedis jedis = source.getShard(key);
+	    if (i % 10 == 0) {
+		// RESTORE 是设置生存时间的最简单方式
+		byte[] dump = new byte[8 + value(i).length];
+		System.arraycopy(SafeEncoder.encode("MOCKDUMP"), 0, dump, 0, 8);
+		System.arraycopy(value(i), 0, dump, 8, value(i).length);
+		jedis.restore(key, 600000, dump);
+	    } else {
+		jedis.set(SafeEncoder.encode(key), value(i));
+	    }
+	}
+    }
+
+    @Test
+    public void exportAndImportRoundTrip() throws IOException {
+	populate();
+	assertEquals(KEYS, new KeyspaceExporter(source).export(file));
+
+	Progress progress = new KeyspaceImporter(target).load(file);
+	assertEquals(KEYS, progress.getRecords());
+	assertEquals(KEYS, progress.getAcked());
+	assertEquals(0, progress.getErrors());
+
+	int total = 0;
+	for (MockRedisServer server : targets) {
+	    assertTrue(server.size() > 0);
+	    total += server.size();
+	}
+	assertEquals(KEYS, total);
+	for (int i = 0; i < KEYS; i++) {
+	    String key = "key:" + i;
+	    MockRedisServer server = owner(target, targets, key);
+	    assertArrayEquals(key, value(i), server.get(key));
+	    if (i % 10 == 0) {
+		assertNotNull(key, server.getExpireAt(key));
+	    } else {
+		assertNull(key, server.getExpireAt(key));
+	    }
+	}
+    }
+
+    @Test
+    public void existingKeysAreCountedOrReplaced() throws IOException {
+	populate();
+	new KeyspaceExporter(source).export(file);
+	new KeyspaceImporter(target).load(file);
+
+	Progress progress = new KeyspaceImporter(target).load(file);
+	assertEquals(KEYS, progress.getAcked());
+	assertEquals(KEYS, progress.getErrors());
+
+	KeyspaceImporter importer = new KeyspaceImporter(target);
+	importer.setReplace(true);
+	progress = importer.load(file);
+	assertEquals(KEYS, progress.getAcked());
+	assertEquals(0, progress.getErrors());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFileWithoutHeader() throws IOException {
+	new KeyspaceImporter(target).load(file);
+    }
+
+}
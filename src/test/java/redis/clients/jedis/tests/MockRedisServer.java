@@ -0,0 +1,543 @@
+package redis.clients.jedis.tests;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A minimal in-process Redis server speaking RESP, for tests that need a
+ * server but not a real redis-server.
+ *
+ * Supports PING, AUTH, SELECT, QUIT, SET, GET, GETSET, DEL, EXISTS, SCAN, DUMP, PTTL,
+ * RESTORE, PUBLISH and the (P)SUBSCRIBE/(P)UNSUBSCRIBE family. DUMP payloads
+ * are opaque to the client, so they are simply the value with a marker
+ * prefix. Each connection is served by its own thread; replies are flushed
+ * when the client has no more pipelined input.
+ */
+public class MockRedisServer implements Closeable {
+
+    public static final String HOST = "127.0.0.1";
+
+    private static final byte[] DUMP_PREFIX = bytes("MOCKDUMP");
+
+    private final ServerSocket server;
+    private final Thread acceptor;
+    /** Keys are stored as ISO-8859-1 strings so every byte maps to a char */
+    private final TreeMap<String, byte[]> data = new TreeMap<String, byte[]>();
+    private final Map<String, Long> expires = new HashMap<String, Long>();
+    private final Map<String, Integer> commandCounts = new HashMap<String, Integer>();
+    private final List<ClientHandler> clients = new CopyOnWriteArrayList<ClientHandler>();
+    /** Writes (SET, GETSET) to keys matching this glob fail */
+    private String rejectedWrites;
+    private volatile boolean closed;
+
+    public MockRedisServer() throws IOException {
+	server = new ServerSocket(0, 50, InetAddress.getByName(HOST));
+	acceptor = new Thread(new Runnable() {
+	    public void run() {
+		accept();
+	    }
+	}, "mock-redis-" + server.getLocalPort());
+	acceptor.setDaemon(true);
+	acceptor.start();
+    }
+
+    public int getPort() {
+	return server.getLocalPort();
+    }
+
+    /**
+     * Returns how many times the given command (upper case) was received.
+     */
+    public synchronized int getCommandCount(String command) {
+	Integer count = commandCounts.get(command);
+	return count == null ? 0 : count;
+    }
+
+    public synchronized byte[] get(String key) {
+	return data.get(key);
+    }
+
+    public synchronized void set(String key, String value) {
+	data.put(key, bytes(value));
+    }
+
+    /**
+     * Makes SET and GETSET fail with an error for keys matching the glob
+     * pattern; null accepts all writes again.
+     */
+    public synchronized void rejectWrites(String pattern) {
+	rejectedWrites = pattern;
+    }
+
+    public synchronized int size() {
+	return data.size();
+    }
+
+    public synchronized Set<String> keys() {
+	return new LinkedHashSet<String>(data.keySet());
+    }
+
+    public synchronized Long getExpireAt(String key) {
+	return expires.get(key);
+    }
+
+    /**
+     * Returns the number of channel subscriptions over all connections.
+     */
+    public int getSubscriptionCount() {
+	int count = 0;
+	for (ClientHandler client : clients) {
+	    count += client.channels.size();
+	}
+	return count;
+    }
+
+    /**
+     * Returns the number of connections subscribed to the given channel.
+     */
+    public int getSubscribers(String channel) {
+	int count = 0;
+	for (ClientHandler client : clients) {
+	    if (client.channels.contains(channel)) {
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * Returns the number of pattern subscriptions over all connections.
+     */
+    public int getPatternSubscriptionCount() {
+	int count = 0;
+	for (ClientHandler client : clients) {
+	    count += client.patterns.size();
+	}
+	return count;
+    }
+
+    /**
+     * Closes every client connection, keeping the data.
+     */
+    public void killClients() {
+	for (ClientHandler client : clients) {
+	    client.close();
+	}
+    }
+
+    public void close() {
+	closed = true;
+	try {
+	    server.close();
+	} catch (IOException e) {
+	    // ignore
+	}
+	killClients();
+    }
+
+    private void accept() {
+	while (!closed) {
+	    try {
+		Socket socket = server.accept();
+		ClientHandler client = new ClientHandler(socket);
+		clients.add(client);
+		Thread t = new Thread(client, "mock-redis-client");
+		t.setDaemon(true);
+		t.start();
+	    } catch (IOException e) {
+		if (!closed) {
+		    e.printStackTrace();
+		}
+		return;
+	    }
+	}
+    }
+
+    private synchronized byte[] execute(ClientHandler client,
+	    List<byte[]> args) {
+	String command = string(args.get(0)).toUpperCase();
+	Integer count = commandCounts.get(command);
+	commandCounts.put(command, count == null ? 1 : count + 1);
+	expire();
+
+	if ("PING".equals(command)) {
+	    return status("PONG");
+	} else if ("QUIT".equals(command)) {
+	    client.quit = true;
+	    return status("OK");
+	} else if ("AUTH".equals(command) || "SELECT".equals(command)) {
+	    return status("OK");
+	} else if (("SET".equals(command) || "GETSET".equals(command))
+		&& rejectedWrites != null
+		&& globMatch(rejectedWrites, string(args.get(1)))) {
+	    return error("OOM command not allowed when used memory > 'maxmemory'.");
+	} else if ("GETSET".equals(command)) {
+	    byte[] old = data.put(string(args.get(1)), args.get(2));
+	    expires.remove(string(args.get(1)));
+	    return bulk(old);
+	} else if ("SET".equals(command)) {
+	    data.put(string(args.get(1)), args.get(2));
+	    expires.remove(string(args.get(1)));
+	    return status("OK");
+	} else if ("GET".equals(command)) {
+	    return bulk(data.get(string(args.get(1))));
+	} else if ("DEL".equals(command)) {
+	    int deleted = 0;
+	    for (int i = 1; i < args.size(); i++) {
+		if (data.remove(string(args.get(i))) != null) {
+		    deleted++;
+		}
+		expires.remove(string(args.get(i)));
+	    }
+	    return integer(deleted);
+	} else if ("EXISTS".equals(command)) {
+	    return integer(data.containsKey(string(args.get(1))) ? 1 : 0);
+	} else if ("SCAN".equals(command)) {
+	    return scan(args);
+	} else if ("DUMP".equals(command)) {
+	    byte[] value = data.get(string(args.get(1)));
+	    return bulk(value == null ? null : concat(DUMP_PREFIX, value));
+	} else if ("PTTL".equals(command)) {
+	    String key = string(args.get(1));
+	    if (!data.containsKey(key)) {
+		return integer(-2);
+	    }
+	    Long at = expires.get(key);
+	    return integer(at == null ? -1 : Math.max(0,
+		    at - System.currentTimeMillis()));
+	} else if ("RESTORE".equals(command)) {
+	    return restore(args);
+	} else if ("PUBLISH".equals(command)) {
+	    return integer(publish(args.get(1), args.get(2)));
+	} else if ("SUBSCRIBE".equals(command)
+		|| "PSUBSCRIBE".equals(command)) {
+	    Set<String> table = "SUBSCRIBE".equals(command) ? client.channels
+		    : client.patterns;
+	    ByteArrayOutputStream out = new ByteArrayOutputStream();
+	    for (int i = 1; i < args.size(); i++) {
+		table.add(string(args.get(i)));
+		write(out, array(bulk(bytes(command.toLowerCase())),
+			bulk(args.get(i)), integer(client.subscriptions())));
+	    }
+	    return out.toByteArray();
+	} else if ("UNSUBSCRIBE".equals(command)
+		|| "PUNSUBSCRIBE".equals(command)) {
+	    Set<String> table = "UNSUBSCRIBE".equals(command) ? client.channels
+		    : client.patterns;
+	    List<String> names = new ArrayList<String>();
+	    for (int i = 1; i < args.size(); i++) {
+		names.add(string(args.get(i)));
+	    }
+	    if (names.isEmpty()) {
+		names.addAll(table);
+	    }
+	    ByteArrayOutputStream out = new ByteArrayOutputStream();
+	    for (String name : names) {
+		table.remove(name);
+		write(out, array(bulk(bytes(command.toLowerCase())),
+			bulk(bytes(name)), integer(client.subscriptions())));
+	    }
+	    return out.toByteArray();
+	}
+	return error("ERR unknown command '" + command + "'");
+    }
+
+    private byte[] scan(List<byte[]> args) {
+	int cursor = Integer.parseInt(string(args.get(1)));
+	int count = 10;
+	String match = null;
+	for (int i = 2; i + 1 < args.size(); i += 2) {
+	    String option = string(args.get(i)).toUpperCase();
+	    if ("COUNT".equals(option)) {
+		count = Integer.parseInt(string(args.get(i + 1)));
+	    } else if ("MATCH".equals(option)) {
+		match = string(args.get(i + 1));
+	    }
+	}
+	List<String> keys = new ArrayList<String>(data.keySet());
+	int end = Math.min(keys.size(), cursor + count);
+	List<byte[]> page = new ArrayList<byte[]>();
+	for (int i = cursor; i < end; i++) {
+	    if (match == null || globMatch(match, keys.get(i))) {
+		page.add(bulk(bytes(keys.get(i))));
+	    }
+	}
+	int next = end >= keys.size() ? 0 : end;
+	return array(bulk(bytes(String.valueOf(next))),
+		array(page.toArray(new byte[page.size()][])));
+    }
+
+    private byte[] restore(List<byte[]> args) {
+	String key = string(args.get(1));
+	long ttl = Long.parseLong(string(args.get(2)));
+	byte[] payload = args.get(3);
+	boolean replace = args.size() > 4
+		&& "REPLACE".equalsIgnoreCase(string(args.get(4)));
+	if (data.containsKey(key) && !replace) {
+	    return error("BUSYKEY Target key name already exists.");
+	}
+	if (payload.length < DUMP_PREFIX.length
+		|| !Arrays.equals(DUMP_PREFIX,
+			Arrays.copyOf(payload, DUMP_PREFIX.length))) {
+	    return error("ERR DUMP payload version or checksum are wrong");
+	}
+	data.put(key, Arrays.copyOfRange(payload, DUMP_PREFIX.length,
+		payload.length));
+	if (ttl > 0) {
+	    expires.put(key, System.currentTimeMillis() + ttl);
+	} else {
+	    expires.remove(key);
+	}
+	return status("OK");
+    }
+
+    private int publish(byte[] channel, byte[] message) {
+	String name = string(channel);
+	int receivers = 0;
+	for (ClientHandler client : clients) {
+	    if (client.channels.contains(name)) {
+		client.push(array(bulk(bytes("message")), bulk(channel),
+			bulk(message)));
+		receivers++;
+	    }
+	    for (String pattern : client.patterns) {
+		if (globMatch(pattern, name)) {
+		    client.push(array(bulk(bytes("pmessage")),
+			    bulk(bytes(pattern)), bulk(channel), bulk(message)));
+		    receivers++;
+		}
+	    }
+	}
+	return receivers;
+    }
+
+    private void expire() {
+	long now = System.currentTimeMillis();
+	Iterator<Map.Entry<String, Long>> it = expires.entrySet().iterator();
+	while (it.hasNext()) {
+	    Map.Entry<String, Long> entry = it.next();
+	    if (entry.getValue() <= now) {
+		data.remove(entry.getKey());
+		it.remove();
+	    }
+	}
+    }
+
+    /**
+     * Glob matching with '*' and '?' only, enough for the tests.
+     */
+    static boolean globMatch(String pattern, String text) {
+	return globMatch(pattern, 0, text, 0);
+    }
+
+    private static boolean globMatch(String p, int pi, String t, int ti) {
+	while (pi < p.length()) {
+	    char c = p.charAt(pi);
+	    if (c == '*') {
+		for (int i = ti; i <= t.length(); i++) {
+		    if (globMatch(p, pi + 1, t, i)) {
+			return true;
+		    }
+		}
+		return false;
+	    }
+	    if (ti >= t.length() || (c != '?' && c != t.charAt(ti))) {
+		return false;
+	    }
+	    pi++;
+	    ti++;
+	}
+	return ti == t.length();
+    }
+
+    private final class ClientHandler implements Runnable {
+	final Socket socket;
+	final InputStream in;
+	final OutputStream out;
+	volatile boolean quit;
+	final Set<String> channels = Collections
+		.synchronizedSet(new LinkedHashSet<String>());
+	final Set<String> patterns = Collections
+		.synchronizedSet(new LinkedHashSet<String>());
+
+	ClientHandler(Socket socket) throws IOException {
+	    this.socket = socket;
+	    this.in = new BufferedInputStream(socket.getInputStream(), 65536);
+	    this.out = new BufferedOutputStream(socket.getOutputStream(),
+		    65536);
+	}
+
+	int subscriptions() {
+	    return channels.size() + patterns.size();
+	}
+
+	public void run() {
+	    try {
+		while (true) {
+		    List<byte[]> args = readCommand(in);
+		    if (args == null) {
+			break;
+		    }
+		    byte[] reply = execute(this, args);
+		    synchronized (this) {
+			out.write(reply);
+			if (quit || in.available() == 0) {
+			    out.flush();
+			}
+		    }
+		    if (quit) {
+			break;
+		    }
+		}
+	    } catch (IOException e) {
+		// connection closed
+	    } finally {
+		close();
+	    }
+	}
+
+	synchronized void push(byte[] message) {
+	    try {
+		out.write(message);
+		out.flush();
+	    } catch (IOException e) {
+		close();
+	    }
+	}
+
+	void close() {
+	    clients.remove(this);
+	    try {
+		socket.close();
+	    } catch (IOException e) {
+		// ignore
+	    }
+	}
+    }
+
+    private static List<byte[]> readCommand(InputStream in)
+	    throws IOException {
+	int first = in.read();
+	if (first < 0) {
+	    return null;
+	}
+	if (first != '*') {
+	    throw new IOException("Inline commands are not supported");
+	}
+	int n = (int) readNumber(in);
+	List<byte[]> args = new ArrayList<byte[]>(n);
+	for (int i = 0; i < n; i++) {
+	    if (in.read() != '$') {
+		throw new IOException("Expected bulk string");
+	    }
+	    int len = (int) readNumber(in);
+	    byte[] arg = new byte[len];
+	    int read = 0;
+	    while (read < len) {
+		int r = in.read(arg, read, len - read);
+		if (r < 0) {
+		    throw new EOFException();
+		}
+		read += r;
+	    }
+	    in.read();
+	    in.read();
+	    args.add(arg);
+	}
+	return args;
+    }
+
+    private static long readNumber(InputStream in) throws IOException {
+	long value = 0;
+	boolean negative = false;
+	int c;
+	while ((c = in.read()) != '\r') {
+	    if (c < 0) {
+		throw new EOFException();
+	    }
+	    if (c == '-') {
+		negative = true;
+	    } else {
+		value = value * 10 + (c - '0');
+	    }
+	}
+	in.read();
+	return negative ? -value : value;
+    }
+
+    private static byte[] status(String status) {
+	return bytes("+" + status + "\r\n");
+    }
+
+    private static byte[] error(String message) {
+	return bytes("-" + message + "\r\n");
+    }
+
+    private static byte[] integer(long value) {
+	return bytes(":" + value + "\r\n");
+    }
+
+    private static byte[] bulk(byte[] value) {
+	if (value == null) {
+	    return bytes("$-1\r\n");
+	}
+	return concat(bytes("$" + value.length + "\r\n"), value, bytes("\r\n"));
+    }
+
+    private static byte[] array(byte[]... items) {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	write(out, bytes("*" + items.length + "\r\n"));
+	for (byte[] item : items) {
+	    write(out, item);
+	}
+	return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] b) {
+	out.write(b, 0, b.length);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	for (byte[] part : parts) {
+	    write(out, part);
+	}
+	return out.toByteArray();
+    }
+
+    static byte[] bytes(String s) {
+	try {
+	    return s.getBytes("ISO-8859-1");
+	} catch (java.io.UnsupportedEncodingException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    static String string(byte[] b) {
+	try {
+	    return new String(b, "ISO-8859-1");
+	} catch (java.io.UnsupportedEncodingException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+}
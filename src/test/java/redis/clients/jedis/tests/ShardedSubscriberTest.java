@@ -0,0 +1,237 @@
+package redis.clients.jedis.tests;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedSubscriber;
+import redis.clients.jedis.ShardedSubscriber.Message;
+import redis.clients.jedis.ShardedSubscriber.MessageListener;
+import redis.clients.util.Sharded;
+
+public class ShardedSubscriberTest extends Assert {
+
+    private static final long TIMEOUT = 5000;
+
+    private MockRedisServer server1;
+    private MockRedisServer server2;
+    private ShardedJedis sharded;
+    private ShardedSubscriber subscriber;
+
+    @Before
+    public void setUp() throws IOException {
+	server1 = new MockRedisServer();
+	server2 = new MockRedisServer();
+	List<JedisShardInfo> shards = new ArrayList<JedisShardInfo>();
+	shards.add(new JedisShardInfo(MockRedisServer.HOST, server1.getPort()));
+	shards.add(new JedisShardInfo(MockRedisServer.HOST, server2.getPort()));
+	for (JedisShardInfo shard : shards) {
+	    // 订阅链接必须忽略这个设置，否则读写线程会在 JDK 12及以前死锁
+	    shard.setGatheringWriteThreshold(1);
+	}
+	sharded = new ShardedJedis(shards, Sharded.DEFAULT_KEY_TAG_PATTERN);
+	subscriber = new ShardedSubscriber(sharded);
+    }
+
+    @After
+    public void tearDown() {
+	subscriber.close();
+	sharded.disconnect();
+	server1.close();
+	server2.close();
+    }
+
+    private MockRedisServer owner(String channel) {
+	return sharded.getShardInfo(channel).getPort() == server1.getPort() ? server1
+		: server2;
+    }
+
+    private MockRedisServer other(String channel) {
+	return owner(channel) == server1 ? server2 : server1;
+    }
+
+    private static void await(Condition condition) throws InterruptedException {
+	long deadline = System.currentTimeMillis() + TIMEOUT;
+	while (!condition.holds()) {
+	    if (System.currentTimeMillis() > deadline) {
+		fail("Timed out waiting for condition");
+	    }
+	    Thread.sleep(10);
+	}
+    }
+
+    private void awaitSubscribed(final String channel)
+	    throws InterruptedException {
+	await(new Condition() {
+	    public boolean holds() {
+		return owner(channel).getSubscribers(channel) == 1;
+	    }
+	});
+    }
+
+    private static Message poll(BlockingQueue<Message> queue)
+	    throws InterruptedException {
+	Message message = queue.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+	assertNotNull("Timed out waiting for message", message);
+	return message;
+    }
+
+    private interface Condition {
+	boolean holds();
+    }
+
+    private static final class QueueListener implements MessageListener {
+	final BlockingQueue<Message> messages = new LinkedBlockingQueue<Message>();
+
+	public void onMessage(Message message) {
+	    messages.add(message);
+	}
+    }
+
+    @Test
+    public void channelsAreRoutedLikePublish() throws InterruptedException {
+	QueueListener listener = new QueueListener();
+	String[] channels = { "{user:1}:a", "{user:1}:b", "news", "sports",
+		"weather", "{user:2}:a" };
+	subscriber.subscribe(listener, channels);
+	assertEquals(channels.length, subscriber.getSubscribedChannels());
+	for (String channel : channels) {
+	    awaitSubscribed(channel);
+	    assertEquals(0, other(channel).getSubscribers(channel));
+	}
+	assertEquals(owner("{user:1}:a"), owner("{user:1}:b"));
+
+	for (String channel : channels) {
+	    assertEquals(1, sharded.publish(channel, "hello " + channel)
+		    .longValue());
+	    Message message = poll(listener.messages);
+	    assertEquals(channel, message.getChannel());
+	    assertEquals("hello " + channel, message.getBody());
+	    assertNull(message.getPattern());
+	}
+    }
+
+    @Test
+    public void lastListenerUnsubscribes() throws InterruptedException {
+	QueueListener first = new QueueListener();
+	QueueListener second = new QueueListener();
+	subscriber.subscribe(first, "news");
+	subscriber.subscribe(second, "news");
+	awaitSubscribed("news");
+
+	subscriber.unsubscribe(first, "news");
+	sharded.publish("news", "still here");
+	assertEquals("still here", poll(second.messages).getBody());
+	assertEquals(1, owner("news").getSubscribers("news"));
+
+	subscriber.unsubscribe(second, "news");
+	assertEquals(0, subscriber.getSubscribedChannels());
+	await(new Condition() {
+	    public boolean holds() {
+		return owner("news").getSubscribers("news") == 0;
+	    }
+	});
+	assertTrue(first.messages.isEmpty());
+    }
+
+    @Test
+    public void patternsAreSubscribedOnAllShards() throws InterruptedException {
+	QueueListener listener = new QueueListener();
+	subscriber.psubscribe(listener, "news.*");
+	await(new Condition() {
+	    public boolean holds() {
+		return server1.getPatternSubscriptionCount() == 1
+			&& server2.getPatternSubscriptionCount() == 1;
+	    }
+	});
+
+	// 找到分别属于两个分片节点的频道
+	String onFirst = null;
+	String onSecond = null;
+	for (int i = 0; onFirst == null || onSecond == null; i++) {
+	    String channel = "news." + i;
+	    if (owner(channel) == server1) {
+		onFirst = channel;
+	    } else {
+		onSecond = channel;
+	    }
+	}
+	for (String channel : new String[] { onFirst, onSecond }) {
+	    sharded.publish(channel, "breaking");
+	    Message message = poll(listener.messages);
+	    assertEquals("news.*", message.getPattern());
+	    assertEquals(channel, message.getChannel());
+	    assertEquals("breaking", message.getBody());
+	}
+    }
+
+    @Test
+    public void resubscribesAfterConnectionLoss() throws InterruptedException {
+	QueueListener listener = new QueueListener();
+	subscriber.subscribe(listener, "news", "sports");
+	subscriber.psubscribe(listener, "weather.*");
+	awaitSubscribed("news");
+	awaitSubscribed("sports");
+
+	server1.killClients();
+	server2.killClients();
+	awaitSubscribed("news");
+	awaitSubscribed("sports");
+	await(new Condition() {
+	    public boolean holds() {
+		return server1.getPatternSubscriptionCount() == 1
+			&& server2.getPatternSubscriptionCount() == 1;
+	    }
+	});
+
+	sharded.publish("news", "after");
+	assertEquals("after", poll(listener.messages).getBody());
+	sharded.publish("weather.today", "sunny");
+	Message message = poll(listener.messages);
+	assertEquals("weather.*", message.getPattern());
+	assertEquals("sunny", message.getBody());
+    }
+
+    @Test
+    public void messagesOfOneChannelKeepOrder() throws InterruptedException {
+	final int count = 2000;
+	final List<String> a = Collections
+		.synchronizedList(new ArrayList<String>());
+	final List<String> b = Collections
+		.synchronizedList(new ArrayList<String>());
+	subscriber.subscribe(new MessageListener() {
+	    public void onMessage(Message message) {
+		(message.getChannel().equals("a") ? a : b).add(message
+			.getBody());
+	    }
+	}, "a", "b");
+	awaitSubscribed("a");
+	awaitSubscribed("b");
+
+	for (int i = 0; i < count; i++) {
+	    sharded.publish("a", String.valueOf(i));
+	    sharded.publish("b", String.valueOf(i));
+	}
+	await(new Condition() {
+	    public boolean holds() {
+		return a.size() == count && b.size() == count;
+	    }
+	});
+	for (int i = 0; i < count; i++) {
+	    assertEquals(String.valueOf(i), a.get(i));
+	    assertEquals(String.valueOf(i), b.get(i));
+	}
+    }
+
+}
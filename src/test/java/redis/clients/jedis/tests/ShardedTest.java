@@ -0,0 +1,189 @@
+package redis.clients.jedis.tests;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import redis.clients.util.ShardInfo;
+import redis.clients.util.Sharded;
+
+public class ShardedTest extends Assert {
+
+    /**
+     * A shard whose resources are plain objects, counting how many were
+     * created.
+     */
+    private static final class TestShard extends ShardInfo<Object> {
+	private final String name;
+	final AtomicInteger created = new AtomicInteger();
+
+	TestShard(String name) {
+	    this.name = name;
+	}
+
+	@Override
+	protected Object createResource() {
+	    created.incrementAndGet();
+	    return new Object();
+	}
+
+	@Override
+	public String getName() {
+	    return name;
+	}
+
+	@Override
+	public String toString() {
+	    return name;
+	}
+    }
+
+    private static List<TestShard> shards(int count) {
+	List<TestShard> shards = new ArrayList<TestShard>(count);
+	for (int i = 0; i < count; i++) {
+	    shards.add(new TestShard("shard-" + i));
+	}
+	return shards;
+    }
+
+    @Test
+    public void resourcesAreCreatedLazily() {
+	List<TestShard> shards = shards(3);
+	Sharded<Object, TestShard> sharded = new Sharded<Object, TestShard>(
+		shards);
+	assertTrue(sharded.getCreatedShards().isEmpty());
+	for (TestShard shard : shards) {
+	    assertEquals(0, shard.created.get());
+	}
+
+	Object resource = sharded.getShardResource(shards.get(1));
+	assertSame(resource, sharded.getShardResource(shards.get(1)));
+	assertEquals(1, shards.get(1).created.get());
+	assertEquals(1, sharded.getCreatedShards().size());
+	assertEquals(0, shards.get(0).created.get());
+
+	assertEquals(3, sharded.getAllShards().size());
+	assertEquals(3, sharded.getCreatedShards().size());
+    }
+
+    @Test
+    public void concurrentAccessPublishesOneResource() throws Exception {
+	final List<TestShard> shards = shards(8);
+	final Sharded<Object, TestShard> sharded = new Sharded<Object, TestShard>(
+		shards);
+	final int threads = 16;
+	final CountDownLatch start = new CountDownLatch(1);
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>();
+	    for (int t = 0; t < threads; t++) {
+		futures.add(executor.submit(new Callable<List<Object>>() {
+		    public List<Object> call() throws InterruptedException {
+			start.await();
+			List<Object> seen = new ArrayList<Object>();
+			for (TestShard shard : shards) {
+			    seen.add(sharded.getShardResource(shard));
+			}
+			return seen;
+		    }
+		}));
+	    }
+	    start.countDown();
+	    List<Object> first = futures.get(0).get();
+	    for (Future<List<Object>> future : futures) {
+		List<Object> seen = future.get();
+		for (int i = 0; i < shards.size(); i++) {
+		    assertSame(first.get(i), seen.get(i));
+		}
+	    }
+	    // 竞争失败者创建的资源被丢弃，发布的只有一个
+	    assertEquals(shards.size(), sharded.getCreatedShards().size());
+	    assertEquals(shards.size(), new HashSet<Object>(first).size());
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownShardIsRejected() {
+	Sharded<Object, TestShard> sharded = new Sharded<Object, TestShard>(
+		shards(2));
+	sharded.getShardResource(new TestShard("other"));
+    }
+
+    @Test
+    public void touchedShardsBeyondOneWord() {
+	List<TestShard> shards = shards(130);
+	Sharded<Object, TestShard> sharded = new Sharded<Object, TestShard>(
+		shards);
+	int[] indexes = { 0, 1, 63, 64, 65, 127, 128, 129 };
+	Set<Object> expected = new HashSet<Object>();
+	for (int index : indexes) {
+	    expected.add(sharded.getShardResource(shards.get(index)));
+	}
+	Collection<Object> touched = sharded.getTouchedShards();
+	assertEquals(indexes.length, touched.size());
+	assertEquals(expected, new HashSet<Object>(touched));
+
+	sharded.clearTouchedShards();
+	assertTrue(sharded.getTouchedShards().isEmpty());
+
+	Object resource = sharded.getShardResource(shards.get(64));
+	touched = sharded.getTouchedShards();
+	assertEquals(1, touched.size());
+	assertSame(resource, touched.iterator().next());
+    }
+
+    @Test
+    public void removedResourceIsRecreated() {
+	List<TestShard> shards = shards(3);
+	Sharded<Object, TestShard> sharded = new Sharded<Object, TestShard>(
+		shards);
+	Object first = sharded.getShardResource(shards.get(2));
+	Object other = sharded.getShardResource(shards.get(0));
+
+	assertSame(shards.get(2), sharded.removeShardResource(first));
+	// 已丢弃或不属于集群的资源
+	assertNull(sharded.removeShardResource(first));
+	assertNull(sharded.removeShardResource(new Object()));
+	// 被访问过但已丢弃的资源不再返回
+	assertEquals(1, sharded.getTouchedShards().size());
+	assertEquals(1, sharded.getCreatedShards().size());
+
+	Object second = sharded.getShardResource(shards.get(2));
+	assertNotSame(first, second);
+	assertEquals(2, shards.get(2).created.get());
+	assertSame(other, sharded.getShardResource(shards.get(0)));
+	assertEquals(1, shards.get(0).created.get());
+    }
+
+    @Test
+    public void idleShardsAreThoseNotAccessedRecently()
+	    throws InterruptedException {
+	List<TestShard> shards = shards(3);
+	Sharded<Object, TestShard> sharded = new Sharded<Object, TestShard>(
+		shards);
+	Object idle = sharded.getShardResource(shards.get(0));
+	Thread.sleep(100);
+	Object busy = sharded.getShardResource(shards.get(1));
+
+	Collection<Object> result = sharded.getIdleShards(50);
+	assertEquals(1, result.size());
+	assertSame(idle, result.iterator().next());
+	assertFalse(result.contains(busy));
+	// 未创建资源的分片节点不算空闲
+	assertEquals(2, sharded.getIdleShards(0).size());
+    }
+
+}
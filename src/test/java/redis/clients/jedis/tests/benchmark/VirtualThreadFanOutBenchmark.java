@@ -0,0 +1,149 @@
+package redis.clients.jedis.tests.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ShardedFanOut;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPool;
+import redis.clients.util.Deadline;
+import redis.clients.util.VirtualThreads;
+
+/**
+ * Runs many concurrent callers (virtual threads on Java 21+), each borrowing
+ * from a ShardedJedisPool and doing a multi-shard fan-out read.
+ *
+ * Reports throughput, latency, the peak number of platform threads and the
+ * carrier utilization (process CPU time / (elapsed * processors)). Run with
+ * -Djdk.tracePinnedThreads=short (Java 21-23) to print any pinned carrier.
+ *
+ * Usage: VirtualThreadFanOutBenchmark [callers] [opsPerCaller]
+ * System properties: redis.host (localhost), redis.ports (6379,6380),
+ * pool.size (64).
+ */
+public class VirtualThreadFanOutBenchmark {
+    private static final int KEYS = 1000;
+    private static final int KEYS_PER_READ = 10;
+
+    public static void main(String[] args) throws Exception {
+	final int callers = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+	final int ops = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+	String host = System.getProperty("redis.host", "localhost");
+	String[] ports = System.getProperty("redis.ports", "6379,6380").split(
+		",");
+
+	List<JedisShardInfo> shards = new ArrayList<JedisShardInfo>();
+	for (String port : ports) {
+	    shards.add(new JedisShardInfo(host, Integer.parseInt(port.trim())));
+	}
+	GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+	config.setMaxTotal(Integer.getInteger("pool.size", 64));
+	config.setMaxIdle(config.getMaxTotal());
+	final ShardedJedisPool pool = new ShardedJedisPool(config, shards);
+
+	final String[] keys = new String[KEYS];
+	ShardedJedis sharded = pool.getResource();
+	for (int i = 0; i < KEYS; i++) {
+	    keys[i] = "bench:" + i;
+	    sharded.set(keys[i], String.valueOf(i));
+	}
+	pool.returnResource(sharded);
+
+	System.out.println("Virtual threads: " + VirtualThreads.isSupported()
+		+ ", callers: " + callers + ", ops per caller: " + ops
+		+ ", shards: " + shards.size());
+
+	final long[] latencies = new long[callers * ops];
+	final AtomicInteger index = new AtomicInteger();
+	final AtomicInteger partial = new AtomicInteger();
+	final AtomicInteger errors = new AtomicInteger();
+	final CountDownLatch done = new CountDownLatch(callers);
+	ExecutorService executor = VirtualThreads
+		.newThreadPerTaskExecutor("benchmark-caller");
+
+	ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	threads.resetPeakThreadCount();
+	long cpuBegin = processCpuTime();
+	long begin = System.nanoTime();
+
+	for (int c = 0; c < callers; c++) {
+	    final int seed = c;
+	    executor.execute(new Runnable() {
+		public void run() {
+		    try {
+			String[] read = new String[KEYS_PER_READ];
+			for (int n = 0; n < ops; n++) {
+			    for (int k = 0; k < read.length; k++) {
+				read[k] = keys[(seed * 31 + n * 7 + k * 101)
+					% KEYS];
+			    }
+			    long t0 = System.nanoTime();
+			    try {
+				Deadline deadline = Deadline.after(1000);
+				ShardedJedis jedis = pool.getResource(deadline);
+				try {
+				    if (!new ShardedFanOut(jedis)
+					    .mget(deadline, read).isComplete()) {
+					partial.incrementAndGet();
+				    }
+				} finally {
+				    jedis.close();
+				}
+			    } catch (RuntimeException e) {
+				errors.incrementAndGet();
+			    }
+			    latencies[index.getAndIncrement()] = System
+				    .nanoTime() - t0;
+			}
+		    } finally {
+			done.countDown();
+		    }
+		}
+	    });
+	}
+	done.await();
+
+	long elapsed = System.nanoTime() - begin;
+	long cpu = processCpuTime() - cpuBegin;
+	executor.shutdown();
+	pool.destroy();
+
+	int count = index.get();
+	long[] sorted = Arrays.copyOf(latencies, count);
+	Arrays.sort(sorted);
+	int processors = Runtime.getRuntime().availableProcessors();
+
+	System.out.println(count + " fan-out reads in " + elapsed / 1000000
+		+ " ms, " + (count * 1000000000L / elapsed) + " ops/s");
+	System.out.println("p50 " + sorted[count / 2] / 1000 + " us, p99 "
+		+ sorted[(int) (count * 0.99)] / 1000 + " us, max "
+		+ sorted[count - 1] / 1000 + " us");
+	System.out.println("partial " + partial.get() + ", errors "
+		+ errors.get());
+	System.out.println("peak platform threads "
+		+ threads.getPeakThreadCount() + ", processors " + processors);
+	if (cpu >= 0) {
+	    System.out.println("carrier utilization "
+		    + (cpu * 100 / (elapsed * processors)) + "%");
+	}
+    }
+
+    private static long processCpuTime() {
+	OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+	if (os instanceof com.sun.management.OperatingSystemMXBean) {
+	    return ((com.sun.management.OperatingSystemMXBean) os)
+		    .getProcessCpuTime();
+	}
+	return -1;
+    }
+}
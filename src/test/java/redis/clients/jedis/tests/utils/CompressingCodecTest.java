@@ -0,0 +1,104 @@
+package redis.clients.jedis.tests.utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import redis.clients.util.Codec;
+import redis.clients.util.CompressingCodec;
+import redis.clients.util.ReusableByteArrayOutputStream;
+
+public class CompressingCodecTest extends Assert {
+
+    private final CompressingCodec<byte[]> codec = new CompressingCodec<byte[]>(
+	    Codec.BYTES, 64, 1);
+
+    @After
+    public void close() {
+	codec.close();
+    }
+
+    private byte[] encode(byte[] value) throws IOException {
+	ReusableByteArrayOutputStream out = new ReusableByteArrayOutputStream();
+	codec.encode(value, out);
+	return out.toByteArray();
+    }
+
+    private static byte[] deflated(int length) {
+	return new byte[] { CompressingCodec.DEFLATE, (byte) (length >>> 24),
+		(byte) (length >>> 16), (byte) (length >>> 8), (byte) length,
+		0x03, 0x00 };
+    }
+
+    @Test
+    public void smallValuesStayRaw() throws IOException {
+	byte[] value = "short".getBytes("UTF-8");
+	byte[] encoded = encode(value);
+	assertEquals(CompressingCodec.RAW, encoded[0]);
+	assertArrayEquals(value, codec.decode(encoded, 0, encoded.length));
+    }
+
+    @Test
+    public void compressibleRoundTrip() throws IOException {
+	byte[] value = new byte[100000];
+	Arrays.fill(value, (byte) 'x');
+	byte[] encoded = encode(value);
+	assertEquals(CompressingCodec.DEFLATE, encoded[0]);
+	assertTrue(encoded.length < value.length / 10);
+	assertArrayEquals(value, codec.decode(encoded, 0, encoded.length));
+    }
+
+    @Test
+    public void incompressibleStaysRaw() throws IOException {
+	byte[] value = new byte[4096];
+	new Random(3).nextBytes(value);
+	byte[] encoded = encode(value);
+	assertEquals(CompressingCodec.RAW, encoded[0]);
+	assertArrayEquals(value, codec.decode(encoded, 0, encoded.length));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNegativeLength() throws IOException {
+	byte[] corrupt = deflated(-1);
+	codec.decode(corrupt, 0, corrupt.length);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsImplausibleLength() throws IOException {
+	byte[] corrupt = deflated(Integer.MAX_VALUE);
+	codec.decode(corrupt, 0, corrupt.length);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsLengthAboveMaximum() throws IOException {
+	byte[] value = new byte[100000];
+	byte[] encoded = encode(value);
+	codec.setMaxDecodedLength(value.length - 1);
+	codec.decode(encoded, 0, encoded.length);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedValue() throws IOException {
+	byte[] value = new byte[100000];
+	byte[] encoded = encode(value);
+	codec.decode(encoded, 0, encoded.length / 2);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownMarker() throws IOException {
+	codec.decode(new byte[] { 7, 1, 2 }, 0, 3);
+    }
+
+    @Test
+    public void usableAfterClose() throws IOException {
+	codec.close();
+	byte[] value = new byte[1000];
+	byte[] encoded = encode(value);
+	assertArrayEquals(value, codec.decode(encoded, 0, encoded.length));
+    }
+
+}
@@ -0,0 +1,112 @@
+package redis.clients.jedis.tests.utils;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.HyperLogLog;
+import redis.clients.util.SafeEncoder;
+
+public class HyperLogLogTest extends Assert {
+
+    private static byte[] header(int encoding, int length) {
+	byte[] raw = new byte[16 + length];
+	raw[0] = 'H';
+	raw[1] = 'Y';
+	raw[2] = 'L';
+	raw[3] = 'L';
+	raw[4] = (byte) encoding;
+	return raw;
+    }
+
+    private static byte[] dense(HyperLogLog hll) {
+	byte[] raw = header(0, HyperLogLog.REGISTERS * 6 / 8);
+	for (int i = 0; i < HyperLogLog.REGISTERS; i++) {
+	    int value = hll.getRegister(i);
+	    int bit = i * 6;
+	    int b = 16 + bit / 8;
+	    int fb = bit & 7;
+	    raw[b] |= (byte) (value << fb);
+	    if (fb > 2) {
+		raw[b + 1] |= (byte) (value >>> (8 - fb));
+	    }
+	}
+	return raw;
+    }
+
+    /*
+     * Same register update as Redis' hllPatLen for a 64 bit hash.
+     */
+    private static void add(HyperLogLog hll, long hash) {
+	int index = (int) (hash & (HyperLogLog.REGISTERS - 1));
+	long rest = (hash >>> HyperLogLog.P) | (1L << (64 - HyperLogLog.P));
+	hll.updateRegister(index, Long.numberOfTrailingZeros(rest) + 1);
+    }
+
+    @Test
+    public void emptyAndSingle() {
+	HyperLogLog hll = new HyperLogLog();
+	assertEquals(0, hll.count());
+	add(hll, 0x1234567890abcdefL);
+	assertEquals(1, hll.count());
+    }
+
+    @Test
+    public void denseRoundTrip() {
+	Random random = new Random(1);
+	HyperLogLog hll = new HyperLogLog();
+	for (int i = 0; i < 50000; i++) {
+	    add(hll, random.nextLong());
+	}
+	HyperLogLog decoded = HyperLogLog.decode(dense(hll));
+	for (int i = 0; i < HyperLogLog.REGISTERS; i++) {
+	    assertEquals(hll.getRegister(i), decoded.getRegister(i));
+	}
+	assertEquals(hll.count(), decoded.count());
+    }
+
+    @Test
+    public void sparseDecoding() {
+	// VAL(3) x2, ZERO x64, XZERO x(16384 - 2 - 64 - 1), VAL(32) x1
+	byte[] raw = header(1, 5);
+	raw[16] = (byte) (0x80 | (2 << 2) | 1);
+	raw[17] = (byte) 0x3f;
+	int zeros = HyperLogLog.REGISTERS - 2 - 64 - 1 - 1;
+	raw[18] = (byte) (0x40 | (zeros >>> 8));
+	raw[19] = (byte) (zeros & 0xff);
+	raw[20] = (byte) (0x80 | (31 << 2));
+
+	HyperLogLog hll = HyperLogLog.decode(raw);
+	assertEquals(3, hll.getRegister(0));
+	assertEquals(3, hll.getRegister(1));
+	assertEquals(0, hll.getRegister(2));
+	assertEquals(32, hll.getRegister(HyperLogLog.REGISTERS - 1));
+	assertEquals(hll.count(), HyperLogLog.decode(dense(hll)).count());
+    }
+
+    @Test
+    public void mergeIsUnion() {
+	Random random = new Random(7);
+	HyperLogLog a = new HyperLogLog();
+	HyperLogLog b = new HyperLogLog();
+	HyperLogLog both = new HyperLogLog();
+	for (int i = 0; i < 100000; i++) {
+	    long hash = random.nextLong();
+	    add(i % 2 == 0 ? a : b, hash);
+	    add(both, hash);
+	}
+	HyperLogLog merged = new HyperLogLog();
+	merged.merge(dense(a));
+	merged.merge(dense(b));
+	assertEquals(both.count(), merged.count());
+	assertEquals(100000, merged.count(), 100000 * 0.02);
+    }
+
+    @Test(expected = JedisDataException.class)
+    public void rejectsNonHllValues() {
+	HyperLogLog.decode(SafeEncoder.encode("not a hyperloglog"));
+    }
+
+}
@@ -0,0 +1,98 @@
+package redis.clients.jedis.tests.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import redis.clients.util.PatternIndex;
+import redis.clients.util.SafeEncoder;
+
+public class PatternIndexTest extends Assert {
+
+    private static boolean matches(String pattern, String string) {
+	return PatternIndex.matches(SafeEncoder.encode(pattern),
+		SafeEncoder.encode(string));
+    }
+
+    @Test
+    public void globSyntax() {
+	assertTrue(matches("a*", "a"));
+	assertTrue(matches("news.*", "news.sport"));
+	assertFalse(matches("news.*", "new"));
+	assertTrue(matches("h?llo", "hello"));
+	assertFalse(matches("h?llo", "hllo"));
+	assertTrue(matches("h*llo", "hllo"));
+	assertTrue(matches("h*llo", "heeeello"));
+	assertTrue(matches("h[ae]llo", "hallo"));
+	assertFalse(matches("h[ae]llo", "hillo"));
+	assertTrue(matches("h[^e]llo", "hallo"));
+	assertFalse(matches("h[^e]llo", "hello"));
+	assertTrue(matches("h[a-b]llo", "hbllo"));
+	assertTrue(matches("h[b-a]llo", "hallo"));
+	assertTrue(matches("a\\*b", "a*b"));
+	assertFalse(matches("a\\*b", "axb"));
+	assertTrue(matches("*a*b*c", "xxaxxbxxc"));
+	assertFalse(matches("*a*b*c", "xxaxxbxx"));
+	assertTrue(matches("**", "abc"));
+    }
+
+    @Test
+    public void literalPatterns() {
+	PatternIndex<String> index = new PatternIndex<String>();
+	index.put(SafeEncoder.encode("orders"), "exact");
+	index.put(SafeEncoder.encode("orders*"), "prefix");
+	assertEquals(2, index.match(SafeEncoder.encode("orders")).size());
+	assertEquals(Collections.singletonList("prefix"),
+		index.match(SafeEncoder.encode("orders.1")));
+	assertTrue(index.match(SafeEncoder.encode("order")).isEmpty());
+
+	assertEquals("exact", index.remove(SafeEncoder.encode("orders")));
+	assertEquals(1, index.size());
+	assertEquals(Collections.singletonList("prefix"),
+		index.match(SafeEncoder.encode("orders")));
+    }
+
+    @Test
+    public void indexAgreesWithLinearScan() {
+	Random random = new Random(17);
+	String alphabet = "ab.*?[]^-\\";
+	List<String> patterns = new ArrayList<String>();
+	PatternIndex<String> index = new PatternIndex<String>();
+	for (int i = 0; i < 2000; i++) {
+	    String pattern = randomString(random, alphabet, 6);
+	    if (index.put(SafeEncoder.encode(pattern), pattern) == null) {
+		patterns.add(pattern);
+	    }
+	}
+	assertEquals(patterns.size(), index.size());
+
+	for (int i = 0; i < 2000; i++) {
+	    String channel = randomString(random, "ab.c", 8);
+	    List<String> expected = new ArrayList<String>();
+	    for (String pattern : patterns) {
+		if (matches(pattern, channel)) {
+		    expected.add(pattern);
+		}
+	    }
+	    List<String> actual = index.match(SafeEncoder.encode(channel));
+	    Collections.sort(expected);
+	    Collections.sort(actual);
+	    assertEquals(channel, expected, actual);
+	}
+    }
+
+    private static String randomString(Random random, String alphabet,
+	    int maxLength) {
+	int length = random.nextInt(maxLength + 1);
+	StringBuilder sb = new StringBuilder(length);
+	for (int i = 0; i < length; i++) {
+	    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+	}
+	return sb.toString();
+    }
+
+}